@@ -0,0 +1,413 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.extensions;
+
+import java.util.Vector;
+import java.lang.reflect.Method;
+import java.lang.reflect.Member;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Constructor;
+
+import org.apache.xpath.objects.XObject;
+
+/**
+ * <meta name="usage" content="internal"/>
+ * A resolved binding of one extension function call site to a Java
+ * method or constructor.  A binding is only valid for the argument
+ * shape it was resolved with, i.e. the number of arguments, the XObject
+ * type of each argument and, for arguments wrapping arbitrary Java
+ * objects, the class of the wrapped object.  As long as a call presents
+ * the same shape, the handler can convert and invoke directly without
+ * scoring the candidate methods again.
+ *
+ * <p>The binding also keeps a call count and, if the
+ * <code>org.apache.xalan.extensions.timing</code> system property is
+ * set to "true", the accumulated wall-clock time spent in the call.</p>
+ */
+public class ExtensionCallSite
+{
+
+  /** The member is static, or a constructor: no target object.  */
+  static final int TARGET_NONE = 0;
+
+  /** The member is invoked on the handler's default instance.  */
+  static final int TARGET_DEFAULT = 1;
+
+  /** The member is invoked on the object wrapped by the first argument.  */
+  static final int TARGET_FIRST_ARG = 2;
+
+  /** True if the time spent in each call should be measured.  */
+  static boolean m_timing = false;
+
+  static
+  {
+    try
+    {
+      m_timing = "true".equals(
+        System.getProperty("org.apache.xalan.extensions.timing"));
+    }
+    catch (SecurityException se)
+    {
+      // Timing stays off.
+    }
+  }
+
+  /** Shared empty argument array for members without parameters.  */
+  private static final Object[] NO_ARGS = new Object[0];
+
+  /** The bound method, or null if a constructor is bound.  */
+  private Method m_method;
+
+  /** The bound constructor, or null if a method is bound.  */
+  private Constructor m_constructor;
+
+  /** Parameter types of the bound member.  */
+  private Class[] m_paramTypes;
+
+  /** Index of the first parameter that takes an XSLT argument.  */
+  private int m_paramStart;
+
+  /**
+   * Offset from a parameter index to the index of the argument
+   * it is converted from.
+   */
+  private int m_argOffset;
+
+  /** One of the TARGET_XXX values.  */
+  private int m_targetKind;
+
+  /** XObject.CLASS_XXX type of each argument of the bound shape.  */
+  private int[] m_argTypes;
+
+  /**
+   * Class of the wrapped object for CLASS_UNKNOWN arguments, null
+   * for all others.
+   */
+  private Class[] m_argClasses;
+
+  /** Class of the target object the shape was resolved against.  */
+  private Class m_targetClass;
+
+  /** Converted argument array reused between non-nested calls.  */
+  private Object[] m_convertedArgs;
+
+  /** True while m_convertedArgs is being used by a call.  */
+  private boolean m_convertedArgsInUse = false;
+
+  /** Number of calls made through this binding.  */
+  private int m_callCount = 0;
+
+  /** Milliseconds spent in calls made through this binding.  */
+  private long m_callTime = 0;
+
+  /** Next binding for the same call site, with a different shape.  */
+  ExtensionCallSite m_next;
+
+  /**
+   * Create a binding for the given member and argument shape.
+   *
+   * @param member The resolved Method or Constructor.
+   * @param args The arguments the member was resolved with.
+   * @param targetClass The class of the target object the member was
+   * resolved against, or null if resolution did not depend on it.
+   * @param targetKind One of the TARGET_XXX values, ignored for static
+   * methods and constructors.
+   */
+  ExtensionCallSite(Member member, Vector args, Class targetClass,
+                    int targetKind)
+  {
+
+    if (member instanceof Method)
+    {
+      m_method = (Method) member;
+      m_paramTypes = m_method.getParameterTypes();
+      m_targetKind = Modifier.isStatic(m_method.getModifiers())
+                     ? TARGET_NONE : targetKind;
+    }
+    else
+    {
+      m_constructor = (Constructor) member;
+      m_paramTypes = m_constructor.getParameterTypes();
+      m_targetKind = TARGET_NONE;
+    }
+
+    int nParams = m_paramTypes.length;
+
+    if ((nParams > 0)
+        && ExpressionContext.class.isAssignableFrom(m_paramTypes[0]))
+      m_paramStart = 1;
+
+    int nArgs = args.size();
+
+    m_argOffset = nArgs - nParams;
+    m_argTypes = new int[nArgs];
+    m_argClasses = new Class[nArgs];
+
+    for (int i = 0; i < nArgs; i++)
+    {
+      Object arg = args.elementAt(i);
+
+      m_argTypes[i] = getType(arg);
+      m_argClasses[i] = getUnknownClass(arg);
+    }
+
+    m_targetClass = targetClass;
+    m_convertedArgs = (nParams == 0) ? NO_ARGS : new Object[nParams];
+  }
+
+  /**
+   * Tell if this binding was resolved for the shape of the given
+   * arguments.
+   *
+   * @param args The arguments of the call.
+   * @param targetClass The class of the target object of the call, or
+   * null if resolution does not depend on it.
+   *
+   * @return true if the bound member can be invoked with the arguments.
+   */
+  boolean matches(Vector args, Class targetClass)
+  {
+
+    int nArgs = args.size();
+
+    if ((nArgs != m_argTypes.length) || (targetClass != m_targetClass))
+      return false;
+
+    for (int i = 0; i < nArgs; i++)
+    {
+      Object arg = args.elementAt(i);
+      int type = getType(arg);
+
+      if (type != m_argTypes[i])
+        return false;
+
+      if ((XObject.CLASS_UNKNOWN == type)
+          && (getUnknownClass(arg) != m_argClasses[i]))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Convert the arguments and invoke the bound member.
+   *
+   * @param args The arguments of the call, matching this binding's shape.
+   * @param defaultInstance The handler's default instance, used for
+   * TARGET_DEFAULT bindings.
+   * @param exprContext The context in which the call is being executed.
+   *
+   * @return The value returned by the member.
+   *
+   * @throws Exception Any exception thrown by conversion or invocation;
+   * the handler maps these to TransformerExceptions.
+   */
+  Object invoke(Vector args, Object defaultInstance,
+                ExpressionContext exprContext)
+    throws Exception
+  {
+
+    Object target;
+
+    switch (m_targetKind)
+    {
+    case TARGET_DEFAULT :
+      target = defaultInstance;
+      break;
+    case TARGET_FIRST_ARG :
+      target = args.elementAt(0);
+
+      if (target instanceof XObject)
+        target = ((XObject) target).object();
+      break;
+    default :
+      target = null;
+    }
+
+    int nParams = m_paramTypes.length;
+    Object[] convertedArgs;
+
+    // An extension may call back into the processor and reach this
+    // call site again before the outer call has returned.
+    boolean shared = !m_convertedArgsInUse;
+
+    if (shared)
+    {
+      convertedArgs = m_convertedArgs;
+      m_convertedArgsInUse = true;
+    }
+    else
+      convertedArgs = new Object[nParams];
+
+    try
+    {
+      if (m_paramStart > 0)
+        convertedArgs[0] = exprContext;
+
+      for (int i = m_paramStart; i < nParams; i++)
+      {
+        convertedArgs[i] = MethodResolver.convert(
+          args.elementAt(i + m_argOffset), m_paramTypes[i]);
+      }
+
+      m_callCount++;
+
+      if (!m_timing)
+      {
+        return (null != m_method)
+               ? m_method.invoke(target, convertedArgs)
+               : m_constructor.newInstance(convertedArgs);
+      }
+
+      long start = System.currentTimeMillis();
+
+      try
+      {
+        return (null != m_method)
+               ? m_method.invoke(target, convertedArgs)
+               : m_constructor.newInstance(convertedArgs);
+      }
+      finally
+      {
+        m_callTime += System.currentTimeMillis() - start;
+      }
+    }
+    finally
+    {
+      if (shared)
+      {
+        // Don't hold on to the arguments between calls.
+        for (int i = 0; i < nParams; i++)
+        {
+          convertedArgs[i] = null;
+        }
+
+        m_convertedArgsInUse = false;
+      }
+    }
+  }
+
+  /**
+   * Get the Method or Constructor bound to this call site.
+   *
+   * @return The bound member.
+   */
+  public Member getMember()
+  {
+    return (null != m_method) ? (Member) m_method : (Member) m_constructor;
+  }
+
+  /**
+   * Get the number of calls made through this binding.
+   *
+   * @return The call count.
+   */
+  public int getCallCount()
+  {
+    return m_callCount;
+  }
+
+  /**
+   * Get the time spent in calls made through this binding.  This is
+   * always zero unless the org.apache.xalan.extensions.timing system
+   * property is set to "true".
+   *
+   * @return The accumulated call time in milliseconds.
+   */
+  public long getCallTime()
+  {
+    return m_callTime;
+  }
+
+  /**
+   * Get the XObject type of an argument, CLASS_UNKNOWN if the
+   * argument is not an XObject.
+   *
+   * @param arg An extension function argument.
+   *
+   * @return The XObject.CLASS_XXX type of the argument.
+   */
+  private static int getType(Object arg)
+  {
+    return (arg instanceof XObject)
+           ? ((XObject) arg).getType() : XObject.CLASS_UNKNOWN;
+  }
+
+  /**
+   * Get the class of the Java object an argument stands for, if method
+   * resolution looks at it.
+   *
+   * @param arg An extension function argument.
+   *
+   * @return The class of the wrapped or raw Java object, or null.
+   */
+  private static Class getUnknownClass(Object arg)
+  {
+
+    if (!(arg instanceof XObject))
+      return (null != arg) ? arg.getClass() : null;
+
+    XObject xobj = (XObject) arg;
+
+    if (XObject.CLASS_UNKNOWN != xobj.getType())
+      return null;
+
+    Object obj = xobj.object();
+
+    return (null != obj) ? obj.getClass() : null;
+  }
+}
@@ -57,6 +57,8 @@
 package org.apache.xalan.extensions;
 
 import java.util.Hashtable;
+import java.util.Enumeration;
+import java.util.Vector;
 
 /**
  * <meta name="usage" content="internal"/>
@@ -74,6 +76,12 @@ public abstract class ExtensionHandlerJava extends ExtensionHandler
   /** Table of cached methods          */
   private Hashtable m_cachedMethods = new Hashtable();
 
+  /** Table of bound function call sites, keyed by method key.  */
+  private Hashtable m_callSites = new Hashtable();
+
+  /** Maximum number of argument shapes bound for one call site.  */
+  private static final int MAX_SHAPES = 8;
+
   /**
    * Construct a new extension handler given all the information
    * needed.
@@ -133,4 +141,87 @@ public abstract class ExtensionHandlerJava extends ExtensionHandler
     // Eventually, we want to insert code to mangle the methodKey with methodArgs
     return m_cachedMethods.put(methodKey, methodObj);
   }
+
+  /**
+   * Look up the binding of a function call site for the shape of the
+   * given arguments.
+   * @param methodKey   A key that uniquely identifies this invocation in
+   *                    the stylesheet.
+   * @param args        The arguments of the call.
+   * @param targetClass The class of the target object, or null if method
+   *                    resolution does not depend on it.
+   *
+   * @return The matching binding, or null if the call must be resolved.
+   */
+  protected ExtensionCallSite getCallSite(Object methodKey, Vector args,
+                                          Class targetClass)
+  {
+
+    ExtensionCallSite site = (ExtensionCallSite) m_callSites.get(methodKey);
+
+    while (null != site)
+    {
+      if (site.matches(args, targetClass))
+        return site;
+
+      site = site.m_next;
+    }
+
+    return null;
+  }
+
+  /**
+   * Add a binding for a function call site.  Once a call site has
+   * been seen with MAX_SHAPES different argument shapes, further shapes
+   * are resolved on every call.
+   * @param methodKey   A key that uniquely identifies this invocation in
+   *                    the stylesheet.
+   * @param site        The new binding.
+   *
+   * @return The given binding.
+   */
+  protected ExtensionCallSite putCallSite(Object methodKey,
+                                          ExtensionCallSite site)
+  {
+
+    ExtensionCallSite head = (ExtensionCallSite) m_callSites.get(methodKey);
+    int nShapes = 0;
+
+    for (ExtensionCallSite s = head; null != s; s = s.m_next)
+    {
+      nShapes++;
+    }
+
+    if (nShapes < MAX_SHAPES)
+    {
+      site.m_next = head;
+
+      m_callSites.put(methodKey, site);
+    }
+
+    return site;
+  }
+
+  /**
+   * Get the bindings of all function call sites resolved so far, for
+   * reporting call counts and times.
+   *
+   * @return An enumeration of ExtensionCallSite objects.
+   */
+  public Enumeration getCallSites()
+  {
+
+    Vector sites = new Vector();
+
+    for (Enumeration e = m_callSites.elements(); e.hasMoreElements(); )
+    {
+      for (ExtensionCallSite s = (ExtensionCallSite) e.nextElement();
+           null != s; s = s.m_next)
+      {
+        sites.addElement(s);
+      }
+    }
+
+    return sites.elements();
+  }
 }
@@ -226,121 +226,79 @@ public class ExtensionHandlerJavaClass extends ExtensionHandlerJava
 
     Object[] methodArgs;
     Object[][] convertedArgs;
-    Class[] paramTypes;
+    ExtensionCallSite site;
 
     try
     {
       if (funcName.equals("new")) {                   // Handle constructor call
 
-        methodArgs = new Object[args.size()];
-        convertedArgs = new Object[1][];
-        for (int i = 0; i < methodArgs.length; i++)
+        site = getCallSite(methodKey, args, null);
+        if (site == null)
         {
-          methodArgs[i] = args.elementAt(i);
+          methodArgs = new Object[args.size()];
+          convertedArgs = new Object[1][];
+          args.copyInto(methodArgs);
+          Constructor c = MethodResolver.getConstructor(m_classObj, 
+                                                        methodArgs,
+                                                        convertedArgs,
+                                                        exprContext);
+          site = putCallSite(methodKey,
+                             new ExtensionCallSite(c, args, null,
+                                                   ExtensionCallSite.TARGET_NONE));
         }
-        Constructor c = (Constructor) getFromCache(methodKey, null, methodArgs);
-        if (c != null)
-        {
-          try
-          {
-            paramTypes = c.getParameterTypes();
-            MethodResolver.convertParams(methodArgs, convertedArgs, paramTypes, exprContext);
-            return c.newInstance(convertedArgs[0]);
-          }
-          catch(Exception e)
-          {
-            // Must not have been the right one
-          }
-        }
-        c = MethodResolver.getConstructor(m_classObj, 
-                                          methodArgs,
-                                          convertedArgs,
-                                          exprContext);
-        putToCache(methodKey, null, methodArgs, c);
-        return c.newInstance(convertedArgs[0]);
+        return site.invoke(args, null, exprContext);
       }
 
       else
       {
 
         int resolveType;
-        Object targetObject = null;
-        methodArgs = new Object[args.size()];
-        convertedArgs = new Object[1][];
-        for (int i = 0; i < methodArgs.length; i++)
-        {
-          methodArgs[i] = args.elementAt(i);
-        }
-        Method m = (Method) getFromCache(methodKey, null, methodArgs);
-        if (m != null)
-        {
-          try
-          {
-            paramTypes = m.getParameterTypes();
-            MethodResolver.convertParams(methodArgs, convertedArgs, paramTypes, exprContext);
-            if (Modifier.isStatic(m.getModifiers()))
-              return m.invoke(null, convertedArgs[0]);
-            else
-            {
-              // This is tricky.  We get the actual number of target arguments (excluding any
-              //   ExpressionContext).  If we passed in the same number, we need the implied object.
-              int nTargetArgs = convertedArgs[0].length;
-              if (ExpressionContext.class.isAssignableFrom(paramTypes[0]))
-                nTargetArgs--;
-              if (methodArgs.length <= nTargetArgs)
-                return m.invoke(m_defaultInstance, convertedArgs[0]);
-              else  
-                return m.invoke(methodArgs[0], convertedArgs[0]);
-            }
-          }
-          catch(Exception e)
-          {
-            // Must not have been the right one
-          }
-        }
+        Object targetObject;
+        Class targetClass = null;
 
+        // Resolution depends on whether the first argument is an instance
+        // of the class, so the bindings are keyed on its class as well.
         if (args.size() > 0)
         {
-          targetObject = methodArgs[0];
+          targetObject = args.elementAt(0);
 
           if (targetObject instanceof XObject)
             targetObject = ((XObject) targetObject).object();
 
-          if (m_classObj.isAssignableFrom(targetObject.getClass()))
-            resolveType = MethodResolver.DYNAMIC;
-          else
-            resolveType = MethodResolver.STATIC_AND_INSTANCE;
-        }
-        else
-        {
-          targetObject = null;
-          resolveType = MethodResolver.STATIC_AND_INSTANCE;
+          if (m_classObj.isInstance(targetObject))
+            targetClass = targetObject.getClass();
         }
 
-        m = MethodResolver.getMethod(m_classObj,
-                                     funcName,
-                                     methodArgs, 
-                                     convertedArgs,
-                                     exprContext,
-                                     resolveType);
-        putToCache(methodKey, null, methodArgs, m);
-
-        if (MethodResolver.DYNAMIC == resolveType)          // First argument was object type
-          return m.invoke(targetObject, convertedArgs[0]);
-        else                                  // First arg was not object.  See if we need the implied object.
+        site = getCallSite(methodKey, args, targetClass);
+        if (site == null)
         {
-          if (Modifier.isStatic(m.getModifiers()))
-            return m.invoke(null, convertedArgs[0]);
-          else
+          resolveType = (null != targetClass) ? MethodResolver.DYNAMIC
+                                              : MethodResolver.STATIC_AND_INSTANCE;
+          methodArgs = new Object[args.size()];
+          convertedArgs = new Object[1][];
+          args.copyInto(methodArgs);
+          Method m = MethodResolver.getMethod(m_classObj,
+                                              funcName,
+                                              methodArgs, 
+                                              convertedArgs,
+                                              exprContext,
+                                              resolveType);
+
+          int targetKind;
+          if (MethodResolver.DYNAMIC == resolveType)  // First argument was object type
+            targetKind = ExtensionCallSite.TARGET_FIRST_ARG;
+          else                                        // See if we need the implied object.
           {
-            if (null == m_defaultInstance)
+            targetKind = ExtensionCallSite.TARGET_DEFAULT;
+            if (!Modifier.isStatic(m.getModifiers()) && (null == m_defaultInstance))
             {
               m_defaultInstance = m_classObj.newInstance();
             }
-            return m.invoke(m_defaultInstance, convertedArgs[0]);
-          }  
+          }
+          site = putCallSite(methodKey,
+                             new ExtensionCallSite(m, args, targetClass, targetKind));
         }
-
+        return site.invoke(args, m_defaultInstance, exprContext);
       }
     }
     catch (InvocationTargetException ite)
@@ -252,90 +252,68 @@ public class ExtensionHandlerJavaPackage extends ExtensionHandlerJava
     int lastDot = funcName.lastIndexOf(".");
     Object[] methodArgs;
     Object[][] convertedArgs;
-    Class[] paramTypes;
+    ExtensionCallSite site;
 
     try
     {
 
       if (funcName.endsWith(".new")) {                   // Handle constructor call
 
-        methodArgs = new Object[args.size()];
-        convertedArgs = new Object[1][];
-        for (int i = 0; i < methodArgs.length; i++)
-        {
-          methodArgs[i] = args.elementAt(i);
-        }
-        Constructor c = (Constructor) getFromCache(methodKey, null, methodArgs);
-        if (c != null)
+        site = getCallSite(methodKey, args, null);
+        if (site == null)
         {
+          className = m_className + funcName.substring(0, lastDot);
           try
           {
-            paramTypes = c.getParameterTypes();
-            MethodResolver.convertParams(methodArgs, convertedArgs, paramTypes, exprContext);
-            return c.newInstance(convertedArgs[0]);
+            classObj = getClassForName(className);
           }
-          catch(Exception e)
+          catch (ClassNotFoundException e) 
           {
-            // Must not have been the right one
+            throw new TransformerException(e);
           }
+          methodArgs = new Object[args.size()];
+          convertedArgs = new Object[1][];
+          args.copyInto(methodArgs);
+          Constructor c = MethodResolver.getConstructor(classObj, 
+                                                        methodArgs,
+                                                        convertedArgs,
+                                                        exprContext);
+          site = putCallSite(methodKey,
+                             new ExtensionCallSite(c, args, null,
+                                                   ExtensionCallSite.TARGET_NONE));
         }
-        className = m_className + funcName.substring(0, lastDot);
-        try
-        {
-          classObj = getClassForName(className);
-        }
-        catch (ClassNotFoundException e) 
-        {
-          throw new TransformerException(e);
-        }
-        c = MethodResolver.getConstructor(classObj, 
-                                          methodArgs,
-                                          convertedArgs,
-                                          exprContext);
-        putToCache(methodKey, null, methodArgs, c);
-        return c.newInstance(convertedArgs[0]);
+        return site.invoke(args, null, exprContext);
       }
 
       else if (-1 != lastDot) {                         // Handle static method call
 
-        methodArgs = new Object[args.size()];
-        convertedArgs = new Object[1][];
-        for (int i = 0; i < methodArgs.length; i++)
-        {
-          methodArgs[i] = args.elementAt(i);
-        }
-        Method m = (Method) getFromCache(methodKey, null, methodArgs);
-        if (m != null)
+        site = getCallSite(methodKey, args, null);
+        if (site == null)
         {
+          className = m_className + funcName.substring(0, lastDot);
+          methodName = funcName.substring(lastDot + 1);
           try
           {
-            paramTypes = m.getParameterTypes();
-            MethodResolver.convertParams(methodArgs, convertedArgs, paramTypes, exprContext);
-            return m.invoke(null, convertedArgs[0]);
+            classObj = getClassForName(className);
           }
-          catch(Exception e)
+          catch (ClassNotFoundException e) 
           {
-            // Must not have been the right one
+            throw new TransformerException(e);
           }
+          methodArgs = new Object[args.size()];
+          convertedArgs = new Object[1][];
+          args.copyInto(methodArgs);
+          Method m = MethodResolver.getMethod(classObj,
+                                              methodName,
+                                              methodArgs, 
+                                              convertedArgs,
+                                              exprContext,
+                                              MethodResolver.STATIC_ONLY);
+          site = putCallSite(methodKey,
+                             new ExtensionCallSite(m, args, null,
+                                                   ExtensionCallSite.TARGET_NONE));
         }
-        className = m_className + funcName.substring(0, lastDot);
-        methodName = funcName.substring(lastDot + 1);
-        try
-        {
-          classObj = getClassForName(className);
-        }
-        catch (ClassNotFoundException e) 
-        {
-          throw new TransformerException(e);
-        }
-        m = MethodResolver.getMethod(classObj,
-                                     methodName,
-                                     methodArgs, 
-                                     convertedArgs,
-                                     exprContext,
-                                     MethodResolver.STATIC_ONLY);
-        putToCache(methodKey, null, methodArgs, m);
-        return m.invoke(null, convertedArgs[0]);
+        return site.invoke(args, null, exprContext);
       }
 
       else {                                            // Handle instance method call
@@ -348,35 +326,27 @@ public class ExtensionHandlerJavaPackage extends ExtensionHandlerJava
         targetObject = args.elementAt(0);
         if (targetObject instanceof XObject)          // Next level down for XObjects
           targetObject = ((XObject) targetObject).object();
-        methodArgs = new Object[args.size() - 1];
-        convertedArgs = new Object[1][];
-        for (int i = 0; i < methodArgs.length; i++)
-        {
-          methodArgs[i] = args.elementAt(i+1);
-        }
-        Method m = (Method) getFromCache(methodKey, targetObject, methodArgs);
-        if (m != null)
+        classObj = targetObject.getClass();
+        site = getCallSite(methodKey, args, classObj);
+        if (site == null)
         {
-          try
+          methodArgs = new Object[args.size() - 1];
+          convertedArgs = new Object[1][];
+          for (int i = 0; i < methodArgs.length; i++)
           {
-            paramTypes = m.getParameterTypes();
-            MethodResolver.convertParams(methodArgs, convertedArgs, paramTypes, exprContext);
-            return m.invoke(targetObject, convertedArgs[0]);
-          }
-          catch(Exception e)
-          {
-            // Must not have been the right one
+            methodArgs[i] = args.elementAt(i+1);
           }
+          Method m = MethodResolver.getMethod(classObj,
+                                              funcName,
+                                              methodArgs, 
+                                              convertedArgs,
+                                              exprContext,
+                                              MethodResolver.INSTANCE_ONLY);
+          site = putCallSite(methodKey,
+                             new ExtensionCallSite(m, args, classObj,
+                                                   ExtensionCallSite.TARGET_FIRST_ARG));
         }
-        classObj = targetObject.getClass();
-        m = MethodResolver.getMethod(classObj,
-                                     funcName,
-                                     methodArgs, 
-                                     convertedArgs,
-                                     exprContext,
-                                     MethodResolver.INSTANCE_ONLY);
-        putToCache(methodKey, targetObject, methodArgs, m);
-        return m.invoke(targetObject, convertedArgs[0]);
+        return site.invoke(args, null, exprContext);
       }
     }
     catch (InvocationTargetException ite)
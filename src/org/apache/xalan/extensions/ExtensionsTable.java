@@ -58,6 +58,9 @@ package org.apache.xalan.extensions;
 
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.Enumeration;
+import java.io.PrintWriter;
+import java.lang.reflect.Member;
 
 import org.apache.xpath.objects.XNull;
 import org.apache.xpath.XPathProcessorException;
@@ -322,4 +325,69 @@ public class ExtensionsTable
                                              className + ".");
     }
   }
+
+  /**
+   * Print the number of calls made to each Java extension function,
+   * and the time spent in them if the
+   * org.apache.xalan.extensions.timing system property is set to "true".
+   * Calls made through different call sites to the same method are
+   * added up.
+   *
+   * @param pw The writer to print the statistics to.
+   */
+  public void printCallStatistics(PrintWriter pw)
+  {
+
+    Hashtable totals = new Hashtable();
+    Vector members = new Vector();
+    Vector handlers = new Vector();
+
+    for (Enumeration e = m_extensionFunctionNamespaces.elements();
+         e.hasMoreElements(); )
+    {
+      Object handler = e.nextElement();
+
+      // The same handler may be registered for several namespaces.
+      if ((handler instanceof ExtensionHandlerJava)
+          && !handlers.contains(handler))
+        handlers.addElement(handler);
+    }
+
+    for (int i = 0; i < handlers.size(); i++)
+    {
+      Enumeration sites =
+        ((ExtensionHandlerJava) handlers.elementAt(i)).getCallSites();
+
+      while (sites.hasMoreElements())
+      {
+        ExtensionCallSite site = (ExtensionCallSite) sites.nextElement();
+        Member member = site.getMember();
+        long[] total = (long[]) totals.get(member);
+
+        if (null == total)
+        {
+          total = new long[2];
+
+          totals.put(member, total);
+          members.addElement(member);
+        }
+
+        total[0] += site.getCallCount();
+        total[1] += site.getCallTime();
+      }
+    }
+
+    for (int i = 0; i < members.size(); i++)
+    {
+      Member member = (Member) members.elementAt(i);
+      long[] total = (long[]) totals.get(member);
+      String name = (member instanceof java.lang.reflect.Constructor)
+                    ? "new" : member.getName();
+
+      pw.println(member.getDeclaringClass().getName() + "." + name
+                 + ": " + total[0] + " calls, " + total[1] + " ms");
+    }
+
+    pw.flush();
+  }
 }
@@ -64,13 +64,21 @@ import org.w3c.dom.Text;
 import org.w3c.dom.traversal.NodeIterator;
 
 import org.apache.xpath.NodeSet;
+import org.apache.xpath.NodeSetDTM;
+import org.apache.xpath.CachedXPathAPI;
 import org.apache.xpath.objects.XObject;
 import org.apache.xpath.objects.XBoolean;
 import org.apache.xpath.objects.XNumber;
+import org.apache.xpath.objects.XNodeSet;
 import org.apache.xpath.XPath;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.DOMHelper;
+import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.ref.DTMNodeIterator;
+import org.apache.xml.utils.IntVector;
+import org.apache.xml.utils.PrefixResolver;
+import org.apache.xml.utils.WrappedRuntimeException;
 
 import org.xml.sax.SAXNotSupportedException;
 
@@ -202,6 +210,26 @@ public class Extensions
     return inter;
   }
 
+  /**
+   * Returns the intersection of two node-sets.  This is the version
+   * that is called from a stylesheet; it works on DTM node handles
+   * and takes time proportional to the sizes of the two node-sets.
+   * @param myContext an <code>ExpressionContext</code> passed in by the
+   *                  extension mechanism.
+   * @param ni1 NodeIterator for first node-set
+   * @param ni2 NodeIterator for second node-set
+   * @return a node-set containing the nodes in ni1 that are also
+   * in ni2
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public static XNodeSet intersection(ExpressionContext myContext,
+                                      NodeIterator ni1, NodeIterator ni2)
+          throws javax.xml.transform.TransformerException
+  {
+    return selectNodes(getXPathContext(myContext), ni1, ni2, true);
+  }
+
   /**
    * Returns the difference between two node-sets.
    * @param n1 NodeIterator for first node-set
@@ -236,6 +264,26 @@ public class Extensions
     return diff;
   }
 
+  /**
+   * Returns the difference between two node-sets.  This is the version
+   * that is called from a stylesheet; it works on DTM node handles
+   * and takes time proportional to the sizes of the two node-sets.
+   * @param myContext an <code>ExpressionContext</code> passed in by the
+   *                  extension mechanism.
+   * @param ni1 NodeIterator for first node-set
+   * @param ni2 NodeIterator for second node-set
+   * @return a node-set containing the nodes in ni1 that are not
+   * in ni2
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public static XNodeSet difference(ExpressionContext myContext,
+                                    NodeIterator ni1, NodeIterator ni2)
+          throws javax.xml.transform.TransformerException
+  {
+    return selectNodes(getXPathContext(myContext), ni1, ni2, false);
+  }
+
   /**
    * Returns node-set containing distinct string values.
    * @param ni NodeIterator for node-set
@@ -271,6 +319,39 @@ public class Extensions
     return dist;
   }
 
+  /**
+   * Returns node-set containing distinct string values.  This is the
+   * version that is called from a stylesheet; it reads the string
+   * values from the DTM rather than through DOM nodes.
+   * @param myContext an <code>ExpressionContext</code> passed in by the
+   *                  extension mechanism.
+   * @param ni NodeIterator for node-set
+   * @return a node-set with nodes from ni containing distinct string values.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public static XNodeSet distinct(ExpressionContext myContext, NodeIterator ni)
+          throws javax.xml.transform.TransformerException
+  {
+
+    XPathContext xctxt = getXPathContext(myContext);
+    IntVector nodes = getHandles(xctxt, ni);
+    XNodeSet dist = new XNodeSet(xctxt.getDTMManager());
+    NodeSetDTM ns = dist.mutableNodeset();
+    Hashtable stringTable = new Hashtable();
+
+    for (int i = 0; i < nodes.size(); i++)
+    {
+      int n = nodes.elementAt(i);
+      String key = xctxt.getDTM(n).getStringValue(n).toString();
+
+      if (null == stringTable.put(key, key))
+        ns.addElement(n);
+    }
+
+    return dist;
+  }
+
   /**
    * Returns true of both node-sets contain the same set of nodes.
    * @param n1 NodeIterator for first node-set
@@ -299,6 +380,192 @@ public class Extensions
     return true;
   }
 
+  /**
+   * Returns true of both node-sets contain the same set of nodes.  This
+   * is the version that is called from a stylesheet; it works on DTM
+   * node handles.
+   * @param myContext an <code>ExpressionContext</code> passed in by the
+   *                  extension mechanism.
+   * @param ni1 NodeIterator for first node-set
+   * @param ni2 NodeIterator for second node-set
+   * @return true if ni1 and ni2 contain exactly the same set of nodes.
+   */
+  public static boolean hasSameNodes(ExpressionContext myContext,
+                                     NodeIterator ni1, NodeIterator ni2)
+  {
+
+    XPathContext xctxt = getXPathContext(myContext);
+    IntVector nodes1 = getHandles(xctxt, ni1);
+    IntVector nodes2 = getHandles(xctxt, ni2);
+
+    if (nodes1.size() != nodes2.size())
+      return false;
+
+    int[] index = createIndex(nodes2);
+
+    for (int i = 0; i < nodes1.size(); i++)
+    {
+      if (!indexContains(index, nodes1.elementAt(i)))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the XPathContext behind an extension's ExpressionContext.
+   *
+   * @param myContext The context passed in by the extension mechanism.
+   * @return The XPathContext.
+   *
+   * @throws WrappedRuntimeException if the context is not an XPath one.
+   */
+  private static XPathContext getXPathContext(ExpressionContext myContext)
+  {
+
+    if (myContext instanceof XPathContext.XPathExpressionContext)
+      return ((XPathContext.XPathExpressionContext) myContext).getXPathContext();
+
+    throw new WrappedRuntimeException(new SAXNotSupportedException(
+      "Invalid context passed to extension " + myContext));
+  }
+
+  /**
+   * Read the nodes of a node-set as DTM handles, in the order given.
+   * Node-sets that came from a stylesheet are read straight from their
+   * DTMIterator; any other DOM nodes are mapped to handles.
+   *
+   * @param xctxt The XPath runtime state.
+   * @param ni The node-set.
+   * @return The handles of the nodes.
+   */
+  private static IntVector getHandles(XPathContext xctxt, NodeIterator ni)
+  {
+
+    IntVector nodes = new IntVector();
+
+    if (ni instanceof DTMNodeIterator)
+    {
+      DTMIterator iter = ((DTMNodeIterator) ni).getDTMIterator();
+      int n;
+
+      while (DTM.NULL != (n = iter.nextNode()))
+        nodes.addElement(n);
+    }
+    else
+    {
+      Node node;
+
+      while (null != (node = ni.nextNode()))
+        nodes.addElement(xctxt.getDTMHandleFromNode(node));
+    }
+
+    return nodes;
+  }
+
+  /**
+   * Select the nodes of one node-set that are, or are not, in another.
+   *
+   * @param xctxt The XPath runtime state.
+   * @param ni1 The nodes to select from, in the order they are returned.
+   * @param ni2 The nodes to test against.
+   * @param inBoth true to keep the nodes of ni1 that are in ni2, false
+   *               to keep the ones that are not.
+   * @return The selected nodes.
+   */
+  private static XNodeSet selectNodes(XPathContext xctxt, NodeIterator ni1,
+                                      NodeIterator ni2, boolean inBoth)
+  {
+
+    IntVector nodes = getHandles(xctxt, ni1);
+    int[] index = createIndex(getHandles(xctxt, ni2));
+    XNodeSet result = new XNodeSet(xctxt.getDTMManager());
+    NodeSetDTM ns = result.mutableNodeset();
+
+    for (int i = 0; i < nodes.size(); i++)
+    {
+      int n = nodes.elementAt(i);
+
+      if (indexContains(index, n) == inBoth)
+        ns.addElement(n);
+    }
+
+    return result;
+  }
+
+  /**
+   * Build an open-addressed hash set of node handles.  Each slot holds
+   * a handle plus one, so that zero marks an empty slot.
+   *
+   * @param nodes The handles to put in the set.
+   * @return The hash table, whose length is a power of two at least
+   *         twice the number of handles.
+   */
+  private static int[] createIndex(IntVector nodes)
+  {
+
+    int n = nodes.size();
+    int size = 16;
+
+    while (size < (n << 1))
+      size <<= 1;
+
+    int[] index = new int[size];
+    int mask = size - 1;
+
+    for (int i = 0; i < n; i++)
+    {
+      int node = nodes.elementAt(i);
+      int slot = hashNode(node) & mask;
+
+      while (index[slot] != 0 && index[slot] != node + 1)
+        slot = (slot + 1) & mask;
+
+      index[slot] = node + 1;
+    }
+
+    return index;
+  }
+
+  /**
+   * Tell if a hash set built by createIndex contains a node handle.
+   *
+   * @param index The hash table.
+   * @param node The node handle.
+   * @return true if the handle is in the set.
+   */
+  private static boolean indexContains(int[] index, int node)
+  {
+
+    int mask = index.length - 1;
+    int slot = hashNode(node) & mask;
+
+    while (index[slot] != 0)
+    {
+      if (index[slot] == node + 1)
+        return true;
+
+      slot = (slot + 1) & mask;
+    }
+
+    return false;
+  }
+
+  /**
+   * Spread a node handle's bits, so that the document ID in the high
+   * bits and the node identity in the low bits both reach the hash.
+   *
+   * @param node The node handle.
+   * @return The hash code.
+   */
+  private static int hashNode(int node)
+  {
+
+    int h = node * 0x9E3779B9;
+
+    return h ^ (h >>> 16);
+  }
+
   /**
    * Returns the result of evaluating the argument as a string containing
    * an XPath expression.  Used where the XPath expression is not known until
@@ -318,17 +585,22 @@ public class Extensions
             throws SAXNotSupportedException, Exception
   {
 
-    if (myContext instanceof XPathContext)
+    if (myContext instanceof XPathContext.XPathExpressionContext)
     {
       try
       {
-        XPathContext xctxt = (XPathContext) myContext;
-        XPath dynamicXPath = new XPath(xpathExpr, xctxt.getSAXLocator(),
-                                       xctxt.getNamespaceContext(),
-                                       XPath.SELECT);
-
-        return dynamicXPath.execute(xctxt, myContext.getContextNode(),
-                                    xctxt.getNamespaceContext());
+        XPathContext xctxt =
+          ((XPathContext.XPathExpressionContext) myContext).getXPathContext();
+        PrefixResolver namespaceContext = xctxt.getNamespaceContext();
+
+        // The same expression is often evaluated once per node, so the
+        // compiled XPath is kept for the next call.
+        XPath dynamicXPath = CachedXPathAPI.getXPath(xpathExpr,
+                                                     xctxt.getSAXLocator(),
+                                                     namespaceContext);
+
+        return dynamicXPath.execute(xctxt, xctxt.getCurrentNode(),
+                                    namespaceContext);
       }
       catch (Exception e)
       {
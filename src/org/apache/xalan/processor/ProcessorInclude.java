@@ -84,6 +84,7 @@ import javax.xml.transform.TransformerException;
 import org.w3c.dom.Node;
 
 import org.apache.xml.utils.SystemIDResolver;
+import org.apache.xml.utils.XMLReaderManager;
 
 /**
  * TransformerFactory class for xsl:include markup.
@@ -265,28 +266,7 @@ class ProcessorInclude extends XSLTElementProcessor
       InputSource inputSource = SAXSource.sourceToInputSource(source);
 
       if (null == reader)
-      {  
-        // Use JAXP1.1 ( if possible )
-        try {
-          javax.xml.parsers.SAXParserFactory factory=
-                                                     javax.xml.parsers.SAXParserFactory.newInstance();
-          factory.setNamespaceAware( true );
-          javax.xml.parsers.SAXParser jaxpParser=
-                                                 factory.newSAXParser();
-          reader=jaxpParser.getXMLReader();
-          
-        } catch( javax.xml.parsers.ParserConfigurationException ex ) {
-          throw new org.xml.sax.SAXException( ex );
-        } catch( javax.xml.parsers.FactoryConfigurationError ex1 ) {
-            throw new org.xml.sax.SAXException( ex1.toString() );
-        } 
-        catch( NoSuchMethodError ex2 ) 
-        {
-        }
-        catch (AbstractMethodError ame){}
-      }
-      if (null == reader)
-        reader = XMLReaderFactory.createXMLReader();
+        reader = XMLReaderManager.getInstance().getXMLReader();
 
       if (null != reader)
       {
@@ -308,6 +288,9 @@ class ProcessorInclude extends XSLTElementProcessor
         finally
         {
           handler.popBaseIndentifier();
+
+          if (!isUserReader)
+            XMLReaderManager.getInstance().releaseXMLReader(reader);
         }
       }
     }
@@ -77,6 +77,7 @@ import org.apache.xml.utils.NodeConsumer;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.XMLCharacterRecognizer;
 import org.apache.xml.utils.BoolStack;
+import org.apache.xpath.compiler.ExpressionOptimizer;
 import org.apache.xpath.compiler.FunctionTable;
 import org.apache.xpath.compiler.XPathParser;
 import org.apache.xpath.functions.Function;
@@ -190,9 +191,27 @@ public class StylesheetHandler extends DefaultHandler
           throws javax.xml.transform.TransformerException
   {
     ErrorListener handler = m_stylesheetProcessor.getErrorListener();
-    return new XPath(str, getLocator(), this, XPath.SELECT, handler);
+    SourceLocator locator = getLocator();
+    XPath xpath = new XPath(str, locator, this, XPath.SELECT, handler);
+
+    if (TransformerFactoryImpl.m_optimize)
+    {
+      if (null == m_expressionOptimizer)
+        m_expressionOptimizer = new ExpressionOptimizer(
+          m_stylesheetProcessor.getOptimizerDiagnostics());
+
+      m_expressionOptimizer.fold(xpath, locator);
+    }
+
+    return xpath;
   }
 
+  /**
+   * The optimizer that folds the constant parts of select expressions,
+   * created when the first expression is compiled.
+   */
+  private ExpressionOptimizer m_expressionOptimizer = null;
+
   /**
    * Process an expression string into an XPath.
    *
@@ -1175,8 +1194,15 @@ public class StylesheetHandler extends DefaultHandler
   {
 
     if (m_stylesheets.size() == 0)
+    {
       m_stylesheetRoot = (StylesheetRoot) s;
 
+      // The root carries the factory settings it is built with.
+      m_stylesheetRoot.setNumberIndex(m_stylesheetProcessor.getNumberIndex());
+      m_stylesheetRoot.setOptimizerDiagnostics(
+        m_stylesheetProcessor.getOptimizerDiagnostics());
+    }
+
     m_stylesheets.push(s);
   }
 
@@ -0,0 +1,197 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+
+import org.apache.xalan.templates.StylesheetRoot;
+
+/**
+ * <meta name="usage" content="advanced"/>
+ * Reads and writes precompiled stylesheet images.  An image holds a
+ * composed {@link StylesheetRoot}, including its template list and
+ * compiled XPath expressions, so that a stylesheet can be loaded
+ * without being parsed and composed again.
+ *
+ * <p>An image starts with a magic number, the image format version and
+ * the processor version it was written by, followed by the serialized
+ * StylesheetRoot.  Images are only read back by the same processor
+ * version that wrote them; any other image is rejected, and the
+ * stylesheet should then be built from its source again.</p>
+ *
+ * @see TransformerFactoryImpl#writeTemplatesImage
+ * @see TransformerFactoryImpl#newTemplatesFromImage
+ */
+public class StylesheetImage
+{
+
+  /** Magic number that starts every image ("XSLI").  */
+  public static final int MAGIC = 0x58534C49;
+
+  /** Version of the image layout.  */
+  public static final int FORMAT_VERSION = 1;
+
+  /** Size of the buffers used around the image streams.  */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Write an image of the given Templates object.
+   *
+   * @param templates A Templates object built by this processor.
+   * @param os The stream to write the image to.  It is flushed, but
+   * not closed.
+   *
+   * @throws TransformerConfigurationException if the Templates object
+   * was not built by this processor, or the image could not be written.
+   */
+  public static void write(Templates templates, OutputStream os)
+          throws TransformerConfigurationException
+  {
+
+    if (!(templates instanceof StylesheetRoot))
+      throw new TransformerConfigurationException(
+        "Only stylesheets built by " + XSLProcessorVersion.S_VERSION
+        + " can be written as images");
+
+    try
+    {
+      BufferedOutputStream bos = new BufferedOutputStream(os, BUFFER_SIZE);
+      DataOutputStream dos = new DataOutputStream(bos);
+
+      dos.writeInt(MAGIC);
+      dos.writeInt(FORMAT_VERSION);
+      dos.writeUTF(XSLProcessorVersion.S_VERSION);
+
+      ObjectOutputStream oos = new ObjectOutputStream(bos);
+
+      oos.writeObject(templates);
+      oos.flush();
+    }
+    catch (IOException ioe)
+    {
+      throw new TransformerConfigurationException(ioe.getMessage(), ioe);
+    }
+  }
+
+  /**
+   * Read a Templates object back from an image.
+   *
+   * @param is The stream to read the image from.  It is not closed.
+   *
+   * @return The StylesheetRoot held by the image, ready for use.
+   *
+   * @throws TransformerConfigurationException if the stream does not
+   * hold an image, the image was written by another processor version,
+   * or it could not be read.
+   */
+  public static Templates read(InputStream is)
+          throws TransformerConfigurationException
+  {
+
+    try
+    {
+      BufferedInputStream bis = new BufferedInputStream(is, BUFFER_SIZE);
+      DataInputStream dis = new DataInputStream(bis);
+
+      if (dis.readInt() != MAGIC)
+        throw new TransformerConfigurationException(
+          "Not a stylesheet image");
+
+      int formatVersion = dis.readInt();
+      String processorVersion = dis.readUTF();
+
+      if ((formatVersion != FORMAT_VERSION)
+          || !XSLProcessorVersion.S_VERSION.equals(processorVersion))
+        throw new TransformerConfigurationException(
+          "Stylesheet image was written by " + processorVersion
+          + ", image format " + formatVersion + "; expected "
+          + XSLProcessorVersion.S_VERSION + ", image format "
+          + FORMAT_VERSION);
+
+      ObjectInputStream ois = new ObjectInputStream(bis);
+
+      return (StylesheetRoot) ois.readObject();
+    }
+    catch (ClassNotFoundException cnfe)
+    {
+      throw new TransformerConfigurationException(cnfe.getMessage(), cnfe);
+    }
+    catch (ClassCastException cce)
+    {
+      throw new TransformerConfigurationException(
+        "Not a stylesheet image", cce);
+    }
+    catch (IOException ioe)
+    {
+
+      // Includes InvalidClassException for images written by a build
+      // whose classes differ from this one.
+      throw new TransformerConfigurationException(ioe.getMessage(), ioe);
+    }
+  }
+}
@@ -71,6 +71,7 @@ import org.w3c.dom.Node;
 import org.apache.xml.utils.TreeWalker;
 import org.apache.xml.utils.SystemIDResolver;
 import org.apache.xml.utils.DefaultErrorHandler;
+import org.apache.xml.utils.XMLReaderManager;
 import org.apache.xalan.transformer.TransformerImpl;
 import org.apache.xalan.transformer.TransformerIdentityImpl;
 import org.apache.xalan.transformer.TrAXFilter;
@@ -96,9 +97,11 @@ import javax.xml.transform.ErrorListener;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.BufferedInputStream;
 import java.io.StringWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.io.StringReader;
 
 import java.util.Properties;
@@ -143,6 +146,12 @@ public class TransformerFactoryImpl extends SAXTransformerFactory
   /** Static string to be used for optimize feature */
   private static final String FEATURE_OPTIMIZE = "http://xml.apache.org/xalan/features/optimize";
 
+  /** Static string to be used for the xsl:number index feature */
+  private static final String FEATURE_NUMBER_INDEX = "http://xml.apache.org/xalan/features/number-index";
+
+  /** Static string to be used for the optimizer diagnostics property */
+  private static final String PROPERTY_OPTIMIZER_DIAGNOSTICS = "http://xml.apache.org/xalan/properties/optimizer-diagnostics";
+
 
   /**
    * Retrieve a propery bundle from a specified file and load it
@@ -393,37 +402,19 @@ public javax.xml.transform.Templates processFromNode(Node node)
       else
       {
 
-        // Use JAXP1.1 ( if possible )
-        try
-        {
-          javax.xml.parsers.SAXParserFactory factory =
-            javax.xml.parsers.SAXParserFactory.newInstance();
-
-          factory.setNamespaceAware(true);
+        reader = XMLReaderManager.getInstance().getXMLReader();
 
-          javax.xml.parsers.SAXParser jaxpParser = factory.newSAXParser();
+        // Need to set options!
+        reader.setContentHandler(handler);
 
-          reader = jaxpParser.getXMLReader();
-        }
-        catch (javax.xml.parsers.ParserConfigurationException ex)
-        {
-          throw new org.xml.sax.SAXException(ex);
-        }
-        catch (javax.xml.parsers.FactoryConfigurationError ex1)
+        try
         {
-          throw new org.xml.sax.SAXException(ex1.toString());
+          reader.parse(isource);
         }
-        catch (NoSuchMethodError ex2){}
-        catch (AbstractMethodError ame){}
-
-        if (null == reader)
+        finally
         {
-          reader = XMLReaderFactory.createXMLReader();
+          XMLReaderManager.getInstance().releaseXMLReader(reader);
         }
-
-        // Need to set options!
-        reader.setContentHandler(handler);
-        reader.parse(isource);
       }
     }
     catch (StopParseException spe)
@@ -503,6 +494,43 @@ public javax.xml.transform.Templates processFromNode(Node node)
   }
   
   public static boolean m_optimize = true;
+
+  /**
+   * If true, xsl:number counts nodes through a numbering index that is
+   * built in one pass over the tree, instead of walking back from each
+   * counted node.  Each stylesheet this factory builds takes the value
+   * it had when the stylesheet was started.
+   */
+  private boolean m_numberIndex = true;
+
+  /**
+   * If not null, the optimizers of each stylesheet this factory builds
+   * report every expression they rewrite to this writer.  The
+   * optimizers only run when m_optimize is true.
+   */
+  private PrintWriter m_optimizerDiagnostics = null;
+
+  /**
+   * Tell whether stylesheets built by this factory number nodes through
+   * a numbering index.
+   *
+   * @return The value of the number-index feature.
+   */
+  boolean getNumberIndex()
+  {
+    return m_numberIndex;
+  }
+
+  /**
+   * Get the writer that the optimizers of stylesheets built by this
+   * factory report to.
+   *
+   * @return The optimizer diagnostics writer, or null.
+   */
+  PrintWriter getOptimizerDiagnostics()
+  {
+    return m_optimizerDiagnostics;
+  }
   
   /**
    * Allows the user to set specific attributes on the underlying
@@ -519,8 +547,21 @@ public javax.xml.transform.Templates processFromNode(Node node)
   {
     if (name.equals(FEATURE_INCREMENTAL))
       org.apache.xml.dtm.DTMManager.setIncremental(((Boolean)value).booleanValue());
-    if (name.equals(FEATURE_OPTIMIZE))
+    else if (name.equals(FEATURE_OPTIMIZE))
       m_optimize = ((Boolean)value).booleanValue();
+    else if (name.equals(FEATURE_NUMBER_INDEX))
+      m_numberIndex = ((Boolean)value).booleanValue();
+    else if (name.equals(PROPERTY_OPTIMIZER_DIAGNOSTICS))
+    {
+      if ((null == value) || (value instanceof PrintWriter))
+        m_optimizerDiagnostics = (PrintWriter)value;
+      else if (value instanceof Writer)
+        m_optimizerDiagnostics = new PrintWriter((Writer)value, true);
+      else if (value instanceof OutputStream)
+        m_optimizerDiagnostics = new PrintWriter((OutputStream)value, true);
+      else
+        throw new IllegalArgumentException(name);
+    }
     else
       throw new IllegalArgumentException(name);
   }
@@ -839,34 +880,7 @@ public javax.xml.transform.Templates processFromNode(Node node)
       boolean isUserReader = (reader != null);
 
       if (null == reader)
-      {
-
-        // Use JAXP1.1 ( if possible )
-        try
-        {
-          javax.xml.parsers.SAXParserFactory factory =
-            javax.xml.parsers.SAXParserFactory.newInstance();
-
-          factory.setNamespaceAware(true);
-
-          javax.xml.parsers.SAXParser jaxpParser = factory.newSAXParser();
-
-          reader = jaxpParser.getXMLReader();
-        }
-        catch (javax.xml.parsers.ParserConfigurationException ex)
-        {
-          throw new org.xml.sax.SAXException(ex);
-        }
-        catch (javax.xml.parsers.FactoryConfigurationError ex1)
-        {
-          throw new org.xml.sax.SAXException(ex1.toString());
-        }
-        catch (NoSuchMethodError ex2){}
-        catch (AbstractMethodError ame){}
-      }
-
-      if (null == reader)
-        reader = XMLReaderFactory.createXMLReader();
+        reader = XMLReaderManager.getInstance().getXMLReader();
 
       // If you set the namespaces to true, we'll end up getting double 
       // xmlns attributes.  Needs to be fixed.  -sb
@@ -884,7 +898,16 @@ public javax.xml.transform.Templates processFromNode(Node node)
       }
 
       reader.setContentHandler(builder);
-      reader.parse(isource);
+
+      try
+      {
+        reader.parse(isource);
+      }
+      finally
+      {
+        if (!isUserReader)
+          XMLReaderManager.getInstance().releaseXMLReader(reader);
+      }
     }
     catch (org.xml.sax.SAXException se)
     {
@@ -924,6 +947,44 @@ public javax.xml.transform.Templates processFromNode(Node node)
     return builder.getTemplates();
   }
 
+  /**
+   * Write a precompiled image of a Templates object created by this
+   * factory, so that it can later be loaded with
+   * {@link #newTemplatesFromImage} instead of parsing and composing the
+   * stylesheet again.
+   *
+   * @param templates A Templates object created by this factory.
+   * @param os The stream to write the image to.  It is not closed.
+   *
+   * @throws TransformerConfigurationException if the image could not
+   * be written.
+   */
+  public void writeTemplatesImage(Templates templates, OutputStream os)
+          throws TransformerConfigurationException
+  {
+    StylesheetImage.write(templates, os);
+  }
+
+  /**
+   * Create a Templates object from a precompiled image written by
+   * {@link #writeTemplatesImage}.  Images are bound to the processor
+   * version that wrote them; if the image is rejected, build the
+   * Templates object from the stylesheet source instead.
+   *
+   * @param is The stream to read the image from.  It is not closed.
+   *
+   * @return A Templates object capable of being used for transformation
+   * purposes.
+   *
+   * @throws TransformerConfigurationException if the image could not
+   * be read.
+   */
+  public Templates newTemplatesFromImage(InputStream is)
+          throws TransformerConfigurationException
+  {
+    return StylesheetImage.read(is);
+  }
+
   /**
    * The object that implements the URIResolver interface,
    * or null.
@@ -66,8 +66,6 @@ import java.net.*;
 
 import java.util.Hashtable;
 
-import org.apache.xml.utils.CharKey;
-
 /**
  * This class provides services that tell if a character should have
  * special treatement, such as entity reference substitution or normalization
@@ -80,8 +78,20 @@ public class CharInfo
   /** Bit map that tells if a given character should have special treatment. */
   BitSet m_specialsMap = new BitSet(65535);
 
-  /** Lookup table for characters to entity references. */
-  private Hashtable m_charToEntityRef = new Hashtable();
+  /**
+   * Lookup table for characters to entity reference names, indexed by
+   * character.  It is only as long as the highest character that has
+   * an entity, and is never changed once the constructor returns, so it
+   * can be read by many serializers at once.
+   */
+  private String[] m_charToEntityName = new String[128];
+
+  /**
+   * Tables built by getCleanChars, keyed by EncodingInfo, or by the
+   * Integer last printable character for encodings we know nothing
+   * else about.
+   */
+  private Hashtable m_cleanChars = new Hashtable();
 
   /**
    * The name of the HTML entities file.
@@ -228,13 +238,25 @@ public class CharInfo
   protected void defineEntity(String name, char value)
   {
 
-    CharKey character = new CharKey(value);
+    if (value >= m_charToEntityName.length)
+    {
+      int newSize = m_charToEntityName.length * 2;
+
+      while (value >= newSize)
+        newSize *= 2;
+
+      String[] newNames = new String[Math.min(newSize, 0x10000)];
+
+      System.arraycopy(m_charToEntityName, 0, newNames, 0,
+                       m_charToEntityName.length);
+
+      m_charToEntityName = newNames;
+    }
+
+    m_charToEntityName[value] = name;
 
-    m_charToEntityRef.put(character, name);
     m_specialsMap.set(value);
   }
-  
-  private CharKey m_charKey = new CharKey();
 
   /**
    * Resolve a character to an entity reference name.
@@ -245,8 +267,10 @@ public class CharInfo
    */
   public String getEntityNameForChar(char value)
   {
-    m_charKey.setChar(value);
-    return (String) m_charToEntityRef.get(m_charKey);
+
+    final String[] names = m_charToEntityName;
+
+    return (value < names.length) ? names[value] : null;
   }
 
   /**
@@ -260,4 +284,49 @@ public class CharInfo
   {
     return m_specialsMap.get(value);
   }
+
+  /**
+   * Get a table that tells, for each character, if it can be written
+   * straight to the output: that is, if it is in the encoding and does
+   * not need special treatment.  This folds the isSpecial test and the
+   * encoding test into a single array lookup for the serializer's inner
+   * loops.  The table is built once per encoding and shared.
+   *
+   * @param encoding The output encoding, or null if it isn't known.
+   * @param lastPrintable The last printable character, used when the
+   *                      encoding isn't known.
+   *
+   * @return A table of 0x10000 entries, indexed by character, which must
+   *         not be modified.
+   */
+  public boolean[] getCleanChars(EncodingInfo encoding, int lastPrintable)
+  {
+
+    Object key = (null != encoding)
+                 ? (Object) encoding : (Object) new Integer(lastPrintable);
+
+    synchronized (m_cleanChars)
+    {
+      boolean[] clean = (boolean[]) m_cleanChars.get(key);
+
+      if (null == clean)
+      {
+        clean = new boolean[0x10000];
+
+        for (int ch = 0; ch < 0x10000; ch++)
+        {
+          if (m_specialsMap.get(ch))
+            continue;
+
+          clean[ch] = (null != encoding)
+                      ? encoding.isInEncoding((char) ch)
+                      : (ch <= lastPrintable);
+        }
+
+        m_cleanChars.put(key, clean);
+      }
+
+      return clean;
+    }
+  }
 }
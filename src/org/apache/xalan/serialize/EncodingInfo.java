@@ -92,4 +92,117 @@ public class EncodingInfo extends Object
     this.javaName = javaName;
     this.lastPrintable = lastPrintable;
   }
+
+  /**
+   * For single-byte encodings, the byte each character is written as,
+   * indexed by character.  Zero means the character is not in the
+   * encoding, except for character zero itself.  Null until it is
+   * built, and NO_TABLE if the encoding is not a single-byte one.
+   *
+   * <p>EncodingInfo objects are shared by every serializer in the
+   * virtual machine, so the table is read without locking.  Two threads
+   * may both build it the first time; they build equal tables, and
+   * either one may be kept.</p>
+   */
+  private volatile byte[] m_charToByte;
+
+  /** Marks m_charToByte as worked out, but not applicable. */
+  private static final byte[] NO_TABLE = new byte[0];
+
+  /**
+   * Tell if a character can be written in this encoding without being
+   * escaped.
+   *
+   * @param ch The character.
+   * @return true if the character is in the encoding.
+   */
+  public boolean isInEncoding(char ch)
+  {
+
+    byte[] charToByte = m_charToByte;
+
+    if (null == charToByte)
+      charToByte = buildCharToByte();
+
+    if (NO_TABLE == charToByte)
+      return ch <= lastPrintable;
+    else
+      return (charToByte[ch] != 0) || (ch == 0);
+  }
+
+  /**
+   * Get the character to byte table for a single-byte encoding, building
+   * it the first time.  The table is worked out by decoding each of the
+   * 256 byte values with the Java convertor and keeping the characters
+   * that encode back to the same byte, so it agrees exactly with what an
+   * OutputStreamWriter would write.
+   *
+   * @return The table, indexed by character, or null if this is not an
+   *         encoding whose last printable character is below 0x100, or
+   *         the Java runtime doesn't support it.
+   */
+  public byte[] getCharToByte()
+  {
+
+    byte[] charToByte = m_charToByte;
+
+    if (null == charToByte)
+      charToByte = buildCharToByte();
+
+    return (NO_TABLE == charToByte) ? null : charToByte;
+  }
+
+  /**
+   * Work out the character to byte table and store it in m_charToByte.
+   *
+   * @return The table, or NO_TABLE if there is none.
+   */
+  private byte[] buildCharToByte()
+  {
+
+    byte[] table = NO_TABLE;
+
+    if (lastPrintable <= 0xFF)
+    {
+      try
+      {
+        byte[] bytes = new byte[256];
+
+        for (int i = 0; i < 256; i++)
+        {
+          bytes[i] = (byte) i;
+        }
+
+        String chars = new String(bytes, javaName);
+
+        if (chars.length() == 256)
+        {
+          byte[] charToByte = new byte[0x10000];
+
+          for (int i = 1; i < 256; i++)
+          {
+            char ch = chars.charAt(i);
+
+            // Encodings like US-ASCII that share a Java convertor with a
+            // larger character set are held to their own last printable.
+            if (ch == 0xFFFD || (lastPrintable < 0xFF && ch > lastPrintable))
+              continue;
+
+            byte[] back = String.valueOf(ch).getBytes(javaName);
+
+            if (back.length == 1 && back[0] == (byte) i)
+              charToByte[ch] = (byte) i;
+          }
+
+          table = charToByte;
+        }
+      }
+      catch (java.io.UnsupportedEncodingException uee){}
+      catch (IllegalArgumentException iae){}  // java 1.1.8
+    }
+
+    m_charToByte = table;
+
+    return table;
+  }
 }
@@ -122,6 +122,25 @@ public class Encodings extends Object
     }
   }
 
+  /**
+   * Returns the information kept for the specified encoding.
+   *
+   * @param encoding The encoding, by MIME or Java name.
+   * @return The EncodingInfo, or null if the encoding is not known.
+   */
+  public static EncodingInfo getEncodingInfo(String encoding)
+  {
+
+    for (int i = 0; i < _encodings.length; ++i)
+    {
+      if (_encodings[i].name.equalsIgnoreCase(encoding)
+              || _encodings[i].javaName.equalsIgnoreCase(encoding))
+        return _encodings[i];
+    }
+
+    return null;
+  }
+
   /**
    * Returns the last printable character for the specified
    * encoding.
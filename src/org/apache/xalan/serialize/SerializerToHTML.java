@@ -937,7 +937,7 @@ public class SerializerToHTML extends SerializerToXML
           }
 
         }
-        else if (ch < m_maxCharacter)
+        else if (isInEncoding(ch))
         {
           accum(ch);
         }
@@ -1007,6 +1007,7 @@ public class SerializerToHTML extends SerializerToXML
 
     final char chars[] = string.toCharArray();
     final int strLen = chars.length;
+    final boolean[] clean = getCleanChars();
 
     for (int i = 0; i < strLen; i++)
     {
@@ -1016,7 +1017,7 @@ public class SerializerToHTML extends SerializerToXML
       // System.out.println("ch: "+(int)ch);
       // System.out.println("m_maxCharacter: "+(int)m_maxCharacter);
       // System.out.println("m_attrCharsMap[ch]: "+(int)m_attrCharsMap[ch]);
-      if ((ch < m_maxCharacter) && (!m_charInfo.isSpecial(ch)))
+      if (clean[ch])
       {
         accum(ch);
       }
@@ -1069,13 +1070,13 @@ public class SerializerToHTML extends SerializerToXML
             accum(entityName);
             accum(';');
           }
-          else if (ch < m_maxCharacter)
+          else if (isInEncoding(ch))
           {
             accum(ch);  // no escaping in this case
           }
           else
           {
-            if (ch < m_maxCharacter)
+            if (isInEncoding(ch))
             {
               accum(ch);  // no escaping in this case
             }
@@ -67,7 +67,6 @@ import java.util.Stack;
 import java.util.Vector;
 import java.util.Hashtable;
 import java.util.Properties;
-import java.util.BitSet;
 
 import org.xml.sax.*;
 import org.xml.sax.ext.LexicalHandler;
@@ -312,6 +311,19 @@ public class SerializerToXML
    */
   int m_maxCharacter = Encodings.getLastPrintable();
 
+  /**
+   * What we know about the output encoding, or null if it is not one
+   * listed in Encodings.
+   */
+  EncodingInfo m_encodingInfo;
+
+  /**
+   * Table of the characters that can be written without escaping, as
+   * returned by CharInfo.getCleanChars.  Null until it is first needed;
+   * use getCleanChars() to get it.
+   */
+  private boolean[] m_cleanChars;
+
   /**
    * Add space before '/>' for XHTML.
    */
@@ -365,6 +377,8 @@ public class SerializerToXML
     m_standalone = xmlListener.m_standalone;
     m_mediatype = xmlListener.m_mediatype;
     m_maxCharacter = xmlListener.m_maxCharacter;
+    m_encodingInfo = xmlListener.m_encodingInfo;
+    m_cleanChars = null;
     m_spaceBeforeClose = xmlListener.m_spaceBeforeClose;
     m_inCData = xmlListener.m_inCData;
 
@@ -430,6 +444,8 @@ public class SerializerToXML
 
     m_isUTF8 = m_encoding.equals(Encodings.DEFAULT_MIME_ENCODING);
     m_maxCharacter = Encodings.getLastPrintable(m_encoding);
+    m_encodingInfo = Encodings.getEncodingInfo(m_encoding);
+    m_cleanChars = null;
 
     // Access this only from the Hashtable level... we don't want to 
     // get default properties.
@@ -523,8 +539,18 @@ public class SerializerToXML
       }
       
     }
-    else if (m_encoding.equals("WINDOWS-1250")
-             || m_encoding.equals("US-ASCII") || m_encoding.equals("ASCII"))
+    else if (m_encoding.equals("UTF-16"))
+    {
+      init(new WriterToUTF16Buffered(output), format, true);
+    }
+    else if (null != getCharToByte(m_encoding))
+    {
+      // This includes US-ASCII, which WriterToASCI would write a byte
+      // at a time.
+      init(new WriterToSingleByteBuffered(output, getCharToByte(m_encoding)),
+           format, true);
+    }
+    else if (m_encoding.equals("US-ASCII") || m_encoding.equals("ASCII"))
     {
       init(new WriterToASCI(output), format, true);
     }
@@ -553,6 +579,56 @@ public class SerializerToXML
     
   }
 
+  /**
+   * Get the character to byte table for a single-byte encoding.
+   *
+   * @param encoding The MIME name of the encoding.
+   *
+   * @return The table from EncodingInfo.getCharToByte(), or null if the
+   *         encoding is not a single-byte one we have a table for.
+   */
+  private static byte[] getCharToByte(String encoding)
+  {
+
+    EncodingInfo info = Encodings.getEncodingInfo(encoding);
+
+    return (null != info) ? info.getCharToByte() : null;
+  }
+
+  /**
+   * Get the table of characters that can be written as they are,
+   * building it if the character info or encoding has changed.
+   *
+   * @return A table indexed by character, which must not be modified.
+   */
+  final boolean[] getCleanChars()
+  {
+
+    boolean[] clean = m_cleanChars;
+
+    if (null == clean)
+    {
+      clean = m_charInfo.getCleanChars(m_encodingInfo, m_maxCharacter);
+      m_cleanChars = clean;
+    }
+
+    return clean;
+  }
+
+  /**
+   * Tell if a character can be written in the output encoding.
+   *
+   * @param ch The character.
+   *
+   * @return true if the character does not need to be written as a
+   *         character reference.
+   */
+  final boolean isInEncoding(char ch)
+  {
+    return (null != m_encodingInfo)
+           ? m_encodingInfo.isInEncoding(ch) : (ch <= m_maxCharacter);
+  }
+
   /**
    * Receive an object for locating the origin of SAX document events.
    *
@@ -1338,7 +1414,7 @@ public class SerializerToXML
         indent(m_currentIndent);
 
       boolean writeCDataBrackets = (((length >= 1)
-                                     && (ch[start] <= m_maxCharacter)));
+                                     && isInEncoding(ch[start])));
 
       if (writeCDataBrackets)
       {
@@ -1460,6 +1536,20 @@ public class SerializerToXML
           if(m_shouldFlush)
             m_writer.flush();
         }
+        else if (m_writer instanceof WriterToSingleByteBuffered)
+        {
+          if(m_shouldFlush)
+            m_writer.flush();
+          else
+            ((WriterToSingleByteBuffered) m_writer).flushBuffer();
+        }
+        else if (m_writer instanceof WriterToUTF16Buffered)
+        {
+          if(m_shouldFlush)
+            m_writer.flush();
+          else
+            ((WriterToUTF16Buffered) m_writer).flushBuffer();
+        }
         else
         {
           // Flush always. 
@@ -1545,8 +1635,7 @@ public class SerializerToXML
       // int pos = 0;
       int end = start + length;
       boolean checkWhite = true;
-      final int maxCharacter = m_maxCharacter;
-      final BitSet specialsMap = m_charInfo.m_specialsMap;
+      final boolean[] clean = getCleanChars();
   
       for (int i = start; i < end; i++)
       {
@@ -1561,7 +1650,7 @@ public class SerializerToXML
           checkWhite = false;
         }
   
-        if (((ch < maxCharacter) && (!specialsMap.get(ch))) || ('"' == ch))
+        if (clean[ch] || ('"' == ch))
         {
           lengthClean++;
         }
@@ -1747,7 +1836,7 @@ public class SerializerToXML
       {
         m_writer.write(m_lineSep, 0, m_lineSepLen);
       }
-      else if (isCData && (c > m_maxCharacter))
+      else if (isCData && !isInEncoding(c))
       {
         if (i != 0)
           m_writer.write("]]>");
@@ -1780,7 +1869,7 @@ public class SerializerToXML
       }
       else
       {
-        if (c <= m_maxCharacter)
+        if (isInEncoding(c))
         {
           m_writer.write(c);
         }
@@ -2190,7 +2279,7 @@ public class SerializerToXML
         }
         else
         {
-          if (ch > m_maxCharacter || (m_charInfo.isSpecial(ch)))
+          if (!getCleanChars()[ch])
           {
             m_writer.write("&#");
             m_writer.write(Integer.toString(ch));
@@ -2229,30 +2318,36 @@ public class SerializerToXML
       final char[] stringChars = string.toCharArray();
       final int len = stringChars.length;
       final Writer writer = m_writer;
+      final boolean[] clean = getCleanChars();
+      int startClean = 0;
   
       for (int i = 0; i < len; i++)
       {
         char ch = stringChars[i];
   
-        if ((ch < m_maxCharacter) && (!m_charInfo.isSpecial(ch)))
-        {
-          writer.write(ch);
-        }
-        else
+        if (clean[ch])
+          continue;
+
+        // Write out the run of characters that need no escaping in
+        // one go, rather than a character at a time.
+        if (i > startClean)
+          writer.write(stringChars, startClean, i - startClean);
+
+        // I guess the parser doesn't normalize cr/lf in attributes. -sb
+        if ((CharInfo.S_CARRIAGERETURN == ch) && ((i + 1) < len)
+                && (CharInfo.S_LINEFEED == stringChars[i + 1]))
         {
-  
-          // I guess the parser doesn't normalize cr/lf in attributes. -sb
-          if ((CharInfo.S_CARRIAGERETURN == ch) && ((i + 1) < len)
-                  && (CharInfo.S_LINEFEED == stringChars[i + 1]))
-          {
-            i++;
-  
-            ch = CharInfo.S_LINEFEED;
-          }
-  
-          accumDefaultEscape(ch, i, stringChars, len, true);
+          i++;
+
+          ch = CharInfo.S_LINEFEED;
         }
+
+        startClean = accumDefaultEscape(ch, i, stringChars, len, true);
+        i = startClean - 1;
       }
+
+      if (len > startClean)
+        writer.write(stringChars, startClean, len - startClean);
     }
     catch(IOException ioe)
     {
@@ -2353,6 +2448,10 @@ public class SerializerToXML
       return ((WriterToUTF8) m_writer).getOutputStream();
     else if (m_writer instanceof WriterToASCI)
       return ((WriterToASCI) m_writer).getOutputStream();
+    else if (m_writer instanceof WriterToSingleByteBuffered)
+      return ((WriterToSingleByteBuffered) m_writer).getOutputStream();
+    else if (m_writer instanceof WriterToUTF16Buffered)
+      return ((WriterToUTF16Buffered) m_writer).getOutputStream();
     else
       return null;
   }
@@ -0,0 +1,299 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.serialize;
+
+import java.io.*;
+
+/**
+ * This class writes a single-byte encoding, such as ISO-8859-1 or
+ * Windows-1252, to a buffered byte stream.  Each character is looked up
+ * in the character to byte table kept by the EncodingInfo, so there is
+ * no per-call convertor overhead as there is with an OutputStreamWriter.
+ * Characters that are not in the encoding are written as '?', which is
+ * what the Java convertors do; the serializer is expected to have
+ * escaped them already.
+ */
+public final class WriterToSingleByteBuffered extends Writer
+{
+
+  /** The byte stream to write to. */
+  private OutputStream m_os;
+
+  /** The character to byte table, indexed by character. */
+  private byte m_charToByte[];
+
+  /** The internal buffer where data is stored. */
+  private byte buf[];
+
+  /**
+   * The number of valid bytes in the buffer. This value is always
+   * in the range <tt>0</tt> through <tt>buf.length</tt>; elements
+   * <tt>buf[0]</tt> through <tt>buf[count-1]</tt> contain valid
+   * byte data.
+   */
+  private int count;
+
+  /**
+   * Create a buffered single-byte writer.
+   *
+   * @param   out    the underlying output stream.
+   * @param   charToByte The character to byte table for the encoding,
+   *                     as returned by EncodingInfo.getCharToByte().
+   */
+  public WriterToSingleByteBuffered(OutputStream out, byte[] charToByte)
+  {
+    this(out, charToByte, 8 * 1024);
+  }
+
+  /**
+   * Create a buffered single-byte writer with the specified buffer size.
+   *
+   * @param   out    the underlying output stream.
+   * @param   charToByte The character to byte table for the encoding.
+   * @param   size   the buffer size.
+   * @exception IllegalArgumentException if size <= 0.
+   */
+  public WriterToSingleByteBuffered(final OutputStream out,
+                                    final byte[] charToByte, final int size)
+  {
+
+    m_os = out;
+    m_charToByte = charToByte;
+
+    if (size <= 0)
+    {
+      throw new IllegalArgumentException("Buffer size <= 0");
+    }
+
+    buf = new byte[size];
+    count = 0;
+  }
+
+  /**
+   * Get the byte a character is written as.
+   *
+   * @param c The character.
+   * @return The byte for the character, or '?' if it is not in the encoding.
+   */
+  private final byte toByte(final char c)
+  {
+
+    final byte b = m_charToByte[c];
+
+    return ((b == 0) && (c != 0)) ? (byte) '?' : b;
+  }
+
+  /**
+   * Write a single character.  The character to be written is contained in
+   * the 16 low-order bits of the given integer value; the 16 high-order bits
+   * are ignored.
+   *
+   * @param c  int specifying a character to be written.
+   * @exception  IOException  If an I/O error occurs
+   */
+  public void write(final int c) throws IOException
+  {
+
+    if (count >= buf.length)
+    {
+      flushBuffer();
+    }
+
+    buf[count++] = toByte((char) c);
+  }
+
+  /**
+   * Write a portion of an array of characters.
+   *
+   * @param  chars  Array of characters
+   * @param  start   Offset from which to start writing characters
+   * @param  length   Number of characters to write
+   *
+   * @exception  IOException  If an I/O error occurs
+   *
+   * @throws java.io.IOException
+   */
+  public void write(final char chars[], int start, int length)
+          throws java.io.IOException
+  {
+
+    final byte[] buf = this.buf;
+
+    while (length > 0)
+    {
+      if (count >= buf.length)
+      {
+        flushBuffer();
+      }
+
+      int n = buf.length - count;
+
+      if (n > length)
+        n = length;
+
+      final int end = start + n;
+      int pos = count;
+
+      for (int i = start; i < end; i++)
+      {
+        buf[pos++] = toByte(chars[i]);
+      }
+
+      count = pos;
+      start = end;
+      length -= n;
+    }
+  }
+
+  /**
+   * Write a string.
+   *
+   * @param  s  String to be written
+   *
+   * @exception  IOException  If an I/O error occurs
+   */
+  public void write(final String s) throws IOException
+  {
+
+    final byte[] buf = this.buf;
+    final int length = s.length();
+    int start = 0;
+
+    while (start < length)
+    {
+      if (count >= buf.length)
+      {
+        flushBuffer();
+      }
+
+      int n = buf.length - count;
+
+      if (n > length - start)
+        n = length - start;
+
+      final int end = start + n;
+      int pos = count;
+
+      for (int i = start; i < end; i++)
+      {
+        buf[pos++] = toByte(s.charAt(i));
+      }
+
+      count = pos;
+      start = end;
+    }
+  }
+
+  /**
+   * Flush the internal buffer
+   *
+   * @throws IOException
+   */
+  public void flushBuffer() throws IOException
+  {
+
+    if (count > 0)
+    {
+      m_os.write(buf, 0, count);
+
+      count = 0;
+    }
+  }
+
+  /**
+   * Flush the stream.  If the stream has saved any characters from the
+   * various write() methods in a buffer, write them immediately to their
+   * intended destination.  Then, if that destination is another character or
+   * byte stream, flush it.  Thus one flush() invocation will flush all the
+   * buffers in a chain of Writers and OutputStreams.
+   *
+   * @exception  IOException  If an I/O error occurs
+   *
+   * @throws java.io.IOException
+   */
+  public void flush() throws java.io.IOException
+  {
+    flushBuffer();
+    m_os.flush();
+  }
+
+  /**
+   * Close the stream, flushing it first.  Once a stream has been closed,
+   * further write() or flush() invocations will cause an IOException to be
+   * thrown.  Closing a previously-closed stream, however, has no effect.
+   *
+   * @exception  IOException  If an I/O error occurs
+   *
+   * @throws java.io.IOException
+   */
+  public void close() throws java.io.IOException
+  {
+    flushBuffer();
+    m_os.close();
+  }
+
+  /**
+   * Get the output stream where the events will be serialized to.
+   *
+   * @return reference to the result stream, or null of only a writer was
+   * set.
+   */
+  public OutputStream getOutputStream()
+  {
+    return m_os;
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.serialize;
+
+import java.io.*;
+
+/**
+ * This class writes UTF-16 to a buffered byte stream.  Like the Java
+ * "Unicode" convertor, it writes a big-endian byte order mark before the
+ * first character and then each character as two bytes, high byte first.
+ * Surrogate pairs are passed through as they are.
+ */
+public final class WriterToUTF16Buffered extends Writer
+{
+
+  /** The byte stream to write to. */
+  private OutputStream m_os;
+
+  /** True once the byte order mark has been written. */
+  private boolean m_wroteBOM = false;
+
+  /** The internal buffer where data is stored. */
+  private byte buf[];
+
+  /**
+   * The number of valid bytes in the buffer. This value is always
+   * in the range <tt>0</tt> through <tt>buf.length</tt>; elements
+   * <tt>buf[0]</tt> through <tt>buf[count-1]</tt> contain valid
+   * byte data.
+   */
+  private int count;
+
+  /**
+   * Create a buffered UTF-16 writer.
+   *
+   * @param   out    the underlying output stream.
+   */
+  public WriterToUTF16Buffered(OutputStream out)
+  {
+    this(out, 8 * 1024);
+  }
+
+  /**
+   * Create a buffered UTF-16 writer with the specified buffer size.
+   *
+   * @param   out    the underlying output stream.
+   * @param   size   the buffer size, in bytes.
+   * @exception IllegalArgumentException if size < 4.
+   */
+  public WriterToUTF16Buffered(final OutputStream out, final int size)
+  {
+
+    m_os = out;
+
+    if (size < 4)
+    {
+      throw new IllegalArgumentException("Buffer size < 4");
+    }
+
+    buf = new byte[size & ~1];
+    count = 0;
+  }
+
+  /**
+   * Put the byte order mark in the buffer, if it hasn't been written yet.
+   */
+  private final void writeBOM()
+  {
+
+    if (!m_wroteBOM)
+    {
+      m_wroteBOM = true;
+      buf[count++] = (byte) 0xFE;
+      buf[count++] = (byte) 0xFF;
+    }
+  }
+
+  /**
+   * Write a single character.  The character to be written is contained in
+   * the 16 low-order bits of the given integer value; the 16 high-order bits
+   * are ignored.
+   *
+   * @param c  int specifying a character to be written.
+   * @exception  IOException  If an I/O error occurs
+   */
+  public void write(final int c) throws IOException
+  {
+
+    if (count + 4 > buf.length)
+    {
+      flushBuffer();
+    }
+
+    writeBOM();
+    buf[count++] = (byte) (c >> 8);
+    buf[count++] = (byte) c;
+  }
+
+  /**
+   * Write a portion of an array of characters.
+   *
+   * @param  chars  Array of characters
+   * @param  start   Offset from which to start writing characters
+   * @param  length   Number of characters to write
+   *
+   * @exception  IOException  If an I/O error occurs
+   *
+   * @throws java.io.IOException
+   */
+  public void write(final char chars[], int start, int length)
+          throws java.io.IOException
+  {
+
+    final byte[] buf = this.buf;
+
+    while (length > 0)
+    {
+      if (count + 4 > buf.length)
+      {
+        flushBuffer();
+      }
+
+      writeBOM();
+
+      int n = (buf.length - count) >> 1;
+
+      if (n > length)
+        n = length;
+
+      final int end = start + n;
+      int pos = count;
+
+      for (int i = start; i < end; i++)
+      {
+        final char c = chars[i];
+
+        buf[pos++] = (byte) (c >> 8);
+        buf[pos++] = (byte) c;
+      }
+
+      count = pos;
+      start = end;
+      length -= n;
+    }
+  }
+
+  /**
+   * Write a string.
+   *
+   * @param  s  String to be written
+   *
+   * @exception  IOException  If an I/O error occurs
+   */
+  public void write(final String s) throws IOException
+  {
+
+    final byte[] buf = this.buf;
+    final int length = s.length();
+    int start = 0;
+
+    while (start < length)
+    {
+      if (count + 4 > buf.length)
+      {
+        flushBuffer();
+      }
+
+      writeBOM();
+
+      int n = (buf.length - count) >> 1;
+
+      if (n > length - start)
+        n = length - start;
+
+      final int end = start + n;
+      int pos = count;
+
+      for (int i = start; i < end; i++)
+      {
+        final char c = s.charAt(i);
+
+        buf[pos++] = (byte) (c >> 8);
+        buf[pos++] = (byte) c;
+      }
+
+      count = pos;
+      start = end;
+    }
+  }
+
+  /**
+   * Flush the internal buffer
+   *
+   * @throws IOException
+   */
+  public void flushBuffer() throws IOException
+  {
+
+    if (count > 0)
+    {
+      m_os.write(buf, 0, count);
+
+      count = 0;
+    }
+  }
+
+  /**
+   * Flush the stream.  If the stream has saved any characters from the
+   * various write() methods in a buffer, write them immediately to their
+   * intended destination.  Then, if that destination is another character or
+   * byte stream, flush it.  Thus one flush() invocation will flush all the
+   * buffers in a chain of Writers and OutputStreams.
+   *
+   * @exception  IOException  If an I/O error occurs
+   *
+   * @throws java.io.IOException
+   */
+  public void flush() throws java.io.IOException
+  {
+    flushBuffer();
+    m_os.flush();
+  }
+
+  /**
+   * Close the stream, flushing it first.  Once a stream has been closed,
+   * further write() or flush() invocations will cause an IOException to be
+   * thrown.  Closing a previously-closed stream, however, has no effect.
+   *
+   * @exception  IOException  If an I/O error occurs
+   *
+   * @throws java.io.IOException
+   */
+  public void close() throws java.io.IOException
+  {
+    flushBuffer();
+    m_os.close();
+  }
+
+  /**
+   * Get the output stream where the events will be serialized to.
+   *
+   * @return reference to the result stream, or null of only a writer was
+   * set.
+   */
+  public OutputStream getOutputStream()
+  {
+    return m_os;
+  }
+}
@@ -135,7 +135,8 @@ public final class WriterToUTF8Buffered extends Writer
   public void write(final int c) throws IOException
   {
 
-    if (count >= buf.length)
+    // A character takes up to three bytes.
+    if (count + 3 > buf.length)
     {
       flushBuffer();
     }
@@ -242,7 +243,7 @@ public final class WriterToUTF8Buffered extends Writer
           throws java.io.IOException
   {
 
-    if (length >= buf.length)
+    if (length * 3 >= buf.length)
     {
 
       /* If the request length exceeds the size of the output buffer,
@@ -254,7 +255,7 @@ public final class WriterToUTF8Buffered extends Writer
       return;
     }
 
-    if (length > buf.length - count)
+    if (length * 3 > buf.length - count)
     {
       flushBuffer();
     }
@@ -294,7 +295,7 @@ public final class WriterToUTF8Buffered extends Writer
 
     final int length = s.length();
 
-    if (length >= buf.length)
+    if (length * 3 >= buf.length)
     {
 
       /* If the request length exceeds the size of the output buffer,
@@ -306,7 +307,7 @@ public final class WriterToUTF8Buffered extends Writer
       return;
     }
 
-    if (length > buf.length - count)
+    if (length * 3 > buf.length - count)
     {
       flushBuffer();
     }
@@ -204,7 +204,7 @@ public class ElemApplyTemplates extends ElemCallTemplate
 
     try
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       // %REVIEW% Do we need this check??
@@ -265,10 +265,9 @@ public class ElemApplyTemplates extends ElemCallTemplate
       if (null != keys)
         sourceNodes = sortNodes(xctxt, keys, sourceNodes);
 
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireSelectedEvent(sourceNode, this,
-                "select", new XPath(m_selectExpression),
-                new org.apache.xpath.objects.XNodeSet(sourceNodes));
+                "select", m_xpath, sourceNodes);
 
       final ResultTreeHandler rth = transformer.getResultTreeHandler();
       ContentHandler chandler = rth.getContentHandler();
@@ -293,6 +292,12 @@ public class ElemApplyTemplates extends ElemCallTemplate
       DTM dtm = xctxt.getDTM(sourceNode);
       int docID = sourceNode & DTMManager.IDENT_DTM_DEFAULT;
       
+      // Dispatch table for the current DTM and mode, refetched when 
+      // either changes.
+      TemplateDispatchTable dispatch = null;
+      DTM dispatchDTM = null;
+      QName dispatchMode = null;
+      
       int argsFrame = -1;
       if(nParams > 0)
       {
@@ -300,6 +305,7 @@ public class ElemApplyTemplates extends ElemCallTemplate
         // evaluated arguments.  These will be copied into the real params 
         // section of each called template.
         int thisframe = vars.getStackFrame();
+        xctxt.pushRTFContext();
         argsFrame = vars.link(nParams);
         vars.setStackFrame(thisframe);
         
@@ -323,7 +329,7 @@ public class ElemApplyTemplates extends ElemCallTemplate
         if((child & DTMManager.IDENT_DTM_DEFAULT) != docID)
         {
           dtm = xctxt.getDTM(child);
-          docID = sourceNode & DTMManager.IDENT_DTM_DEFAULT;
+          docID = child & DTMManager.IDENT_DTM_DEFAULT;
         }
         
         final int exNodeType = dtm.getExpandedTypeID(child);
@@ -331,8 +337,16 @@ public class ElemApplyTemplates extends ElemCallTemplate
 
         final QName mode = transformer.getMode();
 
+        if ((dtm != dispatchDTM) || (mode != dispatchMode))
+        {
+          dispatch = tl.getDispatchTable(dtm, mode,
+                                         transformer.getDispatchTables());
+          dispatchDTM = dtm;
+          dispatchMode = mode;
+        }
+
         ElemTemplate template = tl.getTemplateFast(xctxt, child, exNodeType, mode, 
-                                      -1, quiet, dtm);
+                                      -1, quiet, dtm, dispatch);
 
         // If that didn't locate a node, fall back to a default template rule.
         // See http://www.w3.org/TR/xslt#built-in-rule.
@@ -370,6 +384,7 @@ public class ElemApplyTemplates extends ElemCallTemplate
 
         if(template.m_frameSize > 0)
         {
+          xctxt.pushRTFContext();
           vars.link(template.m_frameSize);
           if(nParams > 0 && template.m_inArgsSize > 0)
           {
@@ -406,8 +421,8 @@ public class ElemApplyTemplates extends ElemCallTemplate
         //  guard.push(this, child);
 
         // Fire a trace event for the template.
-        if (TransformerImpl.S_DEBUG)
-          transformer.getTraceManager().fireTraceEvent(template);
+        if (transformer.getDebug())
+          transformer.getTraceManager().fireTraceEvent(template, mode);
 
         // And execute the child templates.
         // Loop through the children of the template, calling execute on 
@@ -419,9 +434,15 @@ public class ElemApplyTemplates extends ElemCallTemplate
           transformer.setCurrentElement(t);
           t.execute(transformer);
         }
+
+        if (transformer.getDebug())
+          transformer.getTraceManager().fireTraceEndEvent(template);
         
         if(template.m_frameSize > 0)
+        {
           vars.unlink();
+          xctxt.popRTFContext();
+        }
           
         transformer.popCurrentMatched();
         
@@ -433,13 +454,15 @@ public class ElemApplyTemplates extends ElemCallTemplate
     }
     finally
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireSelectedEndEvent(sourceNode, this,
-                "select", new XPath(m_selectExpression),
-                new org.apache.xpath.objects.XNodeSet(sourceNodes));
+                "select", m_xpath, sourceNodes);
 
       if(nParams > 0)
+      {
         vars.unlink();
+        xctxt.popRTFContext();
+      }
       xctxt.popSAXLocator();
       xctxt.popContextNodeList();
       transformer.popElemTemplateElement();
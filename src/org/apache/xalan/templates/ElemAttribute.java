@@ -129,7 +129,7 @@ public class ElemAttribute extends ElemElement
     if (!rhandler.isElementPending())
     {
       // Make sure the trace event is sent.
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       XPathContext xctxt = transformer.getXPathContext();
@@ -228,7 +228,7 @@ public class ElemCallTemplate extends ElemForEach
             throws TransformerException
   {
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
     if (null != m_template)
@@ -237,6 +237,7 @@ public class ElemCallTemplate extends ElemForEach
       VariableStack vars = xctxt.getVarStack();
 
       int thisframe = vars.getStackFrame();
+      xctxt.pushRTFContext();
       int nextFrame = vars.link(m_template.m_frameSize);
       
       // We have to clear the section of the stack frame that has params 
@@ -283,6 +284,7 @@ public class ElemCallTemplate extends ElemForEach
         transformer.popElemTemplateElement();
         xctxt.setSAXLocator(savedLocator);
         vars.unlink();
+        xctxt.popRTFContext();
       }
     }
     else
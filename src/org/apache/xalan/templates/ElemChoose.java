@@ -122,7 +122,7 @@ public class ElemChoose extends ElemTemplateElement
   public void execute(TransformerImpl transformer) throws TransformerException
   {
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
     boolean found = false;
@@ -142,11 +142,11 @@ public class ElemChoose extends ElemTemplateElement
         XPathContext xctxt = transformer.getXPathContext();
         int sourceNode = xctxt.getCurrentNode();
 
-        if (TransformerImpl.S_DEBUG)
+        if (transformer.getDebug())
         {
           XObject test = when.getTest().execute(xctxt, sourceNode, when);
 
-          if (TransformerImpl.S_DEBUG)
+          if (transformer.getDebug())
             transformer.getTraceManager().fireSelectedEvent(sourceNode, when,
                     "test", when.getTest(), test);
 
@@ -170,7 +170,7 @@ public class ElemChoose extends ElemTemplateElement
       {
         found = true;
 
-        if (TransformerImpl.S_DEBUG)
+        if (transformer.getDebug())
           transformer.getTraceManager().fireTraceEvent(childElem);
 
         // xsl:otherwise                
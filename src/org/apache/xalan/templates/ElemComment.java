@@ -117,7 +117,7 @@ public class ElemComment extends ElemTemplateElement
   {
     try
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       // Note the content model is:
@@ -165,13 +165,13 @@ public class ElemCopy extends ElemUse
         }
         else
         {
-          if (TransformerImpl.S_DEBUG)
+          if (transformer.getDebug())
             transformer.getTraceManager().fireTraceEvent(this);
         }
       }
       else
       {
-        if (TransformerImpl.S_DEBUG)
+        if (transformer.getDebug())
           transformer.getTraceManager().fireTraceEvent(this);
 
         super.execute(transformer);
@@ -141,7 +141,7 @@ public class ElemFallback extends ElemTemplateElement
     if (Constants.ELEMNAME_EXTENSIONCALL == m_parentNode.getXSLToken())
     {
 
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       transformer.executeChildTemplates(this, true);
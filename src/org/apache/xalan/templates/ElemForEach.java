@@ -117,6 +117,13 @@ public class ElemForEach extends ElemTemplateElement
    */
   protected Expression m_selectExpression = null;
 
+  /**
+   * The "select" attribute as written in the stylesheet, which is what
+   * trace listeners and the profiler are given.
+   * @serial
+   */
+  protected XPath m_xpath = null;
+
   /**
    * Set the "select" attribute.
    *
@@ -125,6 +132,7 @@ public class ElemForEach extends ElemTemplateElement
   public void setSelect(XPath xpath)
   {
     m_selectExpression = xpath.getExpression();
+    m_xpath = xpath;
   }
 
   /**
@@ -168,6 +176,7 @@ public class ElemForEach extends ElemTemplateElement
     {
       m_selectExpression =
         getStylesheetRoot().m_selectDefault.getExpression();
+      m_xpath = getStylesheetRoot().m_selectDefault;
     }
   }
   
@@ -281,7 +290,7 @@ public class ElemForEach extends ElemTemplateElement
 
     try
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       transformSelectedNodes(transformer);
@@ -368,10 +377,9 @@ public class ElemForEach extends ElemTemplateElement
       if (null != keys)
         sourceNodes = sortNodes(xctxt, keys, sourceNodes);
 
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireSelectedEvent(sourceNode, this,
-                "select", new XPath(m_selectExpression),
-                new org.apache.xpath.objects.XNodeSet(sourceNodes));
+                "select", m_xpath, sourceNodes);
 
       final ResultTreeHandler rth = transformer.getResultTreeHandler();
       ContentHandler chandler = rth.getContentHandler();
@@ -405,14 +413,14 @@ public class ElemForEach extends ElemTemplateElement
         if ((child & DTMManager.IDENT_DTM_DEFAULT) != docID)
         {
           dtm = xctxt.getDTM(child);
-          docID = sourceNode & DTMManager.IDENT_DTM_DEFAULT;
+          docID = child & DTMManager.IDENT_DTM_DEFAULT;
         }
 
         final int exNodeType = dtm.getExpandedTypeID(child);
         final int nodeType = (exNodeType >> ExpandedNameTable.ROTAMOUNT_TYPE);
 
         // Fire a trace event for the template.
-        if (TransformerImpl.S_DEBUG)
+        if (transformer.getDebug())
           transformer.getTraceManager().fireTraceEvent(this);
 
         // And execute the child templates.
@@ -429,10 +437,9 @@ public class ElemForEach extends ElemTemplateElement
     }
     finally
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireSelectedEndEvent(sourceNode, this,
-                "select", new XPath(m_selectExpression),
-                new org.apache.xpath.objects.XNodeSet(sourceNodes));
+                "select", m_xpath, sourceNodes);
 
       xctxt.popSAXLocator();
       xctxt.popContextNodeList();
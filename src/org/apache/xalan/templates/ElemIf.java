@@ -171,17 +171,17 @@ public class ElemIf extends ElemTemplateElement
   public void execute(TransformerImpl transformer) throws TransformerException
   {
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
     XPathContext xctxt = transformer.getXPathContext();
     int sourceNode = xctxt.getCurrentNode();
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
     {
       XObject test = m_test.execute(xctxt, sourceNode, this);
 
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireSelectedEvent(sourceNode, this,
                 "test", m_test, test);
 
@@ -156,7 +156,7 @@ public class ElemMessage extends ElemTemplateElement
             throws TransformerException
   {
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
     String data = transformer.transformToString(this);
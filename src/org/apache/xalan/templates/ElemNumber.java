@@ -544,7 +544,7 @@ public class ElemNumber extends ElemTemplateElement
             throws TransformerException
   {
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
     int sourceNode = transformer.getXPathContext().getCurrentNode();
@@ -695,6 +695,13 @@ public class ElemNumber extends ElemTemplateElement
     return context;
   }
 
+  /**
+   * Default count patterns, keyed by the pattern string, so that a
+   * default pattern is compiled once per node name rather than every
+   * time a node is counted.
+   */
+  private transient Hashtable m_defaultCountPatterns;
+
   /**
    * Get the count match pattern, or a default value.
    *
@@ -705,7 +712,7 @@ public class ElemNumber extends ElemTemplateElement
    *
    * @throws javax.xml.transform.TransformerException
    */
-  XPath getCountMatchPattern(XPathContext support, int contextNode)
+  public XPath getCountMatchPattern(XPathContext support, int contextNode)
           throws javax.xml.transform.TransformerException
   {
 
@@ -713,44 +720,46 @@ public class ElemNumber extends ElemTemplateElement
     DTM dtm = support.getDTM(contextNode);
     if (null == countMatchPattern)
     {
+      String pattern;
+
       switch (dtm.getNodeType(contextNode))
       {
       case DTM.ELEMENT_NODE :
-
-        // countMatchPattern = m_stylesheet.createMatchPattern(contextNode.getNodeName(), this);
-        countMatchPattern = new XPath(dtm.getNodeName(contextNode), this, this,
-                                      XPath.MATCH, support.getErrorListener());
+        pattern = dtm.getNodeName(contextNode);
         break;
       case DTM.ATTRIBUTE_NODE :
-
-        // countMatchPattern = m_stylesheet.createMatchPattern("@"+contextNode.getNodeName(), this);
-        countMatchPattern = new XPath("@" + dtm.getNodeName(contextNode), this,
-                                      this, XPath.MATCH, support.getErrorListener());
+        pattern = "@" + dtm.getNodeName(contextNode);
         break;
       case DTM.CDATA_SECTION_NODE :
       case DTM.TEXT_NODE :
-
-        // countMatchPattern = m_stylesheet.createMatchPattern("text()", this);
-        countMatchPattern = new XPath("text()", this, this, XPath.MATCH, support.getErrorListener());
+        pattern = "text()";
         break;
       case DTM.COMMENT_NODE :
-
-        // countMatchPattern = m_stylesheet.createMatchPattern("comment()", this);
-        countMatchPattern = new XPath("comment()", this, this, XPath.MATCH, support.getErrorListener());
+        pattern = "comment()";
         break;
       case DTM.DOCUMENT_NODE :
-
-        // countMatchPattern = m_stylesheet.createMatchPattern("/", this);
-        countMatchPattern = new XPath("/", this, this, XPath.MATCH, support.getErrorListener());
+        pattern = "/";
         break;
       case DTM.PROCESSING_INSTRUCTION_NODE :
-
-        // countMatchPattern = m_stylesheet.createMatchPattern("pi("+contextNode.getNodeName()+")", this);
-        countMatchPattern = new XPath("pi(" + dtm.getNodeName(contextNode)
-                                      + ")", this, this, XPath.MATCH, support.getErrorListener());
+        pattern = "pi(" + dtm.getNodeName(contextNode) + ")";
         break;
       default :
-        countMatchPattern = null;
+        return null;
+      }
+
+      Hashtable defaultPatterns = m_defaultCountPatterns;
+
+      if (null == defaultPatterns)
+        m_defaultCountPatterns = defaultPatterns = new Hashtable();
+
+      countMatchPattern = (XPath) defaultPatterns.get(pattern);
+
+      if (null == countMatchPattern)
+      {
+        countMatchPattern = new XPath(pattern, this, this, XPath.MATCH,
+                                      support.getErrorListener());
+
+        defaultPatterns.put(pattern, countMatchPattern);
       }
     }
 
@@ -149,7 +149,7 @@ public class ElemParam extends ElemVariable
    */
   public void execute(TransformerImpl transformer) throws TransformerException
   {
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
       
     VariableStack vars = transformer.getXPathContext().getVarStack();
@@ -421,7 +421,7 @@ public class ElemTemplate extends ElemTemplateElement
           TransformerImpl transformer)
             throws TransformerException
   {
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
       // %REVIEW% commenting out of the code below.
@@ -437,6 +437,9 @@ public class ElemTemplate extends ElemTemplateElement
 //
 //      //"sourceNode is null in handleApplyTemplatesInstruction!");
 //    }
+
+    if (transformer.getDebug())
+      transformer.getTraceManager().fireTraceEndEvent(this);
   }
 
   /**
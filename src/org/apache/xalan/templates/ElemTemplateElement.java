@@ -59,6 +59,9 @@ package org.apache.xalan.templates;
 import java.lang.InstantiationException;
 
 import java.io.Serializable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 import java.util.Enumeration;
 import java.util.Vector;
@@ -543,6 +546,44 @@ public class ElemTemplateElement extends UnImplNode
     return newChildElem;
   }
 
+  /**
+   * Insert a child before one of the existing children.
+   * NOTE: This presumes the new child did not previously have a parent,
+   * in the same way as appendChild.
+   *
+   * @param newChildElem Child to be inserted
+   * @param refChildElem Existing child to insert before, or null to
+   * add the new child at the end of the child list
+   *
+   * @return The new child, or null if refChildElem is not a child of
+   * this node
+   */
+  public ElemTemplateElement insertBefore(ElemTemplateElement newChildElem,
+                                          ElemTemplateElement refChildElem)
+  {
+
+    if (null == refChildElem)
+      return appendChild(newChildElem);
+
+    if (refChildElem.getParentElem() != this)
+      return null;
+
+    // Fix up previous sibling.
+    ElemTemplateElement prev = refChildElem.getPreviousSiblingElem();
+
+    if (null != prev)
+      prev.m_nextSibling = newChildElem;
+
+    // Fix up parent (this)
+    if (m_firstChild == refChildElem)
+      m_firstChild = newChildElem;
+
+    newChildElem.m_nextSibling = refChildElem;
+    newChildElem.setParentElem(this);
+
+    return newChildElem;
+  }
+
   /**
    * NodeList method: Count the immediate children of this node
    *
@@ -1198,10 +1239,11 @@ public class ElemTemplateElement extends UnImplNode
   }
 
   /**
-   * Next sibling.
-   * @serial
+   * Next sibling.  Not serialized directly, since following long sibling
+   * chains would nest the serialization calls as deep as the chain is
+   * long; the parent writes its children as a list instead.
    */
-  ElemTemplateElement m_nextSibling;
+  transient ElemTemplateElement m_nextSibling;
 
   /**
    * Get the next sibling (as a Node) or return null.
@@ -1287,10 +1329,10 @@ public class ElemTemplateElement extends UnImplNode
 
 
   /**
-   * First child.
-   * @serial
+   * First child.  Serialized as part of the child list written by
+   * writeObject.
    */
-  ElemTemplateElement m_firstChild;
+  transient ElemTemplateElement m_firstChild;
 
   /**
    * Get the first child as a Node.
@@ -1354,6 +1396,57 @@ public class ElemTemplateElement extends UnImplNode
   /** DOM backpointer that this element originated from.          */
   transient private org.w3c.dom.Node m_DOMBackPointer;
 
+  /**
+   * Write this element's serializable fields, followed by its children
+   * in document order and a null terminator.
+   *
+   * @param os The output stream to write to.
+   *
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream os) throws IOException
+  {
+
+    os.defaultWriteObject();
+
+    for (ElemTemplateElement node = m_firstChild; node != null;
+            node = node.m_nextSibling)
+    {
+      os.writeObject(node);
+    }
+
+    os.writeObject(null);
+  }
+
+  /**
+   * Read this element's serializable fields and rebuild the child
+   * list written by writeObject.
+   *
+   * @param is The input stream to read from.
+   *
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream is)
+          throws IOException, ClassNotFoundException
+  {
+
+    is.defaultReadObject();
+
+    ElemTemplateElement last = null;
+    ElemTemplateElement node;
+
+    while (null != (node = (ElemTemplateElement) is.readObject()))
+    {
+      if (null == last)
+        m_firstChild = node;
+      else
+        last.m_nextSibling = node;
+
+      last = node;
+    }
+  }
+
   /**
    * If this stylesheet was created from a DOM, get the
    * DOM backpointer that this element originated from.
@@ -244,7 +244,7 @@ public class ElemTextLiteral extends ElemTemplateElement
   {
     try
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       ResultTreeHandler rth = transformer.getResultTreeHandler();
@@ -262,11 +262,11 @@ public class ElemValueOf extends ElemTemplateElement
 
     try
     {
-      if (TransformerImpl.S_DEBUG)
+      if (transformer.getDebug())
         transformer.getTraceManager().fireTraceEvent(this);
 
       // Optimize for "."
-      if (false && m_isDot &&!TransformerImpl.S_DEBUG)
+      if (false && m_isDot &&!transformer.getDebug())
       {
         int child = xctxt.getCurrentNode();
         DTM dtm = xctxt.getDTM(child);
@@ -306,7 +306,7 @@ public class ElemValueOf extends ElemTemplateElement
         {
           Expression expr = m_selectExpression.getExpression();
 
-          if (TransformerImpl.S_DEBUG)
+          if (transformer.getDebug())
           {
             XObject obj = expr.execute(xctxt);
 
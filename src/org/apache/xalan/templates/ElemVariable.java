@@ -260,7 +260,7 @@ public class ElemVariable extends ElemTemplateElement
   public void execute(TransformerImpl transformer) throws TransformerException
   {
 
-    if (TransformerImpl.S_DEBUG)
+    if (transformer.getDebug())
       transformer.getTraceManager().fireTraceEvent(this);
 
     int sourceNode = transformer.getXPathContext().getCurrentNode();
@@ -297,7 +297,7 @@ public class ElemVariable extends ElemTemplateElement
 
         var.allowDetachToRelease(false);
 
-        if (TransformerImpl.S_DEBUG)
+        if (transformer.getDebug())
           transformer.getTraceManager().fireSelectedEvent(sourceNode, this,
                   "select", m_selectPattern, var);
       }
@@ -308,8 +308,10 @@ public class ElemVariable extends ElemTemplateElement
       else
       {
 
-        // Use result tree fragment
-        int df = transformer.transformToRTF(this);
+        // Use result tree fragment.  A global variable outlives the stack
+        // frames that local fragments are reclaimed with.
+        int df = m_isTopLevel ? transformer.transformToGlobalRTF(this)
+                              : transformer.transformToRTF(this);
 
         var = new XRTreeFrag(df, xctxt);
       }
@@ -241,7 +241,7 @@ public class ElemWithParam extends ElemTemplateElement
 
         var.allowDetachToRelease(false);
 
-        if (TransformerImpl.S_DEBUG)
+        if (transformer.getDebug())
           transformer.getTraceManager().fireSelectedEvent(sourceNode, this,
                   "select", m_selectPattern, var);
       }
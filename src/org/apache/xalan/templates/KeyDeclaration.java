@@ -196,6 +196,99 @@ public class KeyDeclaration extends ElemTemplateElement
       m_matchPattern.fixupVariables(vnames, sroot.getComposeState().getGlobalsSize());
     if(null != m_use)
       m_use.fixupVariables(vnames, sroot.getComposeState().getGlobalsSize());
+    m_shareable = isClosed(m_matchPattern) && isClosed(m_use);
+  }
+
+  /**
+   * true if the 'match' and 'use' attributes read nothing but the
+   * document.
+   * @serial
+   */
+  private boolean m_shareable = true;
+
+  /**
+   * Tell if the nodes and values of this key depend on nothing but the
+   * document, so that a key table built from it by one transformation
+   * is right for every other transformation.  This is false when
+   * 'match' or 'use' refers to a variable or parameter, whose value
+   * may differ from one transformation to the next, or calls an
+   * extension function.
+   *
+   * @return true if the key's tables may be shared.
+   */
+  public boolean isShareable()
+  {
+    return m_shareable;
+  }
+
+  /**
+   * Tell if an expression refers to no variable and calls no extension
+   * function.  This looks at the source text: outside of a literal, a
+   * '$' can only start a variable reference, and a name followed by
+   * '(' is a function or node type name, which is an extension
+   * function if it has a prefix.  (key() is not allowed here at all;
+   * see ProcessorKey.)
+   *
+   * @param xpath The expression or pattern, may be null.
+   *
+   * @return true if the expression is closed.
+   */
+  private static boolean isClosed(XPath xpath)
+  {
+
+    if (null == xpath)
+      return true;
+
+    String s = xpath.getPatternString();
+    int n = s.length();
+    int start = 0;  // The last name is s.substring(start, end).
+    int end = 0;
+    boolean afterName = false;  // Nothing but spaces since the last name.
+
+    for (int i = 0; i < n; i++)
+    {
+      char c = s.charAt(i);
+
+      if ('$' == c)
+        return false;
+      else if (('\'' == c) || ('"' == c))
+      {
+        int close = s.indexOf(c, i + 1);
+
+        if (close < 0)
+          break;
+
+        i = close;
+        afterName = false;
+      }
+      else if (Character.isLetterOrDigit(c) || (c == '_') || (c == '-')
+               || (c == '.') || (c == ':'))
+      {
+        if (!afterName || (end != i))
+          start = i;
+
+        end = i + 1;
+        afterName = true;
+      }
+      else if (!Character.isWhitespace(c))
+      {
+        if (('(' == c) && afterName)
+        {
+          String name = s.substring(start, end);
+          int axis = name.lastIndexOf("::");
+
+          if (axis >= 0)
+            name = name.substring(axis + 2);
+
+          if (name.indexOf(':') >= 0)
+            return false;
+        }
+
+        afterName = false;
+      }
+    }
+
+    return true;
   }
 
   /**
@@ -199,6 +199,59 @@ public class StylesheetRoot extends StylesheetComposed
 
   //============== End Templates Interface ================
 
+  /**
+   * If true, xsl:number counts nodes through a numbering index that is
+   * built in one pass over the tree.
+   * @serial
+   */
+  private boolean m_numberIndex = true;
+
+  /**
+   * Set whether xsl:number counts nodes through a numbering index.
+   *
+   * @param b true to use numbering indexes.
+   */
+  public void setNumberIndex(boolean b)
+  {
+    m_numberIndex = b;
+  }
+
+  /**
+   * Tell whether xsl:number counts nodes through a numbering index.
+   *
+   * @return true if numbering indexes are used.
+   */
+  public boolean getNumberIndex()
+  {
+    return m_numberIndex;
+  }
+
+  /**
+   * The writer the template optimizer reports its rewrites to, or null.
+   * It is only used while the stylesheet is composed.
+   */
+  private transient PrintWriter m_optimizerDiagnostics;
+
+  /**
+   * Set the writer the optimizer reports its rewrites to.
+   *
+   * @param pw The writer, or null for no report.
+   */
+  public void setOptimizerDiagnostics(PrintWriter pw)
+  {
+    m_optimizerDiagnostics = pw;
+  }
+
+  /**
+   * Get the writer the optimizer reports its rewrites to.
+   *
+   * @return The writer, or null.
+   */
+  public PrintWriter getOptimizerDiagnostics()
+  {
+    return m_optimizerDiagnostics;
+  }
+
   /**
    * Recompose the values of all "composed" properties, meaning
    * properties that need to be combined or calculated from
@@ -272,6 +325,13 @@ public class StylesheetRoot extends StylesheetComposed
     
     initComposeState();
 
+    // The key declarations are not children of their stylesheet, so
+    // compose them here, where only the global variables are in scope.
+    int nKeys = m_keyDecls.size();
+
+    for (int i = 0; i < nKeys; i++)
+      composeTemplates((KeyDeclaration) m_keyDecls.elementAt(i));
+
     // Need final composition of TemplateList.  This adds the wild cards onto the chains.
     m_templateList.compose(this);
     
@@ -284,6 +344,13 @@ public class StylesheetRoot extends StylesheetComposed
     
     n = getGlobalImportCount();
 
+    // The template optimizer runs before the templates are composed, so
+    // that the variables it adds are given stack frame slots.
+    TemplateOptimizer optimizer = null;
+
+    if (org.apache.xalan.processor.TransformerFactoryImpl.m_optimize)
+      optimizer = new TemplateOptimizer(m_optimizerDiagnostics);
+
     for (int i = 0; i < n; i++)
     {
       StylesheetComposed imported = this.getGlobalImport(i);
@@ -291,6 +358,10 @@ public class StylesheetRoot extends StylesheetComposed
       for (int j = -1; j < includedCount; j++)
       {
         Stylesheet included = imported.getIncludeComposed(j);
+
+        if (null != optimizer)
+          optimizeTemplates(optimizer, included);
+
         composeTemplates(included);
       }
     }
@@ -298,6 +369,23 @@ public class StylesheetRoot extends StylesheetComposed
     clearComposeState();
   }
 
+  /**
+   * Run the template optimizer on each xsl:template of a stylesheet.
+   *
+   * @param optimizer non-null reference to the optimizer.
+   * @param stylesheet non-null reference to the stylesheet.
+   */
+  void optimizeTemplates(TemplateOptimizer optimizer, Stylesheet stylesheet)
+  {
+
+    for (ElemTemplateElement child = stylesheet.getFirstChildElem();
+            child != null; child = child.getNextSiblingElem())
+    {
+      if (child instanceof ElemTemplate)
+        optimizer.optimize((ElemTemplate) child);
+    }
+  }
+
   /**
    * Call the compose function for each ElemTemplateElement.
    *
@@ -0,0 +1,343 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.templates;
+
+import java.util.Vector;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.ref.ExpandedNameTable;
+import org.apache.xml.utils.QName;
+import org.apache.xpath.XPathContext;
+import org.apache.xpath.patterns.FunctionPattern;
+import org.apache.xpath.patterns.NodeTest;
+import org.apache.xpath.patterns.StepPattern;
+
+/**
+ * Maps the expanded type IDs of elements and attributes, as assigned by a
+ * single ExpandedNameTable, to the template associations that may match
+ * them in a single mode.  Associations of other modes, and associations
+ * whose node test can never match the expanded name, are dropped when an
+ * entry is built.  Associations whose pattern is a bare name test are
+ * flagged, so that they can be selected without executing the pattern.
+ * Entries are built lazily, the first time an expanded type is seen.
+ * A table belongs to one transformation (see
+ * TransformerImpl.getDispatchTables), and is only used by the thread
+ * that runs it.
+ */
+final class TemplateDispatchTable
+{
+
+  /**
+   * Construct a dispatch table over the associations of a template list.
+   *
+   * @param list The composed template list to dispatch into.
+   * @param ent The table that assigns the expanded type IDs.
+   * @param mode The mode this table serves, may be null.
+   */
+  TemplateDispatchTable(TemplateList list, ExpandedNameTable ent, QName mode)
+  {
+    m_list = list;
+    m_ent = ent;
+    m_mode = mode;
+  }
+
+  /** The template list the entries are built from.  */
+  private final TemplateList m_list;
+
+  /** The table that assigns the expanded type IDs this table is keyed on.  */
+  final ExpandedNameTable m_ent;
+
+  /** The mode this table serves, may be null.  */
+  final QName m_mode;
+
+  /** Element entries, indexed by local name ID.  */
+  private Entry[] m_elements = new Entry[64];
+
+  /** Attribute entries, indexed by local name ID.  */
+  private Entry[] m_attributes = new Entry[16];
+
+  /**
+   * Tell if this table serves the given mode.
+   *
+   * @param mode The mode, which may be null.
+   *
+   * @return true if the modes are equal according to the rules of XSLT.
+   */
+  boolean isMode(QName mode)
+  {
+    return (null == mode) ? (null == m_mode) : mode.equals(m_mode);
+  }
+
+  /**
+   * Find the best association for an element or attribute.
+   *
+   * @param xctxt The XPath runtime context.
+   * @param targetNode The node that should be matched.
+   * @param expTypeID The expanded type ID of the target node, which must be
+   *                  of an element or attribute.
+   * @param maxImportLevel The maximum importCountComposed that we should
+   *                       consider, or -1 if we should consider all levels.
+   * @param dtm The DTM of the target node.
+   *
+   * @return The first matching association, or null.
+   *
+   * @throws TransformerException
+   */
+  TemplateSubPatternAssociation getAssociation(XPathContext xctxt,
+          int targetNode, int expTypeID, int maxImportLevel, DTM dtm)
+            throws TransformerException
+  {
+
+    Entry entry = getEntry(expTypeID, dtm);
+    TemplateSubPatternAssociation[] candidates = entry.m_candidates;
+    int n = candidates.length;
+
+    if (0 == n)
+      return null;
+
+    boolean pushed = false;
+
+    try
+    {
+      for (int i = 0; i < n; i++)
+      {
+        TemplateSubPatternAssociation assoc = candidates[i];
+
+        if ((maxImportLevel > -1) && (assoc.getImportLevel() > maxImportLevel))
+          continue;
+
+        if (entry.m_nameOnly[i])
+          return assoc;
+
+        // XSLT functions, such as xsl:key, need to be able to get to 
+        // current ElemTemplateElement via a cast to the prefix resolver.
+        if (!pushed)
+        {
+          xctxt.pushNamespaceContextNull();
+
+          pushed = true;
+        }
+
+        xctxt.setNamespaceContext(assoc.getTemplate());
+
+        if (assoc.m_stepPattern.execute(xctxt, targetNode, dtm, expTypeID)
+                != NodeTest.SCORE_NONE)
+          return assoc;
+      }
+    }
+    finally
+    {
+      if (pushed)
+        xctxt.popNamespaceContext();
+    }
+
+    return null;
+  }
+
+  /**
+   * Get the entry for an expanded type ID, building it if needed.
+   *
+   * @param expTypeID The expanded type ID of an element or attribute.
+   * @param dtm A DTM that uses this table's ExpandedNameTable.
+   *
+   * @return The entry, never null.
+   */
+  private Entry getEntry(int expTypeID, DTM dtm)
+  {
+
+    Entry[] table = (DTM.ELEMENT_NODE == ExpandedNameTable.getType(expTypeID))
+                    ? m_elements : m_attributes;
+    int lnID = ExpandedNameTable.getLocalNameID(expTypeID);
+
+    if (lnID < table.length)
+    {
+      for (Entry e = table[lnID]; null != e; e = e.m_next)
+      {
+        if (e.m_expTypeID == expTypeID)
+          return e;
+      }
+    }
+
+    return addEntry(expTypeID, dtm);
+  }
+
+  /**
+   * Build the entry for an expanded type ID and link it into the table.
+   *
+   * @param expTypeID The expanded type ID of an element or attribute.
+   * @param dtm A DTM that uses this table's ExpandedNameTable.
+   *
+   * @return The entry, never null.
+   */
+  private Entry addEntry(int expTypeID, DTM dtm)
+  {
+
+    short type = ExpandedNameTable.getType(expTypeID);
+    int lnID = ExpandedNameTable.getLocalNameID(expTypeID);
+    Entry[] table = (DTM.ELEMENT_NODE == type) ? m_elements : m_attributes;
+
+    if (lnID >= table.length)
+    {
+      int newSize = table.length << 1;
+
+      if (newSize <= lnID)
+        newSize = lnID + 1;
+
+      Entry[] newTable = new Entry[newSize];
+
+      System.arraycopy(table, 0, newTable, 0, table.length);
+
+      table = newTable;
+
+      if (DTM.ELEMENT_NODE == type)
+        m_elements = table;
+      else
+        m_attributes = table;
+    }
+
+    String namespace = dtm.getNamespaceFromExpandedNameID(expTypeID);
+    String localName = dtm.getLocalNameFromExpandedNameID(expTypeID);
+    TemplateSubPatternAssociation head = m_list.getHead(localName);
+
+    if (null == head)
+      head = m_list.getWildCardPatterns();
+
+    Vector candidates = new Vector();
+    Vector nameOnly = new Vector();
+
+    for (; null != head; head = head.getNext())
+    {
+      if (!head.matchMode(m_mode))
+        continue;
+
+      StepPattern pattern = head.getStepPattern();
+
+      // A function pattern such as key() or id() has no node test of
+      // its own, so it can match a node of any name.
+      if ((pattern instanceof FunctionPattern)
+          || (pattern.getWhatToShow() == NodeTest.SHOW_BYFUNCTION))
+      {
+        candidates.addElement(head);
+        nameOnly.addElement(Boolean.FALSE);
+      }
+      else if (pattern.matchesExpandedName(type, namespace, localName))
+      {
+        boolean isNameTest = (0 == pattern.getPredicateCount())
+                             && (null == pattern.getRelativePathPattern());
+
+        candidates.addElement(head);
+        nameOnly.addElement(isNameTest ? Boolean.TRUE : Boolean.FALSE);
+      }
+    }
+
+    int n = candidates.size();
+    TemplateSubPatternAssociation[] assocs =
+      new TemplateSubPatternAssociation[n];
+    boolean[] flags = new boolean[n];
+
+    for (int i = 0; i < n; i++)
+    {
+      assocs[i] = (TemplateSubPatternAssociation) candidates.elementAt(i);
+      flags[i] = ((Boolean) nameOnly.elementAt(i)).booleanValue();
+    }
+
+    Entry entry = new Entry(expTypeID, assocs, flags, table[lnID]);
+
+    table[lnID] = entry;
+
+    return entry;
+  }
+
+  /**
+   * The pre-filtered associations for one expanded type ID, in the
+   * same order as the template list.
+   */
+  private static final class Entry
+  {
+
+    /**
+     * Construct an entry.
+     *
+     * @param expTypeID The expanded type ID this entry is for.
+     * @param candidates The candidate associations, in priority order.
+     * @param nameOnly The name-test-only flags of the candidates.
+     * @param next The next entry with the same local name ID, may be null.
+     */
+    Entry(int expTypeID, TemplateSubPatternAssociation[] candidates,
+          boolean[] nameOnly, Entry next)
+    {
+      m_expTypeID = expTypeID;
+      m_candidates = candidates;
+      m_nameOnly = nameOnly;
+      m_next = next;
+    }
+
+    /** The expanded type ID this entry is for.  */
+    final int m_expTypeID;
+
+    /** The associations that may match, in priority order.  */
+    final TemplateSubPatternAssociation[] m_candidates;
+
+    /** True where the association matches on its name test alone.  */
+    final boolean[] m_nameOnly;
+
+    /** The next entry with the same local name ID.  */
+    final Entry m_next;
+  }
+}
@@ -61,10 +61,14 @@ import java.util.Vector;
 import java.util.Enumeration;
 
 import java.io.Serializable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 //import org.w3c.dom.Node;
 import org.apache.xml.dtm.DTM;
 
+import org.apache.xml.dtm.ref.DTMDefaultBase;
 import org.apache.xml.dtm.ref.ExpandedNameTable;
 
 import javax.xml.transform.TransformerException;
@@ -532,6 +536,91 @@ public class TemplateList implements java.io.Serializable
                                 DTM dtm)
             throws TransformerException
   {
+
+    return getTemplateFast(xctxt, targetNode, expTypeID, mode, 
+                           maxImportLevel, quietConflictWarnings, dtm, 
+                           null);
+  }
+
+  /**
+   * Get the dispatch table for the expanded type IDs of the given DTM 
+   * and the given mode.  Callers that look up templates for many nodes 
+   * of the same DTM should get this once and pass it to 
+   * {@link #getTemplateFast(XPathContext, int, int, QName, int, boolean, DTM, TemplateDispatchTable)}.
+   *
+   * @param dtm The DTM whose expanded type IDs will be looked up.
+   * @param mode The current mode, which may be null.
+   * @param tables The dispatch tables of the transformation, from
+   * TransformerImpl.getDispatchTables().
+   *
+   * @return The dispatch table, or null if the DTM does not expose its 
+   * expanded name table.
+   */
+  TemplateDispatchTable getDispatchTable(DTM dtm, QName mode,
+                                         Hashtable tables)
+  {
+
+    if (!(dtm instanceof DTMDefaultBase))
+      return null;
+
+    ExpandedNameTable ent = ((DTMDefaultBase) dtm).getExpandedNameTable();
+    Vector modes = (Vector) tables.get(ent);
+
+    if (null == modes)
+    {
+      modes = new Vector();
+
+      tables.put(ent, modes);
+    }
+
+    int n = modes.size();
+
+    for (int i = 0; i < n; i++)
+    {
+      TemplateDispatchTable dispatch =
+        (TemplateDispatchTable) modes.elementAt(i);
+
+      if (dispatch.isMode(mode))
+        return dispatch;
+    }
+
+    TemplateDispatchTable dispatch = new TemplateDispatchTable(this, ent,
+                                       mode);
+
+    modes.addElement(dispatch);
+
+    return dispatch;
+  }
+
+  /**
+   * Given a target element, find the template that best matches, as 
+   * {@link #getTemplateFast(XPathContext, int, int, QName, int, boolean, DTM)} 
+   * does, using a dispatch table obtained from 
+   * {@link #getDispatchTable(DTM, QName, Hashtable)} for elements and attributes.
+   *
+   * @param xctxt
+   * @param targetNode
+   * @param expTypeID The expanded type ID of the target node.
+   * @param mode A string indicating the display mode.
+   * @param maxImportLevel The maximum importCountComposed that we should consider or -1
+   *        if we should consider all import levels.
+   * @param quietConflictWarnings
+   * @param dtm The DTM of the target node.
+   * @param dispatch The dispatch table for the DTM and mode, or null.
+   * @return Rule that best matches targetElem.
+   *
+   * @throws TransformerException
+   */
+  ElemTemplate getTemplateFast(XPathContext xctxt,
+                                int targetNode,
+                                int expTypeID,
+                                QName mode,
+                                int maxImportLevel,
+                                boolean quietConflictWarnings,
+                                DTM dtm,
+                                TemplateDispatchTable dispatch)
+            throws TransformerException
+  {
     
     TemplateSubPatternAssociation head;
 
@@ -539,6 +628,20 @@ public class TemplateList implements java.io.Serializable
     {
     case DTM.ELEMENT_NODE :
     case DTM.ATTRIBUTE_NODE :
+      if (null != dispatch)
+      {
+        head = dispatch.getAssociation(xctxt, targetNode, expTypeID,
+                                       maxImportLevel, dtm);
+
+        if (null == head)
+          return null;
+
+        if (quietConflictWarnings)
+          checkConflicts(head, xctxt, targetNode, mode);
+
+        return head.getTemplate();
+      }
+
       head = (TemplateSubPatternAssociation) m_patternTable.get(
         dtm.getLocalNameFromExpandedNameID(expTypeID));
       break;
@@ -763,6 +866,94 @@ public class TemplateList implements java.io.Serializable
    *  @serial          */
   private TemplateSubPatternAssociation m_commentPatterns = null;
 
+  /**
+   * Write the template list.  The links between pattern associations are
+   * transient, so each association list is written here as a head
+   * followed by its remaining elements and a null terminator.  Writing
+   * the links directly would nest the serialization calls as deep as
+   * the lists are long.
+   *
+   * @param os The output stream to write to.
+   *
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream os) throws IOException
+  {
+
+    os.defaultWriteObject();
+
+    Vector heads = new Vector();
+
+    for (Enumeration e = m_patternTable.elements(); e.hasMoreElements(); )
+    {
+      heads.addElement(e.nextElement());
+    }
+
+    heads.addElement(m_wildCardPatterns);
+    heads.addElement(m_textPatterns);
+    heads.addElement(m_docPatterns);
+    heads.addElement(m_commentPatterns);
+
+    int n = heads.size();
+
+    os.writeInt(n);
+
+    for (int i = 0; i < n; i++)
+    {
+      TemplateSubPatternAssociation head =
+        (TemplateSubPatternAssociation) heads.elementAt(i);
+
+      os.writeObject(head);
+
+      if (null != head)
+      {
+        for (TemplateSubPatternAssociation next = head.getNext();
+             null != next; next = next.getNext())
+        {
+          os.writeObject(next);
+        }
+
+        os.writeObject(null);
+      }
+    }
+  }
+
+  /**
+   * Read the template list and relink the pattern association lists
+   * written by writeObject.
+   *
+   * @param is The input stream to read from.
+   *
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream is)
+          throws IOException, ClassNotFoundException
+  {
+
+    is.defaultReadObject();
+
+    int n = is.readInt();
+
+    for (int i = 0; i < n; i++)
+    {
+      TemplateSubPatternAssociation last =
+        (TemplateSubPatternAssociation) is.readObject();
+
+      if (null != last)
+      {
+        TemplateSubPatternAssociation next;
+
+        while (null != (next = (TemplateSubPatternAssociation) is.readObject()))
+        {
+          last.setNext(next);
+
+          last = next;
+        }
+      }
+    }
+  }
+
   /**
    * Get table of named Templates.
    * These are keyed on template names, and holding values
@@ -799,11 +990,22 @@ public class TemplateList implements java.io.Serializable
    * @return The head of a linked list that contains all possible match pattern to 
    * template associations for the given key.
    */
-  private TemplateSubPatternAssociation getHead(String key)
+  TemplateSubPatternAssociation getHead(String key)
   {
     return (TemplateSubPatternAssociation) m_patternTable.get(key);
   }
 
+  /**
+   * Get the head of the wildcard association list.
+   *
+   * @return The head of the list of associations that do not target a 
+   * particular name, or null.
+   */
+  TemplateSubPatternAssociation getWildCardPatterns()
+  {
+    return m_wildCardPatterns;
+  }
+
   /**
    * Get the head of the assocation list that is keyed by target.
    *
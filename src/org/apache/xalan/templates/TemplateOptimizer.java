@@ -0,0 +1,833 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.templates;
+
+import java.io.PrintWriter;
+
+import java.util.Vector;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.xalan.transformer.TransformerImpl;
+import org.apache.xml.utils.QName;
+import org.apache.xpath.Expression;
+import org.apache.xpath.VariableStack;
+import org.apache.xpath.XPath;
+import org.apache.xpath.XPathContext;
+import org.apache.xpath.axes.AxesWalker;
+import org.apache.xpath.axes.ChildIterator;
+import org.apache.xpath.axes.ChildTestIterator;
+import org.apache.xpath.axes.FilterExprWalker;
+import org.apache.xpath.axes.PredicatedNodeTest;
+import org.apache.xpath.axes.SelfIteratorNoPredicate;
+import org.apache.xpath.axes.WalkingIterator;
+import org.apache.xpath.compiler.ExpressionOptimizer;
+import org.apache.xpath.functions.FuncCurrent;
+import org.apache.xpath.functions.FuncExtFunction;
+import org.apache.xpath.functions.Function;
+import org.apache.xpath.objects.XNodeSet;
+import org.apache.xpath.objects.XObject;
+import org.apache.xpath.operations.Operation;
+import org.apache.xpath.operations.UnaryOperation;
+import org.apache.xpath.operations.Variable;
+
+/**
+ * <meta name="usage" content="internal"/>
+ * Rewrites the expressions of a template so that values which do not
+ * depend on the context node are computed once.  A sub-expression is
+ * context free if it is built from literals, template parameters,
+ * global variables, side-effect free functions, and location paths
+ * that start from such a value.  Context free sub-expressions that
+ * occur more than once in a template, or that occur inside the body
+ * of an xsl:for-each, are bound to a new variable ahead of their
+ * first use, and each use is replaced by a reference to the variable.
+ * The variable is evaluated when it is first read, so an expression
+ * taken out of an xsl:if, xsl:choose or xsl:for-each body is only
+ * evaluated if that body runs.
+ *
+ * <p>Absolute location paths are never moved, since the document of
+ * the context node can change inside a template.  Predicates and
+ * attribute value templates are not rewritten.</p>
+ */
+public class TemplateOptimizer
+{
+
+  /**
+   * The namespace of the variables added by the optimizer, which
+   * can not clash with the names of stylesheet variables.
+   */
+  public static final String NAMESPACE =
+    "http://xml.apache.org/xalan/optimizer";
+
+  /** Where rewrites are reported, or null. */
+  private PrintWriter m_diagnostics;
+
+  /** The number of variables added so far, used to name them. */
+  private int m_variableCount = 0;
+
+  /** A variable name resolves to a global variable. */
+  private static final int GLOBAL = 0;
+
+  /** A variable name resolves to a parameter of the template. */
+  private static final int PARAM = 1;
+
+  /** A variable name resolves to a local variable. */
+  private static final int LOCAL = 2;
+
+  /**
+   * Construct an optimizer.
+   *
+   * @param diagnostics Where to report rewrites, or null.
+   */
+  public TemplateOptimizer(PrintWriter diagnostics)
+  {
+    m_diagnostics = diagnostics;
+  }
+
+  /**
+   * Rewrite the expressions of a template.  This must be called
+   * before the template is composed, so that the variables added here
+   * are given stack frame slots.  A template that has already been
+   * rewritten is left alone.
+   *
+   * @param template The template to rewrite.
+   */
+  public void optimize(ElemTemplate template)
+  {
+
+    if (isOptimized(template))
+      return;
+
+    Vector occurrences = new Vector();
+
+    collect(template, template, false, occurrences);
+
+    // Group the occurrences of the same expression, keeping the
+    // groups, and the occurrences in each group, in document order.
+    Vector groups = new Vector();
+    int n = occurrences.size();
+
+    for (int i = 0; i < n; i++)
+    {
+      Occurrence occurrence = (Occurrence) occurrences.elementAt(i);
+      Vector group = null;
+
+      for (int j = 0; j < groups.size(); j++)
+      {
+        Vector candidate = (Vector) groups.elementAt(j);
+        Occurrence first = (Occurrence) candidate.elementAt(0);
+
+        if (ExpressionOptimizer.equal(first.m_expr, occurrence.m_expr))
+        {
+          group = candidate;
+
+          break;
+        }
+      }
+
+      if (null == group)
+      {
+        group = new Vector();
+
+        groups.addElement(group);
+      }
+
+      group.addElement(occurrence);
+    }
+
+    for (int i = 0; i < groups.size(); i++)
+    {
+      Vector group = (Vector) groups.elementAt(i);
+
+      if ((group.size() > 1) || isInLoop(group))
+        hoist(template, group);
+    }
+  }
+
+  /**
+   * Tell if a template already holds a variable added by the optimizer.
+   *
+   * @param elem The template, or an element inside it.
+   *
+   * @return true if the optimizer has already rewritten the template.
+   */
+  private static boolean isOptimized(ElemTemplateElement elem)
+  {
+
+    if ((elem instanceof ElemVariable)
+            && (null != ((ElemVariable) elem).getName())
+            && NAMESPACE.equals(
+              ((ElemVariable) elem).getName().getNamespaceURI()))
+      return true;
+
+    for (ElemTemplateElement child = elem.getFirstChildElem();
+            null != child; child = child.getNextSiblingElem())
+    {
+      if (isOptimized(child))
+        return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Tell if any occurrence in a group is evaluated once per node of
+   * an xsl:for-each or xsl:sort.
+   *
+   * @param group The occurrences.
+   *
+   * @return true if an occurrence is in a loop.
+   */
+  private static boolean isInLoop(Vector group)
+  {
+
+    for (int i = 0; i < group.size(); i++)
+    {
+      if (((Occurrence) group.elementAt(i)).m_inLoop)
+        return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Tell if an element is an xsl:for-each, as opposed to one of the
+   * other instructions that extend ElemForEach.
+   *
+   * @param elem The element.
+   *
+   * @return true if the element is an xsl:for-each.
+   */
+  private static boolean isForEach(ElemTemplateElement elem)
+  {
+    return (elem instanceof ElemForEach)
+           && !(elem instanceof ElemCallTemplate);
+  }
+
+  /**
+   * Collect the context free sub-expressions of the instructions in
+   * a subtree, in document order.
+   *
+   * @param elem The root of the subtree.
+   * @param template The template being rewritten.
+   * @param inLoop true if elem is inside the body of an xsl:for-each.
+   * @param occurrences The vector to add Occurrence objects to.
+   */
+  private void collect(ElemTemplateElement elem, ElemTemplate template,
+                       boolean inLoop, Vector occurrences)
+  {
+
+    // The default value of a parameter is only evaluated when no value
+    // is passed, and can not refer to the variables added here.
+    if ((elem instanceof ElemParam) && (elem.getParentElem() == template))
+      return;
+
+    XPath xpath = null;
+
+    if (elem instanceof ElemValueOf)
+      xpath = ((ElemValueOf) elem).getSelect();
+    else if (elem instanceof ElemIf)
+      xpath = ((ElemIf) elem).getTest();
+    else if (elem instanceof ElemWhen)
+      xpath = ((ElemWhen) elem).getTest();
+    else if (elem instanceof ElemCopyOf)
+      xpath = ((ElemCopyOf) elem).getSelect();
+    else if ((elem instanceof ElemVariable) && !(elem instanceof ElemParam))
+      xpath = ((ElemVariable) elem).getSelect();
+    else if (elem instanceof ElemWithParam)
+      xpath = ((ElemWithParam) elem).getSelect();
+    else if (elem instanceof ElemNumber)
+      xpath = ((ElemNumber) elem).getValue();
+
+    if (null != xpath)
+      scan(xpath.getExpression(), null, 0, xpath, elem, template, inLoop,
+           occurrences);
+
+    if (elem instanceof ElemForEach)
+    {
+      ElemForEach forEach = (ElemForEach) elem;
+
+      if (null != forEach.getSelect())
+        scan(forEach.getSelect(), null, 0, forEach, elem, template, inLoop,
+             occurrences);
+
+      // Sort keys are evaluated once for each node that is selected.
+      int nSorts = forEach.getSortElemCount();
+
+      for (int i = 0; i < nSorts; i++)
+      {
+        XPath select = forEach.getSortElem(i).getSelect();
+
+        if (null != select)
+          scan(select.getExpression(), null, 0, select, elem, template, true,
+               occurrences);
+      }
+    }
+
+    boolean childInLoop = inLoop || isForEach(elem);
+
+    for (ElemTemplateElement child = elem.getFirstChildElem();
+            null != child; child = child.getNextSiblingElem())
+    {
+      collect(child, template, childInLoop, occurrences);
+    }
+  }
+
+  /**
+   * Collect the largest context free sub-expressions of an expression.
+   *
+   * @param expr The expression.
+   * @param parent The expression that has expr as an operand, or null
+   * if expr is the whole expression.
+   * @param index The operand index of expr in parent.
+   * @param holder The XPath, or the xsl:for-each, that holds the whole
+   * expression.
+   * @param owner The instruction the expression belongs to.
+   * @param template The template being rewritten.
+   * @param inLoop true if the expression is evaluated once per node of
+   * an xsl:for-each or xsl:sort.
+   * @param occurrences The vector to add Occurrence objects to.
+   */
+  private void scan(Expression expr, Expression parent, int index,
+                    Object holder, ElemTemplateElement owner,
+                    ElemTemplate template, boolean inLoop,
+                    Vector occurrences)
+  {
+
+    if (isContextFree(expr, owner, template))
+    {
+
+      // There is nothing to gain from binding a literal or a variable
+      // reference to another variable.
+      if (!ExpressionOptimizer.isConstant(expr)
+              && !(expr instanceof Variable))
+        occurrences.addElement(new Occurrence(expr, parent, index, holder,
+                                              owner, inLoop));
+
+      return;
+    }
+
+    int n = ExpressionOptimizer.getOperandCount(expr);
+
+    for (int i = 0; i < n; i++)
+    {
+      scan(ExpressionOptimizer.getOperand(expr, i), expr, i, holder, owner,
+           template, inLoop, occurrences);
+    }
+  }
+
+  /**
+   * Tell if the value of an expression is the same anywhere in the
+   * template, up to the instruction that holds it.
+   *
+   * @param expr The expression.
+   * @param owner The instruction the expression belongs to.
+   * @param template The template being rewritten.
+   *
+   * @return true if the expression does not depend on the context.
+   */
+  private boolean isContextFree(Expression expr, ElemTemplateElement owner,
+                                ElemTemplate template)
+  {
+
+    if (ExpressionOptimizer.isConstant(expr))
+      return true;
+    else if (expr instanceof Variable)
+      return LOCAL != resolve(((Variable) expr).getQName(), owner, template);
+    else if ((expr instanceof Operation) || (expr instanceof UnaryOperation)
+             || (expr instanceof Function))
+    {
+      if (!ExpressionOptimizer.isPure(expr))
+        return false;
+
+      int n = ExpressionOptimizer.getOperandCount(expr);
+
+      for (int i = 0; i < n; i++)
+      {
+        if (!isContextFree(ExpressionOptimizer.getOperand(expr, i), owner,
+                           template))
+          return false;
+      }
+
+      return true;
+    }
+    else if (expr instanceof WalkingIterator)
+    {
+
+      // The path has to start from a context free value, as in $p/a/b.
+      AxesWalker walker = ((WalkingIterator) expr).getFirstWalker();
+
+      if (!(walker instanceof FilterExprWalker)
+              ||!isContextFree(((FilterExprWalker) walker).getInnerExpression(),
+                               owner, template))
+        return false;
+
+      for (; null != walker; walker = walker.getNextWalker())
+      {
+        if (!isClosed(walker, owner, template))
+          return false;
+      }
+
+      return true;
+    }
+    else
+      return false;
+  }
+
+  /**
+   * Tell if the predicates of a step read nothing but the nodes they
+   * filter: no current(), no extension functions, and no local
+   * variables.
+   *
+   * @param step The step.
+   * @param owner The instruction the step belongs to.
+   * @param template The template being rewritten.
+   *
+   * @return true if the predicates can be moved with the step.
+   */
+  private boolean isClosed(PredicatedNodeTest step, ElemTemplateElement owner,
+                           ElemTemplate template)
+  {
+
+    if ((step instanceof FilterExprWalker)
+            &&!isClosed(((FilterExprWalker) step).getInnerExpression(),
+                        owner, template))
+      return false;
+
+    int n = step.getPredicateCount();
+
+    for (int i = 0; i < n; i++)
+    {
+      if (!isClosed(step.getPredicate(i), owner, template))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Tell if an expression inside a predicate can be moved with the
+   * predicate.
+   *
+   * @param expr The expression.
+   * @param owner The instruction the expression belongs to.
+   * @param template The template being rewritten.
+   *
+   * @return true if the expression can be moved.
+   */
+  private boolean isClosed(Expression expr, ElemTemplateElement owner,
+                           ElemTemplate template)
+  {
+
+    if ((null == expr) || ExpressionOptimizer.isConstant(expr))
+      return true;
+    else if (expr instanceof Variable)
+      return LOCAL != resolve(((Variable) expr).getQName(), owner, template);
+    else if ((expr instanceof FuncCurrent) || (expr instanceof FuncExtFunction))
+      return false;
+    else if ((expr instanceof Operation) || (expr instanceof UnaryOperation)
+             || (expr instanceof Function))
+    {
+      int n = ExpressionOptimizer.getOperandCount(expr);
+
+      for (int i = 0; i < n; i++)
+      {
+        if (!isClosed(ExpressionOptimizer.getOperand(expr, i), owner,
+                      template))
+          return false;
+      }
+
+      return true;
+    }
+    else if (expr instanceof WalkingIterator)
+    {
+      for (AxesWalker walker = ((WalkingIterator) expr).getFirstWalker();
+              null != walker; walker = walker.getNextWalker())
+      {
+        if (!isClosed(walker, owner, template))
+          return false;
+      }
+
+      return true;
+    }
+    else if ((expr instanceof ChildTestIterator)
+             || (expr instanceof ChildIterator)
+             || (expr instanceof SelfIteratorNoPredicate))
+      return isClosed((PredicatedNodeTest) expr, owner, template);
+    else
+      return false;
+  }
+
+  /**
+   * Find what a variable reference in an instruction refers to.
+   *
+   * @param name The name of the variable.
+   * @param owner The instruction that holds the reference.
+   * @param template The template being rewritten.
+   *
+   * @return GLOBAL, PARAM or LOCAL.
+   */
+  private static int resolve(QName name, ElemTemplateElement owner,
+                             ElemTemplate template)
+  {
+
+    for (ElemTemplateElement elem = owner; (null != elem) && (elem != template);
+            elem = elem.getParentElem())
+    {
+      for (ElemTemplateElement prev = elem.getPreviousSiblingElem();
+              null != prev; prev = prev.getPreviousSiblingElem())
+      {
+        if ((prev instanceof ElemVariable)
+                && name.equals(((ElemVariable) prev).getName()))
+          return ((prev instanceof ElemParam)
+                  && (prev.getParentElem() == template)) ? PARAM : LOCAL;
+      }
+    }
+
+    return GLOBAL;
+  }
+
+  /**
+   * Bind the expression of a group of occurrences to a new variable,
+   * and replace each occurrence with a reference to the variable.
+   *
+   * @param template The template being rewritten.
+   * @param group The occurrences, in document order.
+   */
+  private void hoist(ElemTemplate template, Vector group)
+  {
+
+    Occurrence first = (Occurrence) group.elementAt(0);
+    ElemTemplateElement container = first.m_owner;
+    int n = group.size();
+
+    for (int i = 1; i < n; i++)
+    {
+      container = getCommonAncestor(container,
+                                    ((Occurrence) group.elementAt(i)).m_owner);
+    }
+
+    // The variable has to be bound before the instruction that uses it.
+    for (int i = 0; i < n; i++)
+    {
+      if (((Occurrence) group.elementAt(i)).m_owner == container)
+      {
+        container = container.getParentElem();
+
+        break;
+      }
+    }
+
+    // Bind the variable outside of every xsl:for-each it is used in.
+    for (ElemTemplateElement elem = container; elem != template;
+            elem = elem.getParentElem())
+    {
+      if (isForEach(elem))
+        container = elem.getParentElem();
+    }
+
+    while (!isContainer(container))
+    {
+      container = container.getParentElem();
+    }
+
+    ElemTemplateElement refChild = first.m_owner;
+
+    while (refChild.getParentElem() != container)
+    {
+      refChild = refChild.getParentElem();
+    }
+
+    QName name = new QName(NAMESPACE, "e" + (++m_variableCount));
+    Expression expr = first.m_expr;
+
+    if (null != m_diagnostics)
+    {
+      m_diagnostics.println(ExpressionOptimizer.getLocation(first.m_owner)
+                            + "bound " + ExpressionOptimizer.describe(expr)
+                            + " (" + n + ((1 == n) ? " use" : " uses")
+                            + (isInLoop(group) ? ", in a loop" : "")
+                            + ") to a variable in " + container.getNodeName()
+                            + " at line " + container.getLineNumber());
+    }
+
+    // A location path would be walked again each time the variable is
+    // read, so keep the nodes it selects instead.
+    if (expr instanceof WalkingIterator)
+      expr = new NodeSetSnapshot(expr);
+
+    ElemVariable var = new HoistedVariable();
+
+    var.setName(name);
+    var.setSelect(new XPath(expr));
+    var.setLocaterInfo(first.m_owner);
+    container.insertBefore(var, refChild);
+
+    for (int i = 0; i < n; i++)
+    {
+      ((Occurrence) group.elementAt(i)).replace(name);
+    }
+  }
+
+  /**
+   * Get the nearest element that is an ancestor-or-self of two elements.
+   *
+   * @param a An element.
+   * @param b Another element in the same template.
+   *
+   * @return The common ancestor.
+   */
+  private static ElemTemplateElement getCommonAncestor(ElemTemplateElement a,
+          ElemTemplateElement b)
+  {
+
+    for (ElemTemplateElement elem = a; null != elem;
+            elem = elem.getParentElem())
+    {
+      for (ElemTemplateElement other = b; null != other;
+              other = other.getParentElem())
+      {
+        if (elem == other)
+          return elem;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Tell if a variable may be added to the children of an element,
+   * where it is evaluated in the same context as its siblings.
+   *
+   * @param elem The element.
+   *
+   * @return true if the element can hold the variable.
+   */
+  private static boolean isContainer(ElemTemplateElement elem)
+  {
+    return (elem instanceof ElemTemplate) || (elem instanceof ElemIf)
+           || (elem instanceof ElemWhen) || (elem instanceof ElemOtherwise)
+           || (elem instanceof ElemLiteralResult)
+           || (elem instanceof ElemElement);
+  }
+
+  /**
+   * A context free sub-expression, and where it is used.
+   */
+  private static class Occurrence
+  {
+
+    /** The sub-expression. */
+    Expression m_expr;
+
+    /** The expression that has m_expr as an operand, or null. */
+    Expression m_parent;
+
+    /** The operand index of m_expr in m_parent. */
+    int m_index;
+
+    /** The XPath, or the xsl:for-each, that holds the whole expression. */
+    Object m_holder;
+
+    /** The instruction the expression belongs to. */
+    ElemTemplateElement m_owner;
+
+    /** true if the expression is evaluated once per node of a loop. */
+    boolean m_inLoop;
+
+    /**
+     * Construct an occurrence.
+     *
+     * @param expr The sub-expression.
+     * @param parent The expression that has expr as an operand, or null.
+     * @param index The operand index of expr in parent.
+     * @param holder The XPath, or the xsl:for-each, that holds the whole
+     * expression.
+     * @param owner The instruction the expression belongs to.
+     * @param inLoop true if the expression is evaluated in a loop.
+     */
+    Occurrence(Expression expr, Expression parent, int index, Object holder,
+               ElemTemplateElement owner, boolean inLoop)
+    {
+      m_expr = expr;
+      m_parent = parent;
+      m_index = index;
+      m_holder = holder;
+      m_owner = owner;
+      m_inLoop = inLoop;
+    }
+
+    /**
+     * Replace the sub-expression with a variable reference.
+     *
+     * @param name The name of the variable.
+     */
+    void replace(QName name)
+    {
+
+      Variable var = new Variable();
+
+      var.setQName(name);
+
+      if (null != m_parent)
+        ExpressionOptimizer.setOperand(m_parent, m_index, var);
+      else if (m_holder instanceof XPath)
+        ((XPath) m_holder).setExpression(var);
+      else
+      {
+
+        // Leave the for-each's original XPath for trace events.
+        ((ElemForEach) m_holder).m_selectExpression = var;
+      }
+    }
+  }
+
+  /**
+   * A variable added by the optimizer.  It may be bound above the
+   * xsl:if, xsl:choose or xsl:for-each that held the expression, so
+   * instead of the value it binds an XUnresolvedVariable, which the
+   * variable stack evaluates on the first read.  An error raised by
+   * the expression is then reported only where the stylesheet as
+   * written would have evaluated it.
+   */
+  private static class HoistedVariable extends ElemVariable
+  {
+
+    /**
+     * Bind the variable to its unevaluated value.
+     *
+     * @param transformer non-null reference to the the current transform-time state.
+     *
+     * @throws TransformerException
+     */
+    public void execute(TransformerImpl transformer) throws TransformerException
+    {
+
+      if (transformer.getDebug())
+        transformer.getTraceManager().fireTraceEvent(this);
+
+      XPathContext xctxt = transformer.getXPathContext();
+      VariableStack vars = xctxt.getVarStack();
+
+      vars.setLocalVariable(m_index,
+                            new XUnresolvedVariable(this,
+                                                    xctxt.getCurrentNode(),
+                                                    transformer,
+                                                    vars.getStackFrame(), 0,
+                                                    false));
+    }
+  }
+
+  /**
+   * Evaluates a node-set expression, and copies the nodes it selects
+   * into a new node-set, so that the value of a variable does not walk
+   * the tree again each time it is read.
+   */
+  private static class NodeSetSnapshot extends Expression
+  {
+
+    /** The node-set expression. */
+    private Expression m_expr;
+
+    /**
+     * Construct a snapshot of a node-set expression.
+     *
+     * @param expr The node-set expression.
+     */
+    NodeSetSnapshot(Expression expr)
+    {
+      m_expr = expr;
+    }
+
+    /**
+     * Evaluate the expression, and copy the nodes it selects.
+     *
+     * @param xctxt The XPath runtime context.
+     *
+     * @return A node-set holding the selected nodes, in the same order.
+     *
+     * @throws javax.xml.transform.TransformerException
+     */
+    public XObject execute(XPathContext xctxt)
+            throws javax.xml.transform.TransformerException
+    {
+
+      XObject result = m_expr.execute(xctxt);
+
+      if (XObject.CLASS_NODESET != result.getType())
+        return result;
+
+      XNodeSet nodes = new XNodeSet(xctxt.getDTMManager());
+
+      nodes.mutableNodeset().addNodes(result.iter());
+
+      return nodes;
+    }
+
+    /**
+     * Fix up the variables of the node-set expression.
+     *
+     * @param vars List of QNames that correspond to variables.
+     * @param globalsSize The number of variables in the global variable
+     * area.
+     */
+    public void fixupVariables(java.util.Vector vars, int globalsSize)
+    {
+      m_expr.fixupVariables(vars, globalsSize);
+    }
+  }
+}
@@ -83,8 +83,8 @@ class TemplateSubPatternAssociation implements Serializable, Cloneable
   /** The template element         */
   private ElemTemplate m_template;
 
-  /** Next pattern         */
-  private TemplateSubPatternAssociation m_next = null;
+  /** Next pattern.  The list links are serialized by TemplateList.  */
+  private transient TemplateSubPatternAssociation m_next = null;
 
   /** Flag indicating whether this is wild card pattern          */
   private boolean m_wild;
@@ -0,0 +1,785 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.apache.xml.utils.QName;
+import org.apache.xalan.templates.ElemTemplate;
+import org.apache.xalan.templates.ElemTemplateElement;
+import org.apache.xpath.XPath;
+
+/**
+ * <meta name="usage" content="advanced"/>
+ * Collects statistics about a transformation, as it runs:
+ * for each template, the number of calls and the inclusive and
+ * exclusive time spent in it; for each selection made by the
+ * stylesheet, the number of hits and the time taken; the number of
+ * nodes templates were applied to in each mode; and the number of
+ * result tree fragments and DTMs that were built.
+ *
+ * <p>A profiler is attached to a transformer with
+ * TraceManager.setProfiler.  It is called before any trace event is
+ * built, so it costs much less than a TraceListener.  A profiler
+ * belongs to one transformer, and is only called from the thread
+ * that runs that transformer, so it does not synchronize.</p>
+ *
+ * <p>Time is read from the system clock, in milliseconds, and the
+ * time between two events is charged to what ran between them.  A
+ * short template is charged a whole tick now and then rather than
+ * a fraction of one every time, so the times are only right over
+ * many calls; the totals are always right.  With a sample interval
+ * of n, the clock is read at every n-th event only.</p>
+ */
+public class StylesheetProfiler
+{
+
+  /** The mode name written for the default mode. */
+  private static final String DEFAULT_MODE = "#default";
+
+  /** The clock is read at every m_sampleInterval-th event. */
+  private int m_sampleInterval = 1;
+
+  /** The number of events until the clock is read again. */
+  private int m_countdown = 0;
+
+  /** The time last read from the clock. */
+  private long m_now;
+
+  /** The time of the last event. */
+  private long m_lastEvent;
+
+  /**
+   * The statistics, indexed by the uid of the stylesheet element.
+   * Each entry chains the statistics for the other attributes of
+   * the same element.
+   */
+  private Entry[] m_entries = new Entry[256];
+
+  /**
+   * The statistics for elements whose uid can not be used as an
+   * index into m_entries, keyed by element.
+   */
+  private Hashtable m_otherEntries = new Hashtable();
+
+  /** The templates being instantiated, innermost last. */
+  private Entry[] m_frames = new Entry[32];
+
+  /** The time each of m_frames was entered. */
+  private long[] m_frameStart = new long[32];
+
+  /** The time spent in the templates called by each of m_frames. */
+  private long[] m_frameChildren = new long[32];
+
+  /** The number of templates being instantiated. */
+  private int m_depth = 0;
+
+  /** Node counts (int[1]), keyed by mode QName or DEFAULT_MODE. */
+  private Hashtable m_modes = new Hashtable();
+
+  /** The mode of the last applied template. */
+  private QName m_lastMode = null;
+
+  /** The node count of m_lastMode. */
+  private int[] m_lastModeCount = null;
+
+  /** The number of result tree fragments built. */
+  private int m_rtfCount = 0;
+
+  /** The number of DTMs built. */
+  private int m_dtmCount = 0;
+
+  /** The DTM manager that was last counted. */
+  private Object m_dtmManager = null;
+
+  /** The count of DTMs that m_dtmManager last reported. */
+  private int m_dtmManagerCount = 0;
+
+  /**
+   * Construct a profiler that reads the clock at every event.
+   */
+  public StylesheetProfiler(){}
+
+  /**
+   * Construct a profiler that reads the clock at every
+   * sampleInterval-th event.
+   *
+   * @param sampleInterval The sample interval, at least 1.
+   */
+  public StylesheetProfiler(int sampleInterval)
+  {
+    setSampleInterval(sampleInterval);
+  }
+
+  /**
+   * Set how often the clock is read.
+   *
+   * @param sampleInterval The clock is read at every sampleInterval-th
+   * event.  Values below 1 are taken as 1.
+   */
+  public void setSampleInterval(int sampleInterval)
+  {
+    m_sampleInterval = (sampleInterval < 1) ? 1 : sampleInterval;
+    m_countdown = 0;
+  }
+
+  /**
+   * Get how often the clock is read.
+   *
+   * @return The sample interval.
+   */
+  public int getSampleInterval()
+  {
+    return m_sampleInterval;
+  }
+
+  /**
+   * Get the number of result tree fragments that were built.
+   *
+   * @return The number of result tree fragments.
+   */
+  public int getResultTreeFragmentCount()
+  {
+    return m_rtfCount;
+  }
+
+  /**
+   * Get the number of DTMs that were built.  The count is brought
+   * up to date whenever the outermost template returns.
+   *
+   * @return The number of DTMs.
+   */
+  public int getDTMCount()
+  {
+    return m_dtmCount;
+  }
+
+  /**
+   * Get the number of times a template was instantiated.
+   *
+   * @param template The template.
+   *
+   * @return The number of calls, or 0 if the template was not called.
+   */
+  public int getCallCount(ElemTemplate template)
+  {
+
+    Entry entry = findEntry(template, null);
+
+    return (null == entry) ? 0 : entry.m_count;
+  }
+
+  /**
+   * Get the number of nodes that templates were applied to in
+   * a mode.
+   *
+   * @param mode The mode, or null for the default mode.
+   *
+   * @return The number of nodes.
+   */
+  public int getNodeCount(QName mode)
+  {
+
+    int[] count = (int[]) m_modes.get((null == mode)
+                                      ? (Object) DEFAULT_MODE : mode);
+
+    return (null == count) ? 0 : count[0];
+  }
+
+  /**
+   * Throw away the statistics collected so far.
+   */
+  public void reset()
+  {
+
+    m_entries = new Entry[256];
+    m_otherEntries.clear();
+
+    for (int i = 0; i < m_depth; i++)
+    {
+      m_frames[i] = null;
+    }
+
+    m_depth = 0;
+    m_countdown = 0;
+
+    m_modes.clear();
+
+    m_lastMode = null;
+    m_lastModeCount = null;
+    m_rtfCount = 0;
+    m_dtmCount = 0;
+    m_dtmManager = null;
+    m_dtmManagerCount = 0;
+  }
+
+  /**
+   * Read the clock, or return the time last read if the sample
+   * interval has not run out.
+   *
+   * @return The current time, in milliseconds.
+   */
+  private final long now()
+  {
+
+    if (--m_countdown <= 0)
+    {
+      m_countdown = m_sampleInterval;
+      m_now = System.currentTimeMillis();
+    }
+
+    return m_now;
+  }
+
+  /**
+   * Called when a template is about to be instantiated.
+   *
+   * @param template The template.
+   * @param applied true if the template was applied to the current
+   * node as a template rule, false if it was called by name.
+   * @param mode The current mode, if applied, may be null.
+   */
+  void templateStart(ElemTemplate template, boolean applied, QName mode)
+  {
+
+    long now = now();
+
+    if (applied)
+    {
+      if ((mode != m_lastMode) || (null == m_lastModeCount))
+      {
+        Object key = (null == mode) ? (Object) DEFAULT_MODE : mode;
+
+        m_lastModeCount = (int[]) m_modes.get(key);
+
+        if (null == m_lastModeCount)
+        {
+          m_lastModeCount = new int[1];
+
+          m_modes.put(key, m_lastModeCount);
+        }
+
+        m_lastMode = mode;
+      }
+
+      m_lastModeCount[0]++;
+    }
+
+    Entry entry = getEntry(template, null);
+
+    entry.m_count++;
+    entry.m_active++;
+
+    if (m_depth == m_frames.length)
+    {
+      int n = m_depth * 2;
+      Entry[] frames = new Entry[n];
+      long[] frameStart = new long[n];
+      long[] frameChildren = new long[n];
+
+      System.arraycopy(m_frames, 0, frames, 0, m_depth);
+      System.arraycopy(m_frameStart, 0, frameStart, 0, m_depth);
+      System.arraycopy(m_frameChildren, 0, frameChildren, 0, m_depth);
+
+      m_frames = frames;
+      m_frameStart = frameStart;
+      m_frameChildren = frameChildren;
+    }
+
+    m_frames[m_depth] = entry;
+    m_frameStart[m_depth] = now;
+    m_frameChildren[m_depth] = 0;
+    m_depth++;
+
+    m_lastEvent = now;
+  }
+
+  /**
+   * Called when the instantiation of a template has ended.  Templates
+   * entered after this one, whose end was never reported because of
+   * an exception, end here as well.
+   *
+   * @param template The template.
+   *
+   * @return The number of templates still being instantiated.
+   */
+  int templateEnd(ElemTemplate template)
+  {
+
+    long now = now();
+    int frame = m_depth - 1;
+
+    while ((frame >= 0) && (m_frames[frame].m_element != template))
+    {
+      frame--;
+    }
+
+    // A template entered before the profiler was set is not on the
+    // stack; leave the stack alone.
+    if (frame >= 0)
+    {
+      while (m_depth > frame)
+      {
+        int d = --m_depth;
+        Entry entry = m_frames[d];
+        long time = now - m_frameStart[d];
+
+        entry.m_exclusive += time - m_frameChildren[d];
+
+        // Count the time of a recursive template once only.
+        if (0 == --entry.m_active)
+          entry.m_time += time;
+
+        if (d > 0)
+          m_frameChildren[d - 1] += time;
+
+        m_frames[d] = null;
+      }
+    }
+
+    m_lastEvent = now;
+
+    return m_depth;
+  }
+
+  /**
+   * Called when any other stylesheet element is traced.  The time
+   * of the next selection is counted from here.
+   *
+   * @param styleNode The stylesheet element.
+   */
+  void element(ElemTemplateElement styleNode)
+  {
+    m_lastEvent = now();
+  }
+
+  /**
+   * Called when a selection has been made.
+   *
+   * @param styleNode The stylesheet element that made the selection.
+   * @param attributeName The attribute that holds the expression.
+   * @param xpath The expression, may be null.
+   */
+  void selected(ElemTemplateElement styleNode, String attributeName,
+                XPath xpath)
+  {
+
+    long now = now();
+    Entry entry = getEntry(styleNode, attributeName);
+
+    if ((null == entry.m_expression) && (null != xpath))
+      entry.m_expression = xpath.getPatternString();
+
+    entry.m_count++;
+    entry.m_time += now - m_lastEvent;
+
+    m_lastEvent = now;
+  }
+
+  /**
+   * Called when a result tree fragment has been built.
+   */
+  void resultTreeFragment()
+  {
+    m_rtfCount++;
+  }
+
+  /**
+   * Bring the count of DTMs up to date.
+   *
+   * @param manager The DTM manager of the transformation.
+   * @param count The number of DTMs the manager has built.
+   */
+  void countDTMs(Object manager, int count)
+  {
+
+    // A transformer gets a new manager for each transformation.
+    if (manager != m_dtmManager)
+    {
+      m_dtmManager = manager;
+      m_dtmManagerCount = 0;
+    }
+
+    m_dtmCount += count - m_dtmManagerCount;
+    m_dtmManagerCount = count;
+  }
+
+  /**
+   * Find the statistics for an attribute of a stylesheet element.
+   *
+   * @param elem The stylesheet element.
+   * @param attributeName The attribute, or null for a template.
+   *
+   * @return The statistics, or null if there are none yet.
+   */
+  private Entry findEntry(ElemTemplateElement elem, String attributeName)
+  {
+
+    int uid = elem.getUid();
+    Entry entry = ((uid >= 0) && (uid < m_entries.length))
+                  ? m_entries[uid] : null;
+
+    if ((null == entry) || (entry.m_element != elem))
+      entry = (Entry) m_otherEntries.get(elem);
+
+    for (; null != entry; entry = entry.m_next)
+    {
+      if ((entry.m_attribute == attributeName)
+              || ((null != attributeName)
+                  && attributeName.equals(entry.m_attribute)))
+        return entry;
+    }
+
+    return null;
+  }
+
+  /**
+   * Get the statistics for an attribute of a stylesheet element,
+   * creating them if needed.
+   *
+   * @param elem The stylesheet element.
+   * @param attributeName The attribute, or null for a template.
+   *
+   * @return The statistics.
+   */
+  private Entry getEntry(ElemTemplateElement elem, String attributeName)
+  {
+
+    int uid = elem.getUid();
+    boolean indexed = (uid >= 0);
+    Entry first = null;
+
+    if (indexed)
+    {
+      if (uid >= m_entries.length)
+      {
+        Entry[] entries = new Entry[Math.max(uid + 1, m_entries.length * 2)];
+
+        System.arraycopy(m_entries, 0, entries, 0, m_entries.length);
+
+        m_entries = entries;
+      }
+
+      first = m_entries[uid];
+
+      // The uid is taken by an element of another stylesheet.
+      if ((null != first) && (first.m_element != elem))
+        indexed = false;
+    }
+
+    if (!indexed)
+      first = (Entry) m_otherEntries.get(elem);
+
+    for (Entry entry = first; null != entry; entry = entry.m_next)
+    {
+      if ((entry.m_attribute == attributeName)
+              || ((null != attributeName)
+                  && attributeName.equals(entry.m_attribute)))
+        return entry;
+    }
+
+    Entry entry = new Entry(elem, attributeName);
+
+    entry.m_next = first;
+
+    if (indexed)
+      m_entries[uid] = entry;
+    else
+      m_otherEntries.put(elem, entry);
+
+    return entry;
+  }
+
+  /**
+   * Write the statistics as a JSON object, with the members
+   * "sampleInterval", "templates", "selections", "modes",
+   * "resultTreeFragments" and "dtms".  Times are in milliseconds.
+   *
+   * @param w The writer to write to.
+   *
+   * @throws IOException
+   */
+  public void writeJSON(Writer w) throws IOException
+  {
+
+    Vector entries = new Vector();
+
+    for (int i = 0; i < m_entries.length; i++)
+    {
+      for (Entry entry = m_entries[i]; null != entry; entry = entry.m_next)
+      {
+        entries.addElement(entry);
+      }
+    }
+
+    for (Enumeration e = m_otherEntries.elements(); e.hasMoreElements(); )
+    {
+      for (Entry entry = (Entry) e.nextElement(); null != entry;
+              entry = entry.m_next)
+      {
+        entries.addElement(entry);
+      }
+    }
+
+    int n = entries.size();
+
+    w.write("{\n  \"sampleInterval\": " + m_sampleInterval + ",\n");
+    w.write("  \"templates\": [");
+
+    boolean first = true;
+
+    for (int i = 0; i < n; i++)
+    {
+      Entry entry = (Entry) entries.elementAt(i);
+
+      if ((null != entry.m_attribute)
+              ||!(entry.m_element instanceof ElemTemplate))
+        continue;
+
+      ElemTemplate template = (ElemTemplate) entry.m_element;
+      XPath match = template.getMatch();
+
+      w.write(first ? "\n    {" : ",\n    {");
+      w.write("\"match\": ");
+      writeString(w, (null == match) ? null : match.getPatternString());
+      w.write(", \"name\": ");
+      writeString(w, (null == template.getName())
+                     ? null : template.getName().toString());
+      w.write(", \"mode\": ");
+      writeString(w, (null == template.getMode())
+                     ? null : template.getMode().toString());
+      writeLocation(w, template);
+      w.write(", \"calls\": " + entry.m_count);
+      w.write(", \"inclusiveMillis\": " + entry.m_time);
+      w.write(", \"exclusiveMillis\": " + entry.m_exclusive + "}");
+
+      first = false;
+    }
+
+    w.write(first ? "],\n" : "\n  ],\n");
+    w.write("  \"selections\": [");
+
+    first = true;
+
+    for (int i = 0; i < n; i++)
+    {
+      Entry entry = (Entry) entries.elementAt(i);
+
+      if (null == entry.m_attribute)
+        continue;
+
+      w.write(first ? "\n    {" : ",\n    {");
+      w.write("\"element\": ");
+      writeString(w, entry.m_element.getNodeName());
+      w.write(", \"attribute\": ");
+      writeString(w, entry.m_attribute);
+      w.write(", \"expression\": ");
+      writeString(w, entry.m_expression);
+      writeLocation(w, entry.m_element);
+      w.write(", \"hits\": " + entry.m_count);
+      w.write(", \"millis\": " + entry.m_time + "}");
+
+      first = false;
+    }
+
+    w.write(first ? "],\n" : "\n  ],\n");
+    w.write("  \"modes\": [");
+
+    first = true;
+
+    for (Enumeration e = m_modes.keys(); e.hasMoreElements(); )
+    {
+      Object mode = e.nextElement();
+
+      w.write(first ? "\n    {" : ",\n    {");
+      w.write("\"mode\": ");
+      writeString(w, mode.toString());
+      w.write(", \"nodes\": " + ((int[]) m_modes.get(mode))[0] + "}");
+
+      first = false;
+    }
+
+    w.write(first ? "],\n" : "\n  ],\n");
+    w.write("  \"resultTreeFragments\": " + m_rtfCount + ",\n");
+    w.write("  \"dtms\": " + m_dtmCount + "\n}\n");
+    w.flush();
+  }
+
+  /**
+   * Write the "systemId" and "line" members for a stylesheet element.
+   *
+   * @param w The writer to write to.
+   * @param elem The stylesheet element.
+   *
+   * @throws IOException
+   */
+  private void writeLocation(Writer w, ElemTemplateElement elem)
+          throws IOException
+  {
+
+    w.write(", \"systemId\": ");
+    writeString(w, elem.getSystemId());
+    w.write(", \"line\": " + elem.getLineNumber());
+  }
+
+  /**
+   * Write a JSON string, or null.
+   *
+   * @param w The writer to write to.
+   * @param s The string, may be null.
+   *
+   * @throws IOException
+   */
+  private void writeString(Writer w, String s) throws IOException
+  {
+
+    if (null == s)
+    {
+      w.write("null");
+
+      return;
+    }
+
+    w.write('"');
+
+    int n = s.length();
+
+    for (int i = 0; i < n; i++)
+    {
+      char c = s.charAt(i);
+
+      switch (c)
+      {
+      case '"' :
+        w.write("\\\"");
+        break;
+      case '\\' :
+        w.write("\\\\");
+        break;
+      case '\n' :
+        w.write("\\n");
+        break;
+      case '\r' :
+        w.write("\\r");
+        break;
+      case '\t' :
+        w.write("\\t");
+        break;
+      default :
+        if (c < 0x20)
+        {
+          String hex = Integer.toHexString(c);
+
+          w.write("\\u0000".substring(0, 6 - hex.length()));
+          w.write(hex);
+        }
+        else
+          w.write(c);
+      }
+    }
+
+    w.write('"');
+  }
+
+  /**
+   * The statistics for a template, or for a selection made by an
+   * attribute of a stylesheet element.
+   */
+  private static final class Entry
+  {
+
+    /**
+     * Construct the statistics for an attribute of an element.
+     *
+     * @param element The stylesheet element.
+     * @param attribute The attribute, or null for a template.
+     */
+    Entry(ElemTemplateElement element, String attribute)
+    {
+      m_element = element;
+      m_attribute = attribute;
+    }
+
+    /** The stylesheet element. */
+    final ElemTemplateElement m_element;
+
+    /** The attribute, or null for a template. */
+    final String m_attribute;
+
+    /** The selection expression, if known. */
+    String m_expression;
+
+    /** The number of calls or hits. */
+    int m_count;
+
+    /** The inclusive time of a template, or the time of a selection. */
+    long m_time;
+
+    /** The exclusive time of a template. */
+    long m_exclusive;
+
+    /** The number of activations of a template under way. */
+    int m_active;
+
+    /** The statistics for the next attribute of the same element. */
+    Entry m_next;
+  }
+}
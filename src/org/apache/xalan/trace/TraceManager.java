@@ -61,9 +61,14 @@ import java.util.TooManyListenersException;
 
 import org.w3c.dom.Node;
 
+import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.DTMManager;
+import org.apache.xml.dtm.ref.DTMManagerDefault;
 import org.apache.xml.utils.QName;
+import org.apache.xalan.templates.ElemTemplate;
 import org.apache.xalan.templates.ElemTemplateElement;
 import org.apache.xalan.transformer.TransformerImpl;
+import org.apache.xpath.objects.XNodeSet;
 import org.apache.xpath.objects.XObject;
 import org.apache.xpath.XPath;
 
@@ -124,6 +129,40 @@ public class TraceManager
     }
   }
 
+  /**
+   * The profiler that is told about templates and selections,
+   * if any.
+   */
+  private StylesheetProfiler m_profiler = null;
+
+  /**
+   * Set the profiler that is told about the templates and the
+   * selections of the transformation.  The profiler is called
+   * directly, before any event object is built, so it can be
+   * attached without paying for trace events.  Only the trace calls
+   * of this manager's transformer are switched on; other transformers
+   * in the virtual machine are not affected.
+   *
+   * @param profiler The profiler, or null to turn profiling off.
+   */
+  public void setProfiler(StylesheetProfiler profiler)
+  {
+
+    m_profiler = profiler;
+
+    m_transformer.setDebug(null != profiler);
+  }
+
+  /**
+   * Get the profiler that was set with setProfiler.
+   *
+   * @return The profiler, or null.
+   */
+  public StylesheetProfiler getProfiler()
+  {
+    return m_profiler;
+  }
+
   /**
    * Fire a generate event.
    *
@@ -165,15 +204,109 @@ public class TraceManager
   public void fireTraceEvent(ElemTemplateElement styleNode)
   {
 
+    if (null != m_profiler)
+    {
+      if (styleNode instanceof ElemTemplate)
+        m_profiler.templateStart((ElemTemplate) styleNode, false, null);
+      else
+        m_profiler.element(styleNode);
+    }
+
+    if (hasTraceListeners())
+      fireTraceEvent(createTracerEvent(styleNode, null));
+  }
+
+  /**
+   * Fire a trace event for a template rule that is applied to
+   * the current node.
+   *
+   * @param template The template rule.
+   * @param mode The current mode, may be null.
+   */
+  public void fireTraceEvent(ElemTemplate template, QName mode)
+  {
+
+    if (null != m_profiler)
+      m_profiler.templateStart(template, true, mode);
+
     if (hasTraceListeners())
+      fireTraceEvent(createTracerEvent(template, mode));
+  }
+
+  /**
+   * Create a trace event for the current source node.
+   *
+   * @param styleNode Stylesheet template node
+   * @param mode Template mode, may be null
+   *
+   * @return A new trace event.
+   */
+  private TracerEvent createTracerEvent(ElemTemplateElement styleNode,
+                                        QName mode)
+  {
+
+    int sourceNode = m_transformer.getXPathContext().getCurrentNode();
+    Node source = m_transformer.getXPathContext().getDTM(
+      sourceNode).getNode(sourceNode);
+
+    return new TracerEvent(m_transformer, source, mode, styleNode);
+  }
+
+  /**
+   * Fire an end trace event, when the instantiation of a template
+   * has ended.
+   *
+   * @param styleNode Stylesheet template node
+   */
+  public void fireTraceEndEvent(ElemTemplateElement styleNode)
+  {
+
+    if (null != m_profiler && styleNode instanceof ElemTemplate)
     {
-      int sourceNode = m_transformer.getXPathContext().getCurrentNode();
-      Node source = m_transformer.getXPathContext().getDTM(
-        sourceNode).getNode(sourceNode);
+      if (0 == m_profiler.templateEnd((ElemTemplate) styleNode))
+      {
+        DTMManager mgr = m_transformer.getXPathContext().getDTMManager();
 
-      fireTraceEvent(new TracerEvent(m_transformer, source, null,  /*sourceNode, mode,*/
-                                     styleNode));
+        if (mgr instanceof DTMManagerDefault)
+          m_profiler.countDTMs(mgr, ((DTMManagerDefault) mgr).getDTMCount());
+      }
     }
+
+    if (hasTraceListeners())
+      fireTraceEndEvent(createTracerEvent(styleNode, null));
+  }
+
+  /**
+   * Fire an end trace event.
+   *
+   * @param te Trace event to fire
+   */
+  public void fireTraceEndEvent(TracerEvent te)
+  {
+
+    if (hasTraceListeners())
+    {
+      int nListeners = m_traceListeners.size();
+
+      for (int i = 0; i < nListeners; i++)
+      {
+        TraceListener tl = (TraceListener) m_traceListeners.elementAt(i);
+
+        if(tl instanceof TraceListenerEx2)
+          ((TraceListenerEx2)tl).traceEnd(te);
+      }
+    }
+  }
+
+  /**
+   * Tell the profiler, if any, that a result tree fragment
+   * has been created.
+   */
+  public void fireResultTreeFragmentEvent()
+  {
+
+    if (null != m_profiler)
+      m_profiler.resultTreeFragment();
   }
 
   /**
@@ -214,6 +347,9 @@ public class TraceManager
             throws javax.xml.transform.TransformerException
   {
 
+    if (null != m_profiler)
+      m_profiler.selected(styleNode, attributeName, xpath);
+
     if (hasTraceListeners())
     {
       Node source = m_transformer.getXPathContext().getDTM(
@@ -224,6 +360,38 @@ public class TraceManager
     }
   }
   
+  /**
+   * Fire a selection event for a node-set selection.  The iterator is
+   * only wrapped in an XNodeSet if there are listeners to receive it.
+   *
+   * @param sourceNode Current source node
+   * @param styleNode node in the style tree reference for the event.
+   * @param attributeName The attribute name from which the selection is made.
+   * @param xpath The XPath that executed the selection.
+   * @param selection The selected nodes.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public void fireSelectedEvent(
+          int sourceNode, ElemTemplateElement styleNode, String attributeName, 
+          XPath xpath, DTMIterator selection)
+            throws javax.xml.transform.TransformerException
+  {
+
+    if (null != m_profiler)
+      m_profiler.selected(styleNode, attributeName, xpath);
+
+    if (hasTraceListeners())
+    {
+      Node source = m_transformer.getXPathContext().getDTM(
+        sourceNode).getNode(sourceNode);
+
+      fireSelectedEvent(new SelectionEvent(m_transformer, source, styleNode,
+                                           attributeName, xpath,
+                                           new XNodeSet(selection)));
+    }
+  }
+
   /**
    * Fire a selection event.
    *
@@ -250,6 +418,35 @@ public class TraceManager
                                            attributeName, xpath, selection));
     }
   }
+
+  /**
+   * Fire a selection end event for a node-set selection.  The iterator
+   * is only wrapped in an XNodeSet if there are listeners to receive it.
+   *
+   * @param sourceNode Current source node
+   * @param styleNode node in the style tree reference for the event.
+   * @param attributeName The attribute name from which the selection is made.
+   * @param xpath The XPath that executed the selection.
+   * @param selection The selected nodes.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public void fireSelectedEndEvent(
+          int sourceNode, ElemTemplateElement styleNode, String attributeName, 
+          XPath xpath, DTMIterator selection)
+            throws javax.xml.transform.TransformerException
+  {
+
+    if (hasTraceListeners())
+    {
+      Node source = m_transformer.getXPathContext().getDTM(
+        sourceNode).getNode(sourceNode);
+
+      fireSelectedEndEvent(new EndSelectionEvent(m_transformer, source, styleNode,
+                                           attributeName, xpath,
+                                           new XNodeSet(selection)));
+    }
+  }
   
   /**
    * Fire a selection event.
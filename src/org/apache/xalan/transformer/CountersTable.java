@@ -61,6 +61,8 @@ import java.util.Vector;
 
 //import org.w3c.dom.Node;
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.ref.DTMDefaultBase;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2RTFDTM;
 
 import javax.xml.transform.TransformerException;
 
@@ -144,6 +146,73 @@ public class CountersTable extends Hashtable
     }
   }
 
+  /**
+   * Numbering indexes, keyed by ElemNumber objects, each of which
+   * has a chain of NumberIndex objects, one per count pattern and tree.
+   */
+  transient private Hashtable m_numberIndexes;
+
+  /**
+   * Get the numbering index for the tree that holds the given node,
+   * building it the first time the xsl:number element counts a node
+   * in that tree.
+   *
+   * @param support The XPath context to use  
+   * @param numberElem The given xsl:number element.
+   * @param target The node to count.
+   * 
+   * @return The numbering index, or null if the node can not be
+   * counted with an index.
+   *
+   * @throws TransformerException
+   */
+  NumberIndex getNumberIndex(
+          XPathContext support, ElemNumber numberElem, int target)
+            throws TransformerException
+  {
+
+    DTM dtm = support.getDTM(target);
+
+    // Result tree fragments reuse their node identities.
+    if (!(dtm instanceof DTMDefaultBase) || (dtm instanceof SAX2RTFDTM))
+      return null;
+
+    XPath countPattern = numberElem.getCountMatchPattern(support, target);
+
+    if ((null == countPattern) || !NumberIndex.isIndexable(countPattern)
+            || !NumberIndex.isIndexable(numberElem.getFrom()))
+      return null;
+
+    int root = target;
+
+    for (int parent = dtm.getParent(root); DTM.NULL != parent;
+            parent = dtm.getParent(parent))
+    {
+      root = parent;
+    }
+
+    if (null == m_numberIndexes)
+      m_numberIndexes = new Hashtable();
+
+    NumberIndex first = (NumberIndex) m_numberIndexes.get(numberElem);
+
+    for (NumberIndex index = first; null != index; index = index.m_next)
+    {
+      if ((index.m_countPattern == countPattern) && (index.m_dtm == dtm)
+              && (index.m_root == root))
+        return index;
+    }
+
+    NumberIndex index = new NumberIndex(support, numberElem, countPattern,
+                                        dtm, root);
+
+    index.m_next = first;
+
+    m_numberIndexes.put(numberElem, index);
+
+    return index;
+  }
+
   // For diagnostics
 
   /** Number of counters created so far          */
@@ -175,6 +244,19 @@ public class CountersTable extends Hashtable
 
     if (DTM.NULL != target)
     {
+      if (numberElem.getStylesheetRoot().getNumberIndex())
+      {
+        NumberIndex index = getNumberIndex(support, numberElem, target);
+
+        if (null != index)
+        {
+          count = index.getOrdinal(target);
+
+          if (count > 0)
+            return count;
+        }
+      }
+
       for (int i = 0; i < nCounters; i++)
       {
         Counter counter = (Counter) counters.elementAt(i);
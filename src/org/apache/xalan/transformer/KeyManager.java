@@ -56,13 +56,14 @@
  */
 package org.apache.xalan.transformer;
 
+import java.util.Hashtable;
 import java.util.Vector;
 
-//import org.w3c.dom.Node;
-//import org.w3c.dom.NodeList;
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.ref.DTMDefaultBase;
 
 import org.apache.xalan.templates.ElemTemplateElement;
+import org.apache.xalan.templates.KeyDeclaration;
 import org.apache.xml.utils.QName;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.XMLString;
@@ -71,15 +72,84 @@ import org.apache.xpath.axes.LocPathIterator;
 
 /**
  * This class manages the key tables.
+ *
+ * <p>A key table is identified by the stylesheet's set of key
+ * declarations, the key name and the document.  Tables for documents in
+ * a DTMDefaultBase are attached to the DTM, so that every transformation
+ * that uses the same stylesheet on the same tree shares them, unless a
+ * declaration of the key is not shareable (see
+ * KeyDeclaration.isShareable).  Those tables, and tables for other DTMs,
+ * are kept here, for the life of the transformation.</p>
  */
 public class KeyManager
 {
 
   /**
-   * Table of tables of element keys.
+   * Table of key tables that could not be attached to their DTM, keyed
+   * by TableKey.
    * @see org.apache.xalan.transformer.KeyTable
    */
-  private transient Vector m_key_tables = null;
+  private transient Hashtable m_key_tables = null;
+
+  /**
+   * The identity of a key table.
+   */
+  private static final class TableKey
+  {
+
+    /** The stylesheet's composed key declarations, compared by identity. */
+    private final Vector m_keyDeclarations;
+
+    /** The key name. */
+    private final QName m_name;
+
+    /** The document node. */
+    private final int m_doc;
+
+    /**
+     * Create a TableKey.
+     *
+     * @param keyDeclarations The stylesheet's composed key declarations.
+     * @param name The key name.
+     * @param doc The document node.
+     */
+    TableKey(Vector keyDeclarations, QName name, int doc)
+    {
+      m_keyDeclarations = keyDeclarations;
+      m_name = name;
+      m_doc = doc;
+    }
+
+    /**
+     * Tell if two keys identify the same table.
+     *
+     * @param obj The other key.
+     *
+     * @return true if the keys are equal.
+     */
+    public boolean equals(Object obj)
+    {
+
+      if (!(obj instanceof TableKey))
+        return false;
+
+      TableKey other = (TableKey) obj;
+
+      return m_doc == other.m_doc
+             && m_keyDeclarations == other.m_keyDeclarations
+             && m_name.equals(other.m_name);
+    }
+
+    /**
+     * Get the hash code for this key.
+     *
+     * @return The hash code.
+     */
+    public int hashCode()
+    {
+      return m_doc ^ m_name.hashCode();
+    }
+  }
 
   /**
    * Given a valid element key, return the corresponding node list.
@@ -99,57 +169,125 @@ public class KeyManager
             throws javax.xml.transform.TransformerException
   {
 
-    LocPathIterator nl = null;
     ElemTemplateElement template = (ElemTemplateElement) nscontext;  // yuck -sb
 
-    if ((null != template)
-            && null != template.getStylesheetRoot().getKeysComposed())
+    if ((null == template)
+            || null == template.getStylesheetRoot().getKeysComposed())
+      return null;
+
+    KeyTable kt = getKeyTable(xctxt, doc, name,
+                              template.getStylesheetRoot().getKeysComposed());
+
+    return kt.getNodeSetDTMByKey(ref, xctxt, nscontext);
+  }
+
+  /**
+   * Get the key table for a key name and document, building it if no
+   * transformation has built it yet.
+   *
+   * @param xctxt The XPath runtime state
+   * @param doc The document node
+   * @param name The key name
+   * @param keyDeclarations The stylesheet's composed key declarations.
+   *
+   * @return The key table, which must not be modified.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public KeyTable getKeyTable(
+          XPathContext xctxt, int doc, QName name, Vector keyDeclarations)
+            throws javax.xml.transform.TransformerException
+  {
+
+    TableKey key = new TableKey(keyDeclarations, name, doc);
+    DTM dtm = xctxt.getDTM(doc);
+
+    if ((dtm instanceof DTMDefaultBase)
+            && isShareable(name, keyDeclarations))
     {
-      boolean foundDoc = false;
+      DTMDefaultBase base = (DTMDefaultBase) dtm;
+      KeyTable kt = (KeyTable) base.getDerivedTable(key);
 
-      if (null == m_key_tables)
+      if (null == kt)
       {
-        m_key_tables = new Vector(4);
+        kt = (KeyTable) base.putDerivedTable(
+          key, new KeyTable(doc, name, keyDeclarations, xctxt));
       }
-      else
-      {
-        int nKeyTables = m_key_tables.size();
 
-        for (int i = 0; i < nKeyTables; i++)
-        {
-          KeyTable kt = (KeyTable) m_key_tables.elementAt(i);
+      return kt;
+    }
 
-          if (kt.getKeyTableName().equals(name) && doc == kt.getDocKey())
-          {
-            nl = kt.getNodeSetDTMByKey(name, ref);
+    if (null == m_key_tables)
+      m_key_tables = new Hashtable();
 
-            if (nl != null)
-            {
-              foundDoc = true;
+    KeyTable kt = (KeyTable) m_key_tables.get(key);
 
-              break;
-            }
-          }
-        }
-      }
+    if (null == kt)
+    {
+      kt = new KeyTable(doc, name, keyDeclarations, xctxt);
 
-      if ((null == nl) &&!foundDoc /* && m_needToBuildKeysTable */)
-      {
-        KeyTable kt =
-          new KeyTable(doc, nscontext, name,
-                       template.getStylesheetRoot().getKeysComposed(),
-                       xctxt);
-
-        m_key_tables.addElement(kt);
-
-        if (doc == kt.getDocKey())
-        {
-          foundDoc = true;
-          nl = kt.getNodeSetDTMByKey(name, ref);
-        }
-      }
+      m_key_tables.put(key, kt);
+    }
+
+    return kt;
+  }
+
+  /**
+   * Tell if every declaration of a key name is shareable, so that its
+   * tables may be attached to the document's DTM.
+   *
+   * @param name The key name
+   * @param keyDeclarations The stylesheet's composed key declarations.
+   *
+   * @return true if the key's tables may be shared.
+   */
+  private static boolean isShareable(QName name, Vector keyDeclarations)
+  {
+
+    int nDeclarations = keyDeclarations.size();
+
+    for (int i = 0; i < nDeclarations; i++)
+    {
+      KeyDeclaration kd = (KeyDeclaration) keyDeclarations.elementAt(i);
+
+      if (name.equals(kd.getName()) && !kd.isShareable())
+        return false;
     }
 
-    return nl;
+    return true;
+  }
+
+  /**
+   * Build the tables for every key a stylesheet declares on a document
+   * ahead of time, rather than on the first key() call.  When the
+   * document's DTM is kept for later transformations (see
+   * TransformerImpl.transform(Source, boolean)), the tables of
+   * shareable keys are kept with it.  Like any other use of an
+   * XPathContext, this must be done by the thread that owns the
+   * context, and a key whose 'use' expression refers to variables can
+   * only be built while the transformation is running.
+   *
+   * @param xctxt The XPath runtime state
+   * @param doc The document node
+   * @param keyDeclarations The stylesheet's composed key declarations.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public void buildKeyTables(
+          XPathContext xctxt, int doc, Vector keyDeclarations)
+            throws javax.xml.transform.TransformerException
+  {
+
+    if (null == keyDeclarations)
+      return;
+
+    int nDeclarations = keyDeclarations.size();
+
+    for (int i = 0; i < nDeclarations; i++)
+    {
+      KeyDeclaration kd = (KeyDeclaration) keyDeclarations.elementAt(i);
+
+      getKeyTable(xctxt, doc, kd.getName(), keyDeclarations);
+    }
   }
 }
@@ -56,26 +56,20 @@
  */
 package org.apache.xalan.transformer;
 
-import java.util.Vector;
-
 import org.apache.xpath.axes.LocPathIterator;
+import org.apache.xpath.XPathContext;
+import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.QName;
 import org.apache.xml.utils.XMLString;
-import org.apache.xalan.templates.KeyDeclaration;
-import org.apache.xpath.NodeSetDTM;
 
-//import org.w3c.dom.Node;
-//import org.w3c.dom.DOMException;
-//import org.w3c.dom.traversal.NodeIterator;
 import org.apache.xml.dtm.DTM;
-import org.apache.xml.dtm.DTMIterator;
 
 /**
  * <meta name="usage" content="internal"/>
  * This class implements an optimized iterator for 
- * "key()" patterns. It uses a KeyIterator to walk the 
- * source tree and incrementally build a list of nodes that match
- * a given key name, match pattern and value.  
+ * "key()" patterns.  It returns the nodes a KeyTable has indexed under
+ * one value.  The nodes are shared with the table and are never
+ * modified, so creating and cloning these iterators is cheap.
  */
 public class KeyRefIterator extends LocPathIterator
 {
@@ -88,9 +82,8 @@ public class KeyRefIterator extends LocPathIterator
    *  @serial         */
   private final XMLString m_lookupKey;  
   
-  /** Main Key iterator for this iterator.
-   *  @serial    */
-  private final KeyIterator m_ki;    
+  /** The nodes to return, owned by the KeyTable.  */
+  private final KeyTable.NodeRun m_run;
   
   /**
    * Get key name
@@ -102,25 +95,26 @@ public class KeyRefIterator extends LocPathIterator
   {
     return m_name;
   }
-  
-  
 
   /**
    * Constructor KeyRefIterator
    *
    *
+   * @param name The key name
    * @param ref Key value to match
-   * @param ki The main key iterator used to walk the source tree 
+   * @param run The nodes indexed under the key value
+   * @param xctxt The XPath runtime state
+   * @param nscontext The prefix resolver for the execution context
    */
-  public KeyRefIterator(XMLString ref, KeyIterator ki)
+  KeyRefIterator(QName name, XMLString ref, KeyTable.NodeRun run,
+                 XPathContext xctxt, PrefixResolver nscontext)
   {
 
-    super(ki.getPrefixResolver());
-    setShouldCacheNodes(true);
-    m_ki = ki;
-    m_name = ki.getName();
+    super(nscontext);
+    m_name = name;
     m_lookupKey = ref;
-    this.m_execContext = ki.getXPathContext();
+    m_run = run;
+    this.m_execContext = xctxt;
   }
 
   /**
@@ -134,87 +128,25 @@ public class KeyRefIterator extends LocPathIterator
   public int nextNode()
   {
 
-   if (m_foundLast)
+    if (m_foundLast)
       return DTM.NULL;
-    
-    // If the cache is on, and the node has already been found, then 
-    // just return from the list.
-    NodeSetDTM m_cachedNodes = getCachedNodes();
-    
-    // We are not using the NodeSetDTM methods getCurrentPos() and nextNode()
-    // in this case because the nodeset is not cloned and therefore
-    // the positions it indicates may not be associated with the 
-    // current iterator.
-    if ((null != m_cachedNodes)
-            && (m_next < m_cachedNodes.size()))        
-    {
-      int next = m_cachedNodes.elementAt(m_next); 
-      this.setCurrentPos(++m_next); 
-      m_lastFetched = next;
-      
-      return next;
-    }    
 
-    int next = DTM.NULL;       
-    if ( m_ki.getLookForMoreNodes()) 
-    {
-      ((KeyWalker)m_ki.getFirstWalker()).m_lookupKey = m_lookupKey;
-      next = m_ki.nextNode();        
-    }
-    
-    if (DTM.NULL != next)
-    {  
-      m_lastFetched = next;
-      this.setCurrentPos(++m_next);
-      return next;
-    }
-    else
-      m_foundLast = true;                      
-    
-    m_lastFetched = DTM.NULL;
-    return DTM.NULL;
+    if (m_next < m_run.m_size)
+      return returnNextNode(m_run.m_nodes[m_next]);
+
+    return returnNextNode(DTM.NULL);
   }
-  
+
   /**
-   * Get a cloned LocPathIterator that holds the same 
-   * position as this iterator.
+   * Get the index of the last node that can be itterated to.
    *
-   * @return A clone of this iterator that holds the same node position.
+   * @param xctxt XPath runtime context.
    *
-   * @throws CloneNotSupportedException 
-   */
-  public Object clone() throws CloneNotSupportedException
-  {
-    // I wonder if we really want to clone the second time.  Myriam review.
-    KeyRefIterator clone = (KeyRefIterator)super.clone();
-    // clone.m_ki = (KeyIterator)m_ki.clone();
-
-    return clone;
-  }
-  
-//  /**
-//   * Get a cloned Iterator that is reset to the beginning 
-//   * of the query.
-//   *
-//   * @return A cloned NodeIterator set of the start of the query.
-//   *
-//   * @throws CloneNotSupportedException
-//   */
-//  public NodeIterator cloneWithReset() throws CloneNotSupportedException
-//  {
-//    KeyRefIterator clone = (KeyRefIterator)super.cloneWithReset();
-//
-//    return clone;
-//  }
-  
-  /**
-   * Reset the iterator.
+   * @return the number of nodes indexed under the key value.
    */
-  public void reset()
+  public int getLastPos(XPathContext xctxt)
   {
-    super.reset();
-    // setShouldCacheNodes(true);
-    setCurrentPos(0);
+    return m_run.m_size;
   }
   
   /**
@@ -229,22 +161,5 @@ public class KeyRefIterator extends LocPathIterator
     // I don't think we want to detach at all for this iterator.
     // Myriam needs to review.  -sb.
   }
-
-  
-  /**
-   * Add a node matching this ref to the cached nodes for this iterator 
-   *
-   *
-   * @param node Node to add to cached nodes
-   */
-  public void addNode(int node) 
-  {
-    NodeSetDTM m_cachedNodes = getCachedNodes();
-    if (null != m_cachedNodes)
-    {
-      if(!m_cachedNodes.contains(node))
-        m_cachedNodes.addElement(node);
-    }
-  }  
        
 }
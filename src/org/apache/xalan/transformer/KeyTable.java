@@ -56,36 +56,35 @@
  */
 package org.apache.xalan.transformer;
 
-//import org.w3c.dom.Element;
-//import org.w3c.dom.NamedNodeMap;
-//import org.w3c.dom.Node;
-//import org.w3c.dom.NodeList;
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMAxisTraverser;
+import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.Axis;
 
 import java.util.Hashtable;
 import java.util.Vector;
-import java.util.Enumeration;
 
-import org.apache.xpath.NodeSetDTM;
+import javax.xml.transform.TransformerException;
+
 import org.apache.xpath.objects.XObject;
+import org.apache.xpath.XPath;
 import org.apache.xpath.XPathContext;
-import org.apache.xpath.XPathContext;
-//import org.apache.xpath.DOMHelper;
 import org.apache.xml.utils.QName;
 import org.apache.xalan.templates.KeyDeclaration;
-import org.apache.xpath.XPathContext;
+import org.apache.xalan.res.XSLMessages;
+import org.apache.xalan.res.XSLTErrorResources;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.XMLString;
 import org.apache.xpath.axes.LocPathIterator;
 
-// import org.apache.xalan.dtm.*;
-
 /**
  * <meta name="usage" content="advanced"/>
- * Table of element keys, keyed by document node.  An instance of this
- * class is keyed by a Document node that should be matched with the
- * root of the current context.  It contains a table of name mappings
- * to tables that contain mappings of identifier values to nodes.
+ * Table of the nodes of one document that an xsl:key indexes, keyed by
+ * the value the key's 'use' expression gives them.  The table is built
+ * in a single walk over the document when it is created, and is never
+ * modified afterwards, so it can be shared by any number of
+ * transformations using the same key declarations on the same tree.
+ * See KeyManager for how tables are found and attached to the DTM.
  */
 public class KeyTable
 {
@@ -94,7 +93,7 @@ public class KeyTable
    * The document key.  This table should only be used with contexts
    * whose Document roots match this key.
    */
-  private int m_docKey;
+  private final int m_docKey;
 
   /**
    * Get the document root matching this key.  
@@ -107,113 +106,177 @@ public class KeyTable
     return m_docKey;
   }
 
-  /** 
-   * The main iterator that will walk through the source  
-   * tree for this key.
+  /** The key name.  */
+  private final QName m_name;
+
+  /**
+   * Hashtable of the nodes indexed under each key value.  It is keyed
+   * by the value as a String, with a value of NodeRun.
    */
-  private KeyIterator m_keyIter;
-  
+  private final Hashtable m_refsTable = new Hashtable();
+
   /**
-   * Hashtable of keys.
-   * The table is:
-   * a) keyed by key name,
-   * b) with a value that is a hashtable keyed by key values 
-   * with at value of KeyRefIterator(cloned).
+   * The nodes indexed under one key value, in document order.
    */
-  private Hashtable m_defsTable;
+  static final class NodeRun
+  {
+
+    /** The node handles.  Only the first m_size are in use. */
+    int[] m_nodes = new int[2];
+
+    /** The number of nodes. */
+    int m_size = 0;
+
+    /**
+     * Append a node, unless it is the last one added.
+     *
+     * @param node The node handle.
+     */
+    void addNode(int node)
+    {
+
+      if (m_size > 0 && m_nodes[m_size - 1] == node)
+        return;
+
+      if (m_size == m_nodes.length)
+      {
+        int[] nodes = new int[m_size << 1];
+
+        System.arraycopy(m_nodes, 0, nodes, 0, m_size);
+
+        m_nodes = nodes;
+      }
+
+      m_nodes[m_size++] = node;
+    }
+  }
+
+  /** The run returned for values nobody uses. */
+  static final NodeRun EMPTY_RUN = new NodeRun();
 
   /**
    * Build a keys table.
    * @param doc The owner document key.
-   * @param nscontext The stylesheet's namespace context.
    * @param name The key name
    * @param keyDeclarations The stylesheet's xsl:key declarations.
-   * @param xmlLiaison The parser liaison for support of getNodeData(useNode).
+   * @param xctxt The XPath runtime state, used to evaluate the key's
+   * 'match' and 'use' expressions.
    *
    * @throws javax.xml.transform.TransformerException
    */
   public KeyTable(
-          int doc, PrefixResolver nscontext, QName name, Vector keyDeclarations, XPathContext xmlLiaison)
+          int doc, QName name, Vector keyDeclarations, XPathContext xctxt)
             throws javax.xml.transform.TransformerException
   {
 
     m_docKey = doc;
-    m_keyIter = new KeyIterator(doc, nscontext, name, keyDeclarations,
-                                xmlLiaison);
-    m_keyIter.setKeyTable(this);
-  }  
+    m_name = name;
 
-  /**
-   * Given a valid element key, return the corresponding node list.
-   * 
-   * @param The name of the key, which must match the 'name' attribute on xsl:key.
-   * @param ref The value that must match the value found by the 'match' attribute on xsl:key.
-   * @return If the name was not declared with xsl:key, this will return null,
-   * if the identifier is not found, it will return null,
-   * otherwise it will return a LocPathIterator instance.
-   */
-  public LocPathIterator getNodeSetDTMByKey(QName name, XMLString ref)
-  {
+    // Collect the declarations for this key name.  Several xsl:key
+    // elements with the same name make up a single key.
+    Vector decls = new Vector();
+    int nDeclarations = keyDeclarations.size();
+
+    for (int i = 0; i < nDeclarations; i++)
+    {
+      KeyDeclaration kd = (KeyDeclaration) keyDeclarations.elementAt(i);
 
-    KeyIterator ki;
-    KeyRefIterator kiRef;
-    Hashtable refsTable = null;
+      if (kd.getName().equals(name))
+        decls.addElement(kd);
+    }
+
+    if (decls.isEmpty())
+      throw new RuntimeException(
+        XSLMessages.createMessage(
+          XSLTErrorResources.ER_NO_XSLKEY_DECLARATION,
+          new Object[]{ name.getLocalName() }));
+
+    KeyDeclaration[] kds = new KeyDeclaration[decls.size()];
 
-    // First look for the key in the existing key names table
-    if (m_defsTable != null)
+    decls.copyInto(kds);
+
+    // Walk the document in document order, visiting the attributes of
+    // each element right after the element.
+    DTM dtm = xctxt.getDTM(doc);
+    DTMAxisTraverser traverser = dtm.getAxisTraverser(Axis.DESCENDANTORSELF);
+
+    for (int node = traverser.first(doc); DTM.NULL != node;
+         node = traverser.next(doc, node))
     {
-      refsTable = (Hashtable)m_defsTable.get(name);
-      if (refsTable != null)
+      addNode(xctxt, dtm, kds, node);
+
+      if (DTM.ELEMENT_NODE == dtm.getNodeType(node))
       {
-        Object kiObj = refsTable.get(ref);
-        if (kiObj != null)
+        for (int attr = dtm.getFirstAttribute(node); DTM.NULL != attr;
+             attr = dtm.getNextAttribute(attr))
         {
-          // An entry already exists for this key name and value.
-          // Return a clone of the node iterator found.
-          try
-          {
-            // clone with reset??
-            kiRef = (KeyRefIterator)((KeyRefIterator)kiObj).clone();
-            return kiRef;
-          }
-          catch (CloneNotSupportedException cnse)
-          {
-            ki = null;
-          }
+          addNode(xctxt, dtm, kds, attr);
         }
       }
     }
-
-    // No entry was found for this key name and value. Create one.
-    {
-      if (m_defsTable == null)
-        m_defsTable = new Hashtable();
-      if (refsTable == null)
-        refsTable = new Hashtable();
-      
-      // initialize walker only once!
-      if (m_keyIter.getFirstWalker().getRoot() == DTM.NULL)
-        m_keyIter.setLookupKey(ref);
-      else
-        ((KeyWalker)m_keyIter.getFirstWalker()).m_lookupKey = ref;
-      kiRef = new KeyRefIterator(ref, m_keyIter);
-      refsTable.put(ref, kiRef);
-      m_defsTable.put(name,refsTable);
-      return kiRef;              
-    } 
   }
 
   /**
-   * Get Key Name for this KeyTable  
+   * Index one node under every value it has for this key.
    *
+   * @param xctxt The XPath runtime state.
+   * @param dtm The DTM that holds the node.
+   * @param kds The declarations for this key name.
+   * @param node The node to index.
    *
-   * @return Key name
+   * @throws javax.xml.transform.TransformerException
    */
-  public QName getKeyTableName()
+  private void addNode(
+          XPathContext xctxt, DTM dtm, KeyDeclaration[] kds, int node)
+            throws javax.xml.transform.TransformerException
   {
-    return m_keyIter.getName();
+
+    for (int i = 0; i < kds.length; i++)
+    {
+      KeyDeclaration kd = kds[i];
+
+      // See if our node matches the given key declaration according to 
+      // the match attribute on xsl:key.
+      xctxt.pushNamespaceContext(kd);
+
+      double score;
+
+      try
+      {
+        score = kd.getMatch().getMatchScore(xctxt, node);
+      }
+      finally
+      {
+        xctxt.popNamespaceContext();
+      }
+
+      if (score == XPath.MATCH_SCORE_NONE)
+        continue;
+
+      // Query from the node, according the the select pattern in the
+      // use attribute in xsl:key.
+      XObject xuse = kd.getUse().execute(xctxt, node, kd);
+
+      if (xuse.getType() != XObject.CLASS_NODESET)
+      {
+        addRefNode(xuse.xstr(), node);
+      }
+      else
+      {
+        DTMIterator nl = xuse.iter();
+        int useNode;
+
+        while (DTM.NULL != (useNode = nl.nextNode()))
+        {
+          XMLString exprResult = xctxt.getDTM(useNode).getStringValue(useNode);
+
+          if (null != exprResult)
+            addRefNode(exprResult, node);
+        }
+      }
+    }
   }
-  
+
   /**
    * Add this node to the nodelist matching this key value. 
    * If there was no existing entry for that key value, create
@@ -222,36 +285,49 @@ public class KeyTable
    * @param ref Key ref(from key use field)
    * @param node Node matching that ref 
    */
-  void addRefNode(XMLString ref, int node)
+  private void addRefNode(XMLString ref, int node)
   {
-    KeyRefIterator kiRef = null;
-    Hashtable refsTable = null;
-    if (m_defsTable != null)
+
+    String key = ref.toString();
+    NodeRun run = (NodeRun) m_refsTable.get(key);
+
+    if (null == run)
     {
-      refsTable = (Hashtable)m_defsTable.get(getKeyTableName());
-      if (refsTable != null)
-      {
-        Object kiObj = refsTable.get(ref);
-        if (kiObj != null)
-        {          
-          kiRef = (KeyRefIterator)kiObj;            
-        }
-      }
-    }
-    if (kiRef == null)
-    {  
-      if (m_defsTable == null)
-        m_defsTable = new Hashtable();
-      if (refsTable == null)
-      {  
-        refsTable = new Hashtable();
-        m_defsTable.put(getKeyTableName(),refsTable);
-      }
-      kiRef = new KeyRefIterator(ref, m_keyIter);
-      refsTable.put(ref, kiRef);      
+      run = new NodeRun();
+
+      m_refsTable.put(key, run);
     }
-    kiRef.addNode(node); 
+
+    run.addNode(node);
+  }
+
+  /**
+   * Given a valid element key, return the corresponding node list.
+   * 
+   * @param ref The value that must match the value found by the 'match' attribute on xsl:key.
+   * @param xctxt The XPath runtime state of the caller.
+   * @param nscontext The prefix resolver for the execution context.
+   * @return A new LocPathIterator over the nodes with that value, which
+   * is empty if there are none.
+   */
+  public LocPathIterator getNodeSetDTMByKey(
+          XMLString ref, XPathContext xctxt, PrefixResolver nscontext)
+  {
+
+    NodeRun run = (NodeRun) m_refsTable.get(ref.toString());
+
+    return new KeyRefIterator(m_name, ref, (null == run) ? EMPTY_RUN : run,
+                              xctxt, nscontext);
+  }
+
+  /**
+   * Get Key Name for this KeyTable  
+   *
+   *
+   * @return Key name
+   */
+  public QName getKeyTableName()
+  {
+    return m_name;
   }
-  
-  
 }
@@ -61,23 +61,30 @@ import java.util.Vector;
 import java.text.NumberFormat;
 import java.text.CollationKey;
 
-//import org.w3c.dom.Node;
-//import org.w3c.dom.traversal.NodeIterator;
-import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
 
-import org.apache.xpath.axes.ContextNodeList;
 import org.apache.xpath.XPathContext;
-import org.apache.xpath.NodeSetDTM;
 import org.apache.xpath.objects.XObject;
-import org.apache.xpath.objects.XNodeSet;
-import org.apache.xml.utils.NodeVector;
 
 import javax.xml.transform.TransformerException;
 
 /**
  * <meta name="usage" content="internal"/>
  * This class can sort vectors of DOM nodes according to a select pattern.
+ *
+ * <p>Every sort key is evaluated exactly once per node, before any
+ * comparison is made. Numeric keys go into a <code>double[]</code>
+ * column and text keys into a <code>CollationKey[]</code> column, and
+ * the sort itself rearranges an <code>int[]</code> permutation of the
+ * node positions. It is a stable merge sort, so nodes whose keys all
+ * compare equal stay in their original (document) order.</p>
+ *
+ * <p>Above {@link #PARALLEL_THRESHOLD} nodes, and if the system
+ * property <code>org.apache.xalan.transformer.NodeSorter.threads</code>
+ * allows more than one thread, the halves of the permutation are
+ * sorted on threads obtained from the transformer's ThreadControler
+ * and then merged. Only the comparison phase runs in parallel; the
+ * keys are always evaluated on the calling thread.</p>
  */
 public class NodeSorter
 {
@@ -93,6 +100,18 @@ public class NodeSorter
    */
   NumberFormat m_formatter = NumberFormat.getNumberInstance();
 
+  /** Number of nodes at and below which runs are insertion sorted. */
+  static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** Number of nodes above which the halves of a sort may be sorted
+   * on separate threads. */
+  static final int PARALLEL_THRESHOLD = 1 << 15;
+
+  /** Maximum number of threads one sort may use, from the system
+   * property org.apache.xalan.transformer.NodeSorter.threads. The
+   * default of 1 keeps every sort on the calling thread. */
+  static final int MAX_THREADS = getMaxThreads();
+
   /**
    * Construct a NodeSorter, passing in the XSL TransformerFactory
    * so it can know how to get the node data according to
@@ -105,6 +124,31 @@ public class NodeSorter
     m_execContext = p;
   }
 
+  /**
+   * Read the thread limit from the system property
+   * org.apache.xalan.transformer.NodeSorter.threads.
+   *
+   * @return The configured limit, at least 1.
+   */
+  private static int getMaxThreads()
+  {
+
+    int threads = 1;
+
+    try
+    {
+      String prop = System.getProperty(
+        "org.apache.xalan.transformer.NodeSorter.threads");
+
+      if (null != prop)
+        threads = Integer.parseInt(prop.trim());
+    }
+    catch (SecurityException se){}
+    catch (NumberFormatException nfe){}
+
+    return (threads < 1) ? 1 : threads;
+  }
+
   /**
    * Given a vector of nodes, sort each node according to
    * the criteria in the keys.
@@ -120,488 +164,342 @@ public class NodeSorter
 
     m_keys = keys;
 
-    // QuickSort2(v, 0, v.size() - 1 );
     int n = v.getLength();
 
-    // %OPT% Change mergesort to just take a DTMIterator?
-    // We would also have to adapt DTMIterator to have the function 
-    // of NodeCompareElem.
-    
-    // Create a vector of node compare elements
-    // based on the input vector of nodes
-    Vector nodes = new Vector();
+    if (n < 2 || keys.isEmpty())
+    {
+      v.setCurrentPos(0);
+
+      return;
+    }
+
+    int[] nodes = new int[n];
 
     for (int i = 0; i < n; i++)
     {
-      NodeCompareElem elem = new NodeCompareElem(v.item(i));
+      nodes[i] = v.item(i);
+    }
+
+    SortColumns columns = new SortColumns(nodes, keys);
+    int[] order = new int[n];
 
-      nodes.addElement(elem);
+    for (int i = 0; i < n; i++)
+    {
+      order[i] = i;
     }
 
-    Vector scratchVector = new Vector();
+    int[] scratch = new int[n];
+    int depth = 0;
+
+    for (int threads = MAX_THREADS; threads > 1; threads >>= 1)
+    {
+      depth++;
+    }
 
-    mergesort(nodes, scratchVector, 0, n - 1, support);
+    columns.sort(order, scratch, 0, n, depth);
 
     // return sorted vector of nodes
     for (int i = 0; i < n; i++)
     {
-      v.setItem(((NodeCompareElem) nodes.elementAt(i)).m_node, i);
+      v.setItem(nodes[order[i]], i);
     }
-    v.setCurrentPos(0);
 
-    // old code...
-    //NodeVector scratchVector = new NodeVector(n);
-    //mergesort(v, scratchVector, 0, n - 1, support);
+    v.setCurrentPos(0);
   }
 
   /**
-   * Return the results of a compare of two nodes.
-   * TODO: Optimize compare -- cache the getStringExpr results, key by m_selectPat + hash of node.
-   *
-   * @param n1 First node to use in compare
-   * @param n2 Second node to use in compare
-   * @param kIndex Index of NodeSortKey to use for sort
-   * @param support XPath context to use
-   *
-   * @return The results of the compare of the two nodes.
-   *
-   * @throws TransformerException
+   * <meta name="usage" content="internal"/>
+   * The values of every sort key for every node, and the merge sort
+   * over them. Once built, a SortColumns is only read, so several
+   * threads may sort disjoint ranges of one permutation at once.
    */
-  int compare(
-          NodeCompareElem n1, NodeCompareElem n2, int kIndex, XPathContext support)
-            throws TransformerException
+  class SortColumns
   {
 
-    int result = 0;
-    NodeSortKey k = (NodeSortKey) m_keys.elementAt(kIndex);
+    /** Number of sort keys. */
+    final int m_keyCount;
 
-    if (k.m_treatAsNumbers)
-    {
-      double n1Num, n2Num;
+    /** Per key: true if the key is compared as a number. */
+    final boolean[] m_numeric;
 
-      if (kIndex == 0)
-      {
-        n1Num = ((Double) n1.m_key1Value).doubleValue();
-        n2Num = ((Double) n2.m_key1Value).doubleValue();
-      }
-      else if (kIndex == 1)
-      {
-        n1Num = ((Double) n1.m_key2Value).doubleValue();
-        n2Num = ((Double) n2.m_key2Value).doubleValue();
-      }
+    /** Per key: true if the key is sorted in descending order. */
+    final boolean[] m_descending;
 
-      /* Leave this in case we decide to use an array later
-      if (kIndex < maxkey)
-      {
-      double n1Num = (double)n1.m_keyValue[kIndex];
-      double n2Num = (double)n2.m_keyValue[kIndex];
-      }*/
-      else
-      {
-
-        // Get values dynamically
-        XObject r1 = k.m_selectPat.execute(m_execContext, n1.m_node,
-                                           k.m_namespaceContext);
-        XObject r2 = k.m_selectPat.execute(m_execContext, n2.m_node,
-                                           k.m_namespaceContext);
-        double d = r1.num();
-
-        // Can't use NaN for compare. They are never equal. Use zero instead.
-        // That way we can keep elements in document order. 
-        n1Num = Double.isNaN(d) ? 0.0 : d;
-        d = r2.num();
-        n2Num = Double.isNaN(d) ? 0.0 : d;
-      }
+    /** Per key: the double[] or CollationKey[] column of values,
+     * indexed by the node's position in the unsorted list. */
+    final Object[] m_values;
 
-      if ((n1Num == n2Num) && ((kIndex + 1) < m_keys.size()))
-      {
-        result = compare(n1, n2, kIndex + 1, support);
-      }
-      else
-      {
-        double diff = n1Num - n2Num;
+    /** Per key: for text keys with case-order="upper-first", the
+     * lower-cased source strings; otherwise null. */
+    final String[][] m_lowerCase;
 
-        // process order parameter 
-        result = (int) ((diff < 0.0)
-                        ? (k.m_descending ? 1 : -1)
-                        : (diff > 0.0) ? (k.m_descending ? -1 : 1) : 0);
-      }
-    }  // end treat as numbers 
-    else
+    /**
+     * Evaluate every sort key for every node.
+     *
+     * @param nodes The nodes to sort, in their original order.
+     * @param keys a vector of NodeSortKeys.
+     *
+     * @throws TransformerException
+     */
+    SortColumns(int[] nodes, Vector keys) throws TransformerException
     {
-      CollationKey n1String, n2String;
 
-      if (kIndex == 0)
-      {
-        n1String = (CollationKey) n1.m_key1Value;
-        n2String = (CollationKey) n2.m_key1Value;
-      }
-      else if (kIndex == 1)
-      {
-        n1String = (CollationKey) n1.m_key2Value;
-        n2String = (CollationKey) n2.m_key2Value;
-      }
+      int n = nodes.length;
 
-      /* Leave this in case we decide to use an array later
-      if (kIndex < maxkey)
-      {
-        String n1String = (String)n1.m_keyValue[kIndex];
-        String n2String = (String)n2.m_keyValue[kIndex];
-      }*/
-      else
+      m_keyCount = keys.size();
+      m_numeric = new boolean[m_keyCount];
+      m_descending = new boolean[m_keyCount];
+      m_values = new Object[m_keyCount];
+      m_lowerCase = new String[m_keyCount][];
+
+      for (int kIndex = 0; kIndex < m_keyCount; kIndex++)
       {
+        NodeSortKey k = (NodeSortKey) keys.elementAt(kIndex);
 
-        // Get values dynamically
-        XObject r1 = k.m_selectPat.execute(m_execContext, n1.m_node,
-                                           k.m_namespaceContext);
-        XObject r2 = k.m_selectPat.execute(m_execContext, n2.m_node,
-                                           k.m_namespaceContext);
+        m_numeric[kIndex] = k.m_treatAsNumbers;
+        m_descending[kIndex] = k.m_descending;
 
-        n1String = k.m_col.getCollationKey(r1.str());
-        n2String = k.m_col.getCollationKey(r2.str());
-      }
+        if (k.m_treatAsNumbers)
+        {
+          double[] column = new double[n];
 
-      // Use collation keys for faster compare, but note that whitespaces 
-      // etc... are treated differently from if we were comparing Strings.
-      result = n1String.compareTo(n2String);
+          for (int i = 0; i < n; i++)
+          {
+            XObject r = k.m_selectPat.execute(m_execContext, nodes[i],
+                                              k.m_namespaceContext);
+            double d = r.num();
 
-      //Process caseOrder parameter
-      if (k.m_caseOrderUpper)
-      {
-        String tempN1 = n1String.getSourceString().toLowerCase();
-        String tempN2 = n2String.getSourceString().toLowerCase();
+            // Can't use NaN for compare. They are never equal. Use zero 
+            // instead. That way we can keep elements in document order.
+            column[i] = Double.isNaN(d) ? 0.0 : d;
+          }
 
-        if (tempN1.equals(tempN2))
+          m_values[kIndex] = column;
+        }
+        else
         {
+          CollationKey[] column = new CollationKey[n];
+          String[] lower = k.m_caseOrderUpper ? new String[n] : null;
 
-          //java defaults to upper case is greater.
-          result = result == 0 ? 0 : -result;
-        }
-      }
+          for (int i = 0; i < n; i++)
+          {
+            XObject r = k.m_selectPat.execute(m_execContext, nodes[i],
+                                              k.m_namespaceContext);
 
-      //Process order parameter
-      if (k.m_descending)
-      {
-        result = -result;
-      }
-    }  //end else
+            column[i] = k.m_col.getCollationKey(r.str());
 
-    if (0 == result)
-    {
-      if ((kIndex + 1) < m_keys.size())
-      {
-        result = compare(n1, n2, kIndex + 1, support);
+            if (null != lower)
+              lower[i] = column[i].getSourceString().toLowerCase();
+          }
+
+          m_values[kIndex] = column;
+          m_lowerCase[kIndex] = lower;
+        }
       }
     }
 
-    if (0 == result)
+    /**
+     * Compare the nodes at two positions of the unsorted list on all
+     * the sort keys.
+     *
+     * @param i1 Position of the first node
+     * @param i2 Position of the second node
+     *
+     * @return Negative, zero or positive as the first node sorts
+     * before, with, or after the second.
+     */
+    int compare(int i1, int i2)
     {
 
-      // I shouldn't have to do this except that there seems to 
-      // be a glitch in the mergesort
-      // if(r1.getType() == r1.CLASS_NODESET)
-      // {
-      DTM dtm = support.getDTM(n1.m_node); // %OPT%
-      result = dtm.isNodeAfter(n1.m_node, n2.m_node) ? -1 : 1;
-
-      // }
-    }
+      for (int kIndex = 0; kIndex < m_keyCount; kIndex++)
+      {
+        int result;
 
-    return result;
-  }
+        if (m_numeric[kIndex])
+        {
+          double[] column = (double[]) m_values[kIndex];
+          double n1Num = column[i1];
+          double n2Num = column[i2];
 
-  /**
-   * This implements a standard Mergesort, as described in
-   * Robert Sedgewick's Algorithms book.  This is a better
-   * sort for our purpose than the Quicksort because it
-   * maintains the original document order of the input if
-   * the order isn't changed by the sort.
-   *
-   * @param a First vector of nodes to compare
-   * @param b Second vector of  nodes to compare 
-   * @param l Left boundary of  partition
-   * @param r Right boundary of  partition
-   * @param support XPath context to use
-   *
-   * @throws TransformerException
-   */
-  void mergesort(Vector a, Vector b, int l, int r, XPathContext support)
-          throws TransformerException
-  {
+          result = (n1Num < n2Num) ? -1 : (n1Num > n2Num) ? 1 : 0;
+        }
+        else
+        {
+          CollationKey[] column = (CollationKey[]) m_values[kIndex];
 
-    if ((r - l) > 0)
-    {
-      int m = (r + l) / 2;
+          // Use collation keys for faster compare, but note that whitespaces 
+          // etc... are treated differently from if we were comparing Strings.
+          result = column[i1].compareTo(column[i2]);
 
-      mergesort(a, b, l, m, support);
-      mergesort(a, b, m + 1, r, support);
+          //Process caseOrder parameter
+          String[] lower = m_lowerCase[kIndex];
 
-      int i, j, k;
+          if (0 != result && null != lower && lower[i1].equals(lower[i2]))
+          {
 
-      for (i = m; i >= l; i--)
-      {
+            //java defaults to upper case is greater.
+            result = -result;
+          }
+        }
 
-        // b[i] = a[i];
-        // Use insert if we need to increment vector size.
-        if (i >= b.size())
-          b.insertElementAt(a.elementAt(i), i);
-        else
-          b.setElementAt(a.elementAt(i), i);
+        if (0 != result)
+          return m_descending[kIndex] ? -result : result;
       }
 
-      i = l;
+      return 0;
+    }
+
+    /**
+     * Sort a range of the permutation. This implements a standard
+     * top-down mergesort, as described in Robert Sedgewick's
+     * Algorithms book, with short runs insertion sorted.  Mergesort
+     * rather than Quicksort because it maintains the original document
+     * order of nodes whose keys compare equal.
+     *
+     * @param a The permutation, holding positions in the unsorted list
+     * @param b Scratch space as long as <code>a</code>
+     * @param lo First index of the range
+     * @param hi One past the last index of the range
+     * @param depth Number of further levels at which the two halves may
+     * be sorted on separate threads
+     */
+    void sort(int[] a, int[] b, int lo, int hi, int depth)
+    {
 
-      for (j = (m + 1); j <= r; j++)
+      if (hi - lo <= INSERTION_SORT_THRESHOLD)
       {
+        for (int i = lo + 1; i < hi; i++)
+        {
+          int x = a[i];
+          int j = i - 1;
 
-        // b[r+m+1-j] = a[j];
-        if (r + m + 1 - j >= b.size())
-          b.insertElementAt(a.elementAt(j), r + m + 1 - j);
-        else
-          b.setElementAt(a.elementAt(j), r + m + 1 - j);
-      }
+          while (j >= lo && compare(a[j], x) > 0)
+          {
+            a[j + 1] = a[j];
+            j--;
+          }
+
+          a[j + 1] = x;
+        }
 
-      j = r;
+        return;
+      }
 
-      int compVal;
+      int m = (lo + hi) >>> 1;
 
-      for (k = l; k <= r; k++)
+      if (depth > 0 && hi - lo > PARALLEL_THRESHOLD)
       {
+        SortTask task = new SortTask(this, a, b, lo, m, depth - 1);
+        TransformerImpl.ThreadControler threads = TransformerImpl.tpool;
+        Thread worker = threads.run(task, -1);
 
-        // if(b[i] < b[j])
-        if (i == j)
-          compVal = -1;
-        else
-          compVal = compare((NodeCompareElem) b.elementAt(i),
-                            (NodeCompareElem) b.elementAt(j), 0, support);
+        sort(a, b, m, hi, depth - 1);
 
-        if (compVal < 0)
+        try
         {
-
-          // a[k]=b[i];
-          a.setElementAt(b.elementAt(i), k);
-
-          i++;
+          threads.waitThread(worker, task);
         }
-        else if (compVal > 0)
+        catch (InterruptedException ie)
         {
-
-          // a[k]=b[j]; 
-          a.setElementAt(b.elementAt(j), k);
-
-          j--;
+          throw new org.apache.xml.utils.WrappedRuntimeException(ie);
         }
-      }
-    }
-  }
-
-  /**
-   * This is a generic version of C.A.R Hoare's Quick Sort
-   * algorithm.  This will handle arrays that are already
-   * sorted, and arrays with duplicate keys.<BR>
-   *
-   * If you think of a one dimensional array as going from
-   * the lowest index on the left to the highest index on the right
-   * then the parameters to this function are lowest index or
-   * left and highest index or right.  The first time you call
-   * this function it will be with the parameters 0, a.length - 1.
-   *
-   * @param v       a vector of integers 
-   * @param lo0     left boundary of array partition
-   * @param hi0     right boundary of array partition
-   *
-   */
 
-  /*  private void QuickSort2(Vector v, int lo0, int hi0, XPathContext support)
-      throws javax.xml.transform.TransformerException,
-             java.net.MalformedURLException,
-             java.io.FileNotFoundException,
-             java.io.IOException
-    {
-      int lo = lo0;
-      int hi = hi0;
-
-      if ( hi0 > lo0)
+        Throwable error = task.m_error;
+
+        if (error instanceof Error)
+          throw (Error) error;
+        else if (error instanceof RuntimeException)
+          throw (RuntimeException) error;
+        else if (error instanceof Exception)
+          throw new org.apache.xml.utils.WrappedRuntimeException(
+            (Exception) error);
+        else if (null != error)
+          throw new RuntimeException(error.toString());
+      }
+      else
       {
-        // Arbitrarily establishing partition element as the midpoint of
-        // the array.
-        Node midNode = (Node)v.elementAt( ( lo0 + hi0 ) / 2 );
+        sort(a, b, lo, m, depth);
+        sort(a, b, m, hi, depth);
+      }
 
-        // loop through the array until indices cross
-        while( lo <= hi )
-        {
-          // find the first element that is greater than or equal to
-          // the partition element starting from the left Index.
-          while( (lo < hi0) && (compare((Node)v.elementAt(lo), midNode, 0, support) < 0) )
-          {
-            ++lo;
-          } // end while
+      // Already in order: nothing to merge.
+      if (compare(a[m - 1], a[m]) <= 0)
+        return;
 
-          // find an element that is smaller than or equal to
-          // the partition element starting from the right Index.
-          while( (hi > lo0) && (compare((Node)v.elementAt(hi), midNode, 0, support) > 0) )
-          {
-            --hi;
-          }
+      System.arraycopy(a, lo, b, lo, hi - lo);
 
-          // if the indexes have not crossed, swap
-          if( lo <= hi )
-          {
-            swap(v, lo, hi);
-            ++lo;
-            --hi;
-          }
-        }
+      int i = lo;
+      int j = m;
 
-        // If the right index has not reached the left side of array
-        // must now sort the left partition.
-        if( lo0 < hi )
-        {
-          QuickSort2( v, lo0, hi, support );
-        }
+      for (int k = lo; k < hi; k++)
+      {
 
-        // If the left index has not reached the right side of array
-        // must now sort the right partition.
-        if( lo < hi0 )
-        {
-          QuickSort2( v, lo, hi0, support );
-        }
+        // Take from the left run on ties, to keep the sort stable.
+        if (j >= hi || (i < m && compare(b[i], b[j]) <= 0))
+          a[k] = b[i++];
+        else
+          a[k] = b[j++];
       }
-    } // end QuickSort2  */
-
-//  /**
-//   * Simple function to swap two elements in
-//   * a vector.
-//   * 
-//   * @param v Vector of nodes to swap
-//   * @param i Index of first node to swap
-//   * @param i Index of second node to swap
-//   */
-//  private void swap(Vector v, int i, int j)
-//  {
-//
-//    int node = (Node) v.elementAt(i);
-//
-//    v.setElementAt(v.elementAt(j), i);
-//    v.setElementAt(node, j);
-//  }
+    }
+  }
 
   /**
    * <meta name="usage" content="internal"/>
-   * This class holds the value(s) from executing the given
-   * node against the sort key(s). 
+   * Sorts one half of a range on another thread.
    */
-  class NodeCompareElem
+  static class SortTask implements Runnable
   {
 
-    /** Current node          */
-    int m_node;
+    /** The columns to sort by. */
+    final SortColumns m_columns;
 
-    /** This maxkey value was chosen arbitrarily. We are assuming that the    
-    // maxkey + 1 keys will only hit fairly rarely and therefore, we
-    // will get the node values for those keys dynamically.
-    */
-    int maxkey = 2;
+    /** The permutation and scratch arrays. */
+    final int[] m_a, m_b;
 
-    // Keep this in case we decide to use an array. Right now
-    // using two variables is cheaper.
-    //Object[] m_KeyValue = new Object[2];
+    /** The range, and the remaining parallel depth. */
+    final int m_lo, m_hi, m_depth;
 
-    /** Value from first sort key           */
-    Object m_key1Value;
-
-    /** Value from second sort key            */
-    Object m_key2Value;
+    /**
+     * Anything thrown by the sort, to be thrown again on the thread that
+     * waits for this task.
+     */
+    Throwable m_error;
 
     /**
-     * Constructor NodeCompareElem
+     * Create a task to sort a[lo..hi).
      *
-     *
-     * @param node Current node
-     *
-     * @throws javax.xml.transform.TransformerException
+     * @param columns The columns to sort by
+     * @param a The permutation
+     * @param b Scratch space
+     * @param lo First index of the range
+     * @param hi One past the last index of the range
+     * @param depth Remaining parallel depth
      */
-    NodeCompareElem(int node) throws javax.xml.transform.TransformerException
+    SortTask(SortColumns columns, int[] a, int[] b, int lo, int hi,
+             int depth)
     {
+      m_columns = columns;
+      m_a = a;
+      m_b = b;
+      m_lo = lo;
+      m_hi = hi;
+      m_depth = depth;
+    }
 
-      boolean tryNextKey = true;
-
-      m_node = node;
+    /**
+     * Sort the range.
+     */
+    public void run()
+    {
 
-      if (!m_keys.isEmpty())
+      try
       {
-        NodeSortKey k1 = (NodeSortKey) m_keys.elementAt(0);
-        XObject r = k1.m_selectPat.execute(m_execContext, node,
-                                           k1.m_namespaceContext);
-
-        if (r == null)
-          tryNextKey = false;
-
-        double d;
-
-        if (k1.m_treatAsNumbers)
-        {
-          d = r.num();
-
-          // Can't use NaN for compare. They are never equal. Use zero instead.  
-          m_key1Value = new Double(Double.isNaN(d) ? 0.0 : d);
-        }
-        else
-        {
-          m_key1Value = k1.m_col.getCollationKey(r.str());
-        }
-
-        if (r.getType() == XObject.CLASS_NODESET)
-        {
-          // %REVIEW%
-          DTMIterator ni = (DTMIterator)r.object();
-          int current = ni.getCurrentNode();
-          if(DTM.NULL == current)
-            current = ni.nextNode();
-
-          // if (ni instanceof ContextNodeList) // %REVIEW%
-          tryNextKey = (DTM.NULL != current);
-
-          // else abdicate... should never happen, but... -sb
-        }
-
-        if (m_keys.size() > 1)
-        {
-          NodeSortKey k2 = (NodeSortKey) m_keys.elementAt(1);
-
-          if (!tryNextKey)
-          {
-            if (k2.m_treatAsNumbers)
-              m_key2Value = new Double(0.0);
-            else
-              m_key2Value = k2.m_col.getCollationKey("");
-          }
-          else
-          {
-            XObject r2 = k2.m_selectPat.execute(m_execContext, node,
-                                                k2.m_namespaceContext);
-
-            if (k2.m_treatAsNumbers)
-            {
-              d = r2.num();
-              m_key2Value = new Double(Double.isNaN(d) ? 0.0 : d);
-            }
-            else
-              m_key2Value = k2.m_col.getCollationKey(r2.str());
-          }
-        }
-
-        /* Leave this in case we decide to use an array later
-        while (kIndex <= m_keys.size() && kIndex < maxkey)
-        {
-          NodeSortKey k = (NodeSortKey)m_keys.elementAt(kIndex);
-          XObject r = k.m_selectPat.execute(m_execContext, node, k.m_namespaceContext);
-          if(k.m_treatAsNumbers)
-            m_KeyValue[kIndex] = r.num();
-          else
-            m_KeyValue[kIndex] = r.str();
-        } */
-      }  // end if not empty    
+        m_columns.sort(m_a, m_b, m_lo, m_hi, m_depth);
+      }
+      catch (Throwable t)
+      {
+        m_error = t;
+      }
     }
-  }  // end NodeCompareElem class
+  }
 }
@@ -0,0 +1,307 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.transformer;
+
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.ref.DTMDefaultBase;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.xpath.XPath;
+import org.apache.xpath.XPathContext;
+import org.apache.xalan.templates.Constants;
+import org.apache.xalan.templates.ElemNumber;
+
+/**
+ * <meta name="usage" content="internal"/>
+ * A numbering index for xsl:number.  The index is built in one
+ * document order pass over a tree the first time an xsl:number
+ * element counts a node in it, and holds the count of every node
+ * that matches the count pattern, keyed by node identity, so that
+ * later counts in the same tree are an array lookup instead of a
+ * backwards walk.
+ */
+public class NumberIndex
+{
+
+  /**
+   * The count pattern the ordinals were computed for.
+   */
+  XPath m_countPattern;
+
+  /**
+   * The DTM that holds the indexed tree.
+   */
+  DTM m_dtm;
+
+  /**
+   * The root of the indexed tree.
+   */
+  int m_root;
+
+  /**
+   * The count of each counted node, keyed by node identity, or 0
+   * for nodes that were not counted.
+   */
+  int[] m_ordinals = new int[256];
+
+  /**
+   * The next index for the same xsl:number element.
+   */
+  NumberIndex m_next;
+
+  /**
+   * Build a numbering index for a tree.
+   *
+   * @param support The XPath context to use
+   * @param numberElem The owning xsl:number element.
+   * @param countPattern The count pattern, never null.
+   * @param dtm The DTM that holds the tree, a DTMDefaultBase.
+   * @param root The root of the tree.
+   *
+   * @throws TransformerException
+   */
+  NumberIndex(XPathContext support, ElemNumber numberElem, XPath countPattern,
+              DTM dtm, int root) throws TransformerException
+  {
+
+    m_countPattern = countPattern;
+    m_dtm = dtm;
+    m_root = root;
+
+    if (Constants.NUMBERLEVEL_ANY == numberElem.getLevel())
+      indexAny(support, numberElem.getFrom());
+    else
+      indexSiblings(support);
+  }
+
+  /**
+   * Tell if a count or from pattern can be indexed, that is, if the
+   * nodes it matches do not depend on the variables in scope or on
+   * the current node.
+   *
+   * @param pattern The pattern, may be null.
+   *
+   * @return true if the pattern can be indexed.
+   */
+  static boolean isIndexable(XPath pattern)
+  {
+
+    if (null == pattern)
+      return true;
+
+    String str = pattern.getPatternString();
+
+    return (str.indexOf('$') < 0) && (str.indexOf("current") < 0);
+  }
+
+  /**
+   * Get the count of a node.
+   *
+   * @param node The node to be counted.
+   *
+   * @return The count of the node, or 0 if the node was not counted,
+   * in which case the caller has to count it the slow way.
+   */
+  int getOrdinal(int node)
+  {
+
+    int identity = ((DTMDefaultBase) m_dtm).makeNodeIdentity(node);
+
+    return ((identity >= 0) && (identity < m_ordinals.length))
+           ? m_ordinals[identity] : 0;
+  }
+
+  /**
+   * Number the nodes for level="any".  This is the forward version of
+   * ElemNumber.getPreviousNode(): a node counts all the matching nodes
+   * before it, back to the last node with children that matches the
+   * from pattern or is the document node.
+   *
+   * @param support The XPath context to use
+   * @param fromPattern The from pattern, may be null.
+   *
+   * @throws TransformerException
+   */
+  private void indexAny(XPathContext support, XPath fromPattern)
+          throws TransformerException
+  {
+
+    DTM dtm = m_dtm;
+    int count = 0;
+
+    for (int node = m_root; DTM.NULL != node; )
+    {
+      boolean counted = matches(support, m_countPattern, node);
+
+      if (counted)
+        setOrdinal(node, count + 1);
+
+      int child = dtm.getFirstChild(node);
+
+      if ((DTM.NULL != child)
+              && ((DTM.DOCUMENT_NODE == dtm.getNodeType(node))
+                  || ((null != fromPattern)
+                      && matches(support, fromPattern, node))))
+        count = 0;
+      else if (counted)
+        count++;
+
+      node = getNextNode(node, child);
+    }
+  }
+
+  /**
+   * Number the nodes for level="single" and level="multiple", where
+   * a node counts itself and the matching preceding siblings.
+   *
+   * @param support The XPath context to use
+   *
+   * @throws TransformerException
+   */
+  private void indexSiblings(XPathContext support)
+          throws TransformerException
+  {
+
+    DTM dtm = m_dtm;
+
+    if (matches(support, m_countPattern, m_root))
+      setOrdinal(m_root, 1);
+
+    for (int node = m_root; DTM.NULL != node; )
+    {
+      int child = dtm.getFirstChild(node);
+      int count = 0;
+
+      for (int sibling = child; DTM.NULL != sibling;
+              sibling = dtm.getNextSibling(sibling))
+      {
+        if (matches(support, m_countPattern, sibling))
+          setOrdinal(sibling, ++count);
+      }
+
+      node = getNextNode(node, child);
+    }
+  }
+
+  /**
+   * Get the node that follows the given one in document order,
+   * within the indexed tree.
+   *
+   * @param node The current node.
+   * @param child The first child of the current node.
+   *
+   * @return The next node, or DTM.NULL at the end of the tree.
+   */
+  private int getNextNode(int node, int child)
+  {
+
+    if (DTM.NULL != child)
+      return child;
+
+    for (; node != m_root; node = m_dtm.getParent(node))
+    {
+      int next = m_dtm.getNextSibling(node);
+
+      if (DTM.NULL != next)
+        return next;
+    }
+
+    return DTM.NULL;
+  }
+
+  /**
+   * Tell if a node matches a pattern.
+   *
+   * @param support The XPath context to use
+   * @param pattern The pattern, never null.
+   * @param node The node to be matched.
+   *
+   * @return true if the node matches.
+   *
+   * @throws TransformerException
+   */
+  private boolean matches(XPathContext support, XPath pattern, int node)
+          throws TransformerException
+  {
+    return pattern.getMatchScore(support, node) != XPath.MATCH_SCORE_NONE;
+  }
+
+  /**
+   * Store the count of a node, growing the table as needed.
+   *
+   * @param node The counted node.
+   * @param count The count of the node.
+   */
+  private void setOrdinal(int node, int count)
+  {
+
+    int identity = ((DTMDefaultBase) m_dtm).makeNodeIdentity(node);
+
+    if (identity >= m_ordinals.length)
+    {
+      int[] ordinals = new int[Math.max(identity + 1,
+                                        m_ordinals.length * 2)];
+
+      System.arraycopy(m_ordinals, 0, ordinals, 0, m_ordinals.length);
+
+      m_ordinals = ordinals;
+    }
+
+    m_ordinals[identity] = count;
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.transformer;
+
+import java.util.Vector;
+
+/**
+ * <meta name="usage" content="general"/>
+ * A ThreadControler that keeps a bounded set of worker threads and
+ * reuses them for transform and CoroutineSAXParser tasks, instead of
+ * starting a new thread for every incremental transformation.
+ *
+ * <p>At most <code>maxThreads</code> workers are kept.  A worker that
+ * has been idle for <code>keepAlive</code> milliseconds exits.  When
+ * every worker is busy the task is run on a new, unpooled thread rather
+ * than queued: the two halves of a coroutine pair must run at the same
+ * time, so making one of them wait for a free worker could deadlock
+ * when the pool is full of the other halves.</p>
+ *
+ * <p>Workers are daemon threads, so an idle pool does not keep the
+ * virtual machine alive.  An exception thrown by a task is left to the
+ * task to report, and the worker is reused.  An Error ends the worker,
+ * and is thrown again to the thread waiting in {@link #waitThread}.</p>
+ *
+ * <p>Install it with {@link TransformerImpl#setThreadControler}, or by
+ * naming this class in the
+ * {@link TransformerImpl#THREAD_CONTROLER_PROPERTY} system property.</p>
+ */
+public class PooledThreadControler extends TransformerImpl.ThreadControler
+{
+
+  /** Default limit on the number of pooled worker threads. */
+  public static final int DEFAULT_MAX_THREADS = 16;
+
+  /** Default time, in milliseconds, an idle worker is kept. */
+  public static final long DEFAULT_KEEP_ALIVE = 60000;
+
+  /** The maximum number of workers kept by this pool. */
+  private final int m_maxThreads;
+
+  /** The time, in milliseconds, an idle worker waits for a new task. */
+  private final long m_keepAlive;
+
+  /** Workers that are waiting for a task, most recently used last. */
+  private final Vector m_idle = new Vector();
+
+  /** The number of live workers, busy or idle. */
+  private int m_threadCount = 0;
+
+  /** Sequence number used to name worker threads. */
+  private int m_threadSerial = 0;
+
+  /**
+   * Create a pool with the default limits.
+   */
+  public PooledThreadControler()
+  {
+    this(DEFAULT_MAX_THREADS, DEFAULT_KEEP_ALIVE);
+  }
+
+  /**
+   * Create a pool with the given limits.
+   *
+   * @param maxThreads The maximum number of worker threads kept; tasks
+   * beyond that run on unpooled threads.
+   * @param keepAlive The time, in milliseconds, an idle worker is kept
+   * before it exits.
+   */
+  public PooledThreadControler(int maxThreads, long keepAlive)
+  {
+    m_maxThreads = (maxThreads < 1) ? 1 : maxThreads;
+    m_keepAlive = (keepAlive < 1) ? 1 : keepAlive;
+  }
+
+  /**
+   * Run the task on an idle worker, on a new worker if the pool is not
+   * yet full, or else on a new unpooled thread.
+   *
+   * @param task The task to run.
+   * @param priority Ignored, as in the base class.
+   *
+   * @return The thread that is running the task, to be passed to
+   * {@link #waitThread}.
+   */
+  public Thread run(Runnable task, int priority)
+  {
+
+    Worker worker = null;
+
+    synchronized (this)
+    {
+      int n = m_idle.size();
+
+      if (n > 0)
+      {
+        worker = (Worker) m_idle.elementAt(n - 1);
+
+        m_idle.removeElementAt(n - 1);
+      }
+      else if (m_threadCount < m_maxThreads)
+      {
+        worker = new Worker("Xalan worker " + (++m_threadSerial));
+
+        m_threadCount++;
+      }
+    }
+
+    if (null == worker)
+      return super.run(task, priority);
+
+    worker.execute(task);
+
+    return worker;
+  }
+
+  /**
+   * Wait until the task is completed.  A pooled worker does not die
+   * when its task ends, so it can not be joined; wait for the task
+   * instead.  If the task ended with an Error on a pooled worker, that
+   * Error is thrown here.
+   *
+   * @param worker The thread returned by {@link #run}.
+   * @param task The task that was given to {@link #run}.
+   *
+   * @throws InterruptedException
+   */
+  public void waitThread(Thread worker, Runnable task)
+          throws InterruptedException
+  {
+
+    if (worker instanceof Worker && ((Worker) worker).m_pool == this)
+      ((Worker) worker).waitFor(task);
+    else
+      super.waitThread(worker, task);
+  }
+
+  /**
+   * Get the number of live pooled workers.
+   *
+   * @return The number of busy and idle workers.
+   */
+  public synchronized int getThreadCount()
+  {
+    return m_threadCount;
+  }
+
+  /**
+   * Return a worker that has finished its task to the idle list.
+   *
+   * @param worker The worker, whose task has been cleared.
+   */
+  synchronized void release(Worker worker)
+  {
+    m_idle.addElement(worker);
+  }
+
+  /**
+   * Forget a busy worker that is exiting because its task threw an
+   * Error.
+   *
+   * @param worker The worker, whose task has been cleared.
+   */
+  synchronized void discard(Worker worker)
+  {
+    m_threadCount--;
+  }
+
+  /**
+   * Remove an idle worker whose keep-alive time has run out.
+   *
+   * @param worker The worker that wants to exit.
+   *
+   * @return true if the worker was idle and may exit, false if it has
+   * just been handed a task.
+   */
+  synchronized boolean retire(Worker worker)
+  {
+
+    if (!m_idle.removeElement(worker))
+      return false;
+
+    m_threadCount--;
+
+    return true;
+  }
+
+  /**
+   * A pooled thread that runs one task at a time.
+   */
+  final class Worker extends Thread
+  {
+
+    /** The pool that owns this worker. */
+    final PooledThreadControler m_pool = PooledThreadControler.this;
+
+    /** The task being run, or null if the worker is idle. */
+    private Runnable m_task;
+
+    /** The task that ended with {@link #m_error}, or null. */
+    private Runnable m_failedTask;
+
+    /** The Error thrown by {@link #m_failedTask}, or null. */
+    private Error m_error;
+
+    /**
+     * Create and start a worker.
+     *
+     * @param name The thread name.
+     */
+    Worker(String name)
+    {
+
+      super(name);
+
+      setDaemon(true);
+      start();
+    }
+
+    /**
+     * Hand a task to this worker.
+     *
+     * @param task The task to run.
+     */
+    synchronized void execute(Runnable task)
+    {
+
+      m_task = task;
+
+      notifyAll();
+    }
+
+    /**
+     * Wait until this worker is no longer running the task.
+     *
+     * @param task The task to wait for.
+     *
+     * @throws InterruptedException
+     */
+    synchronized void waitFor(Runnable task) throws InterruptedException
+    {
+
+      while (m_task == task)
+        wait();
+
+      if (m_failedTask == task)
+      {
+        Error error = m_error;
+
+        m_failedTask = null;
+        m_error = null;
+
+        throw error;
+      }
+    }
+
+    /**
+     * Run tasks until the worker has been idle for the keep-alive time.
+     */
+    public void run()
+    {
+
+      while (true)
+      {
+        Runnable task;
+
+        synchronized (this)
+        {
+          while (null == m_task)
+          {
+            try
+            {
+              wait(m_keepAlive);
+            }
+            catch (InterruptedException ie){}
+
+            if (null == m_task && m_pool.retire(this))
+              return;
+          }
+
+          task = m_task;
+        }
+
+        Error error = null;
+
+        try
+        {
+          task.run();
+        }
+        catch (Error e)
+        {
+          error = e;
+        }
+        catch (Throwable t)
+        {
+
+          // TransformerImpl and CoroutineSAXParser report their own
+          // exceptions; keep the worker alive for the next task.
+        }
+
+        synchronized (this)
+        {
+          if (null != error)
+          {
+            m_failedTask = task;
+            m_error = error;
+          }
+
+          m_task = null;
+
+          notifyAll();
+        }
+
+        if (null != error)
+        {
+
+          // The worker may be in a bad state, so it is not reused.  The
+          // Error also goes to the uncaught handler, in case no thread
+          // waits for the task.
+          m_pool.discard(this);
+
+          throw error;
+        }
+
+        m_pool.release(this);
+      }
+    }
+  }
+}
@@ -57,6 +57,7 @@
 package org.apache.xalan.transformer;
 
 // Java imports
+import java.util.Hashtable;
 import java.util.Stack;
 import java.util.Vector;
 import java.util.Enumeration;
@@ -325,6 +326,14 @@ public class TransformerImpl extends Transformer
   /** The key manager, which manages xsl:keys. */
   private KeyManager m_keyManager = new KeyManager();
 
+  /**
+   * Template dispatch tables, keyed on the ExpandedNameTable of each
+   * DTM, with values that are Vectors of dispatch tables, one per mode.
+   * The expanded type IDs they map belong to the DTMs of this
+   * transformation, so they are dropped with them.
+   */
+  private Hashtable m_dispatchTables = new Hashtable();
+
   /**
    * Stack for the purposes of flagging infinite recursion with
    * attribute sets.
@@ -354,6 +363,35 @@ public class TransformerImpl extends Transformer
    */
   public static boolean S_DEBUG = false;
 
+  /**
+   * True while this transformer's TraceManager has a profiler.  Unlike
+   * S_DEBUG it only turns on the trace calls of this transformer.
+   */
+  private boolean m_debug = false;
+
+  /**
+   * Tell if the trace calls should be made, either because trace
+   * listeners have been added anywhere (S_DEBUG), or because this
+   * transformer is being profiled.
+   *
+   * @return true if the TraceManager should be told about execution.
+   */
+  public final boolean getDebug()
+  {
+    return S_DEBUG || m_debug;
+  }
+
+  /**
+   * Turn the trace calls of this transformer on or off, independently
+   * of S_DEBUG.  Called by the TraceManager when a profiler is set.
+   *
+   * @param debug true to make the trace calls.
+   */
+  public void setDebug(boolean debug)
+  {
+    m_debug = debug;
+  }
+
   /**
    * The SAX error handler, where errors and warnings are sent.
    */
@@ -475,6 +513,7 @@ public class TransformerImpl extends Transformer
       m_resultTreeHandler = null;
       m_outputTarget = null;
       m_keyManager = new KeyManager();
+      m_dispatchTables = new Hashtable();
       m_attrSetStack = null;
       m_countersTable = null;
       m_currentTemplateRuleIsNull = new BoolStack();
@@ -1622,12 +1661,46 @@ public class TransformerImpl extends Transformer
           throws TransformerException
   {
 
-    XPathContext xctxt = m_xcontext;
-    DTM dtmFrag = xctxt.getDTM(null, true, this, false, false);
+    // The fragment goes into a DTM shared with other fragments, and is
+    // discarded when the current variable stack frame is unlinked.
+    return transformToRTF(templateParent, m_xcontext.getRTFDTM());
+  }
+
+  /**
+   * <meta name="usage" content="advanced"/>
+   * Given a stylesheet element, create a result tree fragment from it's
+   * contents, in a DTM of its own.  This is used for global variables,
+   * which outlive every stack frame.
+   * @param templateParent The template element that holds the fragment.
+   * @return An object that represents the result tree fragment.
+   *
+   * @throws TransformerException
+   */
+  public int transformToGlobalRTF(ElemTemplateElement templateParent)
+          throws TransformerException
+  {
+    return transformToRTF(templateParent,
+                          m_xcontext.getDTM(null, true, this, false, false));
+  }
+
+  /**
+   * Build a result tree fragment from the contents of a stylesheet element
+   * into the given DTM.
+   * @param templateParent The template element that holds the fragment.
+   * @param dtmFrag The DTM that will hold the fragment.
+   * @return The handle of the fragment's document node.
+   *
+   * @throws TransformerException
+   */
+  private int transformToRTF(ElemTemplateElement templateParent, DTM dtmFrag)
+          throws TransformerException
+  {
+
     ContentHandler rtfHandler = dtmFrag.getContentHandler();
+    int resultFragment;
 
-    // Create a ResultTreeFrag object.
-    int resultFragment = resultFragment = dtmFrag.getDocument();
+    if (getDebug())
+      getTraceManager().fireResultTreeFragmentEvent();
 
     // Save the current result tree handler.
     ResultTreeHandler savedRTreeHandler = this.m_resultTreeHandler;
@@ -1641,6 +1714,14 @@ public class TransformerImpl extends Transformer
     {
       rth.startDocument();
 
+      // startDocument is held back by the ResultTreeHandler.  Send it now,
+      // so the DTM knows a tree is under construction and any fragment
+      // built while executing the content goes elsewhere.
+      rth.flushPending();
+
+      // Create a ResultTreeFrag object.
+      resultFragment = dtmFrag.getDocument();
+
       try
       {
 
@@ -1890,6 +1971,7 @@ public class TransformerImpl extends Transformer
       pushElemTemplateElement(template);
       m_xcontext.pushCurrentNode(child);
       pushPairCurrentMatched(template, child);
+      m_xcontext.pushRTFContext();
 
       if (isDefaultTextRule)
       {
@@ -1910,8 +1992,8 @@ public class TransformerImpl extends Transformer
 
         // Fire a trace event for the template.
          
-                if (TransformerImpl.S_DEBUG)
-                  getTraceManager().fireTraceEvent(template);
+                if (getDebug())
+                  getTraceManager().fireTraceEvent(template, getMode());
         // And execute the child templates.
         // 9/11/00: If template has been compiled, hand off to it
         // since much (most? all?) of the processing has been inlined.
@@ -1925,6 +2007,9 @@ public class TransformerImpl extends Transformer
         // m_xcontext.getVarStack().link();
         m_xcontext.getVarStack().link(template.m_frameSize);
         executeChildTemplates(template, true);
+
+        if (getDebug())
+          getTraceManager().fireTraceEndEvent(template);
       }
     }
     catch (org.xml.sax.SAXException se)
@@ -1934,6 +2019,7 @@ public class TransformerImpl extends Transformer
     finally
     {
       m_xcontext.getVarStack().unlink();
+      m_xcontext.popRTFContext();
       m_xcontext.popCurrentNode();
       popCurrentMatched();
       popElemTemplateElement();
@@ -2511,6 +2597,18 @@ public class TransformerImpl extends Transformer
     return m_keyManager;
   }
 
+  /**
+   * <meta name="usage" content="internal"/>
+   * Get the template dispatch tables of this transformation, for
+   * TemplateList.getDispatchTable.
+   *
+   * @return The table of dispatch tables, never null.
+   */
+  public Hashtable getDispatchTables()
+  {
+    return m_dispatchTables;
+  }
+
   /**
    * Check to see if this is a recursive attribute definition.
    *
@@ -2747,7 +2845,8 @@ public class TransformerImpl extends Transformer
 
   /**
    * Base thread controler for xalan. Must be overriden with
-   * a derived class to support thread pooling.
+   * a derived class to support thread pooling; see
+   * {@link PooledThreadControler} and {@link VirtualThreadControler}.
    *
    * All thread-related stuff is in this class.
    * 
@@ -2804,8 +2903,45 @@ public class TransformerImpl extends Transformer
     }
   }
 
-  /** NEEDSDOC Field tpool          */
-  static ThreadControler tpool = new ThreadControler();
+  /**
+   * The system property that names the ThreadControler class to
+   * install at startup, for instance
+   * <code>org.apache.xalan.transformer.PooledThreadControler</code>
+   * or <code>org.apache.xalan.transformer.VirtualThreadControler</code>.
+   * The class must have a public no-argument constructor.
+   */
+  public static final String THREAD_CONTROLER_PROPERTY =
+    "org.apache.xalan.transformer.ThreadControler";
+
+  /** The ThreadControler used for transform and parser threads. */
+  static ThreadControler tpool = createThreadControler();
+
+  /**
+   * Create the initial ThreadControler, as named by
+   * {@link #THREAD_CONTROLER_PROPERTY}.  If the property is not set, or
+   * the class can not be loaded, a plain ThreadControler that starts a
+   * new thread for every task is used.
+   *
+   * @return A new ThreadControler, never null.
+   */
+  private static ThreadControler createThreadControler()
+  {
+
+    try
+    {
+      String className = System.getProperty(THREAD_CONTROLER_PROPERTY);
+
+      if (null != className)
+        return (ThreadControler) Class.forName(className.trim()).newInstance();
+    }
+    catch (SecurityException se){}
+    catch (ClassNotFoundException cnfe){}
+    catch (InstantiationException ie){}
+    catch (IllegalAccessException iae){}
+    catch (ClassCastException cce){}
+
+    return new ThreadControler();
+  }
 
   /**
    * Change the ThreadControler that will be used to
@@ -0,0 +1,158 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xalan.transformer;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * <meta name="usage" content="general"/>
+ * A ThreadControler that runs each transform and CoroutineSAXParser task
+ * on a virtual thread, where the Java runtime provides them, so that a
+ * server running many incremental transformations does not need two
+ * operating system threads per request.
+ *
+ * <p>Virtual threads are reached by reflection, so this class compiles
+ * and loads on any JDK.  If the runtime has no virtual threads, each
+ * task gets a new platform thread, exactly as with the base class.</p>
+ *
+ * <p>Runtimes before Java 24 pin a virtual thread to its carrier while
+ * it waits inside a synchronized block, which is how CoroutineManager
+ * hands control between the parser and the transformation.  On such
+ * runtimes this controler saves memory per request but not carrier
+ * threads.</p>
+ */
+public class VirtualThreadControler extends TransformerImpl.ThreadControler
+{
+
+  /** The Thread.Builder returned by Thread.ofVirtual(), or null. */
+  private final Object m_builder;
+
+  /** The Thread.Builder.start(Runnable) method, or null. */
+  private final Method m_start;
+
+  /**
+   * Create a controler, looking up virtual thread support.
+   */
+  public VirtualThreadControler()
+  {
+
+    Object builder = null;
+    Method start = null;
+
+    try
+    {
+      Method ofVirtual = Thread.class.getMethod("ofVirtual", new Class[0]);
+      Class builderClass = Class.forName("java.lang.Thread$Builder");
+
+      builder = ofVirtual.invoke(null, new Object[0]);
+      start = builderClass.getMethod("start", new Class[]{ Runnable.class });
+    }
+    catch (Exception e)
+    {
+      builder = null;
+      start = null;
+    }
+
+    m_builder = builder;
+    m_start = start;
+  }
+
+  /**
+   * Tell if tasks will run on virtual threads.
+   *
+   * @return true if the runtime supports virtual threads.
+   */
+  public boolean isVirtual()
+  {
+    return null != m_start;
+  }
+
+  /**
+   * Start the task on a new virtual thread, or on a new platform thread
+   * if virtual threads are not available.
+   *
+   * @param task The task to run.
+   * @param priority Ignored, as in the base class.
+   *
+   * @return The thread that is running the task.
+   */
+  public Thread run(Runnable task, int priority)
+  {
+
+    if (null != m_start)
+    {
+      try
+      {
+        return (Thread) m_start.invoke(m_builder, new Object[]{ task });
+      }
+      catch (InvocationTargetException ite)
+      {
+        Throwable t = ite.getTargetException();
+
+        if (t instanceof RuntimeException)
+          throw (RuntimeException) t;
+
+        if (t instanceof Error)
+          throw (Error) t;
+      }
+      catch (IllegalAccessException iae){}
+    }
+
+    return super.run(task, priority);
+  }
+}
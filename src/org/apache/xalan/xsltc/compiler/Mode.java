@@ -298,7 +298,10 @@ final class Mode implements Constants {
 	    final Template template = (Template)templates.nextElement();
 	    if (template.hasContents()) {
 		// !!! TODO templates both named and matched
-		InstructionList til = template.compile(classGen, methodGen);
+		// Named templates are called, others get a method of their own
+		InstructionList til = template.isNamed()
+		    ? template.compile(classGen, methodGen)
+		    : template.compileMethod(classGen, methodGen);
 		til.append(new GOTO(next));
 		_templateInstructionLists.put(template, til);
 		_templateInstructionHandles.put(template, til.getStart());
@@ -255,7 +255,8 @@ final class Number extends Instruction {
     /**
      * Compiles a constructor for the class <tt>className</tt> that
      * inherits from {Any,Single,Multiple}NodeCounter. This constructor
-     * simply calls the same constructor in the super class.
+     * calls the same constructor in the super class, and tells it if
+     * there is a count pattern.
      */
     private void compileConstructor(ClassGenerator classGen,
                                     String className) {
@@ -289,6 +290,15 @@ final class Number extends Instruction {
 				     + NODE_ITERATOR_SIG 
 				     + ")V");
 	il.append(new INVOKESPECIAL(index));
+
+	// A count pattern makes the numbering index independent of the
+	// type of the start node (see NodeCounter._countByType)
+	if (_count != null) {
+	    il.append(ALOAD_0);
+	    il.append(ICONST_0);
+	    il.append(new PUTFIELD(cpg.addFieldref(NODE_COUNTER,
+						   "_countByType", "Z")));
+	}
 	il.append(RETURN);
 	
 	cons.stripAttributes(true);
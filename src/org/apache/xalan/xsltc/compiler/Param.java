@@ -107,6 +107,14 @@ final class Param extends TopLevelElement {
 	_refs.addElement(pref);
     }
 
+    /**
+     * Returns true if a reference to this parameter that has not been
+     * translated yet occurs inside the given node.
+     */
+    public boolean isReferencedFrom(SyntaxTreeNode node) {
+	return node.isAncestorOfAny(_refs);
+    }
+
     public void removeReference(ParameterRef pref) {
 	_refs.remove(pref);
     }
@@ -229,6 +229,23 @@ public abstract class SyntaxTreeNode implements Constants {
 	return getStylesheet().getImportPrecedence();
     }
 
+    /**
+     * Returns true if this node is the same as, or an ancestor of, one
+     * of the nodes in the given vector. The vector may be null.
+     */
+    protected boolean isAncestorOfAny(Vector nodes) {
+	if (nodes == null) return false;
+	final int n = nodes.size();
+	for (int i = 0; i < n; i++) {
+	    SyntaxTreeNode node = (SyntaxTreeNode)nodes.elementAt(i);
+	    while (node != null) {
+		if (node == this) return true;
+		node = node.getParent();
+	    }
+	}
+	return false;
+    }
+
     protected Template getTemplate() {
 	SyntaxTreeNode parent = this;
 	while ((parent != null) && (!(parent instanceof Template)))
@@ -339,7 +339,13 @@ public final class Template extends TopLevelElement {
 	}
 	
 	final InstructionHandle start = il.getEnd();
-	translateContents(classGen, methodGen);
+	final int maxSize = getXSLTC().getMaxMethodSize();
+	if (maxSize > 0 && methodGen instanceof NamedMethodGenerator) {
+	    translateSplitContents(classGen, methodGen, maxSize);
+	}
+	else {
+	    translateContents(classGen, methodGen);
+	}
 	final InstructionHandle end = il.getEnd();
 	il.setPositions(true);
 	
@@ -350,4 +356,176 @@ public final class Template extends TopLevelElement {
 							 POP_VAR_FRAME_SIG)));
 	}
     }
+
+    /**
+     * Compiles this template into a private method of the translet and
+     * returns the instructions that call it from <tt>methodGen</tt>. This
+     * keeps applyTemplates() from growing with the size of the stylesheet
+     * beyond what the JIT compiler is willing to compile.
+     */
+    public InstructionList compileMethod(ClassGenerator classGen,
+					 MethodGenerator methodGen) {
+	final String methodName = "template$" + _position;
+
+	if (!_compiled) {
+	    final NamedMethodGenerator templateGen =
+		createMethod(classGen, methodName);
+	    translate(classGen, templateGen);
+	    templateGen.getInstructionList().append(RETURN);
+	    templateGen.setMaxLocals();
+	    addMethod(classGen, templateGen);
+	}
+	return compileCall(classGen, methodGen, methodName);
+    }
+
+    /**
+     * Translates the contents of this template like translateContents()
+     * does, but once the body has reached <tt>maxSize</tt> bytes the
+     * remaining top-level instructions are moved into private methods,
+     * each holding up to <tt>maxSize</tt> bytes. Variables and parameters
+     * are kept in the template's own method, and so is every instruction
+     * that refers to one of them, as they live in its local variables.
+     */
+    private void translateSplitContents(ClassGenerator classGen,
+					MethodGenerator methodGen,
+					int maxSize) {
+	final InstructionList il = methodGen.getInstructionList();
+	final Vector locals = new Vector();
+	InstructionList chunk = null;
+	int size = 0, chunkSize = 0, chunkCount = 0;
+
+	final int n = elementCount();
+	for (int i = 0; i < n; i++) {
+	    final SyntaxTreeNode item = (SyntaxTreeNode)elementAt(i);
+	    boolean movable = true;
+	    if (item instanceof Variable || item instanceof Param) {
+		locals.addElement(item);
+		movable = false;
+	    }
+	    for (int j = 0; movable && j < locals.size(); j++) {
+		final Object local = locals.elementAt(j);
+		movable = (local instanceof Variable)
+		    ? !((Variable)local).isReferencedFrom(item)
+		    : !((Param)local).isReferencedFrom(item);
+	    }
+
+	    final InstructionList itemList = new InstructionList();
+	    methodGen.setInstructionList(itemList);
+	    item.translate(classGen, methodGen);
+	    methodGen.setInstructionList(il);
+	    final int itemSize = sizeOf(itemList);
+
+	    if (movable && size + itemSize > maxSize) {
+		if (chunk != null && chunkSize + itemSize > maxSize) {
+		    size += appendChunk(classGen, methodGen, chunk,
+					chunkCount++);
+		    chunk = null;
+		}
+		if (chunk == null) {
+		    chunk = new InstructionList();
+		    chunkSize = 0;
+		}
+		chunk.append(itemList);
+		chunkSize += itemSize;
+	    }
+	    else {
+		if (chunk != null) {
+		    size += appendChunk(classGen, methodGen, chunk,
+					chunkCount++);
+		    chunk = null;
+		}
+		il.append(itemList);
+		size += itemSize;
+	    }
+	}
+	if (chunk != null) {
+	    appendChunk(classGen, methodGen, chunk, chunkCount);
+	}
+    }
+
+    /**
+     * Moves a list of top-level instructions into a private method and
+     * appends a call to it. Returns the size of the call.
+     */
+    private int appendChunk(ClassGenerator classGen,
+			    MethodGenerator methodGen,
+			    InstructionList chunk, int index) {
+	final String methodName = methodGen.getName() + '$' + index;
+	final NamedMethodGenerator chunkGen =
+	    createMethod(classGen, methodName);
+	final InstructionList il = chunkGen.getInstructionList();
+	il.append(chunk);
+	il.append(RETURN);
+	// Locals of the chunk were allocated in the template's method
+	chunkGen.setMaxLocals(Math.max(methodGen.getMaxLocals(),
+				       chunkGen.getMaxLocals()));
+	addMethod(classGen, chunkGen);
+
+	final InstructionList call =
+	    compileCall(classGen, methodGen, methodName);
+	final int size = sizeOf(call);
+	methodGen.getInstructionList().append(call);
+	return size;
+    }
+
+    private static NamedMethodGenerator createMethod(ClassGenerator classGen,
+						     String methodName) {
+	final String DOM_CLASS_SIG = classGen.getDOMClassSig();
+	return new NamedMethodGenerator(ACC_PRIVATE,
+					de.fub.bytecode.generic.Type.VOID,
+					new de.fub.bytecode.generic.Type[] {
+					    Util.getJCRefType(DOM_CLASS_SIG),
+					    Util.getJCRefType(NODE_ITERATOR_SIG),
+					    Util.getJCRefType(TRANSLET_OUTPUT_SIG),
+					    de.fub.bytecode.generic.Type.INT
+					},
+					new String[] {
+					    DOCUMENT_PNAME,
+					    ITERATOR_PNAME,
+					    TRANSLET_OUTPUT_PNAME,
+					    NODE_PNAME
+					},
+					methodName,
+					classGen.getClassName(),
+					new InstructionList(),
+					classGen.getConstantPool());
+    }
+
+    private static void addMethod(ClassGenerator classGen,
+				  MethodGenerator methodGen) {
+	methodGen.stripAttributes(true);
+	methodGen.setMaxStack();
+	methodGen.removeNOPs();
+	classGen.addMethod(methodGen.getMethod());
+    }
+
+    private static InstructionList compileCall(ClassGenerator classGen,
+					       MethodGenerator methodGen,
+					       String methodName) {
+	final ConstantPoolGen cpg = classGen.getConstantPool();
+	final String DOM_CLASS_SIG = classGen.getDOMClassSig();
+	final InstructionList il = new InstructionList();
+	il.append(classGen.loadTranslet());
+	il.append(methodGen.loadDOM());
+	il.append(methodGen.loadIterator());
+	il.append(methodGen.loadHandler());
+	il.append(methodGen.loadCurrentNode());
+	il.append(new INVOKESPECIAL(cpg.addMethodref(classGen.getClassName(),
+						     methodName,
+						     "("
+						     + DOM_CLASS_SIG
+						     + NODE_ITERATOR_SIG
+						     + TRANSLET_OUTPUT_SIG
+						     + "I)V")));
+	return il;
+    }
+
+    private static int sizeOf(InstructionList il) {
+	int size = 0;
+	for (InstructionHandle ih = il.getStart(); ih != null;
+	     ih = ih.getNext()) {
+	    size += ih.getInstruction().getLength();
+	}
+	return size;
+    }
 }
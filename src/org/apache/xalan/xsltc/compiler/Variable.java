@@ -133,6 +133,14 @@ final class Variable extends TopLevelElement {
 	_usedLocally = true;
     }
 
+    /**
+     * Returns true if a reference to this variable that has not been
+     * translated yet occurs inside the given node.
+     */
+    public boolean isReferencedFrom(SyntaxTreeNode node) {
+	return node.isAncestorOfAny(_refs);
+    }
+
     public void removeReference(VariableRef vref, MethodGenerator methodGen) {
 	_refs.remove(vref);
 	if (_refs.isEmpty()) {
@@ -88,6 +88,7 @@ import org.apache.xalan.xsltc.compiler.util.*;
 import org.apache.xalan.xsltc.util.getopt.*;
 import org.apache.xalan.xsltc.DOM;
 import de.fub.bytecode.classfile.JavaClass;
+import de.fub.bytecode.classfile.Method;
 
 public final class XSLTC {
 
@@ -105,6 +106,17 @@ public final class XSLTC {
     private File    _destDir;
     private File    _dumpDir;
 
+    /**
+     * HotSpot does not compile methods with more than this many bytes
+     * of bytecode, so they run interpreted.
+     */
+    public static final int DEFAULT_MAX_METHOD_SIZE = 8000;
+
+    // Template bodies are split to keep methods below this size (-m)
+    private int _maxMethodSize = DEFAULT_MAX_METHOD_SIZE;
+    // Sizes of the generated methods are printed here if not null (-r)
+    private PrintStream _methodSizeReport = null;
+
     // Counters used by various classes to generate unique names.
     private int _variableSerial     = 1;
     private int _modeSerial         = 1;
@@ -340,6 +352,43 @@ public final class XSLTC {
     public boolean debug() {
 	return _debug;
     }
+
+    /**
+     * Sets the size, in bytes of bytecode, above which the body of a
+     * template is split into several methods. Zero or less means that
+     * template bodies are never split.
+     */
+    public void setMaxMethodSize(int size) {
+	_maxMethodSize = size;
+    }
+
+    public int getMaxMethodSize() {
+	return _maxMethodSize;
+    }
+
+    /**
+     * Sets the stream that the size of each generated method is printed
+     * to, or null to print nothing.
+     */
+    public void setMethodSizeReport(PrintStream report) {
+	_methodSizeReport = report;
+    }
+
+    /**
+     * Prints the size of each method of a generated class to the method
+     * size report, marking the methods that are above the size limit.
+     */
+    private void reportMethodSizes(JavaClass clazz) {
+	final Method[] methods = clazz.getMethods();
+	for (int i = 0; i < methods.length; i++) {
+	    if (methods[i].getCode() == null) continue;
+	    final int size = methods[i].getCode().getCode().length;
+	    final boolean over = (_maxMethodSize > 0) && (size > _maxMethodSize);
+	    _methodSizeReport.println(clazz.getClassName() + '.' +
+				      methods[i].getName() + ": " + size +
+				      " bytes" + (over ? " (over limit)" : ""));
+	}
+    }
     
     private void setDestDirectory(String dstDirName) throws CompilerException {
 	final File dir = new File(dstDirName);
@@ -392,9 +441,10 @@ public final class XSLTC {
      * DOM attribute types at run-time.
      */
     public int registerAttribute(QName name) {
-	Integer code = (Integer)_attributes.get(name);
+	// Register attribute (full QName) so that each name gets one type
+	Integer code = (Integer)_attributes.get(name.toString());
 	if (code == null) {
-	    _attributes.put(name, code = new Integer(_nextGType++));
+	    _attributes.put(name.toString(), code = new Integer(_nextGType++));
 	    final String uri = name.getNamespace();
 	    final String local = "@"+name.getLocalPart();
 	    if ((uri != null) && (!uri.equals("")))
@@ -507,6 +557,9 @@ public final class XSLTC {
     }
    
     public void dumpClass(JavaClass clazz) {
+	if (_methodSizeReport != null) {
+	    reportMethodSizes(clazz);
+	}
 	try {
 	    switch (_outputType) {
 	    case FILE_OUTPUT:
@@ -532,7 +585,7 @@ public final class XSLTC {
 
     private byte[][] outputToArrays() {
 	final int nClasses = _classes.size();
-	final byte[][] result = new byte[1][nClasses];
+	final byte[][] result = new byte[nClasses][];
 	for (int i = 0; i < nClasses; i++) {
 	    result[i] = (byte[])_classes.elementAt(i);
 	}
@@ -589,6 +642,29 @@ public final class XSLTC {
 	return compile(stylesheetURL) ? outputToArrays() : null;
     }
 
+    /**
+     * Compiles a stylesheet read from an input stream into an array of
+     * class files held in memory. The main translet class and all its
+     * helper classes are returned; nothing is written to disk. Returns
+     * null if the compilation failed.
+     */
+    public byte[][] compileStylesheet(InputStream input, String className,
+				      ErrorListener elistener) {
+	_outputType = BYTEARRAY_OUTPUT;
+	return compile(input, className, elistener) ? outputToArrays() : null;
+    }
+
+    /**
+     * Same as compileStylesheet(URL, String), but reports errors to the
+     * supplied (possibly null) TrAX ErrorListener.
+     */
+    public byte[][] compileStylesheet(URL stylesheetURL, String className,
+				      ErrorListener elistener) {
+	_outputType = BYTEARRAY_OUTPUT;
+	setClassName(className);
+	return compile(stylesheetURL, elistener) ? outputToArrays() : null;
+    }
+
     /** 
      * Command line runnability.
      * o className
@@ -597,12 +673,14 @@ public final class XSLTC {
      * j jarFileName
      * u (isUriSpecified)
      * x (isDebugSpecified)
+     * m maxMethodSize
+     * r (report method sizes)
      * h printUsage()
      * s (don't allow System.exit)
      */
     public static void main(String[] args) {
 	try {
-	    final GetOpt getopt = new GetOpt(args, "o:d:j:p:uxhs");
+	    final GetOpt getopt = new GetOpt(args, "o:d:j:p:m:uxrhs");
 	    if (args.length < 1) {
 		printUsage();
 		doSystemExit(1); return;
@@ -610,6 +688,8 @@ public final class XSLTC {
 	    boolean isUriSpecified = false;
 	    boolean isDebugSpecified = false;
 	    boolean isJarFileSpecified = false;
+	    boolean isReportSpecified = false;
+	    int maxMethodSize = DEFAULT_MAX_METHOD_SIZE;
 	    String jarFileName = null;
 	    String destDirectory = "."; // cwd by default
 	    String packageName = null;
@@ -636,6 +716,12 @@ public final class XSLTC {
 		case 'x':
 		    isDebugSpecified = true;
 		    break;
+		case 'm':
+		    maxMethodSize = Integer.parseInt(getopt.getOptionArg());
+		    break;
+		case 'r':
+		    isReportSpecified = true;
+		    break;
 		case 's':
 		    allowSystemExit = false;
 		    break;
@@ -666,6 +752,10 @@ public final class XSLTC {
 	    xsltc.setPackageName(packageName);
 	    xsltc.setDestDirectory(destDirectory);
 	    xsltc.setJarFileSpecified(isJarFileSpecified);
+	    xsltc.setMaxMethodSize(maxMethodSize);
+	    if (isReportSpecified) {
+		xsltc.setMethodSizeReport(System.err);
+	    }
 	    if (className != null) {
 		xsltc.setClassName(className);
 	    }
@@ -729,7 +819,10 @@ public final class XSLTC {
 	"         the .jar extension. Example: -j MyJar \n"+
 	"   Note: the -o option should not be used when processing\n"+
 	"         multiple stylesheets. \n"+
-	"   also: [-x] (debug), [-s] (don't allow System.exit)";
+	"   also: [-x] (debug), [-s] (don't allow System.exit)\n" +
+	"         [-m <size>] split template bodies into methods of\n" +
+	"         at most <size> bytes where possible (default 8000,\n" +
+	"         0 to never split), [-r] (report method sizes)";
     
     public static void printUsage() {
 	System.err.println(USAGE_STRING);
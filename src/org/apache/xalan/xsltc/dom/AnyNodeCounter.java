@@ -84,7 +84,7 @@ public abstract class AnyNodeCounter extends NodeCounter {
 	if (_value != Integer.MIN_VALUE) {
 	    result = _value;
 	}
-	else {
+	else if ((result = getIndexedCount(_node)) < 0) {
 	    int next = _node;
 	    result = 0;
 	    while (next >= 0 && !matchesFrom(next)) {
@@ -97,6 +97,28 @@ public abstract class AnyNodeCounter extends NodeCounter {
 	return formatNumbers(result);
     }
 
+    /**
+     * Builds a numbering index in which every node holds the number of
+     * nodes up to and including itself that match the count pattern,
+     * back to the last node that matches the from pattern.
+     */
+    protected int[] buildIndex() {
+	final int size = _document.getSize();
+	final int[] counts = new int[size];
+	int count = 0;
+
+	for (int node = 0; node < size; node++) {
+	    if (matchesFrom(node)) {
+		count = 0;
+	    }
+	    else if (matchesCount(node)) {
+		count++;
+	    }
+	    counts[node] = count;
+	}
+	return counts;
+    }
+
     public static NodeCounter getDefaultNodeCounter(Translet translet,
 						    DOM document,
 						    NodeIterator iterator) {
@@ -114,7 +136,7 @@ public abstract class AnyNodeCounter extends NodeCounter {
 	    if (_value != Integer.MIN_VALUE) {
 		result = _value;
 	    }
-	    else {
+	    else if ((result = getIndexedCount(_node)) < 0) {
 		int next = _node;
 		result = 0;
 		final int ntype = _document.getType(_node); 
@@ -127,5 +149,33 @@ public abstract class AnyNodeCounter extends NodeCounter {
 	    }
 	    return formatNumbers(result);
 	}
+
+	/**
+	 * The index counts nodes of every type at once.
+	 */
+	protected int getIndexType() {
+	    return -1;
+	}
+
+	/**
+	 * Builds a numbering index in which every node holds the number of
+	 * nodes of its type up to and including itself.
+	 */
+	protected int[] buildIndex() {
+	    final int size = _document.getSize();
+	    final int[] counts = new int[size];
+	    int[] types = new int[DOM.NTYPES];
+
+	    for (int node = 0; node < size; node++) {
+		final int type = _document.getType(node);
+		if (type >= types.length) {
+		    final int[] newTypes = new int[type + DOM.NTYPES];
+		    System.arraycopy(types, 0, newTypes, 0, types.length);
+		    types = newTypes;
+		}
+		counts[node] = ++types[type];
+	    }
+	    return counts;
+	}
     }
 }
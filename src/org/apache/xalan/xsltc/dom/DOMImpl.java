@@ -182,6 +182,36 @@ public final class DOMImpl implements DOM, Externalizable {
 	return(_type.length);
     }
 
+    /**
+     * Returns the approximate number of bytes held by the arrays that
+     * make up this tree (used by DocumentCache to enforce its budget)
+     */
+    public long getMemorySize() {
+	long size = 0;
+	if (_type != null)          size += _type.length << 1;
+	if (_parent != null)        size += _parent.length << 2;
+	if (_nextSibling != null)   size += _nextSibling.length << 2;
+	if (_offsetOrChild != null) size += _offsetOrChild.length << 2;
+	if (_lengthOrAttr != null)  size += _lengthOrAttr.length << 2;
+	if (_text != null)          size += _text.length << 1;
+	if (_namespace != null)     size += _namespace.length << 1;
+	if (_whitespace != null && _whitespace.data() != null)
+	    size += _whitespace.data().length << 2;
+	if (_namesArray != null) {
+	    for (int i = 0; i < _namesArray.length; i++)
+		if (_namesArray[i] != null)
+		    size += _namesArray[i].length() << 1;
+	}
+	if (_nsNamesArray != null) {
+	    for (int i = 0; i < _nsNamesArray.length; i++)
+		if (_nsNamesArray[i] != null)
+		    size += _nsNamesArray[i].length() << 1;
+	}
+	if (_nodes != null)         size += _nodes.length << 2;
+	if (_nodeLists != null)     size += _nodeLists.length << 2;
+	return(size);
+    }
+
     /**
      * Returns true if node1 comes before node2 in document order
      */
@@ -60,6 +60,7 @@
  *
  */
 
+
 package org.apache.xalan.xsltc.dom;
 
 import java.io.PrintWriter;
@@ -69,6 +70,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.MalformedURLException;
 import java.util.Hashtable;
+import java.util.Vector;
 import java.util.Date;
 
 import javax.xml.parsers.SAXParser;
@@ -85,15 +87,118 @@ import org.apache.xalan.xsltc.dom.DOMImpl;
 import org.apache.xalan.xsltc.dom.DTDMonitor;
 import org.apache.xalan.xsltc.runtime.AbstractTranslet;
 
+/**
+ * A DOMCache that can be shared by any number of translets running in
+ * parallel. Documents are kept in a table keyed on URI and in a list
+ * ordered by last access. A document that is requested while another
+ * thread is still building it is waited for rather than built twice.
+ * The cache is bounded by a number of documents and, optionally, by
+ * the memory held by the DOMImpl trees; when either bound is exceeded
+ * documents are evicted either least recently used first or cheapest
+ * to rebuild first. Whether a cached copy is out of date is decided
+ * by a pluggable FreshnessPolicy.
+ */
 public final class DocumentCache implements DOMCache {
 
+    /**
+     * Evict the least recently used document first
+     */
+    public static final int EVICT_LRU  = 0;
+
+    /**
+     * Evict the document that was quickest to build first (the least
+     * recently used one among equals)
+     */
+    public static final int EVICT_COST = 1;
+
+    /**
+     * The default interval between modification checks (10 minutes)
+     */
+    public static final long DEFAULT_CHECK_INTERVAL = 600000;
+
+    /**
+     * Decides when a cached document must be reloaded. Implementations
+     * are called without the cache lock held, possibly from several
+     * threads at once.
+     */
+    public interface FreshnessPolicy {
+	/**
+	 * Called once after a document has been built
+	 */
+	public void documentLoaded(String uri, CachedDocument doc);
+
+	/**
+	 * Returns true if the cached copy of a document should be
+	 * discarded and the document built again
+	 */
+	public boolean isStale(String uri, CachedDocument doc);
+    }
+
+    /**
+     * A policy that never reloads a document once it is cached
+     */
+    public static final FreshnessPolicy NEVER_STALE = new FreshnessPolicy() {
+	    public void documentLoaded(String uri, CachedDocument doc) { }
+	    public boolean isStale(String uri, CachedDocument doc) {
+		return false;
+	    }
+	};
+
+    /**
+     * A policy that compares the document's modification time against
+     * the time recorded when it was built, at most once per interval.
+     * file: URIs are checked against the file system directly; other
+     * URIs are checked by opening a URLConnection.
+     */
+    public static final class TimestampPolicy implements FreshnessPolicy {
+
+	private final long _interval;
+
+	public TimestampPolicy(long interval) {
+	    _interval = interval;
+	}
+
+	public void documentLoaded(String uri, CachedDocument doc) {
+	    doc.setLastModified(getLastModified(uri));
+	    doc.setLastChecked(System.currentTimeMillis());
+	}
+
+	public boolean isStale(String uri, CachedDocument doc) {
+	    final long now = System.currentTimeMillis();
+	    // Only one thread gets to check the document per interval
+	    synchronized (doc) {
+		if (now <= (doc.getLastChecked() + _interval)) return false;
+		doc.setLastChecked(now);
+	    }
+	    return (getLastModified(uri) > doc.getLastModified());
+	}
+    }
+
     private int       _size;
-    private Hashtable _references;
-    private String[]  _URIs;
-    private int       _count;
-    private int       _current;
-    private SAXParser _parser;
-    private XMLReader _reader;
+    private long      _maxMemory;
+    private int       _policy = EVICT_LRU;
+    private FreshnessPolicy _freshness =
+	new TimestampPolicy(DEFAULT_CHECK_INTERVAL);
+
+    // All documents (including those being built) keyed on URI, and
+    // the same documents in order of last access (most recent first)
+    private Hashtable      _references;
+    private CachedDocument _head = null;
+    private CachedDocument _tail = null;
+    private int            _count = 0;
+    private long           _memory = 0;
+
+    // Parsers are not thread safe; each build borrows one from here
+    private SAXParserFactory _factory;
+    private Vector           _readers = new Vector();
+
+    // Statistics
+    private long _hits = 0;
+    private long _misses = 0;
+    private long _reloads = 0;
+    private long _evictions = 0;
+    private long _loadCount = 0;
+    private long _loadTime = 0;
 
     /*
      * Inner class containing a DOMImpl object and DTD handler
@@ -107,29 +212,39 @@ public final class DocumentCache implements DOMCache {
 	private long _lastModified;
 	private long _lastChecked;
 	private long _buildTime;
+	private long _memorySize;
 
 	// DOM and DTD handler references
 	private DOMImpl    _dom = null;
 	private DTDMonitor _dtdMonitor = null;
+
+	// The URI this document was loaded from
+	private final String _uri;
+
+	// Set until the thread that created this entry has built it
+	private boolean _loading = true;
+
+	// Neighbours in the cache's access-order list
+	private CachedDocument _prev = null;
+	private CachedDocument _next = null;
 	
 	/**
-	 * Constructor - load document and initialise statistics
+	 * Constructor - initialise statistics. The document itself is
+	 * built by a later call to loadDocument().
 	 */
 	public CachedDocument(String uri) {
 	    // Initialise statistics variables
 	    final long stamp = System.currentTimeMillis();
+	    _uri = uri;
 	    _firstReferenced = stamp;
 	    _lastReferenced  = stamp;
 	    _accessCount     = 0;
-	    loadDocument(uri);
-
-	    _buildTime = System.currentTimeMillis() - stamp;
 	}
 
 	/**
 	 * Loads the document and updates build-time (latency) statistics
 	 */
-	public void loadDocument(String uri) {
+	public void loadDocument(XMLReader reader) {
 
 	    _dom = new DOMImpl();
 	    _dtdMonitor = new DTDMonitor();
@@ -137,25 +252,28 @@ public final class DocumentCache implements DOMCache {
 	    try {
 		final long stamp = System.currentTimeMillis();
 
-		_reader.setContentHandler(_dom.getBuilder());
-		_dtdMonitor.handleDTD(_reader);
-		_reader.parse(uri);
-		_dom.setDocumentURI(uri);
+		reader.setContentHandler(_dom.getBuilder());
+		_dtdMonitor.handleDTD(reader);
+		reader.parse(_uri);
+		_dom.setDocumentURI(_uri);
 
-		// The build time can be used for statistics for a better
-		// priority algorithm (currently round robin).
+		// The build time is used by the EVICT_COST policy
 		final long thisTime = System.currentTimeMillis() - stamp;
 		if (_buildTime > 0)
 		    _buildTime = (_buildTime + thisTime) >>> 1;
 		else
 		    _buildTime = thisTime;
+		_memorySize = _dom.getMemorySize();
 	    }
 	    catch (Exception e) {
 		_dom = null;
 		_dtdMonitor = null;
+		_memorySize = 0;
 	    }
 	}
 
+	public String getURI()             { return(_uri); }
+
 	public DOMImpl getDocument()       { return(_dom); }
 
 	public DTDMonitor getDTDMonitor()  { return(_dtdMonitor); }
@@ -178,12 +296,7 @@ public final class DocumentCache implements DOMCache {
 	
 	public void setLastChecked(long t) { _lastChecked = t; }
 
-	public long getEstimatedSize() {
-	    if (_dom != null)
-		return(_dom.getSize() << 5); // ???
-	    else
-		return(0);
-	}
+	public long getEstimatedSize()     { return(_memorySize); }
 
     }
 
@@ -191,28 +304,77 @@ public final class DocumentCache implements DOMCache {
      * DocumentCache constructor
      */
     public DocumentCache(int size) throws SAXException {
-	_count = 0;
-	_current = 0;
+	this(size, 0);
+    }
+
+    /**
+     * DocumentCache constructor
+     * @param size The maximum number of documents to keep
+     * @param maxMemory The maximum number of bytes the cached trees may
+     * hold (as reported by DOMImpl.getMemorySize()), or 0 for no limit
+     */
+    public DocumentCache(int size, long maxMemory) throws SAXException {
 	_size  = size;
+	_maxMemory = maxMemory;
 	_references = new Hashtable(_size+2);
-	_URIs = new String[_size];
 
 	try {
-	    // Create a SAX parser and get the XMLReader object it uses
-	    final SAXParserFactory factory = SAXParserFactory.newInstance();
-	    _parser = factory.newSAXParser();
-	    _reader = _parser.getXMLReader();
+	    // Create a SAX parser factory and make sure it is usable
+	    _factory = SAXParserFactory.newInstance();
+	    releaseReader(_factory.newSAXParser().getXMLReader());
 	}
 	catch (ParserConfigurationException e) {
-	    System.err.println("Your SAX parser is not configured correctly.");
-	    System.exit(-1);
+	    throw new SAXException(e);
 	}
     }
 
+    /**
+     * Selects the eviction policy (EVICT_LRU or EVICT_COST)
+     */
+    public synchronized void setEvictionPolicy(int policy) {
+	_policy = policy;
+    }
+
+    /**
+     * Sets the maximum number of bytes held by cached trees (0 for no
+     * limit). Documents are evicted immediately if needed.
+     */
+    public synchronized void setMaxMemory(long maxMemory) {
+	_maxMemory = maxMemory;
+	evictDocuments(null);
+    }
+
+    /**
+     * Replaces the policy that decides when documents are reloaded
+     */
+    public synchronized void setFreshnessPolicy(FreshnessPolicy policy) {
+	_freshness = (policy == null) ? NEVER_STALE : policy;
+    }
+
+    public synchronized long getHitCount()       { return(_hits); }
+
+    public synchronized long getMissCount()      { return(_misses); }
+
+    public synchronized long getReloadCount()    { return(_reloads); }
+
+    public synchronized long getEvictionCount()  { return(_evictions); }
+
+    public synchronized long getLoadCount()      { return(_loadCount); }
+
+    public synchronized long getTotalLoadTime()  { return(_loadTime); }
+
+    public synchronized long getMemorySize()     { return(_memory); }
+
+    public synchronized int getDocumentCount()   { return(_count); }
+
     /**
      * Returns the time-stamp for a document's last update
      */
-    private final long getLastModified(String uri) {
+    private static long getLastModified(String uri) {
+	if (uri.startsWith("file:")) {
+	    final File file = new File(uri.substring(5));
+	    if (file.exists()) return(file.lastModified());
+	}
 	try {
 	    URL url = new URL(uri);
 	    URLConnection connection = url.openConnection();
@@ -228,40 +390,182 @@ public final class DocumentCache implements DOMCache {
     }
 
     /**
-     *
+     * Takes an XMLReader from the pool, or creates a new one
      */
-    private CachedDocument lookupDocument(String uri) {
-	return((CachedDocument)_references.get(uri));
+    private XMLReader getReader() throws Exception {
+	synchronized (_readers) {
+	    final int last = _readers.size() - 1;
+	    if (last >= 0) {
+		final XMLReader reader = (XMLReader)_readers.elementAt(last);
+		_readers.removeElementAt(last);
+		return(reader);
+	    }
+	}
+	return(_factory.newSAXParser().getXMLReader());
     }
 
     /**
-     *
+     * Returns an XMLReader to the pool
      */
-    private synchronized void insertDocument(String uri, CachedDocument doc) {
-	if (_count < _size) {
-	    // Insert out URI in circular buffer
-	    _URIs[_count++] = uri;
-	    _current = 0;
+    private void releaseReader(XMLReader reader) {
+	synchronized (_readers) {
+	    _readers.addElement(reader);
 	}
-	else {
-	    // Remove oldest URI from reference Hashtable
-	    _references.remove(_URIs[_current]);
-	    // Insert our URI in circular buffer
-	    _URIs[_current] = uri;
-	    if (++_current >= _size) _current = 0;
-	}
-	_references.put(uri, doc);
     }
 
     /**
-     *
+     * Adds a document at the head of the access list
+     */
+    private void link(CachedDocument doc) {
+	doc._prev = null;
+	doc._next = _head;
+	if (_head != null)
+	    _head._prev = doc;
+	else
+	    _tail = doc;
+	_head = doc;
+	_count++;
+    }
+
+    /**
+     * Removes a document from the access list
      */
-    private synchronized void replaceDocument(String uri, CachedDocument doc) {
-	CachedDocument old = (CachedDocument)_references.get(uri);
-	if (doc == null)
-	    insertDocument(uri, doc);
+    private void unlink(CachedDocument doc) {
+	if (doc._prev != null)
+	    doc._prev._next = doc._next;
 	else
+	    _head = doc._next;
+	if (doc._next != null)
+	    doc._next._prev = doc._prev;
+	else
+	    _tail = doc._prev;
+	doc._prev = doc._next = null;
+	_count--;
+    }
+
+    /**
+     * Removes a built document from the cache
+     */
+    private void removeDocument(CachedDocument doc) {
+	if (_references.get(doc.getURI()) == doc)
+	    _references.remove(doc.getURI());
+	unlink(doc);
+	_memory -= doc.getEstimatedSize();
+    }
+
+    /**
+     * Returns the cached document for a URI, waiting for it if another
+     * thread is building it. If the URI is not cached, or is cached as
+     * 'stale', a new entry is created and returned still marked as
+     * loading; the caller must then build it and call loadComplete().
+     */
+    private synchronized CachedDocument lookupDocument(String uri,
+						       CachedDocument stale) {
+	while (true) {
+	    CachedDocument doc = (CachedDocument)_references.get(uri);
+
+	    if (doc != null && doc != stale) {
+		if (doc._loading) {
+		    try {
+			wait();
+		    }
+		    catch (InterruptedException e) {
+			// Check the entry again
+		    }
+		    continue;
+		}
+		_hits++;
+		doc._lastReferenced = System.currentTimeMillis();
+		doc.incAccessCount();
+		if (doc != _head) {
+		    unlink(doc);
+		    link(doc);
+		}
+		return(doc);
+	    }
+
+	    if (doc == null)
+		_misses++;
+	    else {
+		_reloads++;
+		removeDocument(doc);
+	    }
+	    doc = new CachedDocument(uri);
 	    _references.put(uri, doc);
+	    link(doc);
+	    return(doc);
+	}
+    }
+
+    /**
+     * Publishes a document built by loadDocument() to waiting threads
+     * and evicts other documents if the cache has grown too large.
+     */
+    private synchronized void loadComplete(CachedDocument doc, long time) {
+	doc._loading = false;
+	_loadCount++;
+	_loadTime += time;
+
+	if (_references.get(doc.getURI()) == doc) {
+	    if (doc.getDocument() == null) {
+		// Do not remember documents that could not be loaded
+		removeDocument(doc);
+	    }
+	    else {
+		doc.incAccessCount();
+		_memory += doc.getEstimatedSize();
+		evictDocuments(doc);
+	    }
+	}
+	notifyAll();
+    }
+
+    /**
+     * Evicts documents until the cache is within its bounds. Documents
+     * that are being built, and the document 'keep', are never evicted.
+     */
+    private void evictDocuments(CachedDocument keep) {
+	while (_count > _size || (_maxMemory > 0 && _memory > _maxMemory)) {
+	    CachedDocument victim = null;
+	    for (CachedDocument doc = _tail; doc != null; doc = doc._prev) {
+		if (doc._loading || doc == keep) continue;
+		if (_policy == EVICT_LRU) {
+		    victim = doc;
+		    break;
+		}
+		if (victim == null || doc.getLatency() < victim.getLatency())
+		    victim = doc;
+	    }
+	    if (victim == null) return;
+	    removeDocument(victim);
+	    _evictions++;
+	}
+    }
+
+    /**
+     * Builds a document reserved by lookupDocument()
+     */
+    private void buildDocument(CachedDocument doc) {
+	final long stamp = System.currentTimeMillis();
+	try {
+	    final XMLReader reader = getReader();
+	    doc.loadDocument(reader);
+	    releaseReader(reader);
+	    if (doc.getDocument() != null) {
+		final FreshnessPolicy freshness;
+		synchronized (this) {
+		    freshness = _freshness;
+		}
+		freshness.documentLoaded(doc.getURI(), doc);
+	    }
+	}
+	catch (Exception e) {
+	    doc._dom = null;
+	    doc._dtdMonitor = null;
+	}
+	finally {
+	    loadComplete(doc, System.currentTimeMillis() - stamp);
+	}
     }
 
     /**
@@ -269,34 +573,18 @@ public final class DocumentCache implements DOMCache {
      * downloading it and putting it in the cache.
      */
     public final DOMImpl retrieveDocument(String uri, int mask, Translet trs) {
-	CachedDocument doc;
+	CachedDocument doc = lookupDocument(uri, null);
 
-	// Try to get the document from the cache first
-	if ((doc = lookupDocument(uri)) == null) {
-	    doc = new CachedDocument(uri);
-	    if (doc == null) return null; // better error handling needed!!!
-	    doc.setLastModified(getLastModified(uri));
-	    insertDocument(uri, doc);
-	}
 	// If the document is in the cache we must check if it is still valid
-	else {
-	    long now = System.currentTimeMillis();
-	    long chk = doc.getLastChecked();
-	    doc.setLastChecked(now);
-	    // Has the modification time for this file been checked lately?
-	    if (now > (chk + 600000)) {
-		doc.setLastChecked(now);
-		long last = getLastModified(uri);
-		// Reload document if it has been modified since last download
-		if (last > doc.getLastModified()) {
-		    doc = new CachedDocument(uri);
-		    if (doc == null) return null;
-		    doc.setLastModified(getLastModified(uri));
-		    replaceDocument(uri, doc);
-		}
+	if (!doc._loading) {
+	    final FreshnessPolicy freshness;
+	    synchronized (this) {
+		freshness = _freshness;
 	    }
-	    
+	    if (freshness.isStale(uri, doc))
+		doc = lookupDocument(uri, doc);
 	}
+	if (doc._loading) buildDocument(doc);
 
 	// Get the references to the actual DOM and DTD handler
 	final DOMImpl    dom = doc.getDocument();
@@ -306,8 +594,6 @@ public final class DocumentCache implements DOMCache {
 	// non-existing document
 	if (dom == null) return null;
 
-	doc.incAccessCount(); // For statistics
-
 	final AbstractTranslet translet = (AbstractTranslet)trs;
 
 	// Set minimum needed size for key/id indices in the translet
@@ -317,25 +603,38 @@ public final class DocumentCache implements DOMCache {
 	// Pass all unparsed entities to the translet
 	translet.setUnparsedEntityURIs(dtd.getUnparsedEntityURIs());
 
-	return(doc.getDocument());
+	return(dom);
     }
 
     /**
      * Outputs the cache statistics
      */
-    public void getStatistics(PrintWriter out) {
+    public synchronized void getStatistics(PrintWriter out) {
 	out.println("<h2>DOM cache statistics</h2><center><table border=\"2\">"+
+		    "<tr><td><b>Hits</b></td><td><b>Misses</b></td>"+
+		    "<td><b>Reloads</b></td><td><b>Evictions</b></td>"+
+		    "<td><b>Loads</b></td><td><b>Total load time</b></td>"+
+		    "<td><b>Documents</b></td><td><b>Memory</b></td></tr>");
+	out.println("<tr><td>"+_hits+"</td><td>"+_misses+"</td><td>"+
+		    _reloads+"</td><td>"+_evictions+"</td><td>"+
+		    _loadCount+"</td><td>"+_loadTime+"ms</td><td>"+
+		    _count+"</td><td>"+_memory+"</td></tr></table><p>");
+
+	out.println("<table border=\"2\">"+
 		    "<tr><td><b>Document URI</b></td>"+
 		    "<td><center><b>Build time</b></center></td>"+
+		    "<td><center><b>Size</b></center></td>"+
 		    "<td><center><b>Access count</b></center></td>"+
 		    "<td><center><b>Last accessed</b></center></td>"+
 		    "<td><center><b>Last modified</b></center></td></tr>");
 
-	for (int i=0; i<_count; i++) {
-	    CachedDocument doc = (CachedDocument)_references.get(_URIs[i]);
-	    out.print("<tr><td><a href=\""+_URIs[i]+"\">"+
-		      "<font size=-1>"+_URIs[i]+"</font></a></td>");
+	for (CachedDocument doc = _head; doc != null; doc = doc._next) {
+	    if (doc._loading) continue;
+	    final String uri = doc.getURI();
+	    out.print("<tr><td><a href=\""+uri+"\">"+
+		      "<font size=-1>"+uri+"</font></a></td>");
 	    out.print("<td><center>"+doc.getLatency()+"ms</center></td>");
+	    out.print("<td><center>"+doc.getEstimatedSize()+"</center></td>");
 	    out.print("<td><center>"+doc.getAccessCount()+"</center></td>");
 	    out.print("<td><center>"+(new Date(doc.getLastReferenced()))+
 		      "</center></td>");
@@ -59,49 +59,187 @@
  * @author Morten Jorgensen
  *
  */
-
 package org.apache.xalan.xsltc.dom;
 
-import java.util.Vector;
 import java.util.StringTokenizer;
 
 import org.apache.xalan.xsltc.DOM;
 import org.apache.xalan.xsltc.NodeIterator;
 import org.apache.xalan.xsltc.runtime.Hashtable;
 
+/**
+ * Index for a key defined by xsl:key (or for ID attributes), which also
+ * serves as the iterator returned by key() and id().
+ *
+ * Each key value maps to a sorted run of node handles. The handles keep
+ * their DOM mask, so one index can hold nodes from any number of
+ * documents. Nodes normally arrive in document order, in which case a
+ * run is built by appending alone; a run that receives nodes out of
+ * order is sorted (and duplicates removed) on its next lookup.
+ */
 public class KeyIndex implements NodeIterator {
+
+    /**
+     * The nodes indexed under one key value
+     */
+    private static final class NodeRun {
+	private int[]   _nodes = new int[2];
+	private int     _size = 0;
+	private boolean _sorted = true;
+
+	/**
+	 * Appends a node, skipping it if it repeats the previous one
+	 */
+	void add(int node) {
+	    if (_size > 0) {
+		final int last = _nodes[_size - 1];
+		if (node == last) return;
+		if (node < last) _sorted = false;
+	    }
+	    if (_size == _nodes.length) {
+		final int[] nodes = new int[_size << 1];
+		System.arraycopy(_nodes, 0, nodes, 0, _size);
+		_nodes = nodes;
+	    }
+	    _nodes[_size++] = node;
+	}
+
+	/**
+	 * Sorts the run and removes duplicates if nodes were added out of
+	 * order. A new array is used so that iterators still holding the
+	 * old one are not disturbed.
+	 */
+	void sort() {
+	    if (_sorted) return;
+	    final int[] nodes = new int[_size];
+	    System.arraycopy(_nodes, 0, nodes, 0, _size);
+	    sortNodes(nodes, 0, _size - 1);
+	    int size = 0;
+	    for (int i = 0; i < _size; i++) {
+		if (size == 0 || nodes[i] != nodes[size - 1])
+		    nodes[size++] = nodes[i];
+	    }
+	    _nodes = nodes;
+	    _size = size;
+	    _sorted = true;
+	}
+
+	/**
+	 * Returns true if the (sorted) run contains a given node
+	 */
+	boolean contains(int node) {
+	    int lo = 0;
+	    int hi = _size - 1;
+	    while (lo <= hi) {
+		final int mid = (lo + hi) >>> 1;
+		final int value = _nodes[mid];
+		if (value < node)
+		    lo = mid + 1;
+		else if (value > node)
+		    hi = mid - 1;
+		else
+		    return(true);
+	    }
+	    return(false);
+	}
+    }
+
     private Hashtable _index = new Hashtable();
-    private BitArray  _nodes = null;
+
+    // The nodes this iterator returns. The array may be shared with a
+    // NodeRun in the index and must never be modified here.
+    private int[]     _nodes = null;
+    private int       _size = 0;
+
+    // The range of _nodes this iterator returns (setStartNode() limits
+    // it to the nodes of one document) and the current position
+    private int       _start = 0;
+    private int       _end = 0;
     private int       _pos = 0;
     private int       _mark = 0;
-    private int       _save = 0;
-    private int       _start = 0;
-    private int       _arraySize = 0;
-    private int       _node = -1;
 
     /**
-     * Creates an index for a key defined by xsl:key
+     * Creates an index for a key defined by xsl:key. The size of the
+     * document is no longer needed, but the signature is kept for
+     * compiled translets.
      */
     public KeyIndex(int size) {
-	_arraySize = size;
     }
  
     /**
      * Adds a node to the node list for a given value.
-     * The BitArray object makes sure duplicate nodes are eliminated.
+     * Duplicate nodes are eliminated when the list is looked up.
      */
     public void add(String value, int node) {
-	if ((_nodes = (BitArray)_index.get(value)) == null) {
-	    _nodes = new BitArray(_arraySize);
-	    _nodes.setMask(node & 0xff000000);
-	    _index.put(value,_nodes);
+	NodeRun run = (NodeRun)_index.get(value);
+	if (run == null) {
+	    run = new NodeRun();
+	    _index.put(value, run);
 	}
-	_nodes.setBit(node & 0x00ffffff);
+	run.add(node);
+    }
 
-	/*
-	 * TODO: A bit array can currently only hold nodes from one DOM.
-	 * An index will therefore only return nodes from a single document.
-	 */
+    /**
+     * Returns the sorted run for a value, or null if there is none
+     */
+    private NodeRun getRun(Object value) {
+	final NodeRun run = (NodeRun)_index.get(value);
+	if (run != null) run.sort();
+	return(run);
+    }
+
+    /**
+     * Makes this iterator return the nodes in a run
+     */
+    private void setNodes(NodeRun run) {
+	if (run == null) {
+	    _nodes = null;
+	    _size = 0;
+	}
+	else {
+	    _nodes = run._nodes;
+	    _size = run._size;
+	}
+	_start = _pos = 0;
+	_end = _size;
+    }
+
+    /**
+     * Makes this iterator return the union of its current nodes and
+     * the given sorted nodes (in document order, without duplicates)
+     */
+    private void union(int[] nodes, int size) {
+	if (size == 0) return;
+	if (_size == 0) {
+	    _nodes = nodes;
+	    _size = size;
+	    _start = _pos = 0;
+	    _end = _size;
+	    return;
+	}
+
+	final int[] result = new int[_size + size];
+	int i = 0, j = 0, n = 0;
+	while (i < _size && j < size) {
+	    final int a = _nodes[i];
+	    final int b = nodes[j];
+	    if (a < b) {
+		result[n++] = a; i++;
+	    }
+	    else if (a > b) {
+		result[n++] = b; j++;
+	    }
+	    else {
+		result[n++] = a; i++; j++;
+	    }
+	}
+	while (i < _size) result[n++] = _nodes[i++];
+	while (j < size)  result[n++] = nodes[j++];
+
+	_nodes = result;
+	_size = n;
+	_start = _pos = 0;
+	_end = _size;
     }
 
     /**
@@ -110,12 +248,7 @@ public class KeyIndex implements NodeIterator {
     public void merge(KeyIndex other) {
 	// Only merge if other node set is not empty
 	if (other != null) {
-	    if (other._nodes != null) {
-		// Create new Vector for nodes if this set is empty
-		if (_nodes == null)
-		    _nodes = new BitArray(_arraySize);
-		_nodes = _nodes.merge(other._nodes);
-	    }
+	    union(other._nodes, other._size);
 	}
     }
 
@@ -128,19 +261,15 @@ public class KeyIndex implements NodeIterator {
      */
     public void lookupId(String value) {
 	if (value.indexOf(' ') > -1) {
+	    setNodes(null);
 	    StringTokenizer values = new StringTokenizer(value);
 	    while (values.hasMoreElements()) {
-		BitArray nodes = (BitArray)_index.get(values.nextElement());
-		if (nodes != null) {
-		    if (_nodes == null)
-			_nodes = nodes;
-		    else
-			_nodes = _nodes.merge(nodes);
-		}
+		final NodeRun run = getRun(values.nextElement());
+		if (run != null) union(run._nodes, run._size);
 	    }
 	}
 	else {
-	    _nodes = (BitArray)_index.get(value);
+	    setNodes(getRun(value));
 	}
     }
 
@@ -149,47 +278,44 @@ public class KeyIndex implements NodeIterator {
      * prior to returning the node iterator.
      */
     public void lookupKey(String value) {
-	_nodes = (BitArray)_index.get(value);
+	setNodes(getRun(value));
     }
 
     /** 
      * Callers should not call next() after it returns END.
      */
     public int next() {
-	if (_nodes == null) return(END);
-	if ((_node = _nodes.getNextBit(++_node)) == END) return(END);
-	_pos++;
-	return(_node | _nodes.getMask());
+	if (_pos >= _end) return(END);
+	return(_nodes[_pos++]);
     }
 
     public int containsID(int node, String value) { 
 	if (value.indexOf(' ') > -1) {
 	    StringTokenizer values = new StringTokenizer(value);
 	    while (values.hasMoreElements()) {
-		BitArray nodes = (BitArray)_index.get(values.nextElement());
-		if ((nodes != null) && (nodes.getBit(node))) return(1);
+		final NodeRun run = getRun(values.nextElement());
+		if ((run != null) && (run.contains(node))) return(1);
 	    }
 	    return(0);
 	}
 	else {
-	    BitArray nodes = (BitArray)_index.get(value);
-	    if ((nodes != null) && (nodes.getBit(node))) return(1);
+	    final NodeRun run = getRun(value);
+	    if ((run != null) && (run.contains(node))) return(1);
 	    return(0);
 	}
     }
 
     public int containsKey(int node, String value) { 
-	BitArray nodes = (BitArray)_index.get(value);
-	if ((nodes != null) && (nodes.getBit(node))) return(1);
+	final NodeRun run = getRun(value);
+	if ((run != null) && (run.contains(node))) return(1);
 	return(0);
     }
 
     /**
-     * Resets the iterator to the last start node.
+     * Resets the iterator to the first node.
      */
     public NodeIterator reset() {
-	_pos = -1;
-	_node = _start - 1;
+	_pos = _start;
 	return(this);
     }
 
@@ -197,17 +323,14 @@ public class KeyIndex implements NodeIterator {
      * Returns the number of elements in this iterator.
      */
     public int getLast() {
-	if (_nodes == null)
-	    return(0);
-	else
-	    return(_nodes.size());
+	return(_end - _start);
     }
 
     /**
      * Returns the position of the current node in the set.
      */
     public int getPosition() {
-	return(_pos);
+	return(_pos - _start);
     }
 
     /**
@@ -215,7 +338,6 @@ public class KeyIndex implements NodeIterator {
      */
     public void setMark() {
 	_mark = _pos;
-	_save = _node;
     }
 
     /**
@@ -223,21 +345,45 @@ public class KeyIndex implements NodeIterator {
      */
     public void gotoMark() {
 	_pos = _mark;
-	_node = _save;
     }
 
     /** 
+     * key() and id() only return nodes from the document that contains
+     * the context node. The nodes of each document are a contiguous range
+     * of the sorted handles, so this iterator is limited to that range.
      * Set start to END should 'close' the iterator, 
      * i.e. subsequent call to next() should return END.
      */
     public NodeIterator setStartNode(int start) {
-	if (_nodes != null) {
-	    _start = _nodes.getBitNumber(start);
-	    _node = _start - 1;
+	if (start == END) {
+	    _start = _end = _pos = 0;
+	}
+	else {
+	    final int mask = start & 0xff000000;
+	    _start = _pos = lowerBound(mask);
+	    _end = lowerBound(mask | 0x00ffffff);
+	    if (_end < _size && _nodes[_end] == (mask | 0x00ffffff)) _end++;
 	}
 	return((NodeIterator)this);
     }
 
+    /**
+     * Returns the index of the first node handle that is not less
+     * than 'node'
+     */
+    private int lowerBound(int node) {
+	int lo = 0;
+	int hi = _size;
+	while (lo < hi) {
+	    final int mid = (lo + hi) >>> 1;
+	    if (_nodes[mid] < node)
+		lo = mid + 1;
+	    else
+		hi = mid;
+	}
+	return(lo);
+    }
+
     /**
      * True if this iterator has a reversed axis.
      */
@@ -252,4 +398,42 @@ public class KeyIndex implements NodeIterator {
 	return((NodeIterator)this);
     }
 
+    /**
+     * Sorts a range of node handles (quicksort with insertion sort for
+     * short ranges)
+     */
+    private static void sortNodes(int[] nodes, int lo, int hi) {
+	while (hi - lo > 8) {
+	    final int pivot = nodes[(lo + hi) >>> 1];
+	    int i = lo, j = hi;
+	    while (i <= j) {
+		while (nodes[i] < pivot) i++;
+		while (nodes[j] > pivot) j--;
+		if (i <= j) {
+		    final int tmp = nodes[i];
+		    nodes[i++] = nodes[j];
+		    nodes[j--] = tmp;
+		}
+	    }
+	    // Recurse into the smaller half, loop on the larger one
+	    if (j - lo < hi - i) {
+		sortNodes(nodes, lo, j);
+		lo = i;
+	    }
+	    else {
+		sortNodes(nodes, i, hi);
+		hi = j;
+	    }
+	}
+	for (int i = lo + 1; i <= hi; i++) {
+	    final int node = nodes[i];
+	    int j = i - 1;
+	    while (j >= lo && nodes[j] > node) {
+		nodes[j + 1] = nodes[j];
+		j--;
+	    }
+	    nodes[j + 1] = node;
+	}
+    }
+
 }
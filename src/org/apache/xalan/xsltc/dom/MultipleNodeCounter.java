@@ -111,6 +111,12 @@ public abstract class MultipleNodeCounter extends NodeCounter {
 	    final int ancestor = ancestors.at(i);
 
 	    if (matchesCount(ancestor)) {
+		final int count = getIndexedCount(ancestor);
+		if (count > 0) {
+		    counters[j] = count;
+		    continue;
+		}
+
 		_precSiblings.setStartNode(ancestor);
 		while ((next = _precSiblings.next()) != END) {
 		    if (matchesCount(next)) {
@@ -68,6 +68,8 @@ import org.apache.xalan.xsltc.DOM;
 import org.apache.xalan.xsltc.Translet;
 import org.apache.xalan.xsltc.NodeIterator;
 import org.apache.xalan.xsltc.dom.Axis;
+import org.apache.xalan.xsltc.runtime.AbstractTranslet;
+import org.apache.xalan.xsltc.runtime.Hashtable;
 
 public abstract class NodeCounter implements Axis {
     public static final int END = DOM.NULL;
@@ -76,6 +78,14 @@ public abstract class NodeCounter implements Axis {
     protected int _nodeType = DOM.FIRST_TYPE - 1;
     protected int _value = Integer.MIN_VALUE;
 
+    /**
+     * True if this counter uses the default count pattern, which matches
+     * nodes of the same type as the start node. Compiled counters with a
+     * count pattern clear it, so that their numbering index can be shared
+     * by start nodes of any type.
+     */
+    protected boolean _countByType = true;
+
     public final DOM          _document;
     public final NodeIterator _iterator;
     public final Translet     _translet;
@@ -177,6 +187,102 @@ public abstract class NodeCounter implements Axis {
 	return false;
     }
 
+    /**
+     * Returns the count of <tt>node</tt> from the numbering index of this
+     * counter, or -1 if <tt>node</tt> is not covered by the index. The
+     * index is built by buildIndex() the first time a counter of this
+     * class (and start node type, if counting by type) is used on the
+     * document, and is kept by the translet for later counters.
+     */
+    protected final int getIndexedCount(int node) {
+	if (!(_document instanceof DOMAdapter) ||
+	    !(_translet instanceof AbstractTranslet)) {
+	    return -1;
+	}
+
+	final Hashtable indexes =
+	    ((AbstractTranslet)_translet).getCounterIndexes();
+	final Class key = getClass();
+	final int type = getIndexType();
+	final Index first = (Index)indexes.get(key);
+
+	Index index = first;
+	while (index != null &&
+	       (index.document != _document || index.type != type)) {
+	    index = index.next;
+	}
+
+	if (index == null) {
+	    index = new Index(_document, type, buildIndex());
+	    // Drop the indexes built for a previous document
+	    if (first != null && first.document == _document) {
+		index.next = first;
+	    }
+	    indexes.put(key, index);
+	}
+
+	final int[] counts = index.counts;
+	return (node >= 0 && node < counts.length) ? counts[node] : -1;
+    }
+
+    /**
+     * Returns the start node type the numbering index depends on, or -1
+     * if the index is the same for start nodes of any type.
+     */
+    protected int getIndexType() {
+	return _countByType ? _nodeType : -1;
+    }
+
+    /**
+     * Builds the numbering index for the document, an array of counts
+     * indexed by node, in which nodes that are not covered hold -1.
+     */
+    protected int[] buildIndex() {
+	return buildSiblingIndex();
+    }
+
+    /**
+     * Builds a numbering index in which every node that matches the
+     * count pattern holds one plus the number of its preceding siblings
+     * that also match. Only the descendants of the root are covered.
+     */
+    protected final int[] buildSiblingIndex() {
+	final int size = _document.getSize();
+	final int[] counts = new int[size];
+	final int[] siblings = new int[size];
+
+	for (int i = 0; i < size; i++) {
+	    counts[i] = -1;
+	}
+
+	int node;
+	final NodeIterator descendants =
+	    _document.getAxisIterator(DESCENDANT);
+	descendants.setStartNode(DOM.ROOTNODE);
+	while ((node = descendants.next()) != END) {
+	    counts[node] = matchesCount(node)
+		? ++siblings[_document.getParent(node)] : 0;
+	}
+	return counts;
+    }
+
+    /**
+     * A numbering index for one document, chained with the indexes
+     * built for other start node types.
+     */
+    static final class Index {
+	final DOM document;
+	final int type;
+	final int[] counts;
+	Index next;
+
+	Index(DOM document, int type, int[] counts) {
+	    this.document = document;
+	    this.type = type;
+	    this.counts = counts;
+	}
+    }
+
     /**
      * Format a single value according to the format parameters.
      */
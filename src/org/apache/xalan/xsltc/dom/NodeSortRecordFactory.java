@@ -88,7 +88,11 @@ public class NodeSortRecordFactory {
 	try {
 	    _dom = dom;
 	    _className = className;
-	    _class = Class.forName(className);
+	    // The auxillary class is loaded by the translet's class loader,
+	    // which is not the system class loader for in-memory translets
+	    final ClassLoader loader = translet.getClass().getClassLoader();
+	    _class = (loader != null) ? loader.loadClass(className)
+		                      : Class.forName(className);
 	    _levels = levels;
 	    _translet = translet;
 	}
@@ -104,8 +104,8 @@ public abstract class SingleNodeCounter extends NodeCounter {
 		}
 	    }
 
-	    if (next != END) {
-		result++;		// count target
+	    if (next != END && (result = getIndexedCount(next)) <= 0) {
+		result = 1;		// count target
 		_countSiblings.setStartNode(next);
 		while ((next = _countSiblings.next()) != END) {
 		    if (matchesCount(next)) {
@@ -149,7 +149,10 @@ public abstract class SingleNodeCounter extends NodeCounter {
 	    if (_value != Integer.MIN_VALUE) {
 		result = _value;
 	    }
-	    else {
+	    // The typed iterator counts all elements for element types that
+	    // the stylesheet does not know, so these are not indexed
+	    else if (_nodeType < DOM.NTYPES ||
+		     (result = getIndexedCount(_node)) <= 0) {
 		int next;
 		result = 1;
 		_countSiblings.setStartNode(_node);
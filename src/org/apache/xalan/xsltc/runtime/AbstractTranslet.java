@@ -77,11 +77,12 @@ import org.apache.xalan.xsltc.dom.StripWhitespaceFilter;
 import org.apache.xalan.xsltc.dom.KeyIndex;
 
 // GTM added all these
-import org.apache.xalan.xsltc.runtime.DefaultSAXOutputHandler;
+import org.apache.xalan.xsltc.runtime.StreamOutput;
 import javax.xml.transform.Transformer;	
 import javax.xml.transform.Source;
 import javax.xml.transform.Result;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.URIResolver;
@@ -91,7 +92,9 @@ import java.util.Properties;
 import java.lang.IllegalArgumentException;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.SAXParser;
+import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
+import org.apache.xalan.xsltc.compiler.Constants;
 import org.apache.xalan.xsltc.dom.DTDMonitor;
 import java.io.File;
 import java.io.Writer;
@@ -122,6 +125,9 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
     private KeyIndex  _emptyKeyIndex = new KeyIndex(1);
     private int _indexSize = 0;
 
+    // Container for the numbering indexes built by xsl:number counters
+    private Hashtable _counterIndexes = new Hashtable();
+
     private MessageHandler _msgHandler = null;
 
     private DOMCache _domCache = null;
@@ -379,6 +385,14 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
 	return index != null ? index : _emptyKeyIndex;
     }
 
+    /**
+     * Returns the numbering indexes built by xsl:number counters, keyed
+     * by counter class (see NodeCounter)
+     */
+    public final Hashtable getCounterIndexes() {
+	return _counterIndexes;
+    }
+
     public void buildKeys(DOM document, NodeIterator iterator,
 			  TransletOutputHandler handler,
 			  int root) throws TransletException {
@@ -419,26 +433,30 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
 	String encoding = translet.getOutputEncoding();
 	if (encoding == null) encoding = "UTF-8";
 
-	// create a DefaultSAXOutputHandler
-	DefaultSAXOutputHandler saxHandler = null;
+	// create a StreamOutput, which writes straight to the stream
+	// rather than through TextOutput and a SAX handler
+	StreamOutput streamOutput = null;
+	if (!(outputTarget instanceof StreamResult)) {
+	    throw new TransformerException(
+		"Transform output target must be a StreamResult.");
+	}
 	StreamResult target = (StreamResult)outputTarget;
 	java.io.Writer writer = target.getWriter();
 	java.io.OutputStream os = target.getOutputStream();
 	String systemid = target.getSystemId();
 	if (writer != null) {
-	    // no constructor that takes encoding yet...
 	    try {
-		saxHandler = new DefaultSAXOutputHandler(writer); 
+		streamOutput = new StreamOutput(writer, encoding); 
 	    } catch (java.io.IOException e) {
 		throw new TransformerException(
-		"IOException creating DefaultSAXOutputHandler");
+		"IOException creating StreamOutput");
 	    }
 	} else if (os != null) {
 	    try {
-		saxHandler = new DefaultSAXOutputHandler(os, encoding); 
+		streamOutput = new StreamOutput(os, encoding); 
 	    } catch (java.io.IOException e) {
 		throw new TransformerException(
-                     "IOException creating DefaultSAXOutputHandler");
+                     "IOException creating StreamOutput");
 	    }
 	} else if (systemid != null) {
 	    String filePrefix = new String("file:///");
@@ -446,7 +464,7 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
 		systemid = systemid.substring(filePrefix.length());
 	    }
 	    try {
-		saxHandler = new DefaultSAXOutputHandler(
+		streamOutput = new StreamOutput(
 			((OutputStream)new FileOutputStream(systemid)), 
 			encoding);
 	    } catch (java.io.FileNotFoundException e) {
@@ -458,18 +476,32 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
 	    }
 	}
  
+	if (streamOutput == null) {
+	    throw new TransformerException(
+		"Transform output target has no writer, output stream " +
+		"or system id.");
+	}
+
 	// finally do the transformation...
-	doTransform(xmlsrc.getSystemId(), saxHandler, encoding);
+	doTransform(xmlsrc, streamOutput);
     }
  
-    private void doTransform(String xmlDocName, 
-		     DefaultSAXOutputHandler saxHandler, String encoding) 
+    private void doTransform(Source xmlsrc, StreamOutput streamOutput)
+	throws TransformerException
     {
 	try {
 	    final Translet translet = (Translet)this; // GTM added
 
-	    // Create a SAX parser and get the XMLReader object it uses
+	    // Create a namespace aware SAX parser and get the XMLReader
+	    // object it uses; the DOM builder needs the local name and URI
+	    // of every element and attribute.
 	    final SAXParserFactory factory = SAXParserFactory.newInstance();
+	    try {
+		factory.setFeature(Constants.NAMESPACE_FEATURE,true);
+	    }
+	    catch (Exception e) {
+		factory.setNamespaceAware(true);
+	    }
 	    final SAXParser parser = factory.newSAXParser();
 	    final XMLReader reader = parser.getXMLReader();
  
@@ -480,13 +512,9 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
 	    final DTDMonitor dtdMonitor = new DTDMonitor();
 	    dtdMonitor.handleDTD(reader);
  
+	    final String xmlDocName = xmlsrc.getSystemId();
 	    dom.setDocumentURI(xmlDocName);
-         /****************
-             if (_uri)
-                 reader.parse(xmlDocName);
-             else
-         *******************/
-	    reader.parse("file:"+(new File(xmlDocName).getAbsolutePath()));
+	    reader.parse(getInputSource(xmlsrc));
 
 	    // Set size of key/id indices
 	    setIndexSize(dom.getSize());
@@ -496,61 +524,73 @@ public abstract class AbstractTranslet extends Transformer implements Translet {
 	    setDTDMonitor(dtdMonitor);
  
 	    // Transform the document
-	    TextOutput textOutput = new TextOutput(saxHandler, encoding);
-	    translet.transform(dom, textOutput);
-	    textOutput.flush();
+	    translet.transform(dom, streamOutput);
+	    streamOutput.flush();
 	}
 	catch (TransletException e) {
-	    if (_errorListener != null) {
-		postErrorToListener(e.getMessage());
-	    } else {
-	        System.err.println("\nTranslet Error: " + e.getMessage());
-	    }
-	    System.exit(1);
+	    throw transformError("Translet Error: " + e.getMessage(), e);
 	}
 	catch (RuntimeException e) {
-	    if (_errorListener != null) {
-		postErrorToListener("Runtime Error: " + e.getMessage());
-	    } else {
-	        System.err.println("\nRuntime Error: " + e.getMessage());
-	    }
-	    System.exit(1);
+	    throw transformError("Runtime Error: " + e.getMessage(), e);
 	}
 	catch (FileNotFoundException e) {
-	    if (_errorListener != null) {
-		postErrorToListener("File Not Found: " + e.getMessage());
-	    } else {
-               //System.err.println("Error:File or URI '"+_fileName+"' 
-	       //    not found.");
-	    }
-	    System.exit(1);
+	    throw transformError("File Not Found: " + e.getMessage(), e);
 	}
 	catch (MalformedURLException e) {
-	    if (_errorListener != null) {
-		postErrorToListener("Malformed URL: " + e.getMessage());
-	    } else {
-	        //System.err.println("Error: Invalid URI '"+_fileName+"'.");
-	    }
-	    System.exit(1);
+	    throw transformError("Malformed URL: " + e.getMessage(), e);
 	}
 	catch (UnknownHostException e) {
-	    if (_errorListener != null) {
-		postErrorToListener("Can't resolve URI: " + e.getMessage());
-	    } else {
-	        //System.err.println("Error: Can't resolve URI specification '"+
-	        //_fileName+"'.");
-	    }
-	    System.exit(1);
+	    throw transformError("Can't resolve URI: " + e.getMessage(), e);
 	}
 	catch (Exception e) {
-	    if (_errorListener != null) {
-		postErrorToListener("Internal error: " + e.getMessage()); 
-	    } else {
-	        System.err.println("Error: internal error.");
-	        e.printStackTrace();
+	    throw transformError("Internal error: " + e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Get the SAX input for a TrAX source.  A StreamSource's byte or
+     * character stream is read if it has one; otherwise the system id is
+     * read, as a file name if there is such a file and as a URI if not.
+     */
+    private static InputSource getInputSource(Source xmlsrc)
+	throws TransformerException
+    {
+	if (xmlsrc instanceof StreamSource) {
+	    final StreamSource stream = (StreamSource)xmlsrc;
+	    InputSource input = null;
+
+	    if (stream.getInputStream() != null)
+		input = new InputSource(stream.getInputStream());
+	    else if (stream.getReader() != null)
+		input = new InputSource(stream.getReader());
+
+	    if (input != null) {
+		input.setSystemId(stream.getSystemId());
+		return input;
 	    }
-	    System.exit(1);
 	}
+
+	final String systemId = xmlsrc.getSystemId();
+	if (systemId == null) {
+	    throw new TransformerException(
+		"Transform source has no input stream, reader or system id.");
+	}
+
+	final File file = new File(systemId);
+	if (file.isFile())
+	    return new InputSource("file:" + file.getAbsolutePath());
+	return new InputSource(systemId);
+    }
+
+    /**
+     * Report a transformation error to the TrAX error listener, if there
+     * is one, and get the exception to throw for it.
+     */
+    private TransformerException transformError(String msg, Exception e) {
+	if (_errorListener != null) {
+	    postErrorToListener(msg);
+	}
+	return new TransformerException(msg, e);
     }
 
     public void clearParameters() {  
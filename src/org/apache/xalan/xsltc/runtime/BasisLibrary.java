@@ -430,27 +430,143 @@ public final class BasisLibrary implements Operators {
     }
 
     /**
-     * Utility function: node-set/node-set compare. 
+     * Utility function: node-set/node-set compare. Each operator is
+     * answered in a single pass over each node-set instead of trying
+     * every pair of nodes.
      */
     public static boolean compare(NodeIterator left, NodeIterator right,
 				  int op, int node, DOM dom) {
-	int lnode;
 	left.reset();
-	
+	right.reset();
+
+	switch (op) {
+	case EQ:
+	    return equalNodeSets(left, right, dom);
+
+	case NE:
+	    return notEqualNodeSets(left, right, dom);
+
+	case GT:
+	case GE:
+	case LT:
+	case LE:
+	    // Some pair compares true exactly when the extremes do.
+	    final double[] lrange = numberRange(left, dom);
+	    if (lrange == null) return false;
+	    final double[] rrange = numberRange(right, dom);
+	    if (rrange == null) return false;
+	    switch (op) {
+	    case GT:
+		return lrange[1] > rrange[0];
+	    case GE:
+		return lrange[1] >= rrange[0];
+	    case LT:
+		return lrange[0] < rrange[1];
+	    default:
+		return lrange[0] <= rrange[1];
+	    }
+
+	default:
+	    runTimeInternalError();
+	    return false;
+	}
+    }
+
+    /**
+     * Utility function: true if some node in 'left' has the same string
+     * value as some node in 'right'. The right-hand values are collected
+     * once; they are hashed only if the left-hand set has a second node.
+     */
+    private static boolean equalNodeSets(NodeIterator left,
+					 NodeIterator right, DOM dom) {
+	String[] rvalues = new String[16];
+	int rcount = 0;
+	int rnode;
+	while ((rnode = right.next()) != NodeIterator.END) {
+	    if (rcount == rvalues.length) {
+		final String[] grown = new String[rcount << 1];
+		System.arraycopy(rvalues, 0, grown, 0, rcount);
+		rvalues = grown;
+	    }
+	    rvalues[rcount++] = dom.getNodeValue(rnode);
+	}
+	if (rcount == 0) return false;
+
+	Hashtable index = null;
+	int lnode;
 	while ((lnode = left.next()) != NodeIterator.END) {
 	    final String lvalue = dom.getNodeValue(lnode);
-	    
-	    int rnode;
-	    right.reset();
-	    while ((rnode = right.next()) != NodeIterator.END) {
-		if (compareStrings(lvalue, dom.getNodeValue(rnode), op, dom)) {
-		    return true;
+	    if (index == null) {
+		for (int i = 0; i < rcount; i++) {
+		    if (lvalue.equals(rvalues[i])) return true;
+		}
+		index = new Hashtable(rcount + (rcount >> 1) + 1);
+		for (int i = 0; i < rcount; i++) {
+		    index.put(rvalues[i], rvalues[i]);
 		}
 	    }
-	} 
+	    else if (index.containsKey(lvalue)) {
+		return true;
+	    }
+	}
 	return false;
     }
 
+    /**
+     * Utility function: true if some node in 'left' and some node in
+     * 'right' have different string values. That holds for any
+     * non-empty 'left' once 'right' has two different values.
+     */
+    private static boolean notEqualNodeSets(NodeIterator left,
+					    NodeIterator right, DOM dom) {
+	String first = null;
+	boolean distinct = false;
+	int rnode;
+	while ((rnode = right.next()) != NodeIterator.END) {
+	    final String rvalue = dom.getNodeValue(rnode);
+	    if (first == null) {
+		first = rvalue;
+	    }
+	    else if (!first.equals(rvalue)) {
+		distinct = true;
+		break;
+	    }
+	}
+	if (first == null) return false;
+
+	int lnode;
+	while ((lnode = left.next()) != NodeIterator.END) {
+	    if (distinct || !first.equals(dom.getNodeValue(lnode))) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Utility function: the smallest and largest numeric string values
+     * in a node-set, as {min, max}, or null if there are none. NaN values
+     * are left out since no relational comparison with NaN is true.
+     */
+    private static double[] numberRange(NodeIterator iterator, DOM dom) {
+	double[] range = null;
+	int node;
+	while ((node = iterator.next()) != NodeIterator.END) {
+	    final double d = numberF(dom.getNodeValue(node), dom);
+	    if (Double.isNaN(d)) continue;
+	    if (range == null) {
+		range = new double[] { d, d };
+	    }
+	    else if (d < range[0]) {
+		range[0] = d;
+	    }
+	    else if (d > range[1]) {
+		range[1] = d;
+	    }
+	}
+	return range;
+    }
+
     /**
      * Utility function: node/node-set compare.
      */
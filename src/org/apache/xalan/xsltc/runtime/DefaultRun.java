@@ -168,12 +168,9 @@ final public class DefaultRun {
 	    String encoding = translet.getOutputEncoding();
 	    if (encoding == null) encoding = "UTF-8";
 
-	    //TextOutput textOutput = new TextOutput(System.out, encoding);
-	    DefaultSAXOutputHandler saxHandler = new 
-		DefaultSAXOutputHandler(System.out, encoding);
-	    TextOutput textOutput = new TextOutput(saxHandler, encoding);
-	    translet.transform(dom, textOutput);
-	    textOutput.flush();
+	    StreamOutput streamOutput = new StreamOutput(System.out, encoding);
+	    translet.transform(dom, streamOutput);
+	    streamOutput.flush();
 
 	    if (_debug) {
 		TransletOutputBase handler = new TransletOutputBase();
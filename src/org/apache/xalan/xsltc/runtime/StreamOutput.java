@@ -0,0 +1,1169 @@
+/*
+ * @(#)$Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2001 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 2001, Sun
+ * Microsystems., http://www.sun.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.xalan.xsltc.runtime;
+
+import java.io.*;
+import java.util.Stack;
+import java.util.Vector;
+
+import org.apache.xalan.xsltc.*;
+
+/**
+ * Output handler that serializes a translet's output straight into a
+ * character buffer and from there onto an OutputStream or a Writer.
+ * It does the work of TextOutput and DefaultSAXOutputHandler together,
+ * so no SAX events, String or Attributes objects are created between
+ * the translet and the stream. Attributes are kept in reusable arrays
+ * until the start tag is closed, and UTF-8 is encoded into a byte
+ * buffer here rather than through an OutputStreamWriter. The char and
+ * byte buffers are pooled between handlers.
+ */
+public final class StreamOutput implements TransletOutputHandler {
+
+    // Size of the character and byte buffers
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Maximum number of idle buffers of each kind that are kept
+    private static final int POOL_SIZE = 4;
+
+    // Pools of idle char[] and byte[] buffers
+    private static final Vector _charPool = new Vector();
+    private static final Vector _bytePool = new Vector();
+
+    // Stands in for the buffer once it has been returned to the pool
+    private static final char[] NO_CHARS = new char[0];
+
+    private static final String EMPTYSTRING = "";
+    private static final String XML_PREFIX = "xml";
+
+    private static final char[] AMP      = "&amp;".toCharArray();
+    private static final char[] LT       = "&lt;".toCharArray();
+    private static final char[] GT       = "&gt;".toCharArray();
+    private static final char[] CRLF     = "&#xA;".toCharArray();
+    private static final char[] QUOTE    = "&quot;".toCharArray();
+    private static final char[] NBSP     = "&nbsp;".toCharArray();
+    private static final char[] NBSP_XML = "&#160;".toCharArray();
+
+    private static final char[] BEGCDATA = "<![CDATA[".toCharArray();
+    private static final char[] ENDCDATA = "]]>".toCharArray();
+    private static final char[] CNTCDATA = "]]><![CDATA[".toCharArray();
+    private static final char[] BEGCOMM  = "<!--".toCharArray();
+    private static final char[] ENDCOMM  = "-->".toCharArray();
+    private static final char[] BEGPI    = "<?".toCharArray();
+    private static final char[] ENDPI    = "?>".toCharArray();
+    private static final char[] GT_CR    = ">\n".toCharArray();
+    private static final char[] GT_LT_SL = "></".toCharArray();
+    private static final char[] SL_GT    = "/>".toCharArray();
+    private static final char[] XMLNS    = " xmlns".toCharArray();
+
+    private static final String XML_HEADER_BEG  =
+	"<?xml version=\"1.0\" encoding=\"";
+    private static final String XML_HEADER_END  = "\" ?>\n";
+
+    // All of these are used to control/track output indentation
+    private static final char[] INDENT = "                    ".toCharArray();
+    private static final int MAX_INDENT_LEVEL = (INDENT.length >> 1);
+    private static final int MAX_INDENT       = INDENT.length;
+
+    // These are HTML tags that can occur as empty elements with
+    // no closing tags (such as <br> insteadof XHTML's <br/>).
+    private static final String[] EMPTY_ELEMENTS = {
+	"area", "base", "basefont", "br", "col", "frame", "hr", "img",
+	"input", "isindex", "link", "meta", "param" };
+
+    // The output stream (when we encode UTF-8 ourselves) or writer
+    private OutputStream _ostream;
+    private Writer       _writer;
+
+    // Output buffers and the number of chars waiting in _buffer
+    private char[] _buffer;
+    private byte[] _bytes;
+    private int    _pos = 0;
+
+    private String _encoding;
+
+    private int	      _outputType = TextOutput.UNKNOWN;
+
+    private boolean   _escapeChars = false;
+    private boolean   _startTagOpen = false;
+    private boolean   _cdataTagOpen = false;
+    private boolean   _headTagOpen = false;
+
+    // Number of ']' characters (up to 2) at the end of the open CDATA
+    private int       _cdataBrackets = 0;
+
+    // Contains all elements that should be output as CDATA sections
+    private Hashtable _cdataElements = new Hashtable();
+
+    // Name of the element whose start tag is being collected
+    private String _elementName = null;
+
+    // Attributes of that element, with values not yet escaped
+    private String[] _attrNames  = new String[8];
+    private String[] _attrValues = new String[8];
+    private int      _attrCount  = 0;
+
+    // Namespace declarations to output with that element
+    private String[] _nsPrefixes = new String[4];
+    private String[] _nsURIs     = new String[4];
+    private int      _nsCount    = 0;
+
+    // Names of the open elements
+    private String[] _qnameStack = new String[32];
+
+    // Holds the current tree depth (see startElement() and endElement()).
+    private int _depth = 0;
+
+    private Hashtable _namespaces;
+    private Stack     _nodeStack;
+    private Stack     _prefixStack;
+
+    // Set when '<name attrs' has been written, but not the closing '>'
+    private boolean   _elementTagOpen = false;
+    // Name of the element last written (used to close empty HTML tags)
+    private String    _element = null;
+
+    private boolean   _indent = false;
+    private boolean   _omitXmlDecl = false;
+    private boolean   _indentNextEndTag = false;
+    private boolean   _linefeedNextStartTag = false;
+    private int       _indentLevel = 0;
+
+    /**
+     * Constructor - output to a byte stream in the given encoding.
+     * UTF-8 is encoded directly; other encodings go through an
+     * OutputStreamWriter. Unsupported encodings fall back to UTF-8.
+     */
+    public StreamOutput(OutputStream out, String encoding)
+	throws IOException {
+	if ((encoding == null) || (encoding.length() == 0))
+	    encoding = "utf-8";
+
+	if (encoding.equalsIgnoreCase("utf-8") ||
+	    encoding.equalsIgnoreCase("utf8")) {
+	    _ostream = out;
+	}
+	else {
+	    try {
+		_writer = new OutputStreamWriter(out, encoding);
+	    }
+	    catch (java.io.UnsupportedEncodingException e) {
+		_ostream = out;
+		encoding = "utf-8";
+	    }
+	}
+	_encoding = encoding;
+	init();
+    }
+
+    /**
+     * Constructor - output to a character stream. The encoding is only
+     * used for the XML declaration and the HTML META element.
+     */
+    public StreamOutput(Writer writer, String encoding) throws IOException {
+	if ((encoding == null) || (encoding.length() == 0))
+	    encoding = "utf-8";
+	_writer = writer;
+	_encoding = encoding;
+	init();
+    }
+
+    /**
+     * Initialise global variables
+     */
+    private void init() {
+	_buffer = getCharBuffer();
+	if (_ostream != null) _bytes = getByteBuffer();
+	initNamespaces();
+    }
+
+    /**
+     * Get a char buffer from the pool, or a new one if it is empty.
+     */
+    private static char[] getCharBuffer() {
+	synchronized (_charPool) {
+	    final int n = _charPool.size();
+	    if (n > 0) {
+		final char[] buffer = (char[])_charPool.elementAt(n - 1);
+		_charPool.removeElementAt(n - 1);
+		return buffer;
+	    }
+	}
+	return new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Get a byte buffer from the pool, or a new one if it is empty.
+     */
+    private static byte[] getByteBuffer() {
+	synchronized (_bytePool) {
+	    final int n = _bytePool.size();
+	    if (n > 0) {
+		final byte[] buffer = (byte[])_bytePool.elementAt(n - 1);
+		_bytePool.removeElementAt(n - 1);
+		return buffer;
+	    }
+	}
+	return new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Return this handler's buffers to the pools. The handler can still
+     * be used afterwards; it will take new buffers when it needs them.
+     */
+    private void releaseBuffers() {
+	if (_buffer != NO_CHARS) {
+	    synchronized (_charPool) {
+		if (_charPool.size() < POOL_SIZE)
+		    _charPool.addElement(_buffer);
+	    }
+	    _buffer = NO_CHARS;
+	}
+	if (_bytes != null) {
+	    synchronized (_bytePool) {
+		if (_bytePool.size() < POOL_SIZE)
+		    _bytePool.addElement(_bytes);
+	    }
+	    _bytes = null;
+	}
+    }
+
+    /**
+     * Write the buffered characters to the underlying stream.
+     */
+    private void flushBuffer(boolean last) throws IOException {
+	if (_buffer == NO_CHARS) {
+	    _buffer = getCharBuffer();
+	    if (_ostream != null) _bytes = getByteBuffer();
+	    return;
+	}
+	if (_writer != null) {
+	    _writer.write(_buffer, 0, _pos);
+	    _pos = 0;
+	}
+	else {
+	    final int done = encodeUTF8(last);
+	    // A high surrogate at the end of the buffer is held back
+	    // until we have seen the character that follows it.
+	    if (done < _pos) _buffer[0] = _buffer[done];
+	    _pos = _pos - done;
+	}
+    }
+
+    /**
+     * Encode the buffered characters as UTF-8 and write them to the
+     * output stream. Unpaired surrogates are written as '?', as an
+     * OutputStreamWriter would write them.
+     *
+     * @param last true if no more characters will follow
+     * @return the number of characters that were written
+     */
+    private int encodeUTF8(boolean last) throws IOException {
+	final char[] chars = _buffer;
+	final byte[] bytes = _bytes;
+	final int limit = bytes.length - 4;
+	final int n = _pos;
+	int i = 0;
+	int o = 0;
+
+	while (i < n) {
+	    if (o > limit) {
+		_ostream.write(bytes, 0, o);
+		o = 0;
+	    }
+
+	    final int c = chars[i];
+	    if (c < 0x80) {
+		bytes[o++] = (byte)c;
+	    }
+	    else if (c < 0x800) {
+		bytes[o++] = (byte)(0xc0 | (c >> 6));
+		bytes[o++] = (byte)(0x80 | (c & 0x3f));
+	    }
+	    else if (c >= 0xd800 && c < 0xdc00) {
+		if (i + 1 == n) {
+		    if (!last) break;
+		    bytes[o++] = (byte)'?';
+		}
+		else {
+		    final int d = chars[i + 1];
+		    if (d >= 0xdc00 && d < 0xe000) {
+			final int u = ((c - 0xd800) << 10) + (d - 0xdc00)
+			    + 0x10000;
+			bytes[o++] = (byte)(0xf0 | (u >> 18));
+			bytes[o++] = (byte)(0x80 | ((u >> 12) & 0x3f));
+			bytes[o++] = (byte)(0x80 | ((u >> 6) & 0x3f));
+			bytes[o++] = (byte)(0x80 | (u & 0x3f));
+			i++;
+		    }
+		    else {
+			bytes[o++] = (byte)'?';
+		    }
+		}
+	    }
+	    else if (c >= 0xdc00 && c < 0xe000) {
+		bytes[o++] = (byte)'?';
+	    }
+	    else {
+		bytes[o++] = (byte)(0xe0 | (c >> 12));
+		bytes[o++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+		bytes[o++] = (byte)(0x80 | (c & 0x3f));
+	    }
+	    i++;
+	}
+
+	if (o > 0) _ostream.write(bytes, 0, o);
+	return i;
+    }
+
+    /**
+     * Utility method - append a single character to the buffer
+     */
+    private void write(char c) throws IOException {
+	if (_pos == _buffer.length) flushBuffer(false);
+	_buffer[_pos++] = c;
+    }
+
+    /**
+     * Utility method - append part of a character array to the buffer
+     */
+    private void write(char[] ch, int off, int len) throws IOException {
+	while (len > 0) {
+	    if (_pos == _buffer.length) flushBuffer(false);
+	    int n = _buffer.length - _pos;
+	    if (n > len) n = len;
+	    System.arraycopy(ch, off, _buffer, _pos, n);
+	    _pos += n;
+	    off += n;
+	    len -= n;
+	}
+    }
+
+    /**
+     * Utility method - append a whole character array to the buffer
+     */
+    private void write(char[] ch) throws IOException {
+	write(ch, 0, ch.length);
+    }
+
+    /**
+     * Utility method - append a string to the buffer
+     */
+    private void write(String s) throws IOException {
+	write(s, 0, s.length());
+    }
+
+    /**
+     * Utility method - append part of a string to the buffer
+     */
+    private void write(String s, int off, int len) throws IOException {
+	final int end = off + len;
+	while (off < end) {
+	    if (_pos == _buffer.length) flushBuffer(false);
+	    int n = _buffer.length - _pos;
+	    if (n > end - off) n = end - off;
+	    s.getChars(off, off + n, _buffer, _pos);
+	    _pos += n;
+	    off += n;
+	}
+    }
+
+    /**
+     * Set the output type. The type must be wither TEXT, XML or HTML.
+     */
+    public void setType(int type) {
+	try {
+	    _outputType = type;
+	    if (_outputType == TextOutput.XML) emitXmlHeader();
+	}
+	catch (IOException e) {
+
+	}
+    }
+
+    /**
+     * Utility method - outputs an XML header
+     */
+    private void emitXmlHeader() throws IOException {
+	if (_omitXmlDecl) {
+	    // if true then stylesheet contained an xsl:output element
+	    // with the omit-xml-declaration attribute set to "yes".
+	    return;
+	}
+	write(XML_HEADER_BEG);
+	write(_encoding);
+	write(XML_HEADER_END);
+    }
+
+    /**
+     * Output the <META> element that goes directly after <HEAD> in HTML
+     */
+    private void emitHeader() throws IOException {
+	if (_outputType == TextOutput.HTML) {
+	    openElementTag("meta");
+	    write(" http-equiv=\"Content-Type\" content=\"text/html; charset=");
+	    write(_encoding);
+	    write('\"');
+	    closeElement("meta");
+	}
+    }
+
+    /**
+     * Turns output indentation on/off. Should only be set to on
+     * if the output type is XML or HTML.
+     */
+    public void setIndent(boolean indent) {
+	_indent = indent;
+    }
+
+    /**
+     * Directive to turn xml header declaration  on/off.
+     */
+    public void omitXmlDecl(boolean value) {
+	_omitXmlDecl = value;
+    }
+
+    /**
+     * The <xsl:output method="xml"/> instruction can specify that certain
+     * XML elements should be output as CDATA sections. This methods allows
+     * the translet to insert these elements into a hashtable of strings.
+     * Every output element is looked up in this hashtable before it is
+     * output.
+     */
+    public void insertCdataElement(String elementName) {
+	_cdataElements.put(elementName,EMPTYSTRING);
+    }
+
+    /**
+     * Turns special character escaping on/off. Note that characters will
+     * never, even if this option is set to 'true', be escaped within
+     * CDATA sections in output XML documents.
+     */
+    public boolean setEscaping(boolean escape) throws TransletException {
+	boolean oldSetting = _escapeChars;
+	if (_outputType == TextOutput.UNKNOWN) {
+	    setType(TextOutput.XML);
+	    oldSetting = true;
+	}
+	_escapeChars = escape;
+
+	// bug # 1403, see also compiler/Text.java::translate method.
+	if (_outputType == TextOutput.TEXT) {
+	    _escapeChars = false;
+	}
+	return(oldSetting);
+    }
+
+    /**
+     * Write out everything that has been buffered and flush the stream
+     */
+    public void flush() throws IOException {
+	if (_buffer != NO_CHARS) flushBuffer(false);
+	if (_writer != null)
+	    _writer.flush();
+	else
+	    _ostream.flush();
+    }
+
+    /**
+     * Flush the output and give the buffers back to the pool. The
+     * underlying stream is not closed.
+     */
+    public void close() throws IOException {
+	if (_buffer != NO_CHARS) flushBuffer(true);
+	if (_writer != null)
+	    _writer.flush();
+	else
+	    _ostream.flush();
+	releaseBuffers();
+    }
+
+    /**
+     * Starts the output document. Outputs the document header if the
+     * output type is set to XML.
+     */
+    public void startDocument() throws TransletException {
+	if (_outputType == TextOutput.XML) {
+	    _escapeChars = true;
+	}
+    }
+
+    /**
+     * Ends the document output and flushes the stream.
+     */
+    public void endDocument() throws TransletException {
+	try {
+	    closeOpenTags();
+
+	    // Set output type to XML (the default) if still unknown.
+	    if (_outputType == TextOutput.UNKNOWN) {
+		setType(TextOutput.XML);
+	    }
+
+	    close();
+	}
+	catch (IOException e) {
+	    throw new TransletException(e);
+	}
+    }
+
+    /**
+     * Close any start tag or CDATA section that is still open.
+     */
+    private void closeOpenTags() throws IOException, TransletException {
+	if (_startTagOpen) {
+	    closeStartTag();
+	}
+	else if (_cdataTagOpen) {
+	    writeChars(ENDCDATA, 0, ENDCDATA.length);
+	    _cdataTagOpen = false;
+	}
+    }
+
+    /**
+     * Set the output type to XML (the default) if it is still unknown
+     */
+    private void checkOutputType() {
+	if (_outputType == TextOutput.UNKNOWN) {
+	    setType(TextOutput.XML);
+	    _escapeChars = true;
+	}
+    }
+
+    /**
+     * Send characters to the output document
+     */
+    public void characters(char[] ch, int off, int len)
+	throws TransletException {
+	try {
+	    // Close any open start tag
+	    if (_startTagOpen) {
+		closeStartTag();
+	    }
+
+	    checkOutputType();
+
+	    if (len == 0) return;
+
+	    // Text in an element named in cdata-section-elements goes in
+	    // a CDATA section. If we encounter the sequence ']]>' within the
+	    // text, we need to break the section in two and leave the ']]' at
+	    // the end of the first CDATA and '>' at the beginning of the next.
+	    // The sequence may be split over several calls to characters().
+	    if (_escapeChars && (_cdataElements.size() > 0) &&
+		(_depth > 0) &&
+		(_cdataElements.get(_qnameStack[_depth - 1]) != null)) {
+		if (!_cdataTagOpen) {
+		    writeChars(BEGCDATA, 0, BEGCDATA.length);
+		    _cdataTagOpen = true;
+		    _cdataBrackets = 0;
+		}
+		final int limit = off + len;
+		int offset = off;
+		int brackets = _cdataBrackets;
+		for (int i = off; i < limit; i++) {
+		    final char c = ch[i];
+		    if (c == ']') {
+			brackets++;
+		    }
+		    else {
+			if (c == '>' && brackets >= 2) {
+			    write(ch, offset, i - offset);
+			    write(CNTCDATA);
+			    offset = i;
+			}
+			brackets = 0;
+		    }
+		}
+		write(ch, offset, limit - offset);
+		_cdataBrackets = brackets;
+		return;
+	    }
+
+	    if (_cdataTagOpen) {
+		writeChars(ENDCDATA, 0, ENDCDATA.length);
+		_cdataTagOpen = false;
+	    }
+
+	    if (_escapeChars)
+		writeEscapedText(ch, off, len);
+	    else
+		writeChars(ch, off, len);
+	}
+	catch (IOException e) {
+	    throw new TransletException(e);
+	}
+    }
+
+    /**
+     * Write text with the characters special to XML or HTML escaped.
+     * Non-ASCII characters are left for the encoder.
+     */
+    private void writeEscapedText(char[] ch, int off, int len)
+	throws IOException {
+	final int limit = off + len;
+	int offset = off;
+
+	beginText();
+	for (int i = off; i < limit; i++) {
+	    final char[] entity;
+	    switch (ch[i]) {
+	    case '&':
+		entity = AMP;
+		break;
+	    case '"':
+		entity = QUOTE;
+		break;
+	    case '<':
+		entity = LT;
+		break;
+	    case '>':
+		entity = GT;
+		break;
+	    case '\u00a0':
+		// &nbsp; is only defined for HTML
+		entity = (_outputType == TextOutput.HTML) ? NBSP : NBSP_XML;
+		break;
+	    default:
+		continue;
+	    }
+	    write(ch, offset, i - offset);
+	    write(entity);
+	    offset = i + 1;
+	}
+	if (offset < limit) {
+	    write(ch, offset, limit - offset);
+	}
+    }
+
+    /**
+     * Write characters as they are, closing any open start tag first.
+     */
+    private void writeChars(char[] ch, int off, int len) throws IOException {
+	beginText();
+	write(ch, off, len);
+    }
+
+    /**
+     * Close any open start tag before writing text
+     */
+    private void beginText() throws IOException {
+	_linefeedNextStartTag = false;
+	if (_elementTagOpen) closeElementTag(true);
+    }
+
+    /**
+     * Start an element in the output document. This might be an XML
+     * element (<elem>data</elem> type) or a CDATA section.
+     */
+    public void startElement(String elementName)
+	throws TransletException {
+
+	// bug fix # 1499, GTM.
+	if (_outputType == TextOutput.TEXT) return;
+
+	try {
+	    closeOpenTags();
+
+	    // If we don't know the output type yet we need to examine
+	    // the very first element to see if it is "html".
+	    if (_outputType == TextOutput.UNKNOWN) {
+		if (elementName.equalsIgnoreCase("html")) {
+		    setType(TextOutput.HTML);
+		    setIndent(true);
+		}
+		else {
+		    setType(TextOutput.XML);
+		}
+		_escapeChars = true;
+	    }
+
+	    if (_depth == _qnameStack.length) {
+		final String[] newStack = new String[_depth * 2];
+		System.arraycopy(_qnameStack, 0, newStack, 0, _depth);
+		_qnameStack = newStack;
+	    }
+	    _qnameStack[_depth++] = elementName;
+
+	    _elementName = elementName;
+	    _attrCount = 0;
+	    _startTagOpen = true;
+
+	    // Insert <META> tag directly after <HEAD> element in HTML doc
+	    if (_outputType == TextOutput.HTML) {
+		if (elementName.equalsIgnoreCase("head")) {
+		    _headTagOpen = true;
+		}
+	    }
+	}
+	catch (IOException e) {
+	    throw new TransletException(e);
+	}
+    }
+
+    /**
+     * This method is called when all the attributes and namespace
+     * declarations for the current element have been gathered. It
+     * writes out the start tag, but leaves the closing '>' until we know
+     * whether the element is empty.
+     */
+    private void closeStartTag() throws IOException, TransletException {
+	_startTagOpen = false;
+
+	// Final check to assure that the element is within a namespace
+	// that has been declared (all declarations for this element
+	// should have been processed at this point).
+	final int col = _elementName.lastIndexOf(':');
+	if (col > 0) {
+	    final String prefix = _elementName.substring(0,col);
+	    if (lookupNamespace(prefix) == null) {
+		throw new TransletException("Namespace for prefix "+
+					    prefix+" has not been "+
+					    "declared.");
+	    }
+	}
+
+	openElementTag(_elementName);
+
+	// Output namespace declarations first...
+	for (int i = 0; i < _nsCount; i++) {
+	    final String prefix = _nsPrefixes[i];
+	    write(XMLNS);
+	    if (prefix.length() > 0) {
+		write(':');
+		write(prefix);
+	    }
+	    write('=');
+	    write('\"');
+	    write(_nsURIs[i]);
+	    write('\"');
+	    _nsPrefixes[i] = _nsURIs[i] = null;
+	}
+	_nsCount = 0;
+
+	// ...then output all attributes
+	for (int i = 0; i < _attrCount; i++) {
+	    write(' ');
+	    write(_attrNames[i]);
+	    write('=');
+	    write('\"');
+	    writeAttrValue(_attrValues[i]);
+	    write('\"');
+	    _attrNames[i] = _attrValues[i] = null;
+	}
+	_attrCount = 0;
+
+	// Insert <META> tag directly after <HEAD> element in HTML output
+	if (_headTagOpen) {
+	    emitHeader();
+	    _headTagOpen = false;
+	}
+    }
+
+    /**
+     * Write '<' and the element name, after closing any open start tag
+     * and indenting.
+     */
+    private void openElementTag(String elementName) throws IOException {
+	if (_elementTagOpen) closeElementTag(true);
+	_element = elementName;
+
+	// Handle indentation (not a requirement)
+	if (_indent) {
+	    indent(_linefeedNextStartTag);
+	    _indentLevel++;
+	    _indentNextEndTag = false;
+	}
+	_linefeedNextStartTag = true;
+
+	write('<');
+	write(elementName);
+	_elementTagOpen = true;
+    }
+
+    /**
+     * Write an attribute value, escaping the characters special to XML.
+     */
+    private void writeAttrValue(String value) throws IOException {
+	final int limit = value.length();
+	int offset = 0;
+
+	for (int i = 0; i < limit; i++) {
+	    final char[] entity;
+	    switch (value.charAt(i)) {
+	    case '&':
+		entity = AMP;
+		break;
+	    case '"':
+		entity = QUOTE;
+		break;
+	    case '<':
+		entity = LT;
+		break;
+	    case '>':
+		entity = GT;
+		break;
+	    case '\n':
+		entity = CRLF;
+		break;
+	    default:
+		continue;
+	    }
+	    write(value, offset, i - offset);
+	    write(entity);
+	    offset = i + 1;
+	}
+	if (offset < limit) {
+	    write(value, offset, limit - offset);
+	}
+    }
+
+    /**
+     * Put an attribute and its value in the start tag of an element.
+     * Signal an exception if this is attempted done outside a start tag.
+     */
+    public void attribute(final String name, final String value)
+	throws TransletException {
+
+	// bug fix #1499, GTM
+	if (_outputType == TextOutput.TEXT) return;
+
+	if (_startTagOpen) {
+	    // Intercept namespace declarations and handle them separately
+	    if (name.startsWith("xmlns")) {
+		if (name.length() == 5)
+		    namespace(EMPTYSTRING,value);
+		else
+		    namespace(name.substring(6),value);
+	    }
+	    else {
+		// A second value for the same attribute replaces the first
+		for (int i = 0; i < _attrCount; i++) {
+		    if (name.equals(_attrNames[i])) {
+			_attrValues[i] = value;
+			return;
+		    }
+		}
+		if (_attrCount == _attrNames.length) {
+		    final String[] names = new String[_attrCount * 2];
+		    final String[] values = new String[_attrCount * 2];
+		    System.arraycopy(_attrNames, 0, names, 0, _attrCount);
+		    System.arraycopy(_attrValues, 0, values, 0, _attrCount);
+		    _attrNames = names;
+		    _attrValues = values;
+		}
+		_attrNames[_attrCount] = name;
+		_attrValues[_attrCount++] = value;
+	    }
+	}
+	else if (_cdataTagOpen) {
+	    throw new TransletException("attribute '"+name+"' within CDATA");
+	}
+	else {
+	    throw new TransletException("attribute '"+name+
+					"' outside of element");
+	}
+    }
+
+    /**
+     * End an element or CDATA section in the output document
+     */
+    public void endElement(String elementName) throws TransletException {
+
+	// bug fix #1499, GTM
+	if (_outputType == TextOutput.TEXT) return;
+
+	try {
+	    // Close any open element
+	    closeOpenTags();
+
+	    final String qname = _qnameStack[_depth - 1];
+	    _qnameStack[_depth - 1] = null;
+	    closeElement(qname);
+
+	    popNamespaces();
+	    _depth--;
+	}
+	catch (IOException e) {
+	    throw new TransletException(e);
+	}
+    }
+
+    /**
+     * Write the end tag of an element, or close its start tag if it has
+     * no content.
+     */
+    private void closeElement(String elementName) throws IOException {
+	_linefeedNextStartTag = false;
+
+	if (_indent) _indentLevel--;
+
+	if (_elementTagOpen) {
+	    closeElementTag(false);
+	}
+	else {
+	    if ((_indent) && (_indentNextEndTag)) indent(false);
+	    write('<');
+	    write('/');
+	    write(elementName);
+	    write('>');
+	    write('\n');
+	}
+	_indentNextEndTag = true;
+    }
+
+    /**
+     * Send a HTML-style comment to the output document
+     */
+    public void comment(String comment) throws TransletException {
+	try {
+	    // Close any open element before emitting comment
+	    closeOpenTags();
+	    checkOutputType();
+
+	    // ...and then output the comment.
+	    writeChars(BEGCOMM, 0, BEGCOMM.length);
+	    write(comment);
+	    write(ENDCOMM);
+	}
+	catch (IOException e) {
+	    throw new TransletException(e);
+	}
+    }
+
+    /**
+     * Send a processing instruction to the output document
+     */
+    public void processingInstruction(String target, String data)
+	throws TransletException {
+	try {
+	    // Close any open element
+	    closeOpenTags();
+
+	    if (_elementTagOpen) closeElementTag(true);
+	    write(BEGPI);
+	    write(target);
+	    write(' ');
+	    write(data);
+	    if (_outputType == TextOutput.HTML)
+		write('>');
+	    else
+		write(ENDPI);
+	}
+	catch (IOException e) {
+	    throw new TransletException(e);
+	}
+    }
+
+    /**
+     * Adds a newline in the output stream and indents to correct level
+     */
+    private void indent(boolean linefeed) throws IOException {
+	if (linefeed)
+	    write('\n');
+	if (_indentLevel < MAX_INDENT_LEVEL)
+	    write(INDENT, 0, (_indentLevel+_indentLevel));
+	else
+	    write(INDENT, 0, MAX_INDENT);
+    }
+
+    /**
+     * Closes a start tag of an element
+     */
+    private void closeElementTag(boolean content) throws IOException {
+	// Take special care when outputting empty tags in HTML documents.
+	if (!content) {
+	    if (_outputType == TextOutput.HTML) {
+		// HTML: output empty element as <tag> or <tag></tag>
+		if (!isEmptyElement(_element)) {
+		    write(GT_LT_SL);
+		    write(_element);
+		}
+		write(GT_CR);
+	    }
+	    else {
+		// XML: output empty element as <tag/>
+		write(SL_GT);
+	    }
+	}
+	else {
+	    write('>');
+	}
+	_elementTagOpen = false;
+    }
+
+    /**
+     * Tell if an HTML element has no end tag
+     */
+    private static boolean isEmptyElement(String name) {
+	for (int i = 0; i < EMPTY_ELEMENTS.length; i++) {
+	    if (EMPTY_ELEMENTS[i].equalsIgnoreCase(name)) return true;
+	}
+	return false;
+    }
+
+    /**
+     * Initialize namespace stacks
+     */
+    private void initNamespaces() {
+	_namespaces = new Hashtable();
+	_nodeStack = new Stack();
+	_prefixStack = new Stack();
+
+	// Define the default namespace (initially maps to "" uri)
+	Stack stack =  new Stack();
+	_namespaces.put(EMPTYSTRING, stack);
+	stack.push(EMPTYSTRING);
+	_prefixStack.push(EMPTYSTRING);
+	_nodeStack.push(new Integer(-1));
+	_depth = 0;
+    }
+
+    /**
+     * Declare a prefix to point to a namespace URI
+     */
+    private void pushNamespace(String prefix, String uri) {
+
+	if (prefix.equals(XML_PREFIX)) return;
+
+	Stack stack;
+	// Get the stack that contains URIs for the specified prefix
+	if ((stack = (Stack)_namespaces.get(prefix)) == null) {
+	    stack = new Stack();
+	    _namespaces.put(prefix, stack);
+	}
+	// Quit now if the URI the prefix currently maps to is the same as this
+	if (!stack.empty() && uri.equals(stack.peek())) return;
+	// Put this URI on top of the stack for this prefix
+	stack.push(uri);
+	_prefixStack.push(prefix);
+	_nodeStack.push(new Integer(_depth));
+
+	// Queue the declaration for output with the start tag
+	for (int i = 0; i < _nsCount; i++) {
+	    if (prefix.equals(_nsPrefixes[i])) {
+		_nsURIs[i] = uri;
+		return;
+	    }
+	}
+	if (_nsCount == _nsPrefixes.length) {
+	    final String[] prefixes = new String[_nsCount * 2];
+	    final String[] uris = new String[_nsCount * 2];
+	    System.arraycopy(_nsPrefixes, 0, prefixes, 0, _nsCount);
+	    System.arraycopy(_nsURIs, 0, uris, 0, _nsCount);
+	    _nsPrefixes = prefixes;
+	    _nsURIs = uris;
+	}
+	_nsPrefixes[_nsCount] = prefix;
+	_nsURIs[_nsCount++] = uri;
+    }
+
+    /**
+     * Undeclare the namespace that is currently pointed to by a given prefix
+     */
+    private void popNamespace(String prefix) {
+
+	if (prefix.equals(XML_PREFIX)) return;
+
+	Stack stack;
+	if ((stack = (Stack)_namespaces.get(prefix)) != null) {
+	    stack.pop();
+	}
+    }
+
+    /**
+     * Pop all namespace definitions that were delcared by the current element
+     */
+    private void popNamespaces() {
+	while (true) {
+	    if (_nodeStack.isEmpty()) return;
+	    Integer i = (Integer)(_nodeStack.peek());
+	    if (i.intValue() != _depth) return;
+	    _nodeStack.pop();
+	    popNamespace((String)_prefixStack.pop());
+	}
+    }
+
+    /**
+     * Use a namespace prefix to lookup a namespace URI
+     */
+    private String lookupNamespace(String prefix) {
+	final Stack stack = (Stack)_namespaces.get(prefix);
+	return stack != null && !stack.isEmpty() ? (String)stack.peek() : null;
+    }
+
+    /**
+     * Send a namespace declaration in the output document. The namespace
+     * declaration will not be include if the namespace is already in scope
+     * with the same prefix.
+     */
+    public void namespace(final String prefix, final String uri)
+	throws TransletException {
+	if (_startTagOpen)
+	    pushNamespace(prefix, uri);
+	else if (_cdataTagOpen)
+	    throw new TransletException("namespace declaration within "+
+					"CDATA element");
+	else
+	    throw new TransletException("namespace declaration '"+prefix+
+					"'='"+uri+"' outside of element");
+    }
+}
@@ -77,15 +77,6 @@ import javax.xml.transform.sax.TransformerHandler;
 
 import org.xml.sax.XMLFilter;
 
-import org.apache.xalan.xsltc.Translet;
-import org.apache.xalan.xsltc.compiler.XSLTC;
-import org.apache.xalan.xsltc.runtime.AbstractTranslet;
-
-import java.io.File;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.MalformedURLException;
-
 
 /**
  * Implementation of a JAXP1.1 SAXTransformerFactory for Translets.
@@ -226,69 +217,27 @@ public class TransformerFactoryImpl extends SAXTransformerFactory {
     ////////////////////////////////////////////////////// 
 
 
+    /**
+     * Compiles the stylesheet in memory and returns a new translet
+     * instance. Applications that create more than one Transformer for
+     * the same stylesheet should call newTemplates() once and create
+     * the transformers from the Templates object instead, as that
+     * avoids compiling the stylesheet again.
+     */
     public Transformer newTransformer(Source stylesheet) throws
 	TransformerConfigurationException
     {
-	XSLTC xsltc = new XSLTC();
-	xsltc.init();
-
-        // compile stylesheet
-        boolean isSuccessful = true;
-        StreamSource strmsrc = (StreamSource)stylesheet;
-        InputStream inputStream = strmsrc.getInputStream();
-        String stylesheetName = stylesheet.getSystemId();
-        String transletName = "no_name";
-        if (inputStream != null) {
-            isSuccessful = xsltc.compile(inputStream, transletName);
-        } else if (stylesheetName != null ){
-            int index = stylesheetName.indexOf('.');
-            transletName = stylesheetName.substring(0,index);
-            try {
-                File file = new File(stylesheetName);
-                URL url = file.toURL();
-                isSuccessful = xsltc.compile(url);
-            } catch (MalformedURLException e) {
-                throw new TransformerConfigurationException(
-                    "URL for stylesheet '" + stylesheetName +
-                    "' can not be formed.");
-            }
-        } else {
-           throw new TransformerConfigurationException(
-                "Stylesheet must have a system id or be an InputStream.");
-        }
-
-	if (!isSuccessful) {
-	    throw new TransformerConfigurationException(
-		"Compilation of stylesheet '" + stylesheetName + "' failed.");
-	}
-
-	Translet translet = null;
-	try {
-	    Class clazz = Class.forName(transletName);
-	    translet = (Translet)clazz.newInstance();
-	    ((AbstractTranslet)translet).setTransletName(transletName);
-	    // GTM
-	    if (_errorListener != null) {
-	        ((AbstractTranslet)translet).setErrorListener(_errorListener);
-	    }
-	} catch (ClassNotFoundException e) {
-	    throw new TransformerConfigurationException(
-		"Translet class '" + transletName + "' not found.");
-	} catch (InstantiationException e) {
-	    throw new TransformerConfigurationException(
-		"Translet class '" + transletName + 
-		"' could not be instantiated");
-	} catch (IllegalAccessException  e) {
-	    throw new TransformerConfigurationException(
-		"Translet class '" + transletName + "' could not be accessed.");
-	}
-	return (AbstractTranslet)translet;
+	return newTemplates(stylesheet).newTransformer();
     }
 
+    /**
+     * Compiles the stylesheet exactly once into in-memory bytecode. The
+     * returned Templates object is thread-safe.
+     */
     public Templates newTemplates(Source stylesheet) throws
        TransformerConfigurationException 
     {
-	return new TransletTemplates(stylesheet);
+	return new TransletTemplates(stylesheet, _errorListener);
     }
 
     private ErrorListener _errorListener = null; 
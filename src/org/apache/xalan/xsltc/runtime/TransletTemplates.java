@@ -63,14 +63,13 @@ package org.apache.xalan.xsltc.runtime;
 
 import javax.xml.transform.Templates;
 import javax.xml.transform.Source; 
+import javax.xml.transform.ErrorListener;
 import javax.xml.transform.stream.StreamSource; 
 import javax.xml.transform.Transformer; 
 import javax.xml.transform.TransformerConfigurationException; 
-import javax.xml.transform.sax.SAXTransformerFactory; 
 
 import org.apache.xalan.xsltc.runtime.AbstractTranslet;
 import org.apache.xalan.xsltc.compiler.XSLTC;
-import org.apache.xalan.xsltc.Translet;
 import java.util.Properties;
 
 import java.io.File;
@@ -80,67 +79,82 @@ import java.net.MalformedURLException;
 
 /**
  * Implementation of a JAXP1.1 Templates object for Translets.
+ *
+ * The stylesheet is compiled exactly once, when the Templates object is
+ * created. The generated class files are kept in memory and defined by a
+ * TransletClassLoader that belongs to this Templates object, so neither
+ * compilation nor class loading ever touches the disk.
+ * newTransformer() merely instantiates the cached translet class.
+ *
+ * A TransletTemplates object is immutable once constructed and may be
+ * used concurrently by any number of threads. Each call to
+ * newTransformer() returns a new translet instance, which (like any
+ * Transformer) must only be used by one thread at a time.
  */ 
-public class TransletTemplates implements Templates {
-    private Source _stylesheet;
+public final class TransletTemplates implements Templates {
+    private final String _transletName;
+    private final Class _transletClass;
+    private final ErrorListener _errorListener;
 
-    public TransletTemplates(Source stylesheet) {
-	_stylesheet = stylesheet;
+    public TransletTemplates(Source stylesheet) 
+	throws TransformerConfigurationException
+    {
+	this(stylesheet, null);
     }
 
-    public Transformer newTransformer() throws 
-	TransformerConfigurationException
+    public TransletTemplates(Source stylesheet, ErrorListener listener)
+	throws TransformerConfigurationException
     {
-        XSLTC xsltc = new XSLTC();
+	_errorListener = listener;
+
+        final XSLTC xsltc = new XSLTC();
         xsltc.init();
 
-	// compile stylesheet
-	boolean isSuccessful = true;
-	StreamSource strmsrc = (StreamSource)_stylesheet;
-	InputStream inputStream = strmsrc.getInputStream();
-	String stylesheetName = _stylesheet.getSystemId();
-	String transletName = "no_name";
+	// compile stylesheet into memory
+	byte[][] bytecodes = null;
+	final StreamSource strmsrc = (StreamSource)stylesheet;
+	final InputStream inputStream = strmsrc.getInputStream();
+	final String stylesheetName = stylesheet.getSystemId();
 	if (inputStream != null) {
-	    isSuccessful = xsltc.compile(inputStream, transletName);
-	} else if (stylesheetName != null ){
-	    int index = stylesheetName.indexOf('.');
-	    transletName = stylesheetName.substring(0,index);
-            try {
-                File file = new File(stylesheetName);
-                URL url = file.toURL();
-                isSuccessful = xsltc.compile(url);
-            } catch (MalformedURLException e) {
-                throw new TransformerConfigurationException(
-                    "URL for stylesheet '" + stylesheetName +
-                    "' can not be formed.");
-	    }
+	    bytecodes = xsltc.compileStylesheet(inputStream, "no_name",
+						listener);
+	} else if (stylesheetName != null) {
+	    bytecodes = xsltc.compileStylesheet(getURL(stylesheetName),
+						stylesheetName, listener);
         } else {
 	   throw new TransformerConfigurationException(
 		"Stylesheet must have a system id or be an InputStream."); 
 	}
 
-        if (!isSuccessful) {
+        if (bytecodes == null) {
             throw new TransformerConfigurationException(
                 "Compilation of stylesheet '" + stylesheetName + "' failed.");
         }
 
-        Translet translet = null;
-        try {
-            Class clazz = Class.forName(transletName);
-            translet = (Translet)clazz.newInstance();
-            ((AbstractTranslet)translet).setTransletName(transletName);
-        } catch (ClassNotFoundException e) {
-            throw new TransformerConfigurationException(
-                "Translet class '" + transletName + "' not found.");
-        } catch (InstantiationException e) {
-            throw new TransformerConfigurationException(
-                "Translet class '" + transletName +
-                "' could not be instantiated");
-        } catch (IllegalAccessException  e) {
-            throw new TransformerConfigurationException(
-                "Translet class '" + transletName + "' could not be accessed.");
-        }
-        return (AbstractTranslet)translet;
+	_transletName = xsltc.getClassName();
+	_transletClass = defineTranslet(_transletName, bytecodes);
+    }
+
+    public Transformer newTransformer() throws 
+	TransformerConfigurationException
+    {
+	final AbstractTranslet translet;
+	try {
+	    translet = (AbstractTranslet)_transletClass.newInstance();
+	} catch (InstantiationException e) {
+	    throw new TransformerConfigurationException(
+		"Translet class '" + _transletName +
+		"' could not be instantiated");
+	} catch (IllegalAccessException e) {
+	    throw new TransformerConfigurationException(
+		"Translet class '" + _transletName +
+		"' could not be accessed.");
+	}
+	translet.setTransletName(_transletName);
+	if (_errorListener != null) {
+	    translet.setErrorListener(_errorListener);
+	}
+	return translet;
     }
 
     public Properties getOutputProperties() { 
@@ -148,4 +162,60 @@ public class TransletTemplates implements Templates {
 	return new Properties(); 
     }
 
+    /**
+     * Returns the name of the main translet class.
+     */
+    public String getTransletName() {
+	return _transletName;
+    }
+
+    /**
+     * A system id is either a URL or a plain file name.
+     */
+    private static URL getURL(String systemId)
+	throws TransformerConfigurationException
+    {
+	try {
+	    return new URL(systemId);
+	}
+	catch (MalformedURLException e) {
+	    try {
+		return new File(systemId).toURL();
+	    }
+	    catch (MalformedURLException ee) {
+		throw new TransformerConfigurationException(
+		    "URL for stylesheet '" + systemId +
+		    "' can not be formed.");
+	    }
+	}
+    }
+
+    /**
+     * Defines the translet and its helper classes in a class loader of
+     * their own and returns the main translet class.
+     */
+    private static Class defineTranslet(String transletName,
+					byte[][] bytecodes)
+	throws TransformerConfigurationException
+    {
+	ClassLoader parent = TransletTemplates.class.getClassLoader();
+	if (parent == null) {
+	    parent = ClassLoader.getSystemClassLoader();
+	}
+	final TransletClassLoader loader = new TransletClassLoader(parent);
+	Class clazz = null;
+	try {
+	    clazz = loader.defineTranslet(transletName, bytecodes);
+	}
+	catch (ClassFormatError e) {
+	    throw new TransformerConfigurationException(
+		"Translet class '" + transletName + "' could not be loaded: "
+		+ e.getMessage());
+	}
+	if (clazz == null) {
+            throw new TransformerConfigurationException(
+                "Translet class '" + transletName + "' not found.");
+	}
+	return clazz;
+    }
 }
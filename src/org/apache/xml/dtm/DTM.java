@@ -357,6 +357,17 @@ public interface DTM
    */
   public int getDocument();
 
+  /**
+   * Given a node handle, find the document node at the root of the tree
+   * that contains it.  For most DTMs this is the same as getDocument(),
+   * but a DTM that holds several trees (such as a result tree fragment
+   * arena) answers with the root of the node's own tree.
+   *
+   * @param nodeHandle the id of the node.
+   * @return int Node handle of the document root of the node's tree.
+   */
+  public int getDocumentRoot(int nodeHandle);
+
   /**
    * Given a node handle, find the owning document node.  This has the exact
    * same semantics as the DOM Document method of the same name, in that if
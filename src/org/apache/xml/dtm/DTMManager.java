@@ -184,7 +184,13 @@ public abstract class DTMManager
 
     try
     {
-      Class clazz = Class.forName(classname);
+      Class clazz = foundFactoryClass;
+
+      if (null == clazz || !classname.equals(clazz.getName()))
+      {
+        clazz = Class.forName(classname);
+        foundFactoryClass = clazz;
+      }
 
       factoryImpl = (DTMManager) clazz.newInstance();
     }
@@ -357,6 +363,12 @@ public abstract class DTMManager
    */
   private static String foundFactory = null;
 
+  /**
+   * The class last loaded by newInstance, so that creating a DTMManager
+   * for every XPathContext doesn't repeat the class lookup.
+   */
+  private static Class foundFactoryClass = null;
+
   /**
    * Temp debug code - this will be removed after we test everything
    */
@@ -496,14 +508,30 @@ public abstract class DTMManager
       }
     }
 
+    // Nothing is configured.  Remember that, so that the next call
+    // doesn't read the properties file and the class path again.
+    foundFactory = defaultFactory;
+
     return defaultFactory;
   }
 
-  /** %TBD% Doc */
-  public static final int IDENT_DTM_DEFAULT = 0xFFF00000;
+  /**
+   * The number of low bits of a node handle that address a node within
+   * one DTM ID.  The remaining high bits select the DTM ID.  A document
+   * larger than one block of nodes claims further DTM IDs through
+   * getFirstFreeDTMID and addDTM, so this limits neither the size of a
+   * document nor, in practice, the number of documents.
+   */
+  public static final int IDENT_DTM_NODE_BITS = 16;
+
+  /** Mask that selects the DTM ID bits of a node handle. */
+  public static final int IDENT_DTM_DEFAULT = 0xFFFFFFFF << IDENT_DTM_NODE_BITS;
 
-  /** %TBD% Doc */
-  public static final int IDENT_NODE_DEFAULT = 0x000FFFFF;
+  /** Mask that selects the node bits of a node handle. */
+  public static final int IDENT_NODE_DEFAULT = ~IDENT_DTM_DEFAULT;
+
+  /** The number of DTM IDs available to one DTMManager. */
+  public static final int IDENT_MAX_DTMS = (IDENT_DTM_DEFAULT >>> IDENT_DTM_NODE_BITS) + 1;
 
   /**
    * %TBD% Doc
@@ -514,6 +542,28 @@ public abstract class DTMManager
    */
   public abstract int getDTMIdentity(DTM dtm);
 
+  /**
+   * Get the first free DTM ID available.  A DTM calls this when it grows
+   * past the IDENT_NODE_DEFAULT+1 nodes that one DTM ID can address, and
+   * then registers the ID with addDTM.
+   *
+   * @return A DTM ID below IDENT_MAX_DTMS that is not in use.
+   * @throws DTMException if no more DTM IDs are available.
+   */
+  public abstract int getFirstFreeDTMID();
+
+  /**
+   * Register a DTM under a further DTM ID, for the block of its nodes
+   * that starts at the given node index.  A DTM may be registered under
+   * several IDs.  getDTM(int) must return it for a handle with any of
+   * them, and release must free all of them.
+   *
+   * @param dtm The DTM that claimed the ID.
+   * @param id The DTM ID, as returned by getFirstFreeDTMID.
+   * @param offset The node index addressed by node 0 of this DTM ID.
+   */
+  public abstract void addDTM(DTM dtm, int id, int offset);
+
   /**
    * %TBD% Doc
    *
@@ -124,6 +124,19 @@ import org.apache.xml.dtm.*;
  * <p>This version is built on top of standard Java threading, since
  * that's all we have available right now. It's been encapsulated for
  * code clarity and possible future optimization.</p>
+ *
+ * <p>A coroutine that resumes another can be made to poll the volatile
+ * {@link #m_nextCoroutine} for a bounded number of turns, yielding the
+ * processor between polls, before it waits on the monitor. When the
+ * partner hands control back quickly, as a CoroutineSAXParser does after
+ * each batch of events, and a spare processor is available, this avoids
+ * much of the cost of parking and waking a thread. On a loaded or single
+ * processor machine the polling only burns time, so it is off by
+ * default. The number of turns comes from the system property
+ * <code>org.apache.xml.dtm.ref.CoroutineManager.spin</code>; 0, the
+ * default, gives the plain wait()/notify() handoff. The
+ * tests/perf/CoroutineBench program compares the two on a given
+ * machine.</p>
  * 
  * <p>(Two possible approaches: wait-notify based and queue-based. Some
  * folks think that a one-item queue is a cleaner solution because it's
@@ -190,7 +203,55 @@ public class CoroutineManager
    * is needed when more that two coroutines are operating within the same
    * group.
    */
-  int m_nextCoroutine=NOBODY;
+  volatile int m_nextCoroutine=NOBODY;
+
+  /** Default number of turns co_resume() polls before it waits. */
+  static final int DEFAULT_SPIN_LIMIT=getDefaultSpinLimit();
+
+  /** Number of turns co_resume() polls for control to come back
+   * before it waits on the monitor.
+   */
+  private final int m_spinLimit;
+
+  /** Create a coroutine set with the default spin limit.
+   */
+  public CoroutineManager()
+  {
+    this(DEFAULT_SPIN_LIMIT);
+  }
+
+  /** Create a coroutine set.
+   *
+   * @param spinLimit Number of times co_resume() polls for control to
+   * come back before waiting on the monitor; 0 to wait at once.
+   */
+  public CoroutineManager(int spinLimit)
+  {
+    m_spinLimit=(spinLimit<0) ? 0 : spinLimit;
+  }
+
+  /** Read the default spin limit from the system property
+   * org.apache.xml.dtm.ref.CoroutineManager.spin.
+   *
+   * @return The configured spin limit, or 0 if none is set.
+   */
+  private static int getDefaultSpinLimit()
+  {
+    int spin=0;
+
+    try
+      {
+        String prop=System.getProperty(
+          "org.apache.xml.dtm.ref.CoroutineManager.spin");
+
+        if(null!=prop)
+          spin=Integer.parseInt(prop.trim());
+      }
+    catch(SecurityException se){}
+    catch(NumberFormatException nfe){}
+
+    return (spin<0) ? 0 : spin;
+  }
   
   /** <p>Each coroutine in the set managed by a single
    * CoroutineManager is identified by a small positive integer. This
@@ -291,43 +352,55 @@ public class CoroutineManager
    * @exception java.lang.NoSuchMethodException if toCoroutine isn't a
    * registered member of this group. %REVIEW% whether this is the best choice.
    * */
-  public synchronized Object co_resume(Object arg_object,int thisCoroutine,int toCoroutine) throws java.lang.NoSuchMethodException
+  public Object co_resume(Object arg_object,int thisCoroutine,int toCoroutine) throws java.lang.NoSuchMethodException
   {
-    if(!m_activeIDs.get(toCoroutine))
-      throw new java.lang.NoSuchMethodException("Coroutine not available, id="+toCoroutine);
+    synchronized(this)
+      {
+        if(!m_activeIDs.get(toCoroutine))
+          throw new java.lang.NoSuchMethodException("Coroutine not available, id="+toCoroutine);
 
-    // We expect these values to be overwritten during the notify()/wait()
-    // periods, as other coroutines in this set get their opportunity to run.
-    m_yield=arg_object;
-    m_nextCoroutine=toCoroutine;
+        // We expect these values to be overwritten during the notify()/wait()
+        // periods, as other coroutines in this set get their opportunity to run.
+        m_yield=arg_object;
+        m_nextCoroutine=toCoroutine;
 
-    notify();
-    while(m_nextCoroutine != thisCoroutine || m_nextCoroutine==ANYBODY || m_nextCoroutine==NOBODY)
+        notify();
+      }
+
+    // Give the other coroutine a chance to hand control straight back
+    // before paying for a wait(). m_yield is read under the monitor below.
+    for(int i=m_spinLimit;i>0 && m_nextCoroutine!=thisCoroutine;--i)
+      Thread.yield();
+
+    synchronized(this)
       {
-        try 
+        while(m_nextCoroutine != thisCoroutine || m_nextCoroutine==ANYBODY || m_nextCoroutine==NOBODY)
           {
-            // System.out.println("waiting...");
-            wait();
+            try 
+              {
+                // System.out.println("waiting...");
+                wait();
+              }
+            catch(java.lang.InterruptedException e)
+              {
+                // %TBD% -- Declare? Encapsulate? Ignore? Or
+                // dance deasil about the program counter?
+              }
           }
-        catch(java.lang.InterruptedException e)
+
+        if(m_nextCoroutine==NOBODY)
           {
-            // %TBD% -- Declare? Encapsulate? Ignore? Or
-            // dance deasil about the program counter?
+            // Pass it along
+            co_exit(thisCoroutine);
+            // And inform this coroutine that its partners are Going Away
+            // %REVIEW% Should this throw/return something more useful?
+            throw new java.lang.NoSuchMethodException("CoroutineManager recieved co_exit() request");
           }
-      }
 
-    if(m_nextCoroutine==NOBODY)
-      {
-        // Pass it along
-        co_exit(thisCoroutine);
-        // And inform this coroutine that its partners are Going Away
-        // %REVIEW% Should this throw/return something more useful?
-        throw new java.lang.NoSuchMethodException("CoroutineManager recieved co_exit() request");
+        return m_yield;
       }
-    
-    return m_yield;
   }
-  
+
   /** Terminate this entire set of coroutines. The others will be
    * deregistered and have exceptions thrown at them. Note that this
    * is intended as a panic-shutdown operation; under normal
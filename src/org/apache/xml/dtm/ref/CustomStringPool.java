@@ -77,7 +77,7 @@ import java.util.Hashtable;
  * <p>Status: In progress, under discussion.</p>
  * */
 public class CustomStringPool extends DTMStringPool {
-        //final Vector m_intToString;
+        final Vector m_intToString = new Vector();
         //static final int HASHPRIME=101;
         //int[] m_hashStart=new int[HASHPRIME];
         final Hashtable m_stringToInt = new Hashtable();
@@ -95,11 +95,26 @@ public class CustomStringPool extends DTMStringPool {
 
         public void removeAllElements()
         {
-                m_intToString.removeAllElements();
+                if (m_intToString != null) 
+                        m_intToString.removeAllElements();
                 if (m_stringToInt != null) 
                         m_stringToInt.clear();
         }
 
+        public int size()
+        {
+                return m_intToString.size();
+        }
+
+        public void setSize(int size)
+        {
+                for (int i = m_intToString.size() - 1; i >= size; --i)
+                {
+                        m_stringToInt.remove(m_intToString.elementAt(i));
+                        m_intToString.removeElementAt(i);
+                }
+        }
+
         /** @return string whose value is uniquely identified by this integer index.
          * @throws java.lang.ArrayIndexOutOfBoundsException
          *  if index doesn't map to a string.
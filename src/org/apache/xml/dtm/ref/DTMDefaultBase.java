@@ -58,6 +58,8 @@ package org.apache.xml.dtm.ref;
 
 import org.apache.xml.dtm.*;
 import org.apache.xml.utils.IntVector;
+import org.apache.xml.utils.SuballocatedIntVector;
+import org.apache.xml.utils.SuballocatedByteVector;
 import org.apache.xml.utils.IntStack;
 import org.apache.xml.utils.BoolStack;
 import org.apache.xml.utils.StringBufferPool;
@@ -66,6 +68,7 @@ import org.apache.xml.utils.TreeWalker;
 import org.apache.xml.utils.QName;
 import org.apache.xml.utils.XMLCharacterRecognizer;
 
+import java.util.Hashtable;
 import java.util.Vector;
 
 import org.xml.sax.ContentHandler;
@@ -93,22 +96,22 @@ public abstract class DTMDefaultBase implements DTM
   protected int m_size = 0;
 
   /** The expanded names, one array element for each node. */
-  protected int[] m_exptype;
+  protected SuballocatedIntVector m_exptype;
 
   /** levels deep, one array element for each node. */
-  protected byte[] m_level;
+  protected SuballocatedByteVector m_level;
 
   /** First child values, one array element for each node. */
-  protected int[] m_firstch;
+  protected SuballocatedIntVector m_firstch;
 
   /** Next sibling values, one array element for each node. */
-  protected int[] m_nextsib;
+  protected SuballocatedIntVector m_nextsib;
 
   /** Previous sibling values, one array element for each node. */
-  protected int[] m_prevsib;
+  protected SuballocatedIntVector m_prevsib;
 
   /** Previous sibling values, one array element for each node. */
-  protected int[] m_parent;
+  protected SuballocatedIntVector m_parent;
   
   /** Experemental.  -sb */
 //  protected boolean m_haveSeenNamespace = false;
@@ -128,27 +131,50 @@ public abstract class DTMDefaultBase implements DTM
    */
   protected int[][][] m_elemIndexes;
 
-  /** The default initial block size of the node arrays */
+  /**
+   * The chunk size of the node arrays.  The arrays grow one chunk at a
+   * time and are never copied, so this only trades the memory wasted
+   * in the last chunk against the number of chunks.
+   */
   protected int m_initialblocksize = 512;  // favor small docs.
 
-  /** Size of blocks to allocate */
-  protected int m_blocksize = 2 * 1024;
-
   /**
    * The value to use when the information has not been built yet.
    */
   protected static final int NOTPROCESSED = DTM.NULL - 1;
 
   /** Not sure if this is used? */
-  protected static final int NODEIDENTITYBITS = 0x000FFFFF;
+  protected static final int NODEIDENTITYBITS = DTMManager.IDENT_NODE_DEFAULT;
 
   /**
    * The DTM manager who "owns" this DTM.
    */
   protected DTMManager m_mgr;
 
-  /** The document identity, which is OR'd with node indexes to make handles. */
-  protected int m_dtmIdent;
+  /**
+   * The DTM identities of this document, one for each block of
+   * DTMManager.IDENT_NODE_DEFAULT+1 nodes.  Element n is OR'd with the low
+   * bits of a node index in block n to make the node handle.  Small
+   * documents only ever have one element.
+   */
+  protected SuballocatedIntVector m_dtmIdent;
+
+  /**
+   * True while this document has only one DTM ID, which is all that most
+   * documents ever need.  makeNodeHandle and makeNodeIdentity then use
+   * a plain OR and mask instead of looking the block up.
+   */
+  protected boolean m_singleBlock = true;
+
+  /** The first, and usually only, element of m_dtmIdent.  */
+  protected int m_firstDTMIdent;
+
+  /**
+   * For each DTM ID this document holds, the index of the first node of
+   * the block it addresses, indexed by DTM ID.  Null until the document
+   * claims a second ID; makeNodeIdentity reads it after that.
+   */
+  protected int[] m_blockOffsets;
 
   /** The mask for the identity.  %REVIEW% static constant? */
   protected final static int m_mask = DTMManager.IDENT_NODE_DEFAULT;
@@ -182,6 +208,53 @@ public abstract class DTMDefaultBase implements DTM
   /** true if indexing is turned on. */
   protected boolean m_indexing;
 
+  /**
+   * Tables that users of this DTM have derived from its content, such
+   * as the indexes built for xsl:key, so that they can be shared by
+   * everyone who uses the same tree.  Created on demand.
+   */
+  protected Hashtable m_derivedTables;
+
+  /**
+   * Get a table previously attached to this DTM with putDerivedTable.
+   *
+   * @param key The object that identifies the table to its builder.
+   *
+   * @return The table, or null if none has been attached under the key.
+   */
+  public synchronized Object getDerivedTable(Object key)
+  {
+    return (null == m_derivedTables) ? null : m_derivedTables.get(key);
+  }
+
+  /**
+   * Attach a table derived from the content of this DTM, unless another
+   * thread has already attached one under the same key.  Tables must not
+   * be modified once attached, since they may be read by several
+   * transformations at once.
+   *
+   * @param key The object that identifies the table to its builder.
+   * @param table The table.
+   *
+   * @return The table now attached under the key, which is the earlier
+   * one if there was one.
+   */
+  public synchronized Object putDerivedTable(Object key, Object table)
+  {
+
+    if (null == m_derivedTables)
+      m_derivedTables = new Hashtable();
+
+    Object existing = m_derivedTables.get(key);
+
+    if (null != existing)
+      return existing;
+
+    m_derivedTables.put(key, table);
+
+    return table;
+  }
+
   /**
    * Construct a DTMDefaultBase object from a DOM node.
    *
@@ -201,19 +274,20 @@ public abstract class DTMDefaultBase implements DTM
   {
     if(false == doIndexing)
     {
-      m_initialblocksize = 8;
-      m_blocksize = 16;
+      m_initialblocksize = 32;
     }
 
-    m_exptype = new int[m_initialblocksize];
-    m_level = new byte[m_initialblocksize];
-    m_firstch = new int[m_initialblocksize];
-    m_nextsib = new int[m_initialblocksize];
-    m_prevsib = new int[m_initialblocksize];
-    m_parent = new int[m_initialblocksize];
+    m_exptype = new SuballocatedIntVector(m_initialblocksize);
+    m_level = new SuballocatedByteVector(m_initialblocksize);
+    m_firstch = new SuballocatedIntVector(m_initialblocksize);
+    m_nextsib = new SuballocatedIntVector(m_initialblocksize);
+    m_prevsib = new SuballocatedIntVector(m_initialblocksize);
+    m_parent = new SuballocatedIntVector(m_initialblocksize);
     m_mgr = mgr;
     m_documentBaseURI = (null != source) ? source.getSystemId() : null;
-    m_dtmIdent = dtmIdentity;
+    m_dtmIdent = new SuballocatedIntVector(32);
+    m_dtmIdent.addElement(dtmIdentity);
+    m_firstDTMIdent = dtmIdentity;
     // m_mask = mgr.getNodeIdentityMask();
     m_wsfilter = whiteSpaceFilter;
     m_xstrf = xstringfactory;
@@ -432,7 +506,8 @@ public abstract class DTMDefaultBase implements DTM
 
   /**
    * Ensure that the size of the information arrays can hold another entry
-   * at the given index.
+   * at the given index.  The arrays are suballocated, so this only ever
+   * adds a chunk; nodes already stored are never copied.
    *
    * @param index On exit from this function, the information arrays sizes must be
    * at least index+1.
@@ -440,42 +515,96 @@ public abstract class DTMDefaultBase implements DTM
   protected void ensureSize(int index)
   {
 
-    int capacity = m_exptype.length;
+    // Claim another DTM ID when the node crosses into a new block.
+    if (index > 0 && (index & m_mask) == 0
+        && (index >>> DTMManager.IDENT_DTM_NODE_BITS) >= m_dtmIdent.size())
+      addNewDTMID(index);
+
+    m_exptype.ensureCapacity(index + 1);
+    m_level.ensureCapacity(index + 1);
+    m_firstch.ensureCapacity(index + 1);
+    m_nextsib.ensureCapacity(index + 1);
+    m_prevsib.ensureCapacity(index + 1);
+    m_parent.ensureCapacity(index + 1);
+  }
 
-    if (capacity <= index)
-    {
-      int newcapacity = capacity + m_blocksize;
-      // ps.println("resizing to new capacity: "+newcapacity);
-
-      // %OPT% Compilers might be happier if we operated on one array
-      // at a time, though the parallel code might be a trifle less
-      // obvious.
-      int[] exptype = m_exptype;
-      byte[] level = m_level;
-      int[] firstch = m_firstch;
-      int[] nextsib = m_nextsib;
-      int[] prevsib = m_prevsib;
-      int[] parent = m_parent;
-
-      m_exptype = new int[newcapacity];
-      m_level = new byte[newcapacity];
-      m_firstch = new int[newcapacity];
-      m_nextsib = new int[newcapacity];
-      m_prevsib = new int[newcapacity];
-      m_parent = new int[newcapacity];
-
-      System.arraycopy(exptype, 0, m_exptype, 0, capacity);
-      System.arraycopy(level, 0, m_level, 0, capacity);
-      System.arraycopy(firstch, 0, m_firstch, 0, capacity);
-      System.arraycopy(nextsib, 0, m_nextsib, 0, capacity);
-      System.arraycopy(prevsib, 0, m_prevsib, 0, capacity);
-      System.arraycopy(parent, 0, m_parent, 0, capacity);
-
-      // %REVIEW%
-      m_blocksize = m_blocksize + m_blocksize;
-      if(m_blocksize >= (1024*8))
-        m_blocksize = 1024*8;
-    }
+  /**
+   * Claim a new DTM ID from the manager for the block of nodes starting
+   * at the given node index.  This is what lets a single document grow
+   * past the number of nodes one DTM ID can address.
+   *
+   * @param nodeIndex The index of the first node of the new block.
+   */
+  protected void addNewDTMID(int nodeIndex)
+  {
+
+    int id = m_mgr.getFirstFreeDTMID();
+
+    m_mgr.addDTM(this, id, nodeIndex);
+    m_dtmIdent.addElement(id << DTMManager.IDENT_DTM_NODE_BITS);
+
+    // Covers every possible DTM ID, so a lookup never needs a bounds
+    // check.  Only documents of more than one block pay for it.
+    if (null == m_blockOffsets)
+      m_blockOffsets = new int[DTMManager.IDENT_MAX_DTMS];
+
+    m_blockOffsets[id] = nodeIndex;
+    m_singleBlock = false;
+  }
+
+  /**
+   * Get the DTM IDs used by this document, already shifted into the
+   * handle position, one for each block of nodes.
+   *
+   * @return The vector of DTM IDs, which must not be modified.
+   */
+  public SuballocatedIntVector getDTMIDs()
+  {
+    return m_dtmIdent;
+  }
+
+  /**
+   * Given a node identity, return a node handle.  If extended addressing
+   * has been used, the block the node lives in selects the DTM ID.
+   *
+   * @param nodeIdentity The node identity, or DTM.NULL.
+   *
+   * @return The node handle, or DTM.NULL.
+   */
+  public int makeNodeHandle(int nodeIdentity)
+  {
+
+    // NULL is all ones, so the OR leaves it as NULL.
+    if (m_singleBlock)
+      return nodeIdentity | m_firstDTMIdent;
+
+    if (NULL == nodeIdentity)
+      return NULL;
+
+    return m_dtmIdent.elementAt(nodeIdentity >>> DTMManager.IDENT_DTM_NODE_BITS)
+           | (nodeIdentity & m_mask);
+  }
+
+  /**
+   * Given a node handle, return the node identity, that is, the index of
+   * the node in this DTM's tables.  The DTM ID bits are mapped back to the
+   * offset of their block.
+   *
+   * @param nodeHandle The node handle, or DTM.NULL.
+   *
+   * @return The node identity, or DTM.NULL.
+   */
+  public int makeNodeIdentity(int nodeHandle)
+  {
+
+    if (NULL == nodeHandle)
+      return NULL;
+
+    if (m_singleBlock)
+      return nodeHandle & m_mask;
+
+    return m_blockOffsets[nodeHandle >>> DTMManager.IDENT_DTM_NODE_BITS]
+           | (nodeHandle & m_mask);
   }
 
   /**
@@ -488,7 +617,7 @@ public abstract class DTMDefaultBase implements DTM
   protected short _type(int identity)
   {
 
-    int info = getExpandedTypeID(identity);
+    int info = _exptype(identity);
 
     if (NULL != info)
       return ExpandedNameTable.getType(info);
@@ -506,8 +635,11 @@ public abstract class DTMDefaultBase implements DTM
   protected int _exptype(int identity)
   {
 
+    if (NULL == identity)
+      return NULL;
+
     if (identity < m_size)
-      return m_exptype[identity];
+      return m_exptype.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -519,7 +651,7 @@ public abstract class DTMDefaultBase implements DTM
       if (!isMore)
         return NULL;
       else if (identity < m_size)
-        return m_exptype[identity];
+        return m_exptype.elementAt(identity);
     }
   }
 
@@ -533,8 +665,11 @@ public abstract class DTMDefaultBase implements DTM
   protected int _level(int identity)
   {
 
+    if (NULL == identity)
+      return NULL;
+
     if (identity < m_size)
-      return m_level[identity];
+      return m_level.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -546,7 +681,7 @@ public abstract class DTMDefaultBase implements DTM
       if (!isMore)
         return NULL;
       else if (identity < m_size)
-        return m_level[identity];
+        return m_level.elementAt(identity);
     }
   }
 
@@ -560,8 +695,11 @@ public abstract class DTMDefaultBase implements DTM
   protected int _firstch(int identity)
   {
 
+    if (NULL == identity)
+      return NULL;
+
     // Boiler-plate code for each of the _xxx functions, except for the array.
-    int info = (identity >= m_size) ? NOTPROCESSED : m_firstch[identity];
+    int info = (identity >= m_size) ? NOTPROCESSED : m_firstch.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -572,8 +710,8 @@ public abstract class DTMDefaultBase implements DTM
 
       if (identity >= m_size &&!isMore)
         return NULL;
-      else
-        info = m_firstch[identity];
+      else if (identity < m_size)
+        info = m_firstch.elementAt(identity);
     }
 
     return info;
@@ -589,8 +727,11 @@ public abstract class DTMDefaultBase implements DTM
   protected int _nextsib(int identity)
   {
 
+    if (NULL == identity)
+      return NULL;
+
     // Boiler-plate code for each of the _xxx functions, except for the array.
-    int info = (identity >= m_size) ? NOTPROCESSED : m_nextsib[identity];
+    int info = (identity >= m_size) ? NOTPROCESSED : m_nextsib.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -601,8 +742,8 @@ public abstract class DTMDefaultBase implements DTM
 
       if (identity >= m_size &&!isMore)
         return NULL;
-      else
-        info = m_nextsib[identity];
+      else if (identity < m_size)
+        info = m_nextsib.elementAt(identity);
     }
 
     return info;
@@ -618,8 +759,11 @@ public abstract class DTMDefaultBase implements DTM
   protected int _prevsib(int identity)
   {
 
+    if (NULL == identity)
+      return NULL;
+
     if (identity < m_size)
-      return m_prevsib[identity];
+      return m_prevsib.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -631,7 +775,7 @@ public abstract class DTMDefaultBase implements DTM
       if (!isMore)
         return NULL;
       else if (identity < m_size)
-        return m_prevsib[identity];
+        return m_prevsib.elementAt(identity);
     }
   }
 
@@ -645,8 +789,11 @@ public abstract class DTMDefaultBase implements DTM
   protected int _parent(int identity)
   {
 
+    if (NULL == identity)
+      return NULL;
+
     if (identity < m_size)
-      return m_parent[identity];
+      return m_parent.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -658,7 +805,7 @@ public abstract class DTMDefaultBase implements DTM
       if (!isMore)
         return NULL;
       else if (identity < m_size)
-        return m_parent[identity];
+        return m_parent.elementAt(identity);
     }
   }
 
@@ -826,7 +973,7 @@ public abstract class DTMDefaultBase implements DTM
   public boolean hasChildNodes(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
     int firstChild = _firstch(identity);
 
     return firstChild != DTM.NULL;
@@ -843,10 +990,10 @@ public abstract class DTMDefaultBase implements DTM
   public int getFirstChild(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
     int firstChild = _firstch(identity);
 
-    return firstChild | m_dtmIdent;
+    return makeNodeHandle(firstChild);
   }
 
   /**
@@ -861,7 +1008,7 @@ public abstract class DTMDefaultBase implements DTM
   public int getLastChild(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
     int child = _firstch(identity);
     int lastChild = DTM.NULL;
 
@@ -871,7 +1018,7 @@ public abstract class DTMDefaultBase implements DTM
       child = _nextsib(child);
     }
 
-    return lastChild | m_dtmIdent;
+    return makeNodeHandle(lastChild);
   }
 
   /**
@@ -904,17 +1051,17 @@ public abstract class DTMDefaultBase implements DTM
     {
 
       // Assume that attributes and namespaces immediately follow the element.
-      int identity = nodeHandle & m_mask;
+      int identity = makeNodeIdentity(nodeHandle);
 
       while (DTM.NULL != (identity = getNextNodeIdentity(identity)))
       {
 
         // Assume this can not be null.
-        type = getNodeType(identity);
+        type = _type(identity);
 
         if (type == DTM.ATTRIBUTE_NODE)
         {
-          return identity | m_dtmIdent;
+          return makeNodeHandle(identity);
         }
         else if (DTM.NAMESPACE_NODE != type)
         {
@@ -936,7 +1083,7 @@ public abstract class DTMDefaultBase implements DTM
    */
   public int getNextSibling(int nodeHandle)
   {
-    return _nextsib(nodeHandle & m_mask) | m_dtmIdent;
+    return makeNodeHandle(_nextsib(makeNodeIdentity(nodeHandle)));
   }
 
   /**
@@ -950,7 +1097,7 @@ public abstract class DTMDefaultBase implements DTM
    */
   public int getPreviousSibling(int nodeHandle)
   {
-    return _prevsib(nodeHandle & m_mask) | m_dtmIdent;
+    return makeNodeHandle(_prevsib(makeNodeIdentity(nodeHandle)));
   }
 
   /**
@@ -970,15 +1117,15 @@ public abstract class DTMDefaultBase implements DTM
     if (DTM.ATTRIBUTE_NODE == type)
     {
       // Assume that attributes and namespace nodes immediately follow the element.
-      int identity = nodeHandle & m_mask;
+      int identity = makeNodeIdentity(nodeHandle);
 
       while (DTM.NULL != (identity = getNextNodeIdentity(identity)))
       {
-        type = getNodeType(identity);
+        type = _type(identity);
 
         if (type == DTM.ATTRIBUTE_NODE)
         {
-          return identity | m_dtmIdent;
+          return makeNodeHandle(identity);
         }
         else if (type != DTM.NAMESPACE_NODE)
         {
@@ -1058,17 +1205,17 @@ public abstract class DTMDefaultBase implements DTM
     // %OPT% Keep sorted? (By expanded-name rather than by doc order...)
     // Downside: Would require insertElementAt if not found,
     // which has recopying costs. But these are generally short lists...
-    int newEType=getExpandedTypeID(namespaceNodeIndex);
+    int newEType=_exptype(namespaceNodeIndex);
 
     for(int i=nsList.size()-1;i>=0;--i)
       {
         if(newEType==getExpandedTypeID(nsList.elementAt(i)))
           {
-            nsList.setElementAt(namespaceNodeIndex,i);
+            nsList.setElementAt(makeNodeHandle(namespaceNodeIndex),i);
             return;
           }
       }
-    nsList.addElement(namespaceNodeIndex | m_dtmIdent);
+    nsList.addElement(makeNodeHandle(namespaceNodeIndex));
   }
     
   /** Retrieve list of namespace declaration locations
@@ -1177,7 +1324,7 @@ public abstract class DTMDefaultBase implements DTM
   {
         if(inScope)
         {      
-            IntVector nsContext=findNamespaceContext(nodeHandle & m_mask);
+            IntVector nsContext=findNamespaceContext(makeNodeIdentity(nodeHandle));
             if(nsContext==null || nsContext.size()<1)
               return NULL;
 
@@ -1191,12 +1338,12 @@ public abstract class DTMDefaultBase implements DTM
             // %OPT% Would things be faster if all NS nodes were built
             // before all Attr nodes? Some costs at build time for 2nd
             // pass...
-            int identity = nodeHandle & m_mask;
+            int identity = makeNodeIdentity(nodeHandle);
             while (DTM.NULL != (identity = getNextNodeIdentity(identity)))
               {
-                int type = getNodeType(identity);
+                int type = _type(identity);
                 if (type == DTM.NAMESPACE_NODE)
-                    return identity | m_dtmIdent;
+                    return makeNodeHandle(identity);
                 else if (DTM.ATTRIBUTE_NODE != type)
                     break;
               }
@@ -1224,9 +1371,9 @@ public abstract class DTMDefaultBase implements DTM
             //Since we've been given the base, try direct lookup
             //(could look from nodeHandle but this is at least one
             //comparison/get-parent faster)
-            //IntVector nsContext=findNamespaceContext(nodeHandle & m_mask);
+            //IntVector nsContext=findNamespaceContext(makeNodeIdentity(nodeHandle));
 
-                IntVector nsContext=findNamespaceContext(baseHandle & m_mask);
+                IntVector nsContext=findNamespaceContext(makeNodeIdentity(baseHandle));
 
             if(nsContext==null)
               return NULL;
@@ -1239,13 +1386,13 @@ public abstract class DTMDefaultBase implements DTM
         else
           {
             // Assume that attributes and namespace nodes immediately follow the element.
-            int identity = nodeHandle & m_mask;
+            int identity = makeNodeIdentity(nodeHandle);
             while (DTM.NULL != (identity = getNextNodeIdentity(identity)))
               {
-                int type = getNodeType(identity);
+                int type = _type(identity);
                 if (type == DTM.NAMESPACE_NODE)
                   {
-                    return identity | m_dtmIdent;
+                    return makeNodeHandle(identity);
                   }
                 else if (type != DTM.ATTRIBUTE_NODE)
                   {
@@ -1266,10 +1413,10 @@ public abstract class DTMDefaultBase implements DTM
   public int getParent(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
 
     if (identity > 0)
-      return _parent(identity) | m_dtmIdent;
+      return makeNodeHandle(_parent(identity));
     else
       return DTM.NULL;
   }
@@ -1282,7 +1429,20 @@ public abstract class DTMDefaultBase implements DTM
    */
   public int getDocument()
   {
-    return m_dtmIdent;
+    return m_dtmIdent.elementAt(0);
+  }
+
+  /**
+   * Given a node handle, find the document node at the root of its tree.
+   * A DTM normally holds a single tree, so this is getDocument(); DTMs
+   * that hold several trees override it.
+   *
+   * @param nodeHandle the id of the node.
+   * @return int Node handle of the document root of the node's tree.
+   */
+  public int getDocumentRoot(int nodeHandle)
+  {
+    return getDocument();
   }
 
   /**
@@ -1308,7 +1468,7 @@ public abstract class DTMDefaultBase implements DTM
       return DTM.NULL;
     }
 
-    return getDocument();
+    return getDocumentRoot(nodeHandle);
   }
 
   /**
@@ -1376,7 +1536,7 @@ public abstract class DTMDefaultBase implements DTM
   public int getExpandedTypeID(int nodeHandle)
   {
 
-    return _exptype(nodeHandle & m_mask);
+    return _exptype(makeNodeIdentity(nodeHandle));
   }
 
   /**
@@ -1404,6 +1564,18 @@ public abstract class DTMDefaultBase implements DTM
     return ent.getExpandedTypeID(namespace, localName, type);
   }
 
+  /**
+   * Get the table that assigns this DTM's expanded-name IDs.  Two DTMs
+   * that return the same table agree on what every expanded type ID
+   * means, so information keyed on those IDs may be shared between them.
+   *
+   * @return The ExpandedNameTable, never null.
+   */
+  public ExpandedNameTable getExpandedNameTable()
+  {
+    return m_expandedNameTable;
+  }
+
   /**
    * Given an expanded-name ID, return the local name part.
    *
@@ -1435,7 +1607,7 @@ public abstract class DTMDefaultBase implements DTM
   public int getNamespaceType(final int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
     int expandedNameID = _exptype(identity);
 
     return ExpandedNameTable.getNamespaceID(expandedNameID);
@@ -1528,7 +1700,7 @@ public abstract class DTMDefaultBase implements DTM
    */
   public short getNodeType(int nodeHandle)
   {
-    return (short)(_exptype(nodeHandle & m_mask) >> ExpandedNameTable.ROTAMOUNT_TYPE);
+    return (short)(_exptype(makeNodeIdentity(nodeHandle)) >> ExpandedNameTable.ROTAMOUNT_TYPE);
   }
 
   /**
@@ -1542,7 +1714,7 @@ public abstract class DTMDefaultBase implements DTM
   public short getLevel(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
 
     // Apparently, the axis walker stuff requires levels to count from 1.
     return (short) (_level(identity) + 1);
@@ -1778,8 +1950,8 @@ public abstract class DTMDefaultBase implements DTM
   public boolean isNodeAfter(int nodeHandle1, int nodeHandle2)
   {
 
-    int index1 = nodeHandle1 & m_mask;
-    int index2 = nodeHandle2 & m_mask;
+    int index1 = makeNodeIdentity(nodeHandle1);
+    int index2 = makeNodeIdentity(nodeHandle2);
 
     return index1 <= index2;
   }
@@ -673,7 +673,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
 
       if (_isRestartable)
       {
-        _startNode = getDocument();
+        _startNode = getDocumentRoot(node);
         _currentNode = NULL;
 
         return resetPosition();
@@ -1181,18 +1181,21 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
 
       if (_isRestartable)
       {
-        node = node & m_mask;
+        node = makeNodeIdentity(node);
 
         // iterator is not a clone
         int parent, index;
 
+        // Preceding nodes stop at the root of this node's own tree.
+        int root = makeNodeIdentity(getDocumentRoot(makeNodeHandle(node)));
+
         _startNode = node;
-        _currentNode = ROOTNODE;  // Remember it's the identity, not the full handle.
+        _currentNode = root;  // Remember it's the identity, not the full handle.
         _stack[index = 0] = node;
 
-        if (node > ROOTNODE)
+        if (node > root)
         {
-          while ((parent = _parent(node)) != ROOTNODE)
+          while ((parent = _parent(node)) != root)
           {
             if (++index == _stack.length)
             {
@@ -1227,7 +1230,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
 
       if ((_sp >= 0) && (node < _stack[_sp]))
       {
-        return returnNode((_currentNode = node) | m_dtmIdent);
+        return returnNode(makeNodeHandle((_currentNode = node)));
       }
       else
       {
@@ -1465,7 +1468,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
         else
           _startNode = getParent(node);
 
-        _currentNode = getDocument();
+        _currentNode = getDocumentRoot(node);
         
         node = _startNode;
         while (node != END)
@@ -1490,7 +1493,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
     public DTMAxisIterator reset()
     {
 
-      _currentNode = getDocument();
+      _currentNode = getDocumentRoot(_startNode);
 
       return resetPosition();
     }
@@ -1596,7 +1599,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
 
       if (_isRestartable)
       {
-        node = node & m_mask;
+        node = makeNodeIdentity(node);
         _startNode = node;
 
         if (_includeSelf)
@@ -1648,7 +1651,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
         if (ATTRIBUTE_NODE == type || NAMESPACE_NODE == type)
           continue;
 
-        return returnNode(node | m_dtmIdent);  // make handle.
+        return returnNode(makeNodeHandle(node));  // make handle.
       }
     }
   }  // end of DescendantIterator
@@ -1724,7 +1727,7 @@ public abstract class DTMDefaultBaseIterators extends DTMDefaultBaseTraversers
 
       while ((node = super.next()) != END)
       {
-        node = (node & m_mask);
+        node = makeNodeIdentity(node);
 
         int parent = _parent(node);
         int child = _firstch(parent);
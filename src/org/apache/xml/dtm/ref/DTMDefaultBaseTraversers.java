@@ -210,7 +210,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int next(int context, int current)
     {
-      return m_parent[current & m_mask] | m_dtmIdent;
+      return makeNodeHandle(m_parent.elementAt(makeNodeIdentity(current)));
     }
 
     /**
@@ -226,12 +226,12 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current, int extendedTypeID)
     {
 
-      current = current & m_mask;
+      current = makeNodeIdentity(current);
 
-      while (DTM.NULL != (current = m_parent[current]))
+      while (DTM.NULL != (current = m_parent.elementAt(current)))
       {
-        if (m_exptype[current] == extendedTypeID)
-          return current | m_dtmIdent;
+        if (m_exptype.elementAt(current) == extendedTypeID)
+          return makeNodeHandle(current);
       }
 
       return NULL;
@@ -272,7 +272,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context, int extendedTypeID)
     {
-      return (m_exptype[context & m_mask] == extendedTypeID)
+      return (m_exptype.elementAt(makeNodeIdentity(context)) == extendedTypeID)
              ? context : next(context, context, extendedTypeID);
     }
   }
@@ -315,7 +315,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       do
       {
-        if (m_exptype[current] == extendedTypeID)
+        if (m_exptype.elementAt(current) == extendedTypeID)
           return current;
       }
       while (DTM.NULL != (current = getNextAttribute(current)));
@@ -355,7 +355,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
         if (NOTPROCESSED != next)
         {
-          int parent = m_parent[next];
+          int parent = m_parent.elementAt(next);
           
           // Is it a child?
           if(parent == axisRoot)
@@ -373,7 +373,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
           // root, in which case we continue to look.
           do
           {
-            parent = m_parent[parent];
+            parent = m_parent.elementAt(parent);
             if(parent < axisRoot)
               return NULL;
           }
@@ -386,7 +386,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
         nextNode();
         
-        if(!(m_nextsib[axisRoot] == NOTPROCESSED))
+        if(!(m_nextsib.elementAt(axisRoot) == NOTPROCESSED))
           break;
       }
 
@@ -407,7 +407,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context)
     {
-      return _firstch(context & m_mask) | m_dtmIdent;
+      return makeNodeHandle(_firstch(makeNodeIdentity(context)));
     }
   
     /**
@@ -428,21 +428,21 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     {
       if(true)
       {
-        int identity = context & m_mask;
+        int identity = makeNodeIdentity(context);
         
         int firstMatch = getNextIndexed(identity, _firstch(identity),
                                  extendedTypeID);
        
-        return firstMatch | m_dtmIdent;
+        return makeNodeHandle(firstMatch);
       }
       else
       {
-        for (int current = _firstch(context & m_mask); 
+        for (int current = _firstch(makeNodeIdentity(context)); 
              DTM.NULL != current; 
              current = _nextsib(current)) 
         {
-          if (m_exptype[current] == extendedTypeID)
-              return current | m_dtmIdent;
+          if (m_exptype.elementAt(current) == extendedTypeID)
+              return makeNodeHandle(current);
         }
         return NULL;
       }
@@ -459,7 +459,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current)
     {
       
-      return _nextsib(current & m_mask) | m_dtmIdent;
+      return makeNodeHandle(_nextsib(makeNodeIdentity(current)));
     }
 
     /**
@@ -475,12 +475,12 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current, int extendedTypeID)
     {
 
-      for (current = _nextsib(current & m_mask); 
+      for (current = _nextsib(makeNodeIdentity(current)); 
            DTM.NULL != current; 
            current = _nextsib(current)) 
       {
-        if (m_exptype[current] == extendedTypeID)
-            return current | m_dtmIdent;
+        if (m_exptype.elementAt(current) == extendedTypeID)
+            return makeNodeHandle(current);
       }
       
       return NULL;
@@ -603,7 +603,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     protected boolean axisHasBeenProcessed(int axisRoot)
     {
-      return !(m_nextsib[axisRoot] == NOTPROCESSED);
+      return !(m_nextsib.elementAt(axisRoot) == NOTPROCESSED);
     }
     
     /**
@@ -616,7 +616,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     protected int getSubtreeRoot(int handle)
     {
-      return handle & m_mask;
+      return makeNodeIdentity(handle);
     }
 
     /**
@@ -653,7 +653,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
       {
         if(identity == axisRoot)
           return false;
-        identity = m_parent[identity];
+        identity = m_parent.elementAt(identity);
       }
         while(identity >= axisRoot);
         
@@ -682,7 +682,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
         int identity = getSubtreeRoot(context);
         int firstPotential = getFirstPotential(identity);
 
-        return getNextIndexed(identity, firstPotential, extendedTypeID)|m_dtmIdent;
+        return makeNodeHandle(getNextIndexed(identity, firstPotential, extendedTypeID));
       }
 
       return next(context, context, extendedTypeID);
@@ -701,7 +701,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       int subtreeRootIdent = getSubtreeRoot(context);
 
-      for (current = (current & m_mask) + 1; ; current++)
+      for (current = makeNodeIdentity(current) + 1; ; current++)
       {
         int type = _type(current);  // may call nextNode()
 
@@ -711,7 +711,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
         if (ATTRIBUTE_NODE == type || NAMESPACE_NODE == type)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
 
@@ -730,11 +730,11 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       int subtreeRootIdent = getSubtreeRoot(context);
 
-      current = (current & m_mask) + 1;
+      current = makeNodeIdentity(current) + 1;
 
       if (isIndexed(extendedTypeID))
       {
-        return getNextIndexed(subtreeRootIdent, current, extendedTypeID)|m_dtmIdent;
+        return makeNodeHandle(getNextIndexed(subtreeRootIdent, current, extendedTypeID));
       }
 
       for (; ; current++)
@@ -747,7 +747,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
         if (exptype != extendedTypeID)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
   }
@@ -803,9 +803,9 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
 
-      for (current = (current & m_mask) + 1; ; current++)
+      for (current = makeNodeIdentity(current) + 1; ; current++)
       {
 
         // Trickological code: _exptype() has the side-effect of
@@ -818,7 +818,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
         if (!isDescendant(subtreeRootIdent, current))
           return NULL;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
   }
@@ -840,7 +840,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     {
 
       int first;
-      int type = _type(context);
+      int type = _type(makeNodeIdentity(context));
 
       if ((DTM.ATTRIBUTE_NODE == type) || (DTM.NAMESPACE_NODE == type))
       {
@@ -876,7 +876,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     {
 
       int first;
-      int type = _type(context);
+      int type = _type(makeNodeIdentity(context));
 
       if ((DTM.ATTRIBUTE_NODE == type) || (DTM.NAMESPACE_NODE == type))
       {
@@ -922,19 +922,22 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current)
     {
 
+      current = makeNodeIdentity(current);
+
       while (true)
       {
         current++;
 
         int type = _type(current);  // may call nextNode()
 
-        if (NULL == type)
+        // A following document node starts another tree in this DTM.
+        if (NULL == type || DOCUMENT_NODE == type)
           return NULL;
 
         if (ATTRIBUTE_NODE == type || NAMESPACE_NODE == type)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
 
@@ -951,19 +954,22 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current, int extendedTypeID)
     {
 
+      current = makeNodeIdentity(current);
+
       while (true)
       {
         current++;
 
         int etype = _exptype(current);  // may call nextNode()
 
-        if (NULL == etype)
+        if (NULL == etype
+                || DOCUMENT_NODE == ExpandedNameTable.getType(etype))
           return NULL;
 
         if (etype != extendedTypeID)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
   }
@@ -1002,7 +1008,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       while (DTM.NULL != (current = getNextSibling(current)))
       {
-        if (m_exptype[current & m_mask] == extendedTypeID)
+        if (m_exptype.elementAt(makeNodeIdentity(current)) == extendedTypeID)
           return current;
       }
 
@@ -1051,7 +1057,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       do
       {
-        if (m_exptype[current] == extendedTypeID)
+        if (m_exptype.elementAt(current) == extendedTypeID)
           return current;
       }
       while (DTM.NULL
@@ -1102,7 +1108,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       do
       {
-        if (m_exptype[current] == extendedTypeID)
+        if (m_exptype.elementAt(current) == extendedTypeID)
           return current;
       }
       while (DTM.NULL
@@ -1131,7 +1137,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context)
     {
-      return m_parent[context & m_mask] | m_dtmIdent;
+      return makeNodeHandle(m_parent.elementAt(makeNodeIdentity(context)));
     }
   
     /**
@@ -1150,12 +1156,12 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int current, int extendedTypeID)
     {
-      current = current & m_mask;
+      current = makeNodeIdentity(current);
 
-      while (NULL != (current = m_parent[current]))
+      while (NULL != (current = m_parent.elementAt(current)))
       {
-        if (m_exptype[current] == extendedTypeID)
-          return (current | m_dtmIdent);
+        if (m_exptype.elementAt(current) == extendedTypeID)
+          return makeNodeHandle(current);
       }
 
       return NULL;
@@ -1213,8 +1219,8 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     protected boolean isAncestor(int contextIdent, int currentIdent)
     {
 
-      for (contextIdent = m_parent[contextIdent]; DTM.NULL != contextIdent;
-              contextIdent = m_parent[contextIdent])
+      for (contextIdent = m_parent.elementAt(contextIdent); DTM.NULL != contextIdent;
+              contextIdent = m_parent.elementAt(contextIdent))
       {
         if (contextIdent == currentIdent)
           return true;
@@ -1234,18 +1240,23 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
 
-      for (current = (current & m_mask) - 1; current >= 0; current--)
+      for (current = makeNodeIdentity(current) - 1; current >= 0; current--)
       {
-        int exptype = m_exptype[current];
+        int exptype = m_exptype.elementAt(current);
         short type = ExpandedNameTable.getType(exptype);
 
+        // The document node ends this tree; anything before it belongs
+        // to another tree in this DTM.
+        if (DOCUMENT_NODE == type)
+          return NULL;
+
         if (ATTRIBUTE_NODE == type || NAMESPACE_NODE == type
                 || isAncestor(subtreeRootIdent, current))
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
 
       return NULL;
@@ -1264,18 +1275,21 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current, int extendedTypeID)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
 
-      for (current = (current & m_mask) - 1; current >= 0; current--)
+      for (current = makeNodeIdentity(current) - 1; current >= 0; current--)
       {
-        int exptype = m_exptype[current];
+        int exptype = m_exptype.elementAt(current);
         short type = ExpandedNameTable.getType(exptype);
 
+        if (DOCUMENT_NODE == type)
+          return NULL;
+
         if (exptype != extendedTypeID
                 || isAncestor(subtreeRootIdent, current))
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
 
       return NULL;
@@ -1300,17 +1314,23 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
+
+      current = makeNodeIdentity(current);
 
-      for (current = (current & m_mask) - 1; current >= 0; current--)
+      // Nothing precedes the document node of this tree.
+      if (DOCUMENT_NODE == _type(current))
+        return NULL;
+
+      for (current = current - 1; current >= 0; current--)
       {
-        int exptype = m_exptype[current];
+        int exptype = m_exptype.elementAt(current);
         short type = ExpandedNameTable.getType(exptype);
 
         if (ATTRIBUTE_NODE == type || NAMESPACE_NODE == type)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
 
       return NULL;
@@ -1329,17 +1349,23 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current, int extendedTypeID)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
+
+      current = makeNodeIdentity(current);
 
-      for (current = (current & m_mask) - 1; current >= 0; current--)
+      // Nothing precedes the document node of this tree.
+      if (DOCUMENT_NODE == _type(current))
+        return NULL;
+
+      for (current = current - 1; current >= 0; current--)
       {
-        int exptype = m_exptype[current];
+        int exptype = m_exptype.elementAt(current);
         short type = ExpandedNameTable.getType(exptype);
 
         if (exptype != extendedTypeID)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
 
       return NULL;
@@ -1380,7 +1406,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
 
       while (DTM.NULL != (current = getPreviousSibling(current)))
       {
-        if (m_exptype[current & m_mask] == extendedTypeID)
+        if (m_exptype.elementAt(makeNodeIdentity(current)) == extendedTypeID)
           return current;
       }
 
@@ -1422,7 +1448,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context, int extendedTypeID)
     {
-      return (m_exptype[context & m_mask] == extendedTypeID) ? context : NULL;
+      return (m_exptype.elementAt(makeNodeIdentity(context)) == extendedTypeID) ? context : NULL;
     }
 
     /**
@@ -1469,7 +1495,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context)
     {
-      return getDocument();
+      return getDocumentRoot(context);
     }
 
     /**
@@ -1482,8 +1508,9 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context, int extendedTypeID)
     {
-      return (m_exptype[getDocument() & m_mask] == extendedTypeID)
-             ? context : next(context, context, extendedTypeID);
+      int root = getDocumentRoot(context);
+      return (m_exptype.elementAt(makeNodeIdentity(root)) == extendedTypeID)
+             ? root : next(root, root, extendedTypeID);
     }
 
     /**
@@ -1497,16 +1524,17 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
 
-      for (current = (current & m_mask) + 1; ; current++)
+      for (current = makeNodeIdentity(current) + 1; ; current++)
       {
         int type = _type(current);  // may call nextNode()
 
-        if (type == NULL)
+        // A following document node starts another tree in this DTM.
+        if (type == NULL || type == DOCUMENT_NODE)
           return NULL;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
 
@@ -1523,19 +1551,20 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
     public int next(int context, int current, int extendedTypeID)
     {
 
-      int subtreeRootIdent = context & m_mask;
+      int subtreeRootIdent = makeNodeIdentity(context);
 
-      for (current = (current & m_mask) + 1; ; current++)
+      for (current = makeNodeIdentity(current) + 1; ; current++)
       {
         int exptype = _exptype(current);  // may call nextNode()
 
-        if (exptype == NULL)
+        if (exptype == NULL
+                || ExpandedNameTable.getType(exptype) == DOCUMENT_NODE)
           return NULL;
 
         if (exptype != extendedTypeID)
           continue;
 
-        return (current | m_dtmIdent);  // make handle.
+        return makeNodeHandle(current);  // make handle.
       }
     }
   }
@@ -1602,7 +1631,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     protected int getSubtreeRoot(int handle)
     {
-      return getDocument() & m_mask;
+      return makeNodeIdentity(getDocumentRoot(handle));
     }
 
     /**
@@ -1614,7 +1643,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context)
     {
-      return getDocument();
+      return getDocumentRoot(context);
     }
   }
   
@@ -1635,7 +1664,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     protected int getFirstPotential(int identity)
     {
-      return _firstch(0);
+      return _firstch(identity);
     }
 
     /**
@@ -1645,7 +1674,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     protected int getSubtreeRoot(int handle)
     {
-      return 0;
+      return makeNodeIdentity(getDocumentRoot(handle));
     }
 
     /**
@@ -1657,7 +1686,7 @@ public abstract class DTMDefaultBaseTraversers extends DTMDefaultBase
      */
     public int first(int context)
     {
-      return _firstch(0) | m_dtmIdent;
+      return makeNodeHandle(_firstch(makeNodeIdentity(getDocumentRoot(context))));
     }
   }
 
@@ -1431,6 +1431,17 @@ implements DTM, org.xml.sax.ContentHandler, org.xml.sax.ext.LexicalHandler
                 return m_docHandle;
         }
 
+        /**
+                * Given a node handle, find the document node at the root of its
+                * tree.  This DTM holds a single tree, so that is the document.
+                *
+                * @param nodeHandle the id of the node.
+                * @return int Node handle of document, which should always be valid.
+                */
+        public int getDocumentRoot(int nodeHandle) {
+                return m_docHandle;
+        }
+
         /**
          * Given a node handle, find the owning document node.  This has the exact
          * same semantics as the DOM Document method of the same name, in that if
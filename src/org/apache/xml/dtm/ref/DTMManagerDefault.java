@@ -71,8 +71,11 @@ import javax.xml.transform.SourceLocator;
 // Apache XML Utilities
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.SystemIDResolver;
+import org.apache.xml.utils.XMLReaderManager;
+import org.apache.xml.utils.SuballocatedIntVector;
 import org.apache.xml.dtm.ref.dom2dtm.DOM2DTM;
 import org.apache.xml.dtm.ref.sax2dtm.SAX2DTM;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2RTFDTM;
 
 // W3C DOM
 import org.w3c.dom.Document;
@@ -100,22 +103,89 @@ public class DTMManagerDefault extends DTMManager
 {
 
   /** 
-   * Vector of DTMs that this manager manages. 
+   * Vector of DTMs that this manager manages, indexed by DTM ID.  A DTM
+   * that spans several blocks of nodes appears once for each of its IDs.
+   * The table grows on demand up to DTMManager.IDENT_MAX_DTMS entries.
    */
-  protected DTM m_dtms[] = new DTM[4095];
+  protected DTM m_dtms[] = new DTM[256];
+
+  /**
+   * For each DTM ID, the node index of the first node in the block that
+   * the ID addresses.  This is 0 for the first (or only) ID of a DTM.
+   * Indexed like m_dtms.
+   */
+  int m_dtm_offsets[] = new int[256];
+
+  /**
+   * The number of DTMs this manager has built, for the profiler.
+   */
+  private int m_dtmCount = 0;
     
+  /**
+   * Get the number of DTMs that have been built by this manager.
+   * DTMs that have since been released are still counted.
+   *
+   * @return The number of DTMs built.
+   */
+  public int getDTMCount()
+  {
+    return m_dtmCount;
+  }
+
   /**
    * Add a DTM to the DTM table.
    * 
    * @param dtm Should be a valid reference to a DTM.
+   * @param id The DTM ID to register it under.
    */
   public void addDTM(DTM dtm, int id)
   {
+    addDTM(dtm, id, 0);
+  }
+
+  /**
+   * Add a DTM to the DTM table, for the block of nodes that starts at
+   * the given node index.
+   * 
+   * @param dtm Should be a valid reference to a DTM.
+   * @param id The DTM ID to register it under.
+   * @param offset The node index addressed by node 0 of this DTM ID.
+   */
+  public void addDTM(DTM dtm, int id, int offset)
+  {
+
+    if (id >= IDENT_MAX_DTMS)
+      throw new DTMException("No more DTM IDs are available!");
+
+    int oldlen = m_dtms.length;
+
+    if (oldlen <= id)
+    {
+      int newlen = oldlen;
+
+      while (newlen <= id)
+        newlen += newlen;
+
+      if (newlen > IDENT_MAX_DTMS)
+        newlen = IDENT_MAX_DTMS;
+
+      DTM new_m_dtms[] = new DTM[newlen];
+      System.arraycopy(m_dtms, 0, new_m_dtms, 0, oldlen);
+      m_dtms = new_m_dtms;
+
+      int new_m_dtm_offsets[] = new int[newlen];
+      System.arraycopy(m_dtm_offsets, 0, new_m_dtm_offsets, 0, oldlen);
+      m_dtm_offsets = new_m_dtm_offsets;
+    }
+
     m_dtms[id] = dtm;
+    m_dtm_offsets[id] = offset;
   }
   
   /**
-   * Get the first free DTM ID available.
+   * Get the first free DTM ID available.  If the table is full but has
+   * not reached DTMManager.IDENT_MAX_DTMS entries, the next ID past the
+   * end of the table is returned and addDTM will grow the table.
    */
   public int getFirstFreeDTMID()
   {
@@ -127,6 +197,8 @@ public class DTMManagerDefault extends DTMManager
         return i;
       }
     }
+    if (n < IDENT_MAX_DTMS)
+      return n;
     throw new DTMException("No more DTM IDs are available!");
   }
   
@@ -178,7 +250,7 @@ public class DTMManagerDefault extends DTMManager
       System.out.println("Starting source: "+source.getSystemId());
     XMLStringFactory xstringFactory = m_xsf;
     int dtmPos = getFirstFreeDTMID();
-    int documentID = dtmPos << 20;
+    int documentID = dtmPos << IDENT_DTM_NODE_BITS;
 
     if ((null != source) && source instanceof DOMSource)
     {
@@ -186,6 +258,7 @@ public class DTMManagerDefault extends DTMManager
                                 whiteSpaceFilter, xstringFactory, doIndexing);
 
       addDTM(dtm, dtmPos);
+      m_dtmCount++;
 
 //      if (DUMPTREE)
 //      {
@@ -205,6 +278,7 @@ public class DTMManagerDefault extends DTMManager
       {
         XMLReader reader;
         InputSource xmlSource;
+        boolean isUserReader = false;
 
         if (null == source)
         {
@@ -213,6 +287,8 @@ public class DTMManagerDefault extends DTMManager
         }
         else
         {
+          isUserReader = (source instanceof SAXSource)
+                         && (null != ((SAXSource) source).getXMLReader());
           reader = getXMLReader(source);
           xmlSource = SAXSource.sourceToInputSource(source);
 
@@ -235,13 +311,26 @@ public class DTMManagerDefault extends DTMManager
           }
         }
 
-        // Create the basic SAX2DTM.
-        SAX2DTM dtm = new SAX2DTM(this, source, documentID, whiteSpaceFilter,
-                                  xstringFactory, doIndexing);
+        SAX2DTM dtm;
+
+        if (null == source && !incremental)
+        {
+          // No source and nothing to parse: the caller is going to build
+          // result tree fragments into this DTM, so it can hold several.
+          dtm = new SAX2RTFDTM(this, source, documentID, whiteSpaceFilter,
+                               xstringFactory, doIndexing);
+        }
+        else
+        {
+          // Create the basic SAX2DTM.
+          dtm = new SAX2DTM(this, source, documentID, whiteSpaceFilter,
+                            xstringFactory, doIndexing);
+        }
 
         // Go ahead and add the DTM to the lookup table.  This needs to be 
         // done before any parsing occurs.
         addDTM(dtm, dtmPos);
+        m_dtmCount++;
 
         boolean haveXercesParser =
           (null != reader)
@@ -383,6 +472,9 @@ public class DTMManagerDefault extends DTMManager
 
             throw new org.apache.xml.utils.WrappedRuntimeException(e);
           }
+
+          if (!isUserReader)
+            releaseXMLReader(reader);
         }
 
         if (DUMPTREE)
@@ -438,7 +530,9 @@ public class DTMManagerDefault extends DTMManager
       for(int i = 0; i < max; i++)
         {
           DTM thisDTM=m_dtms[i];
-          if((null != thisDTM) && thisDTM instanceof DOM2DTM)
+          // Only look at the first ID of a DTM that spans several.
+          if((null != thisDTM) && thisDTM instanceof DOM2DTM
+             && 0 == m_dtm_offsets[i])
           {
             int handle=((DOM2DTM)thisDTM).getHandleOfNode(node);
             if(handle!=DTM.NULL) return handle;
@@ -482,32 +576,7 @@ public class DTMManagerDefault extends DTMManager
       boolean isUserReader = (reader != null);
 
       if (null == reader)
-      {
-        try
-        {
-          javax.xml.parsers.SAXParserFactory factory =
-            javax.xml.parsers.SAXParserFactory.newInstance();
-
-          factory.setNamespaceAware(true);
-
-          javax.xml.parsers.SAXParser jaxpParser = factory.newSAXParser();
-
-          reader = jaxpParser.getXMLReader();
-        }
-        catch (javax.xml.parsers.ParserConfigurationException ex)
-        {
-          throw new org.xml.sax.SAXException(ex);
-        }
-        catch (javax.xml.parsers.FactoryConfigurationError ex1)
-        {
-          throw new org.xml.sax.SAXException(ex1.toString());
-        }
-        catch (NoSuchMethodError ex2){}
-        catch (AbstractMethodError ame){}
-
-        if (null == reader)
-          reader = XMLReaderFactory.createXMLReader();
-      }
+        reader = XMLReaderManager.getInstance().getXMLReader();
 
       try
       {
@@ -546,6 +615,19 @@ public class DTMManagerDefault extends DTMManager
     }
   }
 
+  /**
+   * Hand back a reader that was returned by getXMLReader(), once the
+   * parse it was used for has finished, so that it can be reused.
+   * Readers that came with the Source must not be passed here.
+   *
+   * @param reader The reader, which must not be used by the caller
+   *               afterwards.
+   */
+  public void releaseXMLReader(XMLReader reader)
+  {
+    XMLReaderManager.getInstance().releaseXMLReader(reader);
+  }
+
   /**
    * NEEDSDOC Method getDTM
    *
@@ -557,12 +639,16 @@ public class DTMManagerDefault extends DTMManager
   public DTM getDTM(int nodeHandle)
   {
 
+    if (DTM.NULL == nodeHandle)
+      return null;
+
     // Performance critical function.
-    return m_dtms[nodeHandle >> 20];
+    return m_dtms[nodeHandle >>> IDENT_DTM_NODE_BITS];
   }
 
   /**
-   * Given a DTM, find it's ID number in the DTM list.
+   * Given a DTM, find it's ID number in the DTM list.  For a DTM that
+   * spans several IDs, this is the ID of its first block.
    *
    *
    * @param dtm The DTM reference in question.
@@ -572,15 +658,26 @@ public class DTMManagerDefault extends DTMManager
   public int getDTMIdentity(DTM dtm)
   {
 
-    // A backwards search should normally be the fastest.
-    // [But we can't do it... sorry.  -sb]
+    // Our own DTMs know their ID, which saves the scan.
+    if (dtm instanceof DTMDefaultBase)
+    {
+      DTMDefaultBase dtmdb = (DTMDefaultBase) dtm;
+
+      if (dtmdb.m_mgr == this)
+      {
+        int id = dtmdb.getDTMIDs().elementAt(0) >>> IDENT_DTM_NODE_BITS;
+
+        return (id < m_dtms.length && m_dtms[id] == dtm) ? id : -1;
+      }
+    }
+
     int n = m_dtms.length;
 
     for (int i = 0; i < n; i++) 
     {
       DTM tdtm = m_dtms[i];
 
-      if (tdtm == dtm)
+      if (tdtm == dtm && 0 == m_dtm_offsets[i])
         return i;
     }
 
@@ -604,11 +701,31 @@ public class DTMManagerDefault extends DTMManager
       ((SAX2DTM) dtm).clearCoRoutine();
     }
 
-    int i = getDTMIdentity(dtm);
+    if (dtm instanceof DTMDefaultBase)
+    {
+
+      // Free every ID the DTM claimed, not just the first one.
+      SuballocatedIntVector ids = ((DTMDefaultBase) dtm).getDTMIDs();
+
+      for (int i = ids.size() - 1; i >= 0; i--)
+      {
+        int id = ids.elementAt(i) >>> IDENT_DTM_NODE_BITS;
 
-    if (i >= 0)
+        if (id < m_dtms.length && m_dtms[id] == dtm)
+        {
+          m_dtms[id] = null;
+          m_dtm_offsets[id] = 0;
+        }
+      }
+    }
+    else
     {
-      m_dtms[i] = null;
+      int i = getDTMIdentity(dtm);
+
+      if (i >= 0)
+      {
+        m_dtms[i] = null;
+      }
     }
 
     return true;
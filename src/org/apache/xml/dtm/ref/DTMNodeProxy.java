@@ -466,7 +466,7 @@ public class DTMNodeProxy
    */
   public final Document getOwnerDocument()
   {
-    return new DTMNodeProxy(dtm, dtm.getDocument());
+    return new DTMNodeProxy(dtm, dtm.getDocumentRoot(node));
   }
 
   /**
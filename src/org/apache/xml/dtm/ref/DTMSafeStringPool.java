@@ -56,38 +56,90 @@
  */
 
 package org.apache.xml.dtm.ref;
-import org.apache.xml.utils.IntVector;
-import java.util.Vector;
 
 /** <p>Like DTMStringPool, but threadsafe. It's been proposed that DTMs
  * share their string pool(s); that raises threadsafety issues which
- * this addresses. Of course performance is inferior to that of the
- * bare-bones version.</p>
+ * this addresses.</p>
+ *
+ * <p>Only adding a string takes the lock.  Lookups of strings that are
+ * already pooled, which is by far the common case once a vocabulary has
+ * been seen, read the chains and the string array without locking.
+ * They go through the volatile copies of the pool's fields kept here,
+ * which are written under the lock after every change, and rely on
+ * DTMStringPool never changing an entry once it is linked.  A lookup
+ * that misses is retried under the lock before the string is
+ * added.</p>
  *
  * <p>Status: Passed basic test in main().</p>
  * */
 public class DTMSafeStringPool
 extends DTMStringPool
 {
+  // These are set by removeAllElements(), which the DTMStringPool
+  // constructor calls, so they must not have initializers.
+
+  /** The pool's m_intToString, as of the last change. */
+  private volatile String[] m_safeStrings;
+
+  /** The pool's m_hashTable, as of the last change. */
+  private volatile HashEntry[] m_safeTable;
+
+  /** The pool's m_count, as of the last change.  Written last. */
+  private volatile int m_safeCount;
+
   public synchronized void removeAllElements()
     {
       super.removeAllElements();
+      publish();
+    }
+
+  public synchronized void setSize(int size)
+    {
+      super.setSize(size);
+      publish();
     }
 
   /** @return string whose value is uniquely identified by this integer index.
    * @throws java.lang.ArrayIndexOutOfBoundsException
    *  if index doesn't map to a string.
    * */ 
-  public synchronized String indexToString(int i)
+  public String indexToString(int i)
     throws java.lang.ArrayIndexOutOfBoundsException
     {
-      return super.indexToString(i);
+      // Strings below the published count never change.
+      if(i>=0 && i<m_safeCount)
+        return m_safeStrings[i];
+
+      synchronized(this)
+        {
+          return super.indexToString(i);
+        }
     }
 
   /** @return integer index uniquely identifying the value of this string. */ 
-  public synchronized int stringToIndex(String s)
+  public int stringToIndex(String s)
+    {
+      if(s==null) return NULL;
+
+      int index=lookup(s,m_safeTable);
+      if(index!=NULL)
+        return index;
+
+      synchronized(this)
+        {
+          index=super.stringToIndex(s);
+          publish();
+          return index;
+        }
+    }
+
+  /** Copy the pool's fields to their volatile copies.  Called with the
+   * lock held after every change. */
+  private void publish()
     {
-      return super.stringToIndex(s);
+      m_safeStrings=m_intToString;
+      m_safeTable=m_hashTable;
+      m_safeCount=m_count;
     }
 
   /** Command-line unit test driver. This test relies on the fact that
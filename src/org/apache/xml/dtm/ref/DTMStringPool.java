@@ -56,8 +56,6 @@
  */
 
 package org.apache.xml.dtm.ref;
-import org.apache.xml.utils.IntVector;
-import java.util.Vector;
 
 /** <p>DTMStringPool is an "interning" mechanism for strings. It will
  * create a stable 1:1 mapping between a set of string values and a set of
@@ -71,14 +69,18 @@ import java.util.Vector;
  * <li>Threadsafety is not guaranteed at this level.
  * Enforce that in the application if needed.</li>
  * <li>Storage efficiency is an issue but not a huge one.
- * It is expected that string pools won't exceed about 2000 entries.</li>
+ * Pools shared by a long-running process may grow large, so the hash
+ * table is resized as the pool grows.</li>
  * </ul>
  * </p>
  *
  * <p>Implementation detail: A standard Hashtable is relatively
  * inefficient when looking up primitive int values, especially when
- * we're already maintaining an int-to-string vector.  So I'm
- * maintaining a simple hash chain within this class.</p>
+ * we're already maintaining an int-to-string array.  So I'm
+ * maintaining a simple hash chain within this class.  Chain entries
+ * are never modified once linked, and a resized table is built aside
+ * and then swapped in.  DTMSafeStringPool relies on that to look up
+ * strings without locking.</p>
  *
  * <p>NOTE: There is nothing in the code that has a real dependency upon
  * String. It would work with any object type that implements reliable
@@ -90,16 +92,22 @@ import java.util.Vector;
  * */
 public class DTMStringPool
 {
-  Vector m_intToString;
-  static final int HASHPRIME=101;
-  int[] m_hashStart=new int[HASHPRIME];
-  IntVector m_hashChain;
+  /** Initial size of the string array and the hash table, a power of two. */
+  static final int INITIAL_SIZE=64;
+
+  /** Strings by index.  Slots at or above m_count are unused. */
+  String[] m_intToString;
+
+  /** Number of strings in the pool. */
+  int m_count;
+
+  /** Hash chains, indexed by hash code masked to the table length. */
+  HashEntry[] m_hashTable;
+
   public static final int NULL=-1;
 
   public DTMStringPool()
     {
-      m_intToString=new Vector();
-      m_hashChain=new IntVector(512);
       removeAllElements();
       
       // -sb Add this to force empty strings to be index 0.
@@ -108,10 +116,9 @@ public class DTMStringPool
   
   public void removeAllElements()
     {
-      m_intToString.removeAllElements();
-      for(int i=0;i<HASHPRIME;++i)
-        m_hashStart[i]=NULL;
-      m_hashChain.removeAllElements();
+      m_intToString=new String[INITIAL_SIZE];
+      m_hashTable=new HashEntry[INITIAL_SIZE];
+      m_count=0;
     }
 
   /** @return string whose value is uniquely identified by this integer index.
@@ -122,42 +129,149 @@ public class DTMStringPool
     throws java.lang.ArrayIndexOutOfBoundsException
     {
       if(i==NULL) return null;
-      return (String) m_intToString.elementAt(i);
+      if(i>=m_count)
+        throw new ArrayIndexOutOfBoundsException(i);
+      return m_intToString[i];
     }
 
   /** @return integer index uniquely identifying the value of this string. */ 
   public int stringToIndex(String s)
     {
       if(s==null) return NULL;
-      
-      int hashslot=s.hashCode()%HASHPRIME;
-      if(hashslot<0) hashslot=-hashslot;
 
       // Is it one we already know?
-      int hashlast=m_hashStart[hashslot];
-      int hashcandidate=hashlast;
-      while(hashcandidate!=NULL)
+      int index=lookup(s);
+      if(index!=NULL)
+        return index;
+
+      // New value. Add to tables.
+      index=m_count;
+      String[] strings=m_intToString;
+      if(index>=strings.length)
         {
-          if(m_intToString.elementAt(hashcandidate).equals(s))
-            return hashcandidate;
+          String[] newStrings=new String[strings.length<<1];
+          System.arraycopy(strings,0,newStrings,0,index);
+          strings=newStrings;
+          m_intToString=strings;
+        }
+      strings[index]=s;
+      m_count=index+1;
 
-          hashlast=hashcandidate;
-          hashcandidate=m_hashChain.elementAt(hashcandidate);
+      HashEntry[] table=m_hashTable;
+      int hash=s.hashCode();
+      if(index>=(table.length>>1)+(table.length>>2))
+        {
+          // Rehash into a table twice the size, then swap it in.
+          HashEntry[] newTable=new HashEntry[table.length<<1];
+          int newMask=newTable.length-1;
+          for(int i=0;i<table.length;++i)
+            {
+              for(HashEntry e=table[i];e!=null;e=e.m_next)
+                {
+                  int slot=e.m_hash&newMask;
+                  newTable[slot]=new HashEntry(e.m_string,e.m_hash,
+                                               e.m_index,newTable[slot]);
+                }
+            }
+          int slot=hash&newMask;
+          newTable[slot]=new HashEntry(s,hash,index,newTable[slot]);
+          m_hashTable=newTable;
+        }
+      else
+        {
+          int slot=hash&(table.length-1);
+          table[slot]=new HashEntry(s,hash,index,table[slot]);
         }
-      
-      // New value. Add to tables.
-      int newIndex=m_intToString.size();
-      m_intToString.addElement(s);
 
-      m_hashChain.addElement(NULL);	// Initialize to no-following-same-hash
-      if(hashlast==NULL)  // First for this hash
-        m_hashStart[hashslot]=newIndex;
-      else // Link from previous with same hash
-        m_hashChain.setElementAt(newIndex,hashlast);
+      return index;
+    }
 
-      return newIndex;
+  /** @return the number of strings in the pool, which is also the index
+   * the next new string will be given.
+   * */
+  public int size()
+    {
+      return m_count;
     }
 
+  /** Discard every string whose index is at or above the given size, so
+   * the pool returns to the state it had when it held that many strings.
+   * Used when a DTM is rewound to an earlier mark.  This is not safe
+   * against concurrent lookups.
+   * @param size number of strings to keep.
+   * */
+  public void setSize(int size)
+    {
+      int count=m_count;
+      if(size<0 || size>=count)
+        return;
+
+      String[] strings=m_intToString;
+      HashEntry[] table=m_hashTable;
+      int mask=table.length-1;
+      for(int i=size;i<count;++i)
+        {
+          int slot=strings[i].hashCode()&mask;
+          table[slot]=strip(table[slot],size);
+          strings[i]=null;
+        }
+      m_count=size;
+    }
+
+  /** Rebuild a hash chain without the entries at or above the given
+   * index, sharing the untouched tail.
+   * */
+  private static HashEntry strip(HashEntry e,int size)
+    {
+      if(e==null)
+        return null;
+      HashEntry next=strip(e.m_next,size);
+      if(e.m_index>=size)
+        return next;
+      return (next==e.m_next) ? e : new HashEntry(e.m_string,e.m_hash,
+                                                  e.m_index,next);
+    }
+
+  /** Find the index of a string that is already in the pool.  This
+   * never modifies the pool.
+   * @return the index of the string, or NULL if it isn't in the pool.
+   * */
+  protected final int lookup(String s)
+    {
+      return lookup(s,m_hashTable);
+    }
+
+  /** Find the index of a string in the given hash table.
+   * @return the index of the string, or NULL if it isn't in the table.
+   * */
+  static final int lookup(String s,HashEntry[] table)
+    {
+      int hash=s.hashCode();
+      for(HashEntry e=table[hash&(table.length-1)];e!=null;e=e.m_next)
+        {
+          if(e.m_hash==hash && e.m_string.equals(s))
+            return e.m_index;
+        }
+      return NULL;
+    }
+
+  /** One link of a hash chain.  Entries are immutable once created. */
+  static final class HashEntry
+  {
+    final String m_string;
+    final int m_hash;
+    final int m_index;
+    final HashEntry m_next;
+
+    HashEntry(String string,int hash,int index,HashEntry next)
+      {
+        m_string=string;
+        m_hash=hash;
+        m_index=index;
+        m_next=next;
+      }
+  }
+
   /** Command-line unit test driver. This test relies on the fact that
    * this version of the pool assigns indices consecutively, starting
    * from zero, as new unique strings are encountered.
@@ -57,6 +57,7 @@
 package org.apache.xml.dtm.ref;
 
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMException;
 
 /**
  * This is a default implementation of a table that manages mappings from
@@ -81,12 +82,31 @@ public class ExpandedNameTable
   /** Probably a reference to static pool.   */
   private DTMStringPool m_namespaceNames;
   
-  public static int BITS_PER_LOCALNAME = 16;
-  public static int BITS_PER_NAMESPACE = 10;
+  /**
+   * Number of bits of an expanded type ID that hold the namespace and
+   * local name IDs.  The node type takes the four bits above these, and
+   * the sign bit is left clear so that IDs are never negative.
+   */
+  public static final int BITS_PER_NAME = 27;
+
+  /**
+   * Number of those bits that hold the namespace ID.  The default of 11
+   * allows 2048 namespace IDs and 65536 local name IDs per table: one
+   * namespace bit more than the old 6/10/16 layout, and the same local
+   * name limit.  The narrower node type frees only that one bit, since
+   * the sign bit is now kept clear.  A process that sees many namespaces,
+   * or many local names, can move the split with the
+   * <code>org.apache.xml.dtm.ref.ExpandedNameTable.namespaceBits</code>
+   * system property, which must be between 4 and 23.  Every bit given to
+   * one side halves the limit of the other.
+   */
+  public static int BITS_PER_NAMESPACE = getConfiguredNamespaceBits();
+  public static int BITS_PER_LOCALNAME = BITS_PER_NAME - BITS_PER_NAMESPACE;
 
-  public static int MASK_LOCALNAME = 0x0000FFFF;
-  public static int MASK_NAMESPACE = 0x03FF0000;
-  public static int MASK_NODETYPE = 0xFC000000;
+  public static int MASK_LOCALNAME = (1 << BITS_PER_LOCALNAME) - 1;
+  public static int MASK_NAMESPACE = ((1 << BITS_PER_NAMESPACE) - 1) 
+                                     << BITS_PER_LOCALNAME;
+  public static int MASK_NODETYPE = 0xF << BITS_PER_NAME;
   
   public static final int ROTAMOUNT_TYPE = (BITS_PER_NAMESPACE+BITS_PER_LOCALNAME);
   
@@ -105,6 +125,35 @@ public class ExpandedNameTable
   public static final int NOTATION = ((int)DTM.NOTATION_NODE) << ROTAMOUNT_TYPE;
   public static final int NAMESPACE = ((int)DTM.NAMESPACE_NODE) << ROTAMOUNT_TYPE;
 
+  /**
+   * Read the namespace/local name split from the system properties.
+   *
+   * @return The number of bits for the namespace ID.
+   */
+  private static int getConfiguredNamespaceBits()
+  {
+
+    int bits = 11;
+
+    try
+    {
+      String prop = System.getProperty(
+        "org.apache.xml.dtm.ref.ExpandedNameTable.namespaceBits");
+
+      if (null != prop)
+      {
+        int configured = Integer.parseInt(prop.trim());
+
+        if (configured >= 4 && configured <= BITS_PER_NAME - 4)
+          bits = configured;
+      }
+    }
+    catch (SecurityException se){}
+    catch (NumberFormatException nfe){}
+
+    return bits;
+  }
+
   /**
    * Create an expanded name table that uses private string pool lookup.
    */
@@ -142,6 +191,14 @@ public class ExpandedNameTable
   {
     int nsID = (null != namespace) ? m_namespaceNames.stringToIndex(namespace) : 0;
     int lnID = m_locNamesPool.stringToIndex(localName);
+
+    if (nsID >= (1 << BITS_PER_NAMESPACE))
+      throw new DTMException("Namespace limit of " + (1 << BITS_PER_NAMESPACE)
+                             + " exceeded; raise the namespaceBits setting");
+
+    if (lnID > MASK_LOCALNAME)
+      throw new DTMException("Local name limit of " + (MASK_LOCALNAME + 1)
+                             + " exceeded; lower the namespaceBits setting");
     
     int expandedTypeID = (type << (BITS_PER_NAMESPACE+BITS_PER_LOCALNAME)) 
                        | (nsID << BITS_PER_LOCALNAME) | lnID;
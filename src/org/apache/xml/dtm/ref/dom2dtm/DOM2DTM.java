@@ -123,6 +123,14 @@ public class DOM2DTM extends DTMDefaultBaseIterators
    * that sequence. */
   protected Vector m_nodes = new Vector();
 
+  /** Identity index from DOM Node to node identity, filled by addNode().
+   * It is an open-addressed hash table keyed on
+   * System.identityHashCode(). Each slot holds identity+1, or 0 if it
+   * is empty; the Node itself is read back from m_nodes, so the index
+   * costs ints rather than entries. The length is a power of two, kept
+   * at least twice the number of nodes. */
+  private int[] m_nodeIndex = new int[64];
+
   /**
    * Construct a DOM2DTM object from a DOM node.
    *
@@ -148,9 +156,9 @@ public class DOM2DTM extends DTMDefaultBaseIterators
         // Initialize DTM navigation
     m_last_parent=m_last_kid=NULL;
     m_last_kid=addNode(m_root, 0, m_last_parent,m_last_kid, NULL);
-        m_level[0]=0;           // Unnecessary, included for paranoia
-    m_nextsib[0]=NOTPROCESSED;  // Unnecessary, included for paranoia
-    m_firstch[0]=NOTPROCESSED;  // Unnecessary, included for paranoia
+        m_level.setElementAt((byte)0, 0);         // Unnecessary, included for paranoia
+    m_nextsib.setElementAt(NOTPROCESSED, 0);  // Unnecessary, included for paranoia
+    m_firstch.setElementAt(NOTPROCESSED, 0);  // Unnecessary, included for paranoia
         // Initialize DTM-completed status 
     m_nodesAreProcessed = false;
   }
@@ -182,11 +190,12 @@ public class DOM2DTM extends DTMDefaultBaseIterators
         type=forceNodeType;
     
     m_nodes.addElement(node);
+    indexDOMNode(node, nodeIndex);
     
     // Do casts here so that if we change the sizes, the changes are localized.
     // %REVIEW% Remember to change this cast if we change
     // m_level's type, or we may truncate values without warning!
-    m_level[nodeIndex] = (byte)level;
+    m_level.setElementAt((byte)level, nodeIndex);
 
     // %REVIEW% The Namespace Spec currently says that Namespaces are
     // processed in a non-namespace-aware manner, by matching the
@@ -216,18 +225,18 @@ public class DOM2DTM extends DTMDefaultBaseIterators
       }
     }
     
-    m_firstch[nodeIndex] = NOTPROCESSED;
-    m_nextsib[nodeIndex] = NOTPROCESSED;
-    m_prevsib[nodeIndex] = previousSibling;
-    m_parent[nodeIndex] = parentIndex;
+    m_firstch.setElementAt(NOTPROCESSED, nodeIndex);
+    m_nextsib.setElementAt(NOTPROCESSED, nodeIndex);
+    m_prevsib.setElementAt(previousSibling, nodeIndex);
+    m_parent.setElementAt(parentIndex, nodeIndex);
     
     if(DTM.NULL != parentIndex && 
        type != DTM.ATTRIBUTE_NODE && 
        type != DTM.NAMESPACE_NODE)
     {
       // If the DTM parent had no children, this becomes its first child.
-      if(NOTPROCESSED == m_firstch[parentIndex])
-        m_firstch[parentIndex] = nodeIndex;
+      if(NOTPROCESSED == m_firstch.elementAt(parentIndex))
+        m_firstch.setElementAt(nodeIndex, parentIndex);
     }
     
     String nsURI = node.getNamespaceURI();
@@ -264,16 +273,101 @@ public class DOM2DTM extends DTMDefaultBaseIterators
        ? exnt.getExpandedTypeID(nsURI, localName, type) :
          exnt.getExpandedTypeID(type);
 
-    m_exptype[nodeIndex]  = expandedNameID;
+    m_exptype.setElementAt(expandedNameID, nodeIndex);
     
     indexNode(expandedNameID, nodeIndex);
 
     if (DTM.NULL != previousSibling)
-      m_nextsib[previousSibling] = nodeIndex;
+      m_nextsib.setElementAt(nodeIndex, previousSibling);
 
     return nodeIndex;
   }
   
+  /**
+   * Record a node in the identity index.
+   *
+   * @param node The DOM node just added to m_nodes.
+   * @param identity Its node identity.
+   */
+  private void indexDOMNode(Node node, int identity)
+  {
+    int[] table = m_nodeIndex;
+
+    if ((identity + 1) * 2 > table.length)
+    {
+      // Rehash into a table twice the size. Keys are read back
+      // from m_nodes, which already holds the new node.
+      int[] grown = new int[table.length << 1];
+      int mask = grown.length - 1;
+
+      for (int i = 0; i < table.length; i++)
+      {
+        int entry = table[i];
+
+        if (0 != entry)
+        {
+          int slot = hashDOMNode(m_nodes.elementAt(entry - 1)) & mask;
+
+          while (0 != grown[slot])
+            slot = (slot + 1) & mask;
+
+          grown[slot] = entry;
+        }
+      }
+
+      m_nodeIndex = table = grown;
+    }
+
+    int mask = table.length - 1;
+    int slot = hashDOMNode(node) & mask;
+
+    while (0 != table[slot])
+      slot = (slot + 1) & mask;
+
+    table[slot] = identity + 1;
+  }
+
+  /**
+   * Look a node up in the identity index.
+   *
+   * @param node A DOM node, not null.
+   *
+   * @return The node identity, or DTM.NULL if the node has not been
+   * added to this DTM.
+   */
+  private int lookupDOMNode(Node node)
+  {
+    int[] table = m_nodeIndex;
+    int mask = table.length - 1;
+    int slot = hashDOMNode(node) & mask;
+    int entry;
+
+    while (0 != (entry = table[slot]))
+    {
+      if (m_nodes.elementAt(entry - 1) == node)
+        return entry - 1;
+
+      slot = (slot + 1) & mask;
+    }
+
+    return DTM.NULL;
+  }
+
+  /**
+   * Hash a node by object identity, spreading the high bits into the
+   * low ones that select a slot.
+   *
+   * @param node The object to hash.
+   *
+   * @return The spread identity hash code.
+   */
+  private static int hashDOMNode(Object node)
+  {
+    int h = System.identityHashCode(node);
+
+    return h ^ (h >>> 16);
+  }
+
   /**
    * Get the number of nodes that have been added.
    */
@@ -329,7 +423,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
                 if(null != m_wsfilter)
                 {
                   short wsv =
-                    m_wsfilter.getShouldStripSpace(m_last_parent|m_dtmIdent,this);
+                    m_wsfilter.getShouldStripSpace(makeNodeHandle(m_last_parent),this);
                   boolean shouldStrip = (DTMWSFilter.INHERIT == wsv) 
                     ? getShouldStripWhitespace() 
                     : (DTMWSFilter.STRIP == wsv);
@@ -345,8 +439,8 @@ public class DOM2DTM extends DTMDefaultBaseIterators
               {
                 // Last node posted at this level had no more children
                 // If it has _no_ children, we need to record that.
-                if(m_firstch[m_last_kid]==NOTPROCESSED)
-                  m_firstch[m_last_kid]=NULL;
+                if(m_firstch.elementAt(m_last_kid)==NOTPROCESSED)
+                  m_firstch.setElementAt(NULL, m_last_kid);
               }
                         
             while(m_last_parent != NULL)
@@ -386,10 +480,10 @@ public class DOM2DTM extends DTMDefaultBaseIterators
                     popShouldStripWhitespace();
                     // Fix and pop DTM
                     if(m_last_kid==NULL)
-                      m_firstch[m_last_parent]=NULL; // Popping from an element
+                      m_firstch.setElementAt(NULL, m_last_parent); // Popping from an element
                     else
-                      m_nextsib[m_last_kid]=NULL; // Popping from anything else
-                    m_last_parent=m_parent[m_last_kid=m_last_parent];
+                      m_nextsib.setElementAt(NULL, m_last_kid); // Popping from anything else
+                    m_last_parent=m_parent.elementAt(m_last_kid=m_last_parent);
                   }
               }
             if(m_last_parent==NULL)
@@ -412,7 +506,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
     // Did we run out of the tree?
     if(next==null)
       {
-        m_nextsib[0] = NULL;
+        m_nextsib.setElementAt(NULL, 0);
         m_nodesAreProcessed = true;
         m_pos=null;
                 
@@ -420,7 +514,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
           {
             System.out.println("***** DOM2DTM Crosscheck:");
             for(int i=0;i<m_nodes.size();++i)
-              System.out.println(i+":\t"+m_firstch[i]+"\t"+m_nextsib[i]);
+              System.out.println(i+":\t"+m_firstch.elementAt(i)+"\t"+m_nextsib.elementAt(i));
           }
                 
         return false;
@@ -486,7 +580,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
         // Inserting next. NOTE that we force the node type; for
         // coalesced Text, this records CDATASections adjacent to
         // ordinary Text as Text.
-        int level=m_level[m_last_parent]+1;
+        int level=m_level.elementAt(m_last_parent)+1;
         int nextindex=addNode(next,level,m_last_parent,m_last_kid,
                               nexttype);
         m_last_kid=nextindex;
@@ -508,11 +602,11 @@ public class DOM2DTM extends DTMDefaultBaseIterators
                     // Attr to Namespace if necessary.
                     attrIndex=addNode(attrs.item(i),attrlevel,
                                       nextindex,attrIndex,NULL);
-                    m_firstch[attrIndex]=DTM.NULL;
+                    m_firstch.setElementAt(DTM.NULL, attrIndex);
                   }
                 // Terminate list of attrs, and make sure they aren't
                 // considered children of the element
-                m_nextsib[attrIndex]=DTM.NULL;
+                m_nextsib.setElementAt(DTM.NULL, attrIndex);
               } // if attrs exist
           } //if(ELEMENT_NODE)
       } // (if !suppressNode)
@@ -541,7 +635,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
   public Node getNode(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
 
     return (Node) m_nodes.elementAt(identity);
   }
@@ -580,14 +674,8 @@ public class DOM2DTM extends DTMDefaultBaseIterators
   }
 
   /**
-   * Get the handle from a Node.
-   * <p>%OPT% This will be pretty slow.</p>
-   *
-   * <p>%OPT% An XPath-like search (walk up DOM to root, tracking path;
-   * walk down DTM reconstructing path) might be considerably faster
-   * on later nodes in large documents. That might also imply improving
-   * this call to handle nodes which would be in this DTM but
-   * have not yet been built, which might or might not be a Good Thing.</p>
+   * Get the handle from a Node, using the identity index. Only nodes
+   * that have already been built are found.
    * 
    * %REVIEW% This relies on being able to test node-identity via
    * object-identity. DTM2DOM proxying is a great example of a case where
@@ -600,16 +688,12 @@ public class DOM2DTM extends DTMDefaultBaseIterators
    */
   private int getHandleFromNode(Node node)
   {
-    // %TBD% Will this ever be called with Nodes that haven't yet been built?
-    // Do we need to be prepared to call nextNode()?
     if (null != node)
     {
-      int len = m_nodes.size();
-      for (int i = 0; i < len; i++)
-        {
-          if (m_nodes.elementAt(i) == node)
-            return i | m_dtmIdent;
-        }
+      int identity = lookupDOMNode(node);
+
+      if (DTM.NULL != identity)
+        return makeNodeHandle(identity);
     }
 
     return DTM.NULL;
@@ -618,7 +702,10 @@ public class DOM2DTM extends DTMDefaultBaseIterators
   /** Get the handle from a Node. This is a more robust version of
    * getHandleFromNode, intended to be usable by the public.
    *
-   * <p>%OPT% This will be pretty slow.</p>
+   * <p>Nodes that have already been built are found in the identity
+   * index without further checks. Otherwise, if the node lies within
+   * m_root's subtree, the incremental build is continued until the
+   * node has been added.</p>
    * 
    * %REVIEW% This relies on being able to test node-identity via
    * object-identity. DTM2DOM proxying is a great example of a case where
@@ -632,6 +719,11 @@ public class DOM2DTM extends DTMDefaultBaseIterators
   {
     if (null != node)
     {
+      int handle = getHandleFromNode(node);
+
+      if (DTM.NULL != handle || m_nodesAreProcessed)
+        return handle;
+
       // Is Node actually within the same document? If not, don't search!
       // This would be easier if m_root was always the Document node, but
       // we decided to allow wrapping a DTM around a subtree.
@@ -655,8 +747,14 @@ public class DOM2DTM extends DTMDefaultBaseIterators
                 : ((org.w3c.dom.Attr)cursor).getOwnerElement())
             {
               if(cursor==m_root)
-                // We know this node; find its handle.
-                return getHandleFromNode(node); 
+                {
+                  // The node is ours but has not been built yet.
+                  while(DTM.NULL == (handle = getHandleFromNode(node))
+                        && nextNode())
+                    ;
+
+                  return handle;
+                }
             } // for ancestors of node
         } // if node and m_root in same Document
     } // if node!=null
@@ -690,12 +788,12 @@ public class DOM2DTM extends DTMDefaultBaseIterators
     {
 
       // Assume that attributes immediately follow the element.
-      int identity = nodeHandle & m_mask;
+      int identity = makeNodeIdentity(nodeHandle);
 
       while (DTM.NULL != (identity = getNextNodeIdentity(identity)))
       {
         // Assume this can not be null.
-        type = getNodeType(identity);
+        type = _type(identity);
 
         if (type == DTM.ATTRIBUTE_NODE)
         {
@@ -708,7 +806,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
           String nodelocalname = node.getLocalName();
 
           if (nodeuri.equals(namespaceURI) && name.equals(nodelocalname))
-            return identity | m_dtmIdent;
+            return makeNodeHandle(identity);
         }
         else if (DTM.NAMESPACE_NODE != type)
         {
@@ -1083,7 +1181,7 @@ public class DOM2DTM extends DTMDefaultBaseIterators
    */
   public String getNodeValue(int nodeHandle)
   {
-    int type=_type(nodeHandle);
+    int type=_type(makeNodeIdentity(nodeHandle));
     if(TEXT_NODE!=type && CDATA_SECTION_NODE!=type)
       return getNode(nodeHandle).getNodeValue();
     
@@ -67,7 +67,7 @@ import org.xml.sax.ext.*;
 import javax.xml.transform.Source;
 
 import org.apache.xml.utils.FastStringBuffer;
-import org.apache.xml.utils.IntVector;
+import org.apache.xml.utils.SuballocatedIntVector;
 import org.apache.xml.utils.IntStack;
 import org.apache.xml.utils.XMLCharacterRecognizer;
 import org.apache.xml.utils.SystemIDResolver;
@@ -119,26 +119,28 @@ public class SAX2DTM extends DTMDefaultBaseIterators
    * this buffer.
    * %REVIEW% Should this have an option of being shared?
    */
-  private FastStringBuffer m_chars = new FastStringBuffer(13, 13);
+  protected FastStringBuffer m_chars = new FastStringBuffer(13, 13);
 
-  /** This vector holds offset and length data. */
-  protected IntVector m_data;
+  /** This vector holds offset and length data.  It is suballocated,
+   *  like the node columns, since it grows with the number of text and
+   *  attribute nodes. */
+  protected SuballocatedIntVector m_data;
 
   /** The parent stack, needed only for construction. */
-  transient private IntStack m_parents = new IntStack();
+  transient protected IntStack m_parents = new IntStack();
 
   /** The current construction level, needed only for construction time. */
-  transient private int m_levelAmount = 0;
+  transient protected int m_levelAmount = 0;
 
   /** The current previous node, needed only for construction time. */
-  transient private int m_previous = 0;
+  transient protected int m_previous = 0;
 
   /** Namespace support, only relevent at construction time. */
-  transient private java.util.Vector m_prefixMappings =
+  transient protected java.util.Vector m_prefixMappings =
     new java.util.Vector();
 
   /** Namespace support, only relevent at construction time. */
-  transient private IntStack m_contextIndexes = new IntStack();
+  transient protected IntStack m_contextIndexes = new IntStack();
 
   /** Type of next characters() event within text block in prgress. */
   transient private int m_textType = DTM.TEXT_NODE;
@@ -156,13 +158,13 @@ public class SAX2DTM extends DTMDefaultBaseIterators
   protected DTMTreeWalker m_walker = new DTMTreeWalker();
 
   /** pool of string values that come as strings. */
-  private DTMStringPool m_valuesOrPrefixes = new DTMStringPool();
+  protected DTMStringPool m_valuesOrPrefixes = new DTMStringPool();
 
   /** End document has been reached. */
-  private boolean m_endDocumentOccured = false;
+  protected boolean m_endDocumentOccured = false;
 
   /** Data or qualified name values, one array element for each node. */
-  protected int[] m_dataOrQName;
+  protected SuballocatedIntVector m_dataOrQName;
 
   /**
    * This table holds the ID string to node associations, for
@@ -207,7 +209,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
    * CDATA_SECTION node currently being acumulated,
    * or -1 if there is no text node in progress
    */
-  private int m_textPendingStart = -1;
+  protected int m_textPendingStart = -1;
   
   /**
    * Construct a SAX2DTM object ready to be constructed from SAX2
@@ -231,9 +233,9 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     super(mgr, source, dtmIdentity, whiteSpaceFilter, 
           xstringfactory, doIndexing);
           
-    m_data = new IntVector(doIndexing ? (1024*2) : 512, 1024);
+    m_data = new SuballocatedIntVector(doIndexing ? (1024*2) : 512);
 
-    m_dataOrQName = new int[m_initialblocksize];
+    m_dataOrQName = new SuballocatedIntVector(m_initialblocksize);
 
     int doc = addNode(DTM.DOCUMENT_NODE,
                       m_expandedNameTable.getExpandedTypeID(DTM.DOCUMENT_NODE),
@@ -257,7 +259,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
   {
 
     if (identity < m_size)
-      return m_dataOrQName[identity];
+      return m_dataOrQName.elementAt(identity);
 
     // Check to see if the information requested has been processed, and, 
     // if not, advance the iterator until we the information has been 
@@ -269,7 +271,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
       if (!isMore)
         return NULL;
       else if (identity < m_size)
-        return m_dataOrQName[identity];
+        return m_dataOrQName.elementAt(identity);
     }
   }
 
@@ -464,12 +466,12 @@ public class SAX2DTM extends DTMDefaultBaseIterators
           throws SAXException
   {
 
-    int identity = nodeHandle & m_mask;
+    int identity = makeNodeIdentity(nodeHandle);
     int type = _type(identity);
 
     if (isTextType(type))
     {
-      int dataIndex = m_dataOrQName[identity];
+      int dataIndex = m_dataOrQName.elementAt(identity);
       int offset = m_data.elementAt(dataIndex);
       int length = m_data.elementAt(dataIndex + 1);
       
@@ -492,7 +494,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
 
         while (DTM.NULL != identity && (_level(identity) > level))
         {
-          type = getNodeType(identity);
+          type = _type(identity);
 
           if (isTextType(type))
           {
@@ -576,7 +578,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     }
     else
     {
-      int qnameIndex = m_dataOrQName[nodeHandle & m_mask];
+      int qnameIndex = m_dataOrQName.elementAt(makeNodeIdentity(nodeHandle));
 
       if (qnameIndex < 0)
       {
@@ -614,7 +616,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     }
     else
     {
-      int qnameIndex = m_dataOrQName[nodeHandle & m_mask];
+      int qnameIndex = m_dataOrQName.elementAt(makeNodeIdentity(nodeHandle));
 
       if (qnameIndex < 0)
       {
@@ -801,29 +803,15 @@ public class SAX2DTM extends DTMDefaultBaseIterators
    * Ensure that the size of the information arrays can hold another entry
    * at the given index.
    *
-   * @param on exit from this function, the information arrays sizes must be
-   * at least index+1.
-   *
-   * NEEDSDOC @param index
+   * @param index On exit from this function, the information arrays sizes
+   * must be at least index+1.
    */
   protected void ensureSize(int index)
   {
 
-    int capacity = m_dataOrQName.length;
-
-    if (capacity <= index)
-    {
-      int[] dataOrQName = m_dataOrQName;
-      int newcapacity = capacity + m_blocksize;
+    m_dataOrQName.ensureCapacity(index + 1);
 
-      m_dataOrQName = new int[newcapacity];
-
-      System.arraycopy(dataOrQName, 0, m_dataOrQName, 0, capacity);
-      
-      // We have to do this after we do our resize, since DTMDefaultBase 
-      // will change m_blocksize before it exits.
-      super.ensureSize(index);
-    }
+    super.ensureSize(index);
   }
 
   /**
@@ -850,25 +838,25 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     ensureSize(nodeIndex);
 
     // Do the hard casts here, so we localize changes that may have to be made.
-    m_level[nodeIndex] = (byte) level;
-    m_firstch[nodeIndex] = canHaveFirstChild ? NOTPROCESSED : DTM.NULL;
-    m_nextsib[nodeIndex] = NOTPROCESSED;
-    m_prevsib[nodeIndex] = previousSibling;
-    m_parent[nodeIndex] = parentIndex;
-    m_exptype[nodeIndex] = expandedTypeID;
-    m_dataOrQName[nodeIndex] = dataOrPrefix;    
+    m_level.setElementAt((byte) level, nodeIndex);
+    m_firstch.setElementAt(canHaveFirstChild ? NOTPROCESSED : DTM.NULL, nodeIndex);
+    m_nextsib.setElementAt(NOTPROCESSED, nodeIndex);
+    m_prevsib.setElementAt(previousSibling, nodeIndex);
+    m_parent.setElementAt(parentIndex, nodeIndex);
+    m_exptype.setElementAt(expandedTypeID, nodeIndex);
+    m_dataOrQName.setElementAt(dataOrPrefix, nodeIndex);
 
     if (DTM.NULL != parentIndex && type != DTM.ATTRIBUTE_NODE
             && type != DTM.NAMESPACE_NODE)
     {
-      if (NOTPROCESSED == m_firstch[parentIndex])
-        m_firstch[parentIndex] = nodeIndex;
+      if (NOTPROCESSED == m_firstch.elementAt(parentIndex))
+        m_firstch.setElementAt(nodeIndex, parentIndex);
     }
 
     // Note that we don't want nextSibling to be processed until
     // charactersFlush() is called.
     if (DTM.NULL != previousSibling)
-      m_nextsib[previousSibling] = nodeIndex;
+      m_nextsib.setElementAt(nodeIndex, previousSibling);
 
     if(type == DTM.NAMESPACE_NODE)
                 declareNamespaceInContext(parentIndex,nodeIndex);
@@ -888,8 +876,8 @@ public class SAX2DTM extends DTMDefaultBaseIterators
   public String getNodeValue(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
-    int type = getNodeType(identity);
+    int identity = makeNodeIdentity(nodeHandle);
+    int type = _type(identity);
 
     if (isTextType(type))
     {
@@ -929,7 +917,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
    */
   public String getLocalName(int nodeHandle)
   {
-    return m_expandedNameTable.getLocalName(_exptype(nodeHandle & m_mask));
+    return m_expandedNameTable.getLocalName(_exptype(makeNodeIdentity(nodeHandle)));
   }
 
   /**
@@ -1027,8 +1015,8 @@ public class SAX2DTM extends DTMDefaultBaseIterators
   public String getPrefix(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
-    int type = getNodeType(identity);
+    int identity = makeNodeIdentity(nodeHandle);
+    int type = _type(identity);
 
     if (DTM.ELEMENT_NODE == type)
     {
@@ -1125,7 +1113,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
   public String getNamespaceURI(int nodeHandle)
   {
 
-    return m_expandedNameTable.getNamespace(_exptype(nodeHandle & m_mask));
+    return m_expandedNameTable.getNamespace(_exptype(makeNodeIdentity(nodeHandle)));
   }
 
   /**
@@ -1140,8 +1128,8 @@ public class SAX2DTM extends DTMDefaultBaseIterators
   public XMLString getStringValue(int nodeHandle)
   {
 
-    int identity = nodeHandle & m_mask;
-    int type = getNodeType(identity);
+    int identity = makeNodeIdentity(nodeHandle);
+    int type = _type(identity);
 
     if (isTextType(type))
     {
@@ -1165,7 +1153,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
 
         while (DTM.NULL != identity && (_level(identity) > level))
         {
-          type = getNodeType(identity);
+          type = _type(identity);
 
           if (isTextType(type))
           {
@@ -1232,7 +1220,7 @@ public class SAX2DTM extends DTMDefaultBaseIterators
       intObj = (Integer) m_idAttributes.get(elementId);
 
       if (null != intObj)
-        return intObj.intValue() | m_dtmIdent;
+        return makeNodeHandle(intObj.intValue());
 
       if (!isMore || m_endDocumentOccured)
         break;
@@ -1514,13 +1502,13 @@ public class SAX2DTM extends DTMDefaultBaseIterators
 
     charactersFlush();
 
-    m_nextsib[0] = NULL;
+    m_nextsib.setElementAt(NULL, 0);
 
-    if (m_firstch[0] == NOTPROCESSED)
-      m_firstch[0] = NULL;
+    if (m_firstch.elementAt(0) == NOTPROCESSED)
+      m_firstch.setElementAt(NULL, 0);
 
     if (DTM.NULL != m_previous)
-      m_nextsib[m_previous] = DTM.NULL;
+      m_nextsib.setElementAt(DTM.NULL, m_previous);
 
     m_parents = null;
     m_prefixMappings = null;
@@ -1729,11 +1717,11 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     }
 
     if (DTM.NULL != prev)
-      m_nextsib[prev] = DTM.NULL;
+      m_nextsib.setElementAt(DTM.NULL, prev);
 
     if (null != m_wsfilter)
     {
-      short wsv = m_wsfilter.getShouldStripSpace(elemNode | m_dtmIdent, this);
+      short wsv = m_wsfilter.getShouldStripSpace(makeNodeHandle(elemNode), this);
       boolean shouldStrip = (DTMWSFilter.INHERIT == wsv)
                             ? getShouldStripWhitespace()
                             : (DTMWSFilter.STRIP == wsv);
@@ -1789,10 +1777,10 @@ public class SAX2DTM extends DTMDefaultBaseIterators
 
     m_previous = m_parents.pop();
 
-    if (NOTPROCESSED == m_firstch[m_previous])
-      m_firstch[m_previous] = DTM.NULL;
+    if (NOTPROCESSED == m_firstch.elementAt(m_previous))
+      m_firstch.setElementAt(DTM.NULL, m_previous);
     else if (DTM.NULL != lastNode)
-      m_nextsib[lastNode] = DTM.NULL;
+      m_nextsib.setElementAt(DTM.NULL, lastNode);
 
     popShouldStripWhitespace();
   }
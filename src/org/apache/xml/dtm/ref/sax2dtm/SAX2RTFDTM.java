@@ -0,0 +1,369 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xml.dtm.ref.sax2dtm;
+
+import org.apache.xml.dtm.*;
+import org.apache.xml.dtm.ref.*;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import javax.xml.transform.Source;
+
+import org.xml.sax.SAXException;
+
+import org.apache.xml.utils.IntStack;
+import org.apache.xml.utils.IntVector;
+import org.apache.xml.utils.XMLStringFactory;
+
+/**
+ * This is a subclass of SAX2DTM which holds any number of result tree
+ * fragments, each one a separate document tree appended after the last.
+ * Rather than releasing each fragment on its own, the whole DTM is
+ * rewound to a mark, discarding every tree built since the mark was
+ * pushed.  The transformer pushes a mark when a variable stack frame is
+ * linked and pops it when the frame is unlinked, since no fragment
+ * created in a frame can outlive it.
+ *
+ * <p>Only one tree can be under construction at a time.  If a fragment
+ * has to be built while another is still open (a variable inside the
+ * content of another variable, for instance), the caller must use a
+ * different SAX2RTFDTM; see isTreeIncomplete().  Element indexing is not
+ * rewound, so this DTM should be created with indexing off.</p>
+ */
+public class SAX2RTFDTM extends SAX2DTM
+{
+
+  /** Number of ints saved for each rewind mark. */
+  private static final int MARK_FIELDS = 6;
+
+  /** Identities of the document nodes, in document order. */
+  private IntVector m_documents = new IntVector(32);
+
+  /** Saved table sizes, MARK_FIELDS entries per pushRewindMark(). */
+  private IntVector m_marks = new IntVector(MARK_FIELDS * 8);
+
+  /**
+   * Construct a SAX2RTFDTM object ready to be constructed from SAX2
+   * ContentHandler events.
+   *
+   * @param mgr The DTMManager who owns this DTM.
+   * @param source the JAXP 1.1 Source object for this DTM.
+   * @param dtmIdentity The DTM identity ID for this DTM.
+   * @param whiteSpaceFilter The white space filter for this DTM, which may
+   *                         be null.
+   * @param xstringfactory XMLString factory for creating character content.
+   * @param doIndexing true if the caller considers it worth it to use 
+   *                   indexing schemes.
+   */
+  public SAX2RTFDTM(DTMManager mgr, Source source, int dtmIdentity,
+                    DTMWSFilter whiteSpaceFilter,
+                    XMLStringFactory xstringfactory,
+                    boolean doIndexing)
+  {
+
+    super(mgr, source, dtmIdentity, whiteSpaceFilter, xstringfactory,
+          doIndexing);
+
+    // SAX2DTM builds its document node up front.  Here each startDocument
+    // builds its own, so roll that one back.
+    m_size = 0;
+    m_levelAmount = 0;
+    m_previous = DTM.NULL;
+    m_parents.removeAllElements();
+    m_endDocumentOccured = true;
+  }
+
+  /**
+   * Get the handle of the document node of the most recently started
+   * tree, or DTM.NULL if no tree is in this DTM.
+   *
+   * @return int Node handle of the most recent document.
+   */
+  public int getDocument()
+  {
+
+    int n = m_documents.size();
+
+    return (n > 0) ? makeNodeHandle(m_documents.elementAt(n - 1)) : DTM.NULL;
+  }
+
+  /**
+   * Given a node handle, find the document node at the root of the tree
+   * that contains it.
+   *
+   * @param nodeHandle the id of the node.
+   * @return int Node handle of the node's document, or DTM.NULL.
+   */
+  public int getDocumentRoot(int nodeHandle)
+  {
+
+    int index = findDocument(makeNodeIdentity(nodeHandle));
+
+    return (index < 0)
+           ? DTM.NULL : makeNodeHandle(m_documents.elementAt(index));
+  }
+
+  /**
+   * Find the position in m_documents of the tree holding a node.
+   *
+   * @param identity The node identity.
+   * @return index into m_documents, or -1 if none.
+   */
+  private int findDocument(int identity)
+  {
+
+    if (identity == DTM.NULL || identity >= m_size)
+      return -1;
+
+    // Binary search for the last document that starts at or before the
+    // node.
+    int low = 0;
+    int high = m_documents.size() - 1;
+
+    while (low <= high)
+    {
+      int mid = (low + high) >>> 1;
+
+      if (m_documents.elementAt(mid) <= identity)
+        low = mid + 1;
+      else
+        high = mid - 1;
+    }
+
+    return high;
+  }
+
+  /**
+   * Tell if a tree is under construction in this DTM, in which case no
+   * other tree can be started in it.
+   *
+   * @return true if startDocument has been seen without its endDocument.
+   */
+  public boolean isTreeIncomplete()
+  {
+    return !m_endDocumentOccured;
+  }
+
+  /**
+   * Receive notification of the beginning of a new result tree fragment,
+   * and add its document node after the trees already in this DTM.
+   *
+   * @throws SAXException Any SAX exception, possibly
+   *            wrapping another exception.
+   * @see org.xml.sax.ContentHandler#startDocument
+   */
+  public void startDocument() throws SAXException
+  {
+
+    m_endDocumentOccured = false;
+    m_prefixMappings.removeAllElements();
+    m_contextIndexes.removeAllElements();
+    m_parents.removeAllElements();
+
+    int doc = addNode(DTM.DOCUMENT_NODE,
+                      m_expandedNameTable.getExpandedTypeID(DTM.DOCUMENT_NODE),
+                      0, DTM.NULL, DTM.NULL, 0, true);
+
+    m_documents.addElement(doc);
+
+    m_levelAmount = 1;
+
+    m_parents.push(doc);
+
+    m_previous = DTM.NULL;
+
+    super.startDocument();
+  }
+
+  /**
+   * Receive notification of the end of the current result tree fragment.
+   * Unlike SAX2DTM, the construction state is kept so that another tree
+   * can be started.
+   *
+   * @throws SAXException Any SAX exception, possibly
+   *            wrapping another exception.
+   * @see org.xml.sax.ContentHandler#endDocument
+   */
+  public void endDocument() throws SAXException
+  {
+
+    charactersFlush();
+
+    int doc = m_documents.elementAt(m_documents.size() - 1);
+
+    m_nextsib.setElementAt(NULL, doc);
+
+    if (m_firstch.elementAt(doc) == NOTPROCESSED)
+      m_firstch.setElementAt(NULL, doc);
+
+    if (DTM.NULL != m_previous)
+      m_nextsib.setElementAt(DTM.NULL, m_previous);
+
+    m_levelAmount = 0;
+    m_previous = DTM.NULL;
+
+    m_endDocumentOccured = true;
+  }
+
+  /**
+   * Remember the current size of this DTM, so that popRewindMark() can
+   * discard everything built after this point.  Marks nest.
+   */
+  public void pushRewindMark()
+  {
+
+    m_marks.addElement(m_size);
+    m_marks.addElement(m_documents.size());
+    m_marks.addElement(m_data.size());
+    m_marks.addElement(m_chars.size());
+    m_marks.addElement(m_valuesOrPrefixes.size());
+    m_marks.addElement((null == m_namespaceDeclSetElements)
+                       ? 0 : m_namespaceDeclSetElements.size());
+  }
+
+  /**
+   * Discard every tree built since the matching pushRewindMark(), or every
+   * tree in this DTM if there is no mark.  Node handles into the discarded
+   * trees become invalid, and will be reused by later trees.
+   *
+   * @return true if this DTM holds no trees after the rewind.
+   */
+  public boolean popRewindMark()
+  {
+
+    int top = m_marks.size() - MARK_FIELDS;
+
+    if (top < 0)
+    {
+      rewind(0, 0, 0, 0, 1, 0);  // keep the "" string at index 0
+    }
+    else
+    {
+      rewind(m_marks.elementAt(top), m_marks.elementAt(top + 1),
+             m_marks.elementAt(top + 2), m_marks.elementAt(top + 3),
+             m_marks.elementAt(top + 4), m_marks.elementAt(top + 5));
+      m_marks.setSize(top);
+    }
+
+    return 0 == m_size;
+  }
+
+  /**
+   * Truncate the node table and its side tables.
+   *
+   * @param size Number of nodes to keep.
+   * @param documents Number of trees to keep.
+   * @param dataSize Size of m_data to keep.
+   * @param charsSize Size of m_chars to keep.
+   * @param valuesSize Number of pooled values or prefixes to keep.
+   * @param nsDeclSets Number of namespace declaration sets to keep.
+   */
+  private void rewind(int size, int documents, int dataSize, int charsSize,
+                      int valuesSize, int nsDeclSets)
+  {
+
+    // Any tree still open is abandoned along with the rest.
+    m_textPendingStart = -1;
+    m_levelAmount = 0;
+    m_previous = DTM.NULL;
+    m_endDocumentOccured = true;
+
+    if (size >= m_size)
+      return;
+
+    // Tables that users derived from the discarded trees are stale.  There
+    // is no telling which trees the other tables describe, so they all go.
+    synchronized (this)
+    {
+      m_derivedTables = null;
+    }
+
+    m_size = size;
+    m_documents.setSize(documents);
+    m_data.setSize(dataSize);
+
+    if (charsSize < m_chars.size())
+      m_chars.setLength(charsSize);
+
+    m_valuesOrPrefixes.setSize(valuesSize);
+
+    if (0 == nsDeclSets)
+    {
+      m_namespaceDeclSetElements = null;
+      m_namespaceDeclSets = null;
+    }
+    else if (null != m_namespaceDeclSetElements)
+    {
+      m_namespaceDeclSetElements.setSize(nsDeclSets);
+      m_namespaceDeclSets.setSize(nsDeclSets);
+    }
+
+    if (!m_idAttributes.isEmpty())
+    {
+      Enumeration ids = ((Hashtable) m_idAttributes.clone()).keys();
+
+      while (ids.hasMoreElements())
+      {
+        Object id = ids.nextElement();
+
+        if (((Integer) m_idAttributes.get(id)).intValue() >= size)
+          m_idAttributes.remove(id);
+      }
+    }
+  }
+}
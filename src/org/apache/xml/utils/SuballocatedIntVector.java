@@ -0,0 +1,278 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xml.utils;
+
+/**
+ * <meta name="usage" content="internal"/>
+ * A very simple table that stores a list of ints, suballocated in
+ * fixed-size chunks.
+ *
+ * <p>Unlike IntVector, growing the list never copies the values already
+ * stored: when the last chunk fills up a new one is appended, and only
+ * the (small) array of chunk references is reallocated. Building a large
+ * list therefore costs time linear in its size, and peak heap never has
+ * to hold two copies of the data at once. Chunk sizes are powers of two,
+ * so an element is found with one shift and one mask.</p>
+ *
+ * <p>Unlike IntVector, removing or inserting in the middle of the list is not supported; this class is meant for append-mostly columns such as the node tables of a DTM.</p>
+ */
+public class SuballocatedIntVector
+{
+
+  /** Size of each chunk, always a power of two.  */
+  protected final int m_blocksize;
+
+  /** Number of bits used to address a slot inside a chunk.  */
+  protected final int m_SHIFT;
+
+  /** Mask that selects the slot inside a chunk.  */
+  protected final int m_MASK;
+
+  /** The chunks, which are allocated on demand.  */
+  protected int m_map[][];
+
+  /** Number of ints in the list.  */
+  protected int m_firstFree = 0;
+
+  /**
+   * Default constructor.  Note that the default
+   * block size is very small, for small lists.
+   */
+  public SuballocatedIntVector()
+  {
+    this(2048);
+  }
+
+  /**
+   * Construct a SuballocatedIntVector, using the given block size.  The block size is
+   * rounded up to the next power of two.
+   *
+   * @param blocksize Size of the chunks to allocate
+   */
+  public SuballocatedIntVector(int blocksize)
+  {
+
+    int shift = 0;
+
+    while ((1 << shift) < blocksize)
+      shift++;
+
+    m_SHIFT = shift;
+    m_blocksize = 1 << shift;
+    m_MASK = m_blocksize - 1;
+    m_map = new int[16][];
+    m_map[0] = new int[m_blocksize];
+  }
+
+  /**
+   * Get the length of the list.
+   *
+   * @return length of the list
+   */
+  public final int size()
+  {
+    return m_firstFree;
+  }
+
+  /**
+   * Set the length of the list.  Chunks needed to hold the new size
+   * are allocated; values beyond the old size are not cleared.
+   *
+   * @param sz the new length of the list
+   */
+  public final void setSize(int sz)
+  {
+
+    if (sz > m_firstFree)
+      ensureCapacity(sz);
+
+    m_firstFree = sz;
+  }
+
+  /**
+   * Append a int onto the vector.
+   *
+   * @param value int to add to the list
+   */
+  public final void addElement(int value)
+  {
+
+    int index = m_firstFree;
+    int chunk = index >>> m_SHIFT;
+
+    if (chunk >= m_map.length || null == m_map[chunk])
+      ensureCapacity(index + 1);
+
+    m_map[chunk][index & m_MASK] = value;
+
+    m_firstFree++;
+  }
+
+  /**
+   * Sets the component at the specified index of this vector to be the
+   * specified value. The previous component at that position is discarded.
+   * If the index is past the end of the list, the list is extended.
+   *
+   * @param value value to set
+   * @param index Index of where to set the value
+   */
+  public final void setElementAt(int value, int index)
+  {
+
+    int chunk = index >>> m_SHIFT;
+
+    if (chunk >= m_map.length || null == m_map[chunk])
+      ensureCapacity(index + 1);
+
+    m_map[chunk][index & m_MASK] = value;
+
+    if (index >= m_firstFree)
+      m_firstFree = index + 1;
+  }
+
+  /**
+   * Get the nth element.  The index must be smaller than the current
+   * size of the list.
+   *
+   * @param i index of value to get
+   *
+   * @return value at given index
+   */
+  public final int elementAt(int i)
+  {
+    return m_map[i >>> m_SHIFT][i & m_MASK];
+  }
+
+  /**
+   * Remove all elements.  The first chunk is kept for reuse, the others
+   * are released.
+   */
+  public final void removeAllElements()
+  {
+
+    int[] first = m_map[0];
+
+    m_map = new int[16][];
+    m_map[0] = first;
+    m_firstFree = 0;
+  }
+
+  /**
+   * Tell if the table contains the given value.
+   *
+   * @param s value to look for
+   *
+   * @return true if the value is in the list
+   */
+  public final boolean contains(int s)
+  {
+    return (indexOf(s) >= 0);
+  }
+
+  /**
+   * Searches for the first occurence of the given argument.
+   *
+   * @param elem value to look for
+   * @return the index of the first occurrence of the value, or -1 if
+   * it is not found.
+   */
+  public final int indexOf(int elem)
+  {
+
+    for (int i = 0; i < m_firstFree; i++)
+    {
+      if (m_map[i >>> m_SHIFT][i & m_MASK] == elem)
+        return i;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Make sure that chunks are allocated for at least the given number
+   * of elements.  Only the array of chunk references is ever copied.
+   *
+   * @param capacity the number of elements the list must be able to hold
+   */
+  public final void ensureCapacity(int capacity)
+  {
+
+    if (capacity <= 0)
+      return;
+
+    int lastChunk = (capacity - 1) >>> m_SHIFT;
+
+    if (lastChunk >= m_map.length)
+    {
+      int newLength = m_map.length;
+
+      while (newLength <= lastChunk)
+        newLength += newLength;
+
+      int[][] newMap = new int[newLength][];
+
+      System.arraycopy(m_map, 0, newMap, 0, m_map.length);
+
+      m_map = newMap;
+    }
+
+    for (int i = lastChunk; i >= 0 && null == m_map[i]; i--)
+    {
+      m_map[i] = new int[m_blocksize];
+    }
+  }
+}
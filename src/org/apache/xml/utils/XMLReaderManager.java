@@ -0,0 +1,544 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xml.utils;
+
+import java.util.Vector;
+
+import org.xml.sax.XMLReader;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.ext.DeclHandler;
+
+/**
+ * <meta name="usage" content="internal"/>
+ * Pool of namespace-aware XMLReaders, so that each document parsed does
+ * not have to look up the JAXP SAXParserFactory and build a new parser.
+ * <p>A reader taken with {@link #getXMLReader()} belongs to the caller
+ * until it is handed back with {@link #releaseXMLReader(XMLReader)}.
+ * Releasing it drops every handler that was set on it and puts the
+ * namespace and validation features back to their defaults, so callers
+ * that change any other feature or property must not release the
+ * reader.  Readers whose parse failed may be released; SAX parsers
+ * reset themselves at the start of each parse.</p>
+ */
+public class XMLReaderManager
+{
+
+  /**
+   * The features that are put back to their defaults on release.
+   * Xerces turns validation on when validation/dynamic is set, and
+   * leaves it on when validation/dynamic is cleared, so validation has
+   * to come after it.
+   */
+  private static final String[] RESET_FEATURES =
+  {
+    "http://apache.org/xml/features/validation/dynamic",
+    "http://xml.org/sax/features/validation",
+    "http://xml.org/sax/features/namespace-prefixes",
+    "http://xml.org/sax/features/namespaces"
+  };
+
+  /** The property that holds the lexical handler. */
+  private static final String LEXICAL_HANDLER_PROPERTY =
+    "http://xml.org/sax/properties/lexical-handler";
+
+  /** The property that holds the declaration handler. */
+  private static final String DECL_HANDLER_PROPERTY =
+    "http://xml.org/sax/properties/declaration-handler";
+
+  /** Default number of idle readers kept. */
+  static final int DEFAULT_POOL_SIZE = 8;
+
+  /** The shared instance. */
+  private static XMLReaderManager m_instance = new XMLReaderManager(
+    getConfiguredPoolSize());
+
+  /** Handler that replaces the caller's handlers on release. */
+  private static final NullHandler m_nullHandler = new NullHandler();
+
+  /** The SAXParserFactory, looked up the first time it is needed. */
+  private javax.xml.parsers.SAXParserFactory m_factory;
+
+  /**
+   * The value of each of RESET_FEATURES on a new reader, or null for
+   * features the reader doesn't recognize.  Taken from the first reader
+   * created.
+   */
+  private Boolean[] m_defaults;
+
+  /** True if JAXP is not available and readers come from SAX instead. */
+  private boolean m_useSAXFactory = false;
+
+  /** Idle readers. */
+  private final Vector m_readers;
+
+  /** The maximum number of idle readers kept. */
+  private int m_poolSize;
+
+  /** Number of readers created. */
+  private long m_created = 0;
+
+  /** Number of requests served from the pool. */
+  private long m_reused = 0;
+
+  /** Number of released readers dropped instead of being pooled. */
+  private long m_discarded = 0;
+
+  /**
+   * Create a pool of XMLReaders.
+   *
+   * @param poolSize The maximum number of idle readers kept.
+   */
+  public XMLReaderManager(int poolSize)
+  {
+    m_poolSize = poolSize;
+    m_readers = new Vector(poolSize);
+  }
+
+  /**
+   * Get the pool shared by the DTM manager and the stylesheet processor.
+   *
+   * @return The shared XMLReaderManager, never null.
+   */
+  public static XMLReaderManager getInstance()
+  {
+    return m_instance;
+  }
+
+  /**
+   * Read the pool size from the system properties.
+   *
+   * @return The maximum number of idle readers to keep.
+   */
+  private static int getConfiguredPoolSize()
+  {
+
+    int size = DEFAULT_POOL_SIZE;
+
+    try
+    {
+      String prop = System.getProperty(
+        "org.apache.xml.utils.XMLReaderManager.poolSize");
+
+      if (null != prop)
+      {
+        int configured = Integer.parseInt(prop.trim());
+
+        if (configured >= 0)
+          size = configured;
+      }
+    }
+    catch (SecurityException se){}
+    catch (NumberFormatException nfe){}
+
+    return size;
+  }
+
+  /**
+   * Get a namespace-aware XMLReader, from the pool if one is idle.
+   * The namespace-prefixes feature is off.
+   *
+   * @return An XMLReader that is free for use, never null.
+   *
+   * @throws SAXException if no parser could be created.
+   */
+  public XMLReader getXMLReader() throws SAXException
+  {
+
+    synchronized (this)
+    {
+      int last = m_readers.size() - 1;
+
+      if (last >= 0)
+      {
+        XMLReader reader = (XMLReader) m_readers.elementAt(last);
+
+        m_readers.removeElementAt(last);
+
+        m_reused++;
+
+        return reader;
+      }
+
+      m_created++;
+    }
+
+    return createXMLReader();
+  }
+
+  /**
+   * Hand a reader taken from {@link #getXMLReader()} back to the pool.
+   * It must not be used by the caller afterwards.
+   *
+   * @param reader The reader, which may be null.
+   */
+  public void releaseXMLReader(XMLReader reader)
+  {
+
+    if (null == reader)
+      return;
+
+    boolean reusable = resetXMLReader(reader);
+
+    synchronized (this)
+    {
+      if (reusable && m_readers.size() < m_poolSize)
+        m_readers.addElement(reader);
+      else
+        m_discarded++;
+    }
+  }
+
+  /**
+   * Create a new namespace-aware XMLReader, using JAXP if it is there.
+   *
+   * @return A new XMLReader, never null.
+   *
+   * @throws SAXException if no parser could be created.
+   */
+  private XMLReader createXMLReader() throws SAXException
+  {
+
+    XMLReader reader = null;
+
+    if (!m_useSAXFactory)
+    {
+      try
+      {
+        javax.xml.parsers.SAXParserFactory factory = getFactory();
+
+        // A SAXParserFactory need not be thread-safe.
+        synchronized (factory)
+        {
+          reader = factory.newSAXParser().getXMLReader();
+        }
+      }
+      catch (javax.xml.parsers.ParserConfigurationException ex)
+      {
+        throw new SAXException(ex);
+      }
+      catch (javax.xml.parsers.FactoryConfigurationError ex1)
+      {
+        throw new SAXException(ex1.toString());
+      }
+      catch (NoSuchMethodError ex2)
+      {
+        m_useSAXFactory = true;
+      }
+      catch (AbstractMethodError ame)
+      {
+        m_useSAXFactory = true;
+      }
+    }
+
+    if (null == reader)
+      reader = XMLReaderFactory.createXMLReader();
+
+    synchronized (this)
+    {
+      if (null == m_defaults)
+        m_defaults = getFeatures(reader);
+    }
+
+    return reader;
+  }
+
+  /**
+   * Read the current value of each of RESET_FEATURES.
+   *
+   * @param reader The reader.
+   * @return The values, with null for features that aren't recognized.
+   */
+  private static Boolean[] getFeatures(XMLReader reader)
+  {
+
+    Boolean[] values = new Boolean[RESET_FEATURES.length];
+
+    for (int i = 0; i < RESET_FEATURES.length; i++)
+    {
+      try
+      {
+        values[i] = reader.getFeature(RESET_FEATURES[i])
+                    ? Boolean.TRUE : Boolean.FALSE;
+      }
+      catch (SAXException se){}
+    }
+
+    return values;
+  }
+
+  /**
+   * Get the SAXParserFactory, looking it up the first time.
+   *
+   * @return The namespace-aware SAXParserFactory.
+   */
+  private synchronized javax.xml.parsers.SAXParserFactory getFactory()
+  {
+
+    if (null == m_factory)
+    {
+      javax.xml.parsers.SAXParserFactory factory =
+        javax.xml.parsers.SAXParserFactory.newInstance();
+
+      factory.setNamespaceAware(true);
+
+      m_factory = factory;
+    }
+
+    return m_factory;
+  }
+
+  /**
+   * Drop the handlers that were set on a reader and put its features
+   * back to the values a new reader has.
+   *
+   * @param reader The reader.
+   * @return false if the reader could not be reset and must not be reused.
+   */
+  private boolean resetXMLReader(XMLReader reader)
+  {
+
+    Boolean[] defaults;
+
+    synchronized (this)
+    {
+      defaults = m_defaults;
+    }
+
+    if (null == defaults)
+      return false;
+
+    reader.setContentHandler(m_nullHandler);
+    reader.setDTDHandler(m_nullHandler);
+    reader.setErrorHandler(m_nullHandler);
+    reader.setEntityResolver(m_nullHandler);
+
+    if (!resetProperty(reader, LEXICAL_HANDLER_PROPERTY)
+        || !resetProperty(reader, DECL_HANDLER_PROPERTY))
+      return false;
+
+    for (int i = 0; i < RESET_FEATURES.length; i++)
+    {
+      if (null == defaults[i])
+        continue;
+
+      try
+      {
+        boolean value = defaults[i].booleanValue();
+
+        if (reader.getFeature(RESET_FEATURES[i]) != value)
+          reader.setFeature(RESET_FEATURES[i], value);
+      }
+      catch (SAXException se)
+      {
+        return false;
+      }
+    }
+
+    // Setting one feature can change another, so check them all again.
+    Boolean[] values = getFeatures(reader);
+
+    for (int i = 0; i < RESET_FEATURES.length; i++)
+    {
+      if (values[i] != defaults[i])
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Clear a handler property, falling back to the null handler for
+   * readers that won't take null.  Properties the reader doesn't
+   * recognize are fine.
+   *
+   * @param reader The reader.
+   * @param name The property name.
+   * @return false if the property could not be reset.
+   */
+  private static boolean resetProperty(XMLReader reader, String name)
+  {
+
+    try
+    {
+      reader.setProperty(name, null);
+
+      return true;
+    }
+    catch (SAXNotRecognizedException snre)
+    {
+      return true;
+    }
+    catch (SAXException se){}
+    catch (RuntimeException re){}
+
+    try
+    {
+      reader.setProperty(name, m_nullHandler);
+    }
+    catch (SAXException se)
+    {
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the number of readers created by this pool.
+   *
+   * @return The number of readers created.
+   */
+  public synchronized long getCreatedCount()
+  {
+    return m_created;
+  }
+
+  /**
+   * Get the number of requests that were served from the pool.
+   *
+   * @return The number of readers reused.
+   */
+  public synchronized long getReusedCount()
+  {
+    return m_reused;
+  }
+
+  /**
+   * Get the number of released readers that were dropped because the
+   * pool was full or they could not be reset.
+   *
+   * @return The number of readers discarded.
+   */
+  public synchronized long getDiscardedCount()
+  {
+    return m_discarded;
+  }
+
+  /**
+   * Get the number of idle readers in the pool.
+   *
+   * @return The number of idle readers.
+   */
+  public synchronized int getIdleCount()
+  {
+    return m_readers.size();
+  }
+
+  /**
+   * Set the maximum number of idle readers kept.  Zero turns pooling off.
+   *
+   * @param poolSize The maximum number of idle readers.
+   */
+  public synchronized void setPoolSize(int poolSize)
+  {
+
+    m_poolSize = (poolSize < 0) ? 0 : poolSize;
+
+    if (m_readers.size() > m_poolSize)
+      m_readers.setSize(m_poolSize);
+  }
+
+  /**
+   * Handler that ignores every event, set on readers while they are idle
+   * so that the pool does not keep the last caller's objects alive.
+   * Some readers won't take null for a handler.
+   */
+  private static class NullHandler extends DefaultHandler
+          implements LexicalHandler, DeclHandler
+  {
+
+    /** @see LexicalHandler#startDTD */
+    public void startDTD(String name, String publicId, String systemId){}
+
+    /** @see LexicalHandler#endDTD */
+    public void endDTD(){}
+
+    /** @see LexicalHandler#startEntity */
+    public void startEntity(String name){}
+
+    /** @see LexicalHandler#endEntity */
+    public void endEntity(String name){}
+
+    /** @see LexicalHandler#startCDATA */
+    public void startCDATA(){}
+
+    /** @see LexicalHandler#endCDATA */
+    public void endCDATA(){}
+
+    /** @see LexicalHandler#comment */
+    public void comment(char ch[], int start, int length){}
+
+    /** @see DeclHandler#elementDecl */
+    public void elementDecl(String name, String model){}
+
+    /** @see DeclHandler#attributeDecl */
+    public void attributeDecl(String eName, String aName, String type,
+                              String valueDefault, String value){}
+
+    /** @see DeclHandler#internalEntityDecl */
+    public void internalEntityDecl(String name, String value){}
+
+    /** @see DeclHandler#externalEntityDecl */
+    public void externalEntityDecl(String name, String publicId,
+                                   String systemId){}
+  }
+}
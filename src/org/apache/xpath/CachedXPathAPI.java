@@ -0,0 +1,689 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xpath;
+
+import java.util.Hashtable;
+
+import javax.xml.transform.SourceLocator;
+import javax.xml.transform.TransformerException;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.Document;
+import org.w3c.dom.traversal.NodeIterator;
+import org.w3c.dom.NodeList;
+
+import org.apache.xml.utils.PrefixResolverDefault;
+import org.apache.xml.utils.PrefixResolver;
+import org.apache.xpath.objects.XObject;
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMManager;
+
+/**
+ * The methods in this class are convenience methods into the
+ * low-level XPath API, like the ones in {@link XPathAPI}, but they
+ * keep their state between calls.
+ * <p>Each instance owns an XPathContext, so the DTM wrapper built for a
+ * DOM document is kept alive and reused by the next call against the
+ * same document, rather than being rebuilt every time.  Compiled XPath
+ * objects are kept in a bounded cache that is shared by all instances,
+ * keyed on the expression string and the namespace bindings of the
+ * prefixes it uses.</p>
+ * <p>An instance is not thread-safe; each thread should create and keep
+ * its own.  The compiled XPath cache is shared and is safe to use from
+ * any thread.</p>
+ * <p>The DTM wrapper is a snapshot of the DOM.  If the DOM is changed
+ * after it has been queried, call {@link #invalidate()} or
+ * {@link #invalidate(Node)} before querying it again.</p>
+ * @see XPathAPI
+ * @see <a href="http://www.w3.org/TR/xpath">XPath Specification</a>
+ */
+public class CachedXPathAPI
+{
+
+  /** The XPathContext that is reused from call to call. */
+  protected XPathContext xpathSupport;
+
+  /**
+   * Create a CachedXPathAPI with its own XPathContext.
+   */
+  public CachedXPathAPI()
+  {
+    xpathSupport = new XPathContext();
+  }
+
+  /**
+   * Create a CachedXPathAPI that shares the XPathContext, and so the
+   * DTM wrappers, of another one.  Both must be used from the same thread.
+   *
+   * @param priorXPathAPI The CachedXPathAPI whose context should be shared.
+   */
+  public CachedXPathAPI(CachedXPathAPI priorXPathAPI)
+  {
+    xpathSupport = priorXPathAPI.xpathSupport;
+  }
+
+  /**
+   * Get the XPathContext that is used by this object.
+   *
+   * @return The XPathContext, never null.
+   */
+  public XPathContext getXPathContext()
+  {
+    return xpathSupport;
+  }
+
+  /**
+   * Drop every DTM wrapper held by this object, so that the next call
+   * sees the current state of the DOM.
+   */
+  public void invalidate()
+  {
+    xpathSupport.reset();
+  }
+
+  /**
+   * Drop the DTM wrapper for the document that holds the given node,
+   * so that the next call against that document sees its current state.
+   * Wrappers for other documents are kept.
+   *
+   * @param node Any node of the document that was changed.
+   */
+  public void invalidate(Node node)
+  {
+
+    Node root = (node.getNodeType() == Node.DOCUMENT_NODE)
+                ? node : node.getOwnerDocument();
+
+    if (null == root)
+      root = node;
+
+    DTMManager mgr = xpathSupport.getDTMManager();
+    DTM dtm = mgr.getDTM(mgr.getDTMHandleFromNode(root));
+
+    if (null != dtm)
+      mgr.release(dtm, true);
+  }
+
+  /**
+   * Use an XPath string to select a single node. XPath namespace
+   * prefixes are resolved from the context node, which may not
+   * be what you want (see the next method).
+   *
+   * @param contextNode The node to start searching from.
+   * @param str A valid XPath string.
+   * @return The first node found that matches the XPath, or null.
+   *
+   * @throws TransformerException
+   */
+  public Node selectSingleNode(Node contextNode, String str)
+          throws TransformerException
+  {
+    return selectSingleNode(contextNode, str, contextNode);
+  }
+
+  /**
+   * Use an XPath string to select a single node.
+   * XPath namespace prefixes are resolved from the namespaceNode.
+   *
+   * @param contextNode The node to start searching from.
+   * @param str A valid XPath string.
+   * @param namespaceNode The node from which prefixes in the XPath will be resolved to namespaces.
+   * @return The first node found that matches the XPath, or null.
+   *
+   * @throws TransformerException
+   */
+  public Node selectSingleNode(
+          Node contextNode, String str, Node namespaceNode)
+            throws TransformerException
+  {
+
+    // Have the XObject return its result as a NodeSetDTM.
+    NodeIterator nl = selectNodeIterator(contextNode, str, namespaceNode);
+
+    // Return the first node, or null
+    return nl.nextNode();
+  }
+
+  /**
+   *  Use an XPath string to select a nodelist.
+   *  XPath namespace prefixes are resolved from the contextNode.
+   *
+   *  @param contextNode The node to start searching from.
+   *  @param str A valid XPath string.
+   *  @return A NodeIterator, should never be null.
+   *
+   * @throws TransformerException
+   */
+  public NodeIterator selectNodeIterator(Node contextNode, String str)
+          throws TransformerException
+  {
+    return selectNodeIterator(contextNode, str, contextNode);
+  }
+
+  /**
+   *  Use an XPath string to select a nodelist.
+   *  XPath namespace prefixes are resolved from the namespaceNode.
+   *
+   *  @param contextNode The node to start searching from.
+   *  @param str A valid XPath string.
+   *  @param namespaceNode The node from which prefixes in the XPath will be resolved to namespaces.
+   *  @return A NodeIterator, should never be null.
+   *
+   * @throws TransformerException
+   */
+  public NodeIterator selectNodeIterator(
+          Node contextNode, String str, Node namespaceNode)
+            throws TransformerException
+  {
+
+    // Execute the XPath, and have it return the result
+    XObject list = eval(contextNode, str, namespaceNode);
+
+    // Have the XObject return its result as a NodeSetDTM.
+    return list.nodeset();
+  }
+
+  /**
+   *  Use an XPath string to select a nodelist.
+   *  XPath namespace prefixes are resolved from the contextNode.
+   *
+   *  @param contextNode The node to start searching from.
+   *  @param str A valid XPath string.
+   *  @return A NodeIterator, should never be null.
+   *
+   * @throws TransformerException
+   */
+  public NodeList selectNodeList(Node contextNode, String str)
+          throws TransformerException
+  {
+    return selectNodeList(contextNode, str, contextNode);
+  }
+
+  /**
+   *  Use an XPath string to select a nodelist.
+   *  XPath namespace prefixes are resolved from the namespaceNode.
+   *
+   *  @param contextNode The node to start searching from.
+   *  @param str A valid XPath string.
+   *  @param namespaceNode The node from which prefixes in the XPath will be resolved to namespaces.
+   *  @return A NodeIterator, should never be null.
+   *
+   * @throws TransformerException
+   */
+  public NodeList selectNodeList(
+          Node contextNode, String str, Node namespaceNode)
+            throws TransformerException
+  {
+
+    // Execute the XPath, and have it return the result
+    XObject list = eval(contextNode, str, namespaceNode);
+
+    // Return a NodeList.
+    return list.nodelist();
+  }
+
+  /**
+   *  Evaluate XPath string to an XObject.  Using this method,
+   *  XPath namespace prefixes will be resolved from the namespaceNode.
+   *  @param contextNode The node to start searching from.
+   *  @param str A valid XPath string.
+   *  @return An XObject, which can be used to obtain a string, number, nodelist, etc, should never be null.
+   *  @see org.apache.xpath.objects.XObject
+   *
+   * @throws TransformerException
+   */
+  public XObject eval(Node contextNode, String str)
+          throws TransformerException
+  {
+    return eval(contextNode, str, contextNode);
+  }
+
+  /**
+   *  Evaluate XPath string to an XObject.
+   *  XPath namespace prefixes are resolved from the namespaceNode.
+   *
+   *  @param contextNode The node to start searching from.
+   *  @param str A valid XPath string.
+   *  @param namespaceNode The node from which prefixes in the XPath will be resolved to namespaces.
+   *  @return An XObject, which can be used to obtain a string, number, nodelist, etc, should never be null.
+   *  @see org.apache.xpath.objects.XObject
+   *
+   * @throws TransformerException
+   */
+  public XObject eval(Node contextNode, String str, Node namespaceNode)
+          throws TransformerException
+  {
+
+    // Prefixes are resolved from the document element if the namespace
+    // node is a root node, or else from the namespace node itself.
+    PrefixResolverDefault prefixResolver = new PrefixResolverDefault(
+      (namespaceNode.getNodeType() == Node.DOCUMENT_NODE)
+      ? ((Document) namespaceNode).getDocumentElement() : namespaceNode);
+
+    return eval(contextNode, str, prefixResolver);
+  }
+
+  /**
+   *   Evaluate XPath string to an XObject.
+   *   XPath namespace prefixes are resolved by the prefixResolver.
+   *
+   *   @param contextNode The node to start searching from.
+   *   @param str A valid XPath string.
+   *   @param prefixResolver Will be called if the parser encounters namespace
+   *                         prefixes, to resolve the prefixes to URLs.
+   *   @return An XObject, which can be used to obtain a string, number, nodelist, etc, should never be null.
+   *   @see org.apache.xpath.objects.XObject
+   *
+   * @throws TransformerException
+   */
+  public XObject eval(
+          Node contextNode, String str, PrefixResolver prefixResolver)
+            throws TransformerException
+  {
+
+    XPath xpath = getXPath(str, prefixResolver);
+    int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+
+    return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+  }
+
+  /** Default number of compiled XPaths kept by the cache. */
+  static final int DEFAULT_CACHE_SIZE = 256;
+
+  /** Compiled XPaths, keyed by expression and namespace bindings. */
+  private static final Hashtable m_cache = new Hashtable();
+
+  /** Most recently used end of the cache's LRU list. */
+  private static CacheEntry m_head = null;
+
+  /** Least recently used end of the cache's LRU list. */
+  private static CacheEntry m_tail = null;
+
+  /** The maximum number of compiled XPaths kept by the cache. */
+  private static int m_cacheSize = getConfiguredCacheSize();
+
+  /**
+   * Read the cache size from the system properties.
+   *
+   * @return The maximum number of compiled XPaths to keep.
+   */
+  private static int getConfiguredCacheSize()
+  {
+
+    int size = DEFAULT_CACHE_SIZE;
+
+    try
+    {
+      String prop = System.getProperty(
+        "org.apache.xpath.CachedXPathAPI.cacheSize");
+
+      if (null != prop)
+      {
+        int configured = Integer.parseInt(prop.trim());
+
+        if (configured >= 0)
+          size = configured;
+      }
+    }
+    catch (SecurityException se){}
+    catch (NumberFormatException nfe){}
+
+    return size;
+  }
+
+  /**
+   * Set the maximum number of compiled XPaths kept by the shared cache.
+   * Zero turns the cache off.
+   *
+   * @param size The new cache size, zero or more.
+   */
+  public static synchronized void setCacheSize(int size)
+  {
+
+    m_cacheSize = (size < 0) ? 0 : size;
+
+    while (m_cache.size() > m_cacheSize)
+      removeEntry(m_tail);
+  }
+
+  /**
+   * Get the maximum number of compiled XPaths kept by the shared cache.
+   *
+   * @return The cache size.
+   */
+  public static synchronized int getCacheSize()
+  {
+    return m_cacheSize;
+  }
+
+  /**
+   * Remove every compiled XPath from the shared cache.
+   */
+  public static synchronized void clearCache()
+  {
+
+    m_cache.clear();
+
+    m_head = m_tail = null;
+  }
+
+  /**
+   * Get a compiled select XPath for an expression, from the shared
+   * cache if it has already been compiled with the same bindings for
+   * the prefixes it uses.
+   *
+   * @param str A valid XPath string.
+   * @param prefixResolver Resolves the prefixes in the expression.
+   * @return The compiled XPath, never null.
+   *
+   * @throws TransformerException if the expression is not valid.
+   */
+  public static XPath getXPath(String str, PrefixResolver prefixResolver)
+          throws TransformerException
+  {
+    return getXPath(str, null, prefixResolver);
+  }
+
+  /**
+   * Get a compiled select XPath for an expression, from the shared
+   * cache if it has already been compiled at the same location with
+   * the same bindings for the prefixes it uses.
+   *
+   * @param str A valid XPath string.
+   * @param locator The location of the expression, may be null.
+   * @param prefixResolver Resolves the prefixes in the expression.
+   * @return The compiled XPath, never null.
+   *
+   * @throws TransformerException if the expression is not valid.
+   */
+  public static XPath getXPath(
+          String str, SourceLocator locator, PrefixResolver prefixResolver)
+            throws TransformerException
+  {
+
+    String key = getCacheKey(str, prefixResolver);
+
+    if (null == key)
+      return new XPath(str, locator, prefixResolver, XPath.SELECT, null);
+
+    // The locator ends up in the compiled expressions' error reports,
+    // so XPaths compiled for different locations are kept apart.
+    if (null != locator)
+      key = locator.getSystemId() + '\u0000' + locator.getLineNumber() + ':'
+            + locator.getColumnNumber() + '\u0000' + key;
+
+    XPath xpath = lookupXPath(key);
+
+    if (null == xpath)
+    {
+
+      // Compile outside the lock; two threads compiling the same
+      // expression at once is harmless.
+      xpath = new XPath(str, locator, prefixResolver, XPath.SELECT, null);
+
+      storeXPath(key, xpath);
+    }
+
+    return xpath;
+  }
+
+  /**
+   * Build the cache key for an expression, which is the expression
+   * followed by the namespace URI of every prefix it uses.  Prefixes
+   * are found by scanning for ':' outside of string literals, skipping
+   * the '::' of axis names.
+   *
+   * @param str The XPath string.
+   * @param prefixResolver Resolves the prefixes in the expression.
+   * @return The key, or null if the expression should not be cached.
+   */
+  private static String getCacheKey(String str, PrefixResolver prefixResolver)
+  {
+
+    // The namespace axis resolves its node test's local name as a
+    // prefix, which the scan below can't see.
+    if (str.indexOf("namespace") >= 0)
+      return null;
+
+    int n = str.length();
+    StringBuffer key = null;
+
+    for (int i = 0; i < n; i++)
+    {
+      char c = str.charAt(i);
+
+      if (c == '"' || c == '\'')
+      {
+        int end = str.indexOf(c, i + 1);
+
+        if (end < 0)
+          break;
+
+        i = end;
+      }
+      else if (c == ':')
+      {
+        if (i + 1 < n && str.charAt(i + 1) == ':')
+        {
+          i++;
+
+          continue;
+        }
+
+        int start = i;
+
+        while (start > 0 && isNameChar(str.charAt(start - 1)))
+          start--;
+
+        String prefix = str.substring(start, i);
+
+        if (null == key)
+        {
+          key = new StringBuffer(str);
+        }
+
+        key.append('\u0000').append(prefix).append('=');
+
+        if (null != prefixResolver && prefix.length() > 0)
+        {
+          String uri = prefixResolver.getNamespaceForPrefix(prefix);
+
+          key.append((null == uri) ? "\u0001" : uri);
+        }
+      }
+    }
+
+    return (null == key) ? str : key.toString();
+  }
+
+  /**
+   * Tell if a character can appear in a namespace prefix.
+   *
+   * @param c The character.
+   * @return true if it is an NCName character.
+   */
+  private static boolean isNameChar(char c)
+  {
+    return c > 0x7F || Character.isLetterOrDigit(c) || c == '_' || c == '-'
+           || c == '.';
+  }
+
+  /**
+   * Look up a compiled XPath and mark it most recently used.
+   *
+   * @param key The cache key.
+   * @return The compiled XPath, or null.
+   */
+  private static synchronized XPath lookupXPath(String key)
+  {
+
+    CacheEntry entry = (CacheEntry) m_cache.get(key);
+
+    if (null == entry)
+      return null;
+
+    if (entry != m_head)
+    {
+      unlink(entry);
+      link(entry);
+    }
+
+    return entry.m_xpath;
+  }
+
+  /**
+   * Add a compiled XPath to the cache, evicting the least recently
+   * used ones if the cache is full.
+   *
+   * @param key The cache key.
+   * @param xpath The compiled XPath.
+   */
+  private static synchronized void storeXPath(String key, XPath xpath)
+  {
+
+    if (m_cacheSize <= 0 || null != m_cache.get(key))
+      return;
+
+    while (m_cache.size() >= m_cacheSize)
+      removeEntry(m_tail);
+
+    CacheEntry entry = new CacheEntry(key, xpath);
+
+    m_cache.put(key, entry);
+    link(entry);
+  }
+
+  /**
+   * Remove an entry from the cache and its LRU list.
+   *
+   * @param entry The entry to remove.
+   */
+  private static void removeEntry(CacheEntry entry)
+  {
+
+    m_cache.remove(entry.m_key);
+    unlink(entry);
+  }
+
+  /**
+   * Put an entry at the most recently used end of the LRU list.
+   *
+   * @param entry The entry to link.
+   */
+  private static void link(CacheEntry entry)
+  {
+
+    entry.m_prev = null;
+    entry.m_next = m_head;
+
+    if (null != m_head)
+      m_head.m_prev = entry;
+    else
+      m_tail = entry;
+
+    m_head = entry;
+  }
+
+  /**
+   * Take an entry out of the LRU list.
+   *
+   * @param entry The entry to unlink.
+   */
+  private static void unlink(CacheEntry entry)
+  {
+
+    if (null != entry.m_prev)
+      entry.m_prev.m_next = entry.m_next;
+    else
+      m_head = entry.m_next;
+
+    if (null != entry.m_next)
+      entry.m_next.m_prev = entry.m_prev;
+    else
+      m_tail = entry.m_prev;
+
+    entry.m_prev = entry.m_next = null;
+  }
+
+  /**
+   * An entry in the compiled XPath cache.
+   */
+  private static class CacheEntry
+  {
+
+    /** The cache key. */
+    final String m_key;
+
+    /** The compiled XPath. */
+    final XPath m_xpath;
+
+    /** Neighbours in the LRU list. */
+    CacheEntry m_prev, m_next;
+
+    /**
+     * Create a cache entry.
+     *
+     * @param key The cache key.
+     * @param xpath The compiled XPath.
+     */
+    CacheEntry(String key, XPath xpath)
+    {
+      m_key = key;
+      m_xpath = xpath;
+    }
+  }
+}
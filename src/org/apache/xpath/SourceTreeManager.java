@@ -75,7 +75,6 @@ import javax.xml.transform.URIResolver;
 import javax.xml.transform.TransformerException;
 
 import org.xml.sax.InputSource;
-import org.xml.sax.helpers.XMLReaderFactory;
 import org.xml.sax.XMLReader;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.EntityResolver;
@@ -83,6 +82,7 @@ import org.xml.sax.EntityResolver;
 // import org.xml.sax.Locator;
 import org.apache.xalan.res.XSLMessages;
 import org.apache.xml.utils.SystemIDResolver;
+import org.apache.xml.utils.XMLReaderManager;
 import org.apache.xml.utils.SAXSourceLocator;
 import org.apache.xpath.res.XPATHErrorResources;
 
@@ -371,7 +371,10 @@ public class SourceTreeManager
    * @returns a SAX2 XMLReader to use to resolve the inputSource argument.
    * @param locator The location of the original caller, for diagnostic purposes.
    *
-   * @return non-null XMLReader reference ready to parse.
+   * @return non-null XMLReader reference ready to parse.  Unless it came
+   * with the Source, it is taken from the shared XMLReaderManager pool,
+   * and may be handed back with {@link #releaseXMLReader} once the parse
+   * is over.
    *
    * @throws TransformerException if the reader can not be created.
    */
@@ -387,25 +390,7 @@ public class SourceTreeManager
       boolean isUserReader = (reader != null);
 
       if (null == reader)
-      {
-        try {
-          javax.xml.parsers.SAXParserFactory factory=
-              javax.xml.parsers.SAXParserFactory.newInstance();
-          factory.setNamespaceAware( true );
-          javax.xml.parsers.SAXParser jaxpParser=
-              factory.newSAXParser();
-          reader=jaxpParser.getXMLReader();
-          
-        } catch( javax.xml.parsers.ParserConfigurationException ex ) {
-          throw new org.xml.sax.SAXException( ex );
-        } catch( javax.xml.parsers.FactoryConfigurationError ex1 ) {
-            throw new org.xml.sax.SAXException( ex1.toString() );
-        } catch( NoSuchMethodError ex2 ) {
-        }
-        catch (AbstractMethodError ame){}
-        if(null == reader)
-          reader = XMLReaderFactory.createXMLReader();
-      }
+        reader = XMLReaderManager.getInstance().getXMLReader();
 
       try
       {
@@ -431,4 +416,19 @@ public class SourceTreeManager
       throw new TransformerException(se.getMessage(), locator, se);
     }
   }
+
+  /**
+   * Hand back a reader that was returned by getXMLReader(), once the
+   * parse it was used for has finished, so that it can be reused.
+   * Readers that came with the Source must not be passed here.  Callers
+   * that never release their readers still work; the readers are just
+   * not reused.
+   *
+   * @param reader The reader, which must not be used by the caller
+   *               afterwards.
+   */
+  public static void releaseXMLReader(XMLReader reader)
+  {
+    XMLReaderManager.getInstance().releaseXMLReader(reader);
+  }
 }
@@ -78,9 +78,10 @@ import org.apache.xml.dtm.ref.DTMManagerDefault;
 /**
  * The methods in this class are convenience methods into the
  * low-level XPath API.
- * These functions tend to be a little slow, since a number of objects must be
- * created for each evaluation.  A faster way is to precompile the
- * XPaths using the low-level API, and then just use the XPaths
+ * These functions tend to be a little slow, since a new XPathContext and
+ * DTM wrapper must be created for each evaluation.  A faster way is to use
+ * a {@link CachedXPathAPI}, which keeps them between calls, or to precompile
+ * the XPaths using the low-level API, and then just use the XPaths
  * over and over.
  * @see <a href="http://www.w3.org/TR/xpath">XPath Specification</a>
  */
@@ -266,8 +267,8 @@ public class XPathAPI
       (namespaceNode.getNodeType() == Node.DOCUMENT_NODE)
       ? ((Document) namespaceNode).getDocumentElement() : namespaceNode);
 
-    // Create the XPath object.
-    XPath xpath = new XPath(str, null, prefixResolver, XPath.SELECT, null);
+    // Get the XPath object, compiled once and shared by later calls.
+    XPath xpath = CachedXPathAPI.getXPath(str, prefixResolver);
 
     // Execute the XPath, and have it return the result
     // return xpath.execute(xpathSupport, contextNode, prefixResolver);
@@ -308,8 +309,8 @@ public class XPathAPI
     // (Changed from: XPathContext xpathSupport = new XPathContext();
     //    because XPathContext is weak in a number of areas... perhaps
     //    XPathContext should be done away with.)
-    // Create the XPath object.
-    XPath xpath = new XPath(str, null, prefixResolver, XPath.SELECT, null);
+    // Get the XPath object, compiled once and shared by later calls.
+    XPath xpath = CachedXPathAPI.getXPath(str, prefixResolver);
 
     // Execute the XPath, and have it return the result
     XPathContext xpathSupport = new XPathContext();
@@ -61,6 +61,7 @@ import java.io.File;
 import java.io.IOException;
 
 import java.util.Stack;
+import java.util.Vector;
 
 import java.lang.reflect.Method;
 
@@ -103,6 +104,7 @@ import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.dtm.DTMFilter;
 import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMWSFilter;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2RTFDTM;
 
 // Utility imports.
 import org.apache.xml.utils.SAXSourceLocator;
@@ -202,6 +204,29 @@ public class XPathContext extends DTMManager // implements ExpressionContext
   {
     return m_dtmManager.getDTMIdentity(dtm);
   }
+
+  /**
+   * Get the first free DTM ID available.
+   *
+   * @return A DTM ID that is not in use.
+   */
+  public int getFirstFreeDTMID()
+  {
+    return m_dtmManager.getFirstFreeDTMID();
+  }
+
+  /**
+   * Register a DTM under a further DTM ID, for the block of its nodes
+   * that starts at the given node index.
+   *
+   * @param dtm The DTM that claimed the ID.
+   * @param id The DTM ID.
+   * @param offset The node index addressed by node 0 of this DTM ID.
+   */
+  public void addDTM(DTM dtm, int id, int offset)
+  {
+    m_dtmManager.addDTM(dtm, id, offset);
+  }
 //  
   /**
    * Creates an empty <code>DocumentFragment</code> object. 
@@ -223,9 +248,121 @@ public class XPathContext extends DTMManager // implements ExpressionContext
    */
   public boolean release(DTM dtm, boolean shouldHardDelete)
   {
+    // The result tree fragment DTMs are reclaimed by popRTFContext(), not
+    // by the fragments that live in them.
+    if (null != m_rtfdtm_stack && m_rtfdtm_stack.contains(dtm))
+      return false;
+
     return m_dtmManager.release(dtm, shouldHardDelete);
   }
 
+  /**
+   * The DTMs that hold result tree fragments.  Fragments are built in the
+   * current one; when a fragment has to be built while another is still
+   * under construction, the next one up is used.
+   */
+  private Vector m_rtfdtm_stack = null;
+
+  /** Index of the result tree fragment DTM in use, or -1 if none. */
+  private int m_which_rtfdtm = -1;
+
+  /** The value of m_which_rtfdtm at each pushRTFContext(). */
+  private IntStack m_last_pushed_rtfdtm = new IntStack();
+
+  /**
+   * The index of the DTM that received the rewind mark at each
+   * pushRTFContext(), or -1 if none did.
+   */
+  private IntStack m_marked_rtfdtm = new IntStack();
+
+  /**
+   * Get a DTM to be used as a container for a new result tree fragment.
+   * Fragments share a few DTMs rather than getting one each, and are
+   * discarded in bulk by popRTFContext().
+   *
+   * @return a SAX2RTFDTM that has no tree under construction.
+   */
+  public DTM getRTFDTM()
+  {
+
+    if (null == m_rtfdtm_stack)
+      m_rtfdtm_stack = new Vector();
+
+    if (m_which_rtfdtm < 0)
+      m_which_rtfdtm = 0;
+
+    while (m_which_rtfdtm < m_rtfdtm_stack.size())
+    {
+      SAX2RTFDTM rtfdtm =
+        (SAX2RTFDTM) m_rtfdtm_stack.elementAt(m_which_rtfdtm);
+
+      if (!rtfdtm.isTreeIncomplete())
+        return rtfdtm;
+
+      // Still building a tree in this one; nest into the next.
+      m_which_rtfdtm++;
+    }
+
+    DTMWSFilter wsfilter = (m_owner instanceof DTMWSFilter)
+                           ? (DTMWSFilter) m_owner : null;
+    DTM rtfdtm = m_dtmManager.getDTM(null, true, wsfilter, false, false);
+
+    m_rtfdtm_stack.addElement(rtfdtm);
+
+    return rtfdtm;
+  }
+
+  /**
+   * Start a new scope for result tree fragments, typically when a variable
+   * stack frame is linked.  Fragments created until the matching
+   * popRTFContext() are discarded by it.
+   */
+  public void pushRTFContext()
+  {
+
+    m_last_pushed_rtfdtm.push(m_which_rtfdtm);
+
+    // Nothing to mark until the first fragment is built; popRTFContext
+    // will then empty whatever was created.
+    if (null == m_rtfdtm_stack)
+    {
+      m_marked_rtfdtm.push(-1);
+
+      return;
+    }
+
+    SAX2RTFDTM rtfdtm = (SAX2RTFDTM) getRTFDTM();
+
+    rtfdtm.pushRewindMark();
+    m_marked_rtfdtm.push(m_which_rtfdtm);
+  }
+
+  /**
+   * End the scope started by the matching pushRTFContext(), discarding
+   * every result tree fragment created within it.
+   */
+  public void popRTFContext()
+  {
+
+    int marked = m_marked_rtfdtm.pop();
+    int previous = m_last_pushed_rtfdtm.pop();
+
+    if (null == m_rtfdtm_stack)
+      return;
+
+    // DTMs above the marked one were only used for fragments nested in
+    // this scope, so they are emptied outright.
+    for (; m_which_rtfdtm > marked; m_which_rtfdtm--)
+    {
+      ((SAX2RTFDTM) m_rtfdtm_stack.elementAt(m_which_rtfdtm)).popRewindMark();
+    }
+
+    if (marked >= 0)
+      ((SAX2RTFDTM) m_rtfdtm_stack.elementAt(marked)).popRewindMark();
+
+    m_which_rtfdtm = previous;
+  }
+
   /**
    * Create a new <code>DTMIterator</code> based on an XPath
    * <a href="http://www.w3.org/TR/xpath#NT-LocationPath>LocationPath</a> or
@@ -336,6 +473,11 @@ public class XPathContext extends DTMManager // implements ExpressionContext
   {
     m_dtmManager = DTMManager.newInstance(
                    org.apache.xpath.objects.XMLStringFactoryImpl.getFactory());
+
+    m_rtfdtm_stack = null;
+    m_which_rtfdtm = -1;
+    m_last_pushed_rtfdtm.removeAllElements();
+    m_marked_rtfdtm.removeAllElements();
   }
 
   /** The current stylesheet locator. */
@@ -1039,6 +1181,18 @@ public class XPathContext extends DTMManager // implements ExpressionContext
   
   public class XPathExpressionContext implements ExpressionContext
   {
+    /**
+     * Return the XPathContext associated with this XPathExpressionContext.
+     * Extensions should use this judiciously and only when special processing
+     * requirements cannot be met another way.  Consider requesting an enhancement
+     * to the ExpressionContext interface to avoid having to call this method.
+     * @return the XPathContext associated with this XPathExpressionContext.
+     */
+     public XPathContext getXPathContext()
+     {
+       return XPathContext.this;
+     }
+
     /**
      * Return the DTMManager object.  Though XPathContext context extends 
      * the DTMManager, it really is a proxy for the real DTMManager.  If a 
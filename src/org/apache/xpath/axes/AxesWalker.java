@@ -284,6 +284,16 @@ public class AxesWalker extends PredicatedNodeTest
     m_nextWalker = walker;
   }
 
+  /**
+   * Get the axis this walker traverses.
+   *
+   * @return One of the axis values from org.apache.xml.dtm.Axis.
+   */
+  public int getAxis()
+  {
+    return m_axis;
+  }
+
   /**
    * Get the next walker in the location step chain.
    *
@@ -424,7 +434,8 @@ public class AxesWalker extends PredicatedNodeTest
     // different document. 
     while (
       (DTM.NULL != nextNode) && (DTM.NULL != m_prevReturned)
-      && getDTM(nextNode).getDocument() == getDTM(m_prevReturned).getDocument()
+      && getDTM(nextNode).getDocumentRoot(nextNode)
+         == getDTM(m_prevReturned).getDocumentRoot(m_prevReturned)
       && getDTM(nextNode).isNodeAfter(nextNode, m_prevReturned));
 
     m_prevReturned = nextNode;
@@ -537,6 +548,25 @@ public class AxesWalker extends PredicatedNodeTest
   /** True if an itteration has not begun.  */
   transient boolean m_isFresh;
 
+  /**
+   * Read the object from a serialization stream, and set the transient
+   * node handles to their initial values.
+   *
+   * @param stream Input stream to read from
+   *
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(java.io.ObjectInputStream stream)
+          throws java.io.IOException, ClassNotFoundException
+  {
+    stream.defaultReadObject();
+
+    m_root = DTM.NULL;
+    m_currentNode = DTM.NULL;
+    m_prevReturned = DTM.NULL;
+  }
+
   /** The next walker in the location step chain.
    *  @serial  */
   protected AxesWalker m_nextWalker;
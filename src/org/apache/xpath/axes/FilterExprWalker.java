@@ -271,6 +271,34 @@ public class FilterExprWalker extends AxesWalker
   /** I think this is always null right now.    */
   transient private int m_peek = DTM.NULL;
 
+  /**
+   * Read the object from a serialization stream, and set the transient
+   * node handle to its initial value.
+   *
+   * @param stream Input stream to read from
+   *
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(java.io.ObjectInputStream stream)
+          throws java.io.IOException, ClassNotFoundException
+  {
+    stream.defaultReadObject();
+
+    m_peek = DTM.NULL;
+  }
+
+  /**
+   * Get the inner contained expression of this filter.
+   *
+   * @return The filter expression, which is evaluated to get the
+   * nodes this walker returns.
+   */
+  public Expression getInnerExpression()
+  {
+    return m_expr;
+  }
+
   /**
    * Tell what's the maximum level this axes can descend to (which is actually
    * impossible to predict with this walker?).
@@ -950,7 +950,29 @@ public abstract class LocPathIterator extends PredicatedNodeTest
    * because the hold running state, and thus the original iterator
    * expression from the stylesheet pool can not be used.          
    */
-  protected IteratorPool m_clones = new IteratorPool(this);
+  transient protected IteratorPool m_clones = new IteratorPool(this);
+
+  /**
+   * Read the object from a serialization stream.  The clone pool and
+   * the other transient fields hold run-time state only, so they are set
+   * to their initial values.
+   *
+   * @param stream Input stream to read from
+   *
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(java.io.ObjectInputStream stream)
+          throws java.io.IOException, ClassNotFoundException
+  {
+    stream.defaultReadObject();
+
+    m_clones = new IteratorPool(this);
+    m_stackFrame = -1;
+    m_lastFetched = DTM.NULL;
+    m_context = DTM.NULL;
+    m_currentContextNode = DTM.NULL;
+  }
   
   /** 
    * The dtm of the context node.  Careful about using this... it may not 
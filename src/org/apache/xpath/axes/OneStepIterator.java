@@ -45,6 +45,16 @@ public class OneStepIterator extends ChildTestIterator
     m_axis = WalkerFactory.getAxisFromStep(compiler, firstStepPos);
     
   }
+
+  /**
+   * Get the axis this iterator traverses.
+   *
+   * @return One of the axis values from org.apache.xml.dtm.Axis.
+   */
+  public int getAxis()
+  {
+    return m_axis;
+  }
   
   /**
    * Initialize the context values for this expression
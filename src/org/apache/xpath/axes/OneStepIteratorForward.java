@@ -44,6 +44,16 @@ public class OneStepIteratorForward extends ChildTestIterator
     m_axis = WalkerFactory.getAxisFromStep(compiler, firstStepPos);
     
   }
+
+  /**
+   * Get the axis this iterator traverses.
+   *
+   * @return One of the axis values from org.apache.xml.dtm.Axis.
+   */
+  public int getAxis()
+  {
+    return m_axis;
+  }
   
 
   
@@ -127,7 +127,7 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
    *
    * @return A predicate expression.
    */
-  Expression getPredicate(int index)
+  public Expression getPredicate(int index)
   {
     return m_predicates[index];
   }
@@ -482,6 +482,28 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
    */
   transient protected int[] m_proximityPositions;
 
+  /**
+   * Read the object from a serialization stream, and set up the
+   * transient predicate state the way construction does.
+   *
+   * @param stream Input stream to read from
+   *
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(java.io.ObjectInputStream stream)
+          throws java.io.IOException, ClassNotFoundException
+  {
+    stream.defaultReadObject();
+
+    m_predicateIndex = -1;
+
+    int nPredicates = getPredicateCount();
+
+    if (nPredicates > 0)
+      m_proximityPositions = new int[nPredicates];
+  }
+
   /** If true, diagnostic messages about predicate execution will be posted.  */
   static final boolean DEBUG_PREDICATECOUNTING = false;
 
@@ -195,7 +195,28 @@ public class UnionPathIterator extends Expression
   }
 
   /** Pool of UnionPathIterators.  (The need for this has to be re-evaluated.  -sb) */
-  protected IteratorPool m_clones = new IteratorPool(this);
+  transient protected IteratorPool m_clones = new IteratorPool(this);
+
+  /**
+   * Read the object from a serialization stream.  The clone pool and
+   * the other transient fields hold run-time state only, so they are set
+   * to their initial values.
+   *
+   * @param stream Input stream to read from
+   *
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(java.io.ObjectInputStream stream)
+          throws java.io.IOException, ClassNotFoundException
+  {
+    stream.defaultReadObject();
+
+    m_clones = new IteratorPool(this);
+    m_lastFetched = DTM.NULL;
+    m_context = DTM.NULL;
+    m_currentContextNode = DTM.NULL;
+  }
 
   /**
    * Execute this iterator, meaning create a clone that can  
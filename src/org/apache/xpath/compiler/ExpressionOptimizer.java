@@ -0,0 +1,877 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xpath.compiler;
+
+import java.io.PrintWriter;
+
+import javax.xml.transform.SourceLocator;
+import javax.xml.transform.TransformerException;
+
+import org.apache.xml.dtm.Axis;
+import org.apache.xml.dtm.DTMFilter;
+import org.apache.xml.utils.WrappedRuntimeException;
+import org.apache.xpath.Expression;
+import org.apache.xpath.XPath;
+import org.apache.xpath.XPathContext;
+import org.apache.xpath.axes.AttributeIterator;
+import org.apache.xpath.axes.AxesWalker;
+import org.apache.xpath.axes.ChildIterator;
+import org.apache.xpath.axes.ChildTestIterator;
+import org.apache.xpath.axes.FilterExprWalker;
+import org.apache.xpath.axes.OneStepIterator;
+import org.apache.xpath.axes.OneStepIteratorForward;
+import org.apache.xpath.axes.PredicatedNodeTest;
+import org.apache.xpath.axes.SelfIteratorNoPredicate;
+import org.apache.xpath.axes.WalkingIterator;
+import org.apache.xpath.functions.FuncBoolean;
+import org.apache.xpath.functions.FuncCeiling;
+import org.apache.xpath.functions.FuncConcat;
+import org.apache.xpath.functions.FuncContains;
+import org.apache.xpath.functions.FuncCount;
+import org.apache.xpath.functions.FuncExtFunction;
+import org.apache.xpath.functions.FuncFalse;
+import org.apache.xpath.functions.FuncFloor;
+import org.apache.xpath.functions.FuncGenerateId;
+import org.apache.xpath.functions.FuncLocalPart;
+import org.apache.xpath.functions.FuncNamespace;
+import org.apache.xpath.functions.FuncNormalizeSpace;
+import org.apache.xpath.functions.FuncNot;
+import org.apache.xpath.functions.FuncNumber;
+import org.apache.xpath.functions.FuncQname;
+import org.apache.xpath.functions.FuncRound;
+import org.apache.xpath.functions.FuncStartsWith;
+import org.apache.xpath.functions.FuncString;
+import org.apache.xpath.functions.FuncStringLength;
+import org.apache.xpath.functions.FuncSubstring;
+import org.apache.xpath.functions.FuncSubstringAfter;
+import org.apache.xpath.functions.FuncSubstringBefore;
+import org.apache.xpath.functions.FuncSum;
+import org.apache.xpath.functions.FuncTranslate;
+import org.apache.xpath.functions.FuncTrue;
+import org.apache.xpath.functions.FuncUnparsedEntityURI;
+import org.apache.xpath.functions.Function;
+import org.apache.xpath.functions.Function2Args;
+import org.apache.xpath.functions.Function3Args;
+import org.apache.xpath.functions.FunctionDef1Arg;
+import org.apache.xpath.functions.FunctionMultiArgs;
+import org.apache.xpath.functions.FunctionOneArg;
+import org.apache.xpath.functions.WrongNumberArgsException;
+import org.apache.xpath.objects.XBoolean;
+import org.apache.xpath.objects.XNumber;
+import org.apache.xpath.objects.XObject;
+import org.apache.xpath.objects.XString;
+import org.apache.xpath.operations.And;
+import org.apache.xpath.operations.Bool;
+import org.apache.xpath.operations.Div;
+import org.apache.xpath.operations.Equals;
+import org.apache.xpath.operations.Gt;
+import org.apache.xpath.operations.Gte;
+import org.apache.xpath.operations.Lt;
+import org.apache.xpath.operations.Lte;
+import org.apache.xpath.operations.Minus;
+import org.apache.xpath.operations.Mod;
+import org.apache.xpath.operations.Mult;
+import org.apache.xpath.operations.Neg;
+import org.apache.xpath.operations.NotEquals;
+import org.apache.xpath.operations.Operation;
+import org.apache.xpath.operations.Or;
+import org.apache.xpath.operations.Plus;
+import org.apache.xpath.operations.Quo;
+import org.apache.xpath.operations.UnaryOperation;
+import org.apache.xpath.operations.Variable;
+import org.apache.xpath.patterns.NodeTest;
+
+/**
+ * <meta name="usage" content="advanced"/>
+ * Rewrites compiled expression trees.  The rewrite done here is
+ * constant folding: an operation or a side-effect free function whose
+ * operands are all literals is evaluated once, at compile time, and
+ * replaced by its value.  This class also has the helpers the
+ * stylesheet optimizer uses to rewrite expressions: access to the
+ * operands of an expression, a structural comparison of expressions,
+ * and a readable form of an expression for diagnostics.
+ */
+public class ExpressionOptimizer
+{
+
+  /** Where rewrites are reported, or null. */
+  private PrintWriter m_diagnostics;
+
+  /** The context expressions are folded in, created when needed. */
+  private XPathContext m_foldContext = null;
+
+  /**
+   * Construct an optimizer.
+   *
+   * @param diagnostics Where to report rewrites, or null.
+   */
+  public ExpressionOptimizer(PrintWriter diagnostics)
+  {
+    m_diagnostics = diagnostics;
+  }
+
+  /**
+   * Fold the constant sub-expressions of an XPath.
+   *
+   * @param xpath The XPath to rewrite.
+   * @param locator Where the XPath comes from, for diagnostics, may be null.
+   */
+  public void fold(XPath xpath, SourceLocator locator)
+  {
+
+    Expression expr = xpath.getExpression();
+    Expression folded = fold(expr, locator);
+
+    if (folded != expr)
+      xpath.setExpression(folded);
+  }
+
+  /**
+   * Fold the constant sub-expressions of an expression.  The operands
+   * of the expression are replaced in place.
+   *
+   * @param expr The expression to rewrite.
+   * @param locator Where the expression comes from, for diagnostics,
+   * may be null.
+   *
+   * @return The expression, or the literal that replaces it.
+   */
+  public Expression fold(Expression expr, SourceLocator locator)
+  {
+
+    int n = getOperandCount(expr);
+    boolean constant = true;
+
+    for (int i = 0; i < n; i++)
+    {
+      Expression operand = getOperand(expr, i);
+      Expression folded = fold(operand, locator);
+
+      if (folded != operand)
+        setOperand(expr, i, folded);
+
+      if (!isConstant(folded))
+        constant = false;
+    }
+
+    if (!constant || !isFoldable(expr))
+      return expr;
+
+    try
+    {
+      if (null == m_foldContext)
+        m_foldContext = new XPathContext();
+
+      XObject result = expr.execute(m_foldContext);
+
+      if (isConstant(result))
+      {
+        if (null != m_diagnostics)
+        {
+          m_diagnostics.println(getLocation(locator) + "folded "
+                                + describe(expr) + " to " + describe(result));
+        }
+
+        return result;
+      }
+    }
+    catch (TransformerException te)
+    {
+
+      // Leave the expression alone, so the error is reported at run
+      // time, if the expression is ever evaluated.
+    }
+
+    return expr;
+  }
+
+  /**
+   * Tell if an expression is a literal string, number, or boolean.
+   *
+   * @param expr The expression, may be null.
+   *
+   * @return true if the expression is a literal.
+   */
+  public static boolean isConstant(Expression expr)
+  {
+    return (expr instanceof XString) || (expr instanceof XNumber)
+           || (expr instanceof XBoolean);
+  }
+
+  /**
+   * Tell if an expression can be evaluated at compile time when its
+   * operands are literals.  These are the operators, and the string,
+   * number and boolean functions that do not read the context.
+   *
+   * @param expr The expression.
+   *
+   * @return true if the expression can be folded.
+   */
+  public static boolean isFoldable(Expression expr)
+  {
+
+    if ((expr instanceof Operation) || (expr instanceof UnaryOperation))
+      return true;
+
+    // Without its argument, string() and friends read the context node.
+    if ((expr instanceof FunctionDef1Arg)
+            && (null == ((FunctionDef1Arg) expr).getArg0()))
+      return false;
+
+    return (expr instanceof FuncConcat) || (expr instanceof FuncContains)
+           || (expr instanceof FuncStartsWith)
+           || (expr instanceof FuncSubstring)
+           || (expr instanceof FuncSubstringBefore)
+           || (expr instanceof FuncSubstringAfter)
+           || (expr instanceof FuncStringLength)
+           || (expr instanceof FuncNormalizeSpace)
+           || (expr instanceof FuncTranslate) || (expr instanceof FuncString)
+           || (expr instanceof FuncNumber) || (expr instanceof FuncBoolean)
+           || (expr instanceof FuncNot) || (expr instanceof FuncTrue)
+           || (expr instanceof FuncFalse) || (expr instanceof FuncFloor)
+           || (expr instanceof FuncCeiling) || (expr instanceof FuncRound);
+  }
+
+  /**
+   * Tell if the value of an expression depends on nothing but the
+   * values of its operands.  This is true of the foldable expressions,
+   * and of the node-set functions that are given their argument.
+   *
+   * @param expr The expression.
+   *
+   * @return true if the expression does not read the context.
+   */
+  public static boolean isPure(Expression expr)
+  {
+
+    if (isFoldable(expr))
+      return true;
+
+    if ((expr instanceof FunctionDef1Arg)
+            && (null == ((FunctionDef1Arg) expr).getArg0()))
+      return false;
+
+    return (expr instanceof FuncCount) || (expr instanceof FuncSum)
+           || (expr instanceof FuncGenerateId)
+           || (expr instanceof FuncLocalPart)
+           || (expr instanceof FuncNamespace)
+           || (expr instanceof FuncQname);
+  }
+
+  /**
+   * Get the number of operands of an expression.  Only the operands
+   * of operators and functions are counted; the steps and predicates
+   * of a location path are not operands.
+   *
+   * @param expr The expression.
+   *
+   * @return The number of operands.
+   */
+  public static int getOperandCount(Expression expr)
+  {
+
+    if (expr instanceof Operation)
+      return 2;
+    else if (expr instanceof UnaryOperation)
+      return 1;
+    else if (expr instanceof FunctionOneArg)
+    {
+      if (null == ((FunctionOneArg) expr).getArg0())
+        return 0;
+
+      if (!(expr instanceof Function2Args)
+              || (null == ((Function2Args) expr).getArg1()))
+        return 1;
+
+      if (!(expr instanceof Function3Args)
+              || (null == ((Function3Args) expr).getArg2()))
+        return 2;
+
+      if (!(expr instanceof FunctionMultiArgs)
+              || (null == ((FunctionMultiArgs) expr).getArgs()))
+        return 3;
+
+      return 3 + ((FunctionMultiArgs) expr).getArgs().length;
+    }
+    else
+      return 0;
+  }
+
+  /**
+   * Get an operand of an expression.
+   *
+   * @param expr The expression.
+   * @param i The index of the operand, less than getOperandCount(expr).
+   *
+   * @return The operand.
+   */
+  public static Expression getOperand(Expression expr, int i)
+  {
+
+    if (expr instanceof Operation)
+      return (0 == i)
+             ? ((Operation) expr).getLeftOperand()
+             : ((Operation) expr).getRightOperand();
+    else if (expr instanceof UnaryOperation)
+      return ((UnaryOperation) expr).getOperand();
+
+    switch (i)
+    {
+    case 0 :
+      return ((FunctionOneArg) expr).getArg0();
+    case 1 :
+      return ((Function2Args) expr).getArg1();
+    case 2 :
+      return ((Function3Args) expr).getArg2();
+    default :
+      return ((FunctionMultiArgs) expr).getArgs()[i - 3];
+    }
+  }
+
+  /**
+   * Replace an operand of an expression.
+   *
+   * @param expr The expression.
+   * @param i The index of the operand, less than getOperandCount(expr).
+   * @param operand The new operand.
+   */
+  public static void setOperand(Expression expr, int i, Expression operand)
+  {
+
+    if (expr instanceof Operation)
+    {
+      Operation op = (Operation) expr;
+
+      if (0 == i)
+        op.setLeftRight(operand, op.getRightOperand());
+      else
+        op.setLeftRight(op.getLeftOperand(), operand);
+    }
+    else if (expr instanceof UnaryOperation)
+      ((UnaryOperation) expr).setRight(operand);
+    else if (i < 3)
+    {
+      try
+      {
+        ((Function) expr).setArg(operand, i);
+      }
+      catch (WrongNumberArgsException wnae)
+      {
+        throw new WrappedRuntimeException(wnae);
+      }
+    }
+    else
+    {
+
+      // setArg appends past the third argument, so replace in place.
+      ((FunctionMultiArgs) expr).getArgs()[i - 3] = operand;
+    }
+  }
+
+  /**
+   * Tell if two expressions are the same, in that they are built the
+   * same way from the same parts.  Expressions this class does not
+   * know how to compare are never the same as another expression.
+   *
+   * @param a An expression, may be null.
+   * @param b Another expression, may be null.
+   *
+   * @return true if the expressions always give the same value in the
+   * same context.
+   */
+  public static boolean equal(Expression a, Expression b)
+  {
+
+    if (a == b)
+      return true;
+
+    if ((null == a) || (null == b) || (a.getClass() != b.getClass()))
+      return false;
+
+    if (a instanceof XObject)
+      return isConstant(a) && ((XObject) a).equals((XObject) b);
+
+    if (a instanceof Variable)
+      return ((Variable) a).getQName().equals(((Variable) b).getQName());
+
+    if ((a instanceof Operation) || (a instanceof UnaryOperation)
+            || (a instanceof Function))
+    {
+
+      // The name of an extension function is not part of its class.
+      if (a instanceof FuncExtFunction)
+        return false;
+
+      int n = getOperandCount(a);
+
+      if (n != getOperandCount(b))
+        return false;
+
+      for (int i = 0; i < n; i++)
+      {
+        if (!equal(getOperand(a, i), getOperand(b, i)))
+          return false;
+      }
+
+      return true;
+    }
+
+    if (a instanceof WalkingIterator)
+    {
+      AxesWalker wa = ((WalkingIterator) a).getFirstWalker();
+      AxesWalker wb = ((WalkingIterator) b).getFirstWalker();
+
+      for (; (null != wa) && (null != wb);
+              wa = wa.getNextWalker(), wb = wb.getNextWalker())
+      {
+        if ((wa.getClass() != wb.getClass())
+                || (wa.getAxis() != wb.getAxis()) ||!equalTests(wa, wb))
+          return false;
+
+        if ((wa instanceof FilterExprWalker)
+                &&!equal(((FilterExprWalker) wa).getInnerExpression(),
+                         ((FilterExprWalker) wb).getInnerExpression()))
+          return false;
+      }
+
+      return (null == wa) && (null == wb);
+    }
+
+    if (a instanceof OneStepIterator)
+      return (((OneStepIterator) a).getAxis()
+              == ((OneStepIterator) b).getAxis())
+             && equalTests((PredicatedNodeTest) a, (PredicatedNodeTest) b);
+
+    if (a instanceof OneStepIteratorForward)
+      return (((OneStepIteratorForward) a).getAxis()
+              == ((OneStepIteratorForward) b).getAxis())
+             && equalTests((PredicatedNodeTest) a, (PredicatedNodeTest) b);
+
+    // The axis of these is given by their class.
+    if ((a instanceof ChildTestIterator) || (a instanceof ChildIterator)
+            || (a instanceof SelfIteratorNoPredicate))
+      return equalTests((PredicatedNodeTest) a, (PredicatedNodeTest) b);
+
+    return false;
+  }
+
+  /**
+   * Tell if two steps have the same node test and predicates.
+   *
+   * @param a A step.
+   * @param b Another step.
+   *
+   * @return true if the tests and predicates are the same.
+   */
+  private static boolean equalTests(PredicatedNodeTest a,
+                                    PredicatedNodeTest b)
+  {
+
+    if ((a.getWhatToShow() != b.getWhatToShow())
+            ||!equalStrings(a.getNamespace(), b.getNamespace())
+            ||!equalStrings(a.getLocalName(), b.getLocalName()))
+      return false;
+
+    int n = a.getPredicateCount();
+
+    if (n != b.getPredicateCount())
+      return false;
+
+    for (int i = 0; i < n; i++)
+    {
+      if (!equal(a.getPredicate(i), b.getPredicate(i)))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Compare two strings that may be null.
+   *
+   * @param a A string, may be null.
+   * @param b Another string, may be null.
+   *
+   * @return true if both are null, or if they are equal.
+   */
+  private static boolean equalStrings(String a, String b)
+  {
+    return (null == a) ? (null == b) : a.equals(b);
+  }
+
+  /**
+   * Get a readable form of an expression, for diagnostics.  The form
+   * is close to XPath syntax, but is not meant to be parsed again.
+   *
+   * @param expr The expression.
+   *
+   * @return A string describing the expression.
+   */
+  public static String describe(Expression expr)
+  {
+
+    StringBuffer buf = new StringBuffer();
+
+    describe(expr, buf);
+
+    return buf.toString();
+  }
+
+  /**
+   * Append a readable form of an expression to a buffer.
+   *
+   * @param expr The expression, may be null.
+   * @param buf The buffer to append to.
+   */
+  private static void describe(Expression expr, StringBuffer buf)
+  {
+
+    if (expr instanceof XString)
+    {
+      String s = ((XString) expr).str();
+      char quote = (s.indexOf('\'') < 0) ? '\'' : '"';
+
+      buf.append(quote).append(s).append(quote);
+    }
+    else if (expr instanceof XNumber)
+      buf.append(((XNumber) expr).str());
+    else if (expr instanceof XBoolean)
+      buf.append(((XBoolean) expr).bool() ? "true()" : "false()");
+    else if (expr instanceof Variable)
+      buf.append('$').append(((Variable) expr).getQName().toString());
+    else if (expr instanceof Operation)
+    {
+      buf.append('(');
+      describe(((Operation) expr).getLeftOperand(), buf);
+      buf.append(' ').append(getOperator(expr)).append(' ');
+      describe(((Operation) expr).getRightOperand(), buf);
+      buf.append(')');
+    }
+    else if (expr instanceof Neg)
+    {
+      buf.append('-');
+      describe(((Neg) expr).getOperand(), buf);
+    }
+    else if ((expr instanceof UnaryOperation)
+             || ((expr instanceof Function)
+                 &&!(expr instanceof FuncExtFunction)))
+    {
+      int n = getOperandCount(expr);
+
+      buf.append(getFunctionName(expr)).append('(');
+
+      for (int i = 0; i < n; i++)
+      {
+        if (i > 0)
+          buf.append(", ");
+
+        describe(getOperand(expr, i), buf);
+      }
+
+      buf.append(')');
+    }
+    else if (expr instanceof WalkingIterator)
+    {
+      AxesWalker walker = ((WalkingIterator) expr).getFirstWalker();
+
+      if ((null != walker) && (Axis.ROOT == walker.getAxis())
+              && (null == walker.getNextWalker()))
+        buf.append('/');
+
+      for (; null != walker; walker = walker.getNextWalker())
+      {
+        if (null != walker.getPrevWalker())
+          buf.append('/');
+
+        if (walker instanceof FilterExprWalker)
+        {
+          Expression inner = ((FilterExprWalker) walker).getInnerExpression();
+
+          // ($a/b)[1] is not $a/b[1]: anything that is not a primary
+          // expression has to be bracketed before a predicate or step.
+          if (isPrimary(inner) || ((0 == walker.getPredicateCount())
+                                   && (null == walker.getNextWalker())))
+            describe(inner, buf);
+          else
+          {
+            buf.append('(');
+            describe(inner, buf);
+            buf.append(')');
+          }
+
+          describePredicates(walker, buf);
+        }
+        else if (Axis.ROOT != walker.getAxis())
+          describeStep(walker.getAxis(), walker, buf);
+      }
+    }
+    else if (expr instanceof OneStepIterator)
+      describeStep(((OneStepIterator) expr).getAxis(),
+                   (PredicatedNodeTest) expr, buf);
+    else if (expr instanceof OneStepIteratorForward)
+      describeStep(((OneStepIteratorForward) expr).getAxis(),
+                   (PredicatedNodeTest) expr, buf);
+    else if (expr instanceof AttributeIterator)
+      describeStep(Axis.ATTRIBUTE, (PredicatedNodeTest) expr, buf);
+    else if ((expr instanceof ChildTestIterator)
+             || (expr instanceof ChildIterator))
+      describeStep(Axis.CHILD, (PredicatedNodeTest) expr, buf);
+    else if (expr instanceof SelfIteratorNoPredicate)
+      buf.append('.');
+    else if (null == expr)
+      buf.append("null");
+    else
+    {
+      String name = expr.getClass().getName();
+
+      buf.append('<').append(name.substring(name.lastIndexOf('.') + 1))
+         .append('>');
+    }
+  }
+
+  /**
+   * Tell if the readable form of an expression is a primary expression,
+   * which can take a predicate without brackets.  Binary operations are
+   * already bracketed by describe.
+   *
+   * @param expr The expression.
+   *
+   * @return true for literals, variables, function calls and bracketed
+   * operations.
+   */
+  private static boolean isPrimary(Expression expr)
+  {
+    return (expr instanceof XObject) || (expr instanceof Variable)
+           || (expr instanceof Operation) || (expr instanceof Function)
+           || ((expr instanceof UnaryOperation) && !(expr instanceof Neg));
+  }
+
+  /**
+   * Append a readable form of a location step to a buffer.
+   *
+   * @param axis The axis of the step.
+   * @param step The node test and predicates of the step.
+   * @param buf The buffer to append to.
+   */
+  private static void describeStep(int axis, PredicatedNodeTest step,
+                                   StringBuffer buf)
+  {
+
+    if (Axis.ATTRIBUTE == axis)
+      buf.append('@');
+    else if (Axis.CHILD != axis)
+    {
+      buf.append((axis >= 0 && axis < Axis.names.length)
+                 ? Axis.names[axis] : ("axis" + axis)).append("::");
+    }
+
+    String localName = step.getLocalName();
+    int whatToShow = step.getWhatToShow();
+
+    if ((null != localName) && (localName.length() > 0))
+    {
+      String namespace = step.getNamespace();
+
+      if ((null != namespace) && !NodeTest.WILD.equals(namespace))
+        buf.append('{').append(namespace).append('}');
+
+      buf.append(localName);
+    }
+    else if (DTMFilter.SHOW_ALL == whatToShow)
+      buf.append("node()");
+    else if (0 != (whatToShow & DTMFilter.SHOW_TEXT))
+      buf.append("text()");
+    else if (0 != (whatToShow & DTMFilter.SHOW_COMMENT))
+      buf.append("comment()");
+    else if (0 != (whatToShow & DTMFilter.SHOW_PROCESSING_INSTRUCTION))
+      buf.append("processing-instruction()");
+    else
+      buf.append("node()");
+
+    describePredicates(step, buf);
+  }
+
+  /**
+   * Append a readable form of the predicates of a step to a buffer.
+   *
+   * @param step The step.
+   * @param buf The buffer to append to.
+   */
+  private static void describePredicates(PredicatedNodeTest step,
+                                         StringBuffer buf)
+  {
+
+    int n = step.getPredicateCount();
+
+    for (int i = 0; i < n; i++)
+    {
+      buf.append('[');
+      describe(step.getPredicate(i), buf);
+      buf.append(']');
+    }
+  }
+
+  /**
+   * Get the XPath operator for a binary operation.
+   *
+   * @param expr The operation.
+   *
+   * @return The operator.
+   */
+  private static String getOperator(Expression expr)
+  {
+
+    if (expr instanceof Plus)
+      return "+";
+    else if (expr instanceof Minus)
+      return "-";
+    else if (expr instanceof Mult)
+      return "*";
+    else if (expr instanceof Div)
+      return "div";
+    else if (expr instanceof Mod)
+      return "mod";
+    else if (expr instanceof Quo)
+      return "quo";
+    else if (expr instanceof Equals)
+      return "=";
+    else if (expr instanceof NotEquals)
+      return "!=";
+    else if (expr instanceof Lt)
+      return "<";
+    else if (expr instanceof Lte)
+      return "<=";
+    else if (expr instanceof Gt)
+      return ">";
+    else if (expr instanceof Gte)
+      return ">=";
+    else if (expr instanceof And)
+      return "and";
+    else if (expr instanceof Or)
+      return "or";
+    else
+      return "?";
+  }
+
+  /**
+   * Get the XPath name of a function, or of a conversion operation.
+   *
+   * @param expr The function or unary operation.
+   *
+   * @return The function name.
+   */
+  private static String getFunctionName(Expression expr)
+  {
+
+    if (expr instanceof Bool)
+      return "boolean";
+    else if (expr instanceof org.apache.xpath.operations.Number)
+      return "number";
+    else if (expr instanceof org.apache.xpath.operations.String)
+      return "string";
+    else if (expr instanceof FuncLocalPart)
+      return "local-name";
+    else if (expr instanceof FuncNamespace)
+      return "namespace-uri";
+    else if (expr instanceof FuncQname)
+      return "name";
+    else if (expr instanceof FuncUnparsedEntityURI)
+      return "unparsed-entity-uri";
+
+    // FuncSubstringBefore is substring-before, and so on.
+    String name = expr.getClass().getName();
+    StringBuffer buf = new StringBuffer();
+
+    name = name.substring(name.lastIndexOf('.') + 1);
+
+    if (name.startsWith("Func"))
+      name = name.substring(4);
+
+    for (int i = 0; i < name.length(); i++)
+    {
+      char c = name.charAt(i);
+
+      if (Character.isUpperCase(c))
+      {
+        if (i > 0)
+          buf.append('-');
+
+        buf.append(Character.toLowerCase(c));
+      }
+      else
+        buf.append(c);
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Get the location prefix of a diagnostic message.
+   *
+   * @param locator The location, may be null.
+   *
+   * @return A string of the form "systemId:line: ", or an empty string.
+   */
+  public static String getLocation(SourceLocator locator)
+  {
+
+    if (null == locator)
+      return "";
+
+    return locator.getSystemId() + ":" + locator.getLineNumber() + ": ";
+  }
+}
@@ -164,8 +164,8 @@ public class FuncExtFunction extends Function
   {
 
     XObject result;
-    Vector argVec = new Vector();
     int nArgs = m_argVec.size();
+    Vector argVec = new Vector(nArgs);
 
     for (int i = 0; i < nArgs; i++)
     {
@@ -90,9 +90,14 @@ public class FuncGenerateId extends FunctionDef1Arg
     if (DTM.NULL != which)
     {
       // Uglieness to get the unique ID to match the test gold.
-      int docID = (which & org.apache.xml.dtm.DTMManager.IDENT_DTM_DEFAULT) >> 20;
-      docID = (docID-1) << 20;
-      int id = ((which & org.apache.xml.dtm.DTMManager.IDENT_NODE_DEFAULT)+1) | docID;
+      // The parts are added, not OR-ed: the last node of a block has
+      // a node part of 0x10000 after the +1, which has to carry into
+      // the DTM ID part.  The sum is the handle minus a constant, so
+      // it stays unique across the blocks of a large document.
+      int docID = (which & org.apache.xml.dtm.DTMManager.IDENT_DTM_DEFAULT)
+                  >>> org.apache.xml.dtm.DTMManager.IDENT_DTM_NODE_BITS;
+      docID = (docID-1) << org.apache.xml.dtm.DTMManager.IDENT_DTM_NODE_BITS;
+      int id = ((which & org.apache.xml.dtm.DTMManager.IDENT_NODE_DEFAULT)+1) + docID;
       return new XString("N" + Integer.toHexString(id).toUpperCase());
     }
     else
@@ -152,7 +152,7 @@ public class FuncId extends FunctionOneArg
 
     int context = xctxt.getCurrentNode();
     DTM dtm = xctxt.getDTM(context);
-    int docContext = dtm.getDocument();
+    int docContext = dtm.getDocumentRoot(context);
 
     if (DTM.NULL == docContext)
       error(xctxt, XPATHErrorResources.ER_CONTEXT_HAS_NO_OWNERDOC, null);
@@ -60,6 +60,7 @@ package org.apache.xpath.functions;
 
 import java.util.Vector;
 
+import org.apache.xpath.Expression;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.XPath;
 import org.apache.xpath.objects.XObject;
@@ -74,6 +75,28 @@ import org.apache.xml.utils.XMLString;
 public class FuncSubstringAfter extends Function2Args
 {
 
+  /** The search for the second argument, if it is a literal. */
+  private SubstringSearch m_search = null;
+
+  /**
+   * Set an argument expression for a function.  A literal second
+   * argument is compiled to a SubstringSearch.
+   *
+   * @param arg non-null expression that represents the argument.
+   * @param argNum The argument number index.
+   *
+   * @throws WrongNumberArgsException If the argNum parameter is greater than 1.
+   */
+  public void setArg(Expression arg, int argNum)
+          throws WrongNumberArgsException
+  {
+
+    super.setArg(arg, argNum);
+
+    if (1 == argNum)
+      m_search = SubstringSearch.forLiteral(arg);
+  }
+
   /**
    * Execute the function.  The function must return
    * a valid object.
@@ -85,6 +108,16 @@ public class FuncSubstringAfter extends Function2Args
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
 
+    if (null != m_search)
+    {
+      XMLString s1 = m_arg0.execute(xctxt).xstr();
+      int index = m_search.indexOf(s1);
+
+      return (-1 == index)
+             ? XString.EMPTYSTRING
+             : (XString)s1.substring(index + m_search.length());
+    }
+
     XMLString s1 = m_arg0.execute(xctxt).xstr();
     XMLString s2 = m_arg1.execute(xctxt).xstr();
     int index = s1.indexOf(s2);
@@ -60,11 +60,14 @@ package org.apache.xpath.functions;
 
 import java.util.Vector;
 
+import org.apache.xpath.Expression;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.XPath;
 import org.apache.xpath.objects.XObject;
 import org.apache.xpath.objects.XString;
 
+import org.apache.xml.utils.XMLString;
+
 /**
  * <meta name="usage" content="advanced"/>
  * Execute the SubstringBefore() function.
@@ -72,6 +75,28 @@ import org.apache.xpath.objects.XString;
 public class FuncSubstringBefore extends Function2Args
 {
 
+  /** The search for the second argument, if it is a literal. */
+  private SubstringSearch m_search = null;
+
+  /**
+   * Set an argument expression for a function.  A literal second
+   * argument is compiled to a SubstringSearch.
+   *
+   * @param arg non-null expression that represents the argument.
+   * @param argNum The argument number index.
+   *
+   * @throws WrongNumberArgsException If the argNum parameter is greater than 1.
+   */
+  public void setArg(Expression arg, int argNum)
+          throws WrongNumberArgsException
+  {
+
+    super.setArg(arg, argNum);
+
+    if (1 == argNum)
+      m_search = SubstringSearch.forLiteral(arg);
+  }
+
   /**
    * Execute the function.  The function must return
    * a valid object.
@@ -83,6 +108,16 @@ public class FuncSubstringBefore extends Function2Args
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
 
+    if (null != m_search)
+    {
+      XMLString s1 = m_arg0.execute(xctxt).xstr();
+      int index = m_search.indexOf(s1);
+
+      // The substring of a string from a FastStringBuffer shares its buffer.
+      return (-1 == index)
+             ? XString.EMPTYSTRING : (XString) s1.substring(0, index);
+    }
+
     String s1 = m_arg0.execute(xctxt).str();
     String s2 = m_arg1.execute(xctxt).str();
     int index = s1.indexOf(s2);
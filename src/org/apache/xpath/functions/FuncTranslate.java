@@ -60,12 +60,15 @@ package org.apache.xpath.functions;
 
 import java.util.Vector;
 
+import org.apache.xpath.Expression;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.XPath;
 import org.apache.xpath.objects.XObject;
 import org.apache.xpath.res.XPATHErrorResources;
 import org.apache.xpath.objects.XString;
 
+import org.apache.xml.utils.XMLString;
+
 /**
  * <meta name="usage" content="advanced"/>
  * Execute the Translate() function.
@@ -73,6 +76,142 @@ import org.apache.xpath.objects.XString;
 public class FuncTranslate extends Function3Args
 {
 
+  /** The number of characters covered by the translation table. */
+  private static final int TABLE_SIZE = 256;
+
+  /**
+   * When the second and third arguments are literals, the translation
+   * of each character below TABLE_SIZE: the character itself, its
+   * replacement, or -1 if it is removed.  Otherwise null.
+   */
+  private int[] m_table = null;
+
+  /** The literal second argument, when m_table is set. */
+  private String m_from = null;
+
+  /** The literal third argument, when m_table is set. */
+  private String m_to = null;
+
+  /**
+   * Set an argument expression for a function.  When the second and
+   * third arguments are both literals, the translation is compiled
+   * to a table.
+   *
+   * @param arg non-null expression that represents the argument.
+   * @param argNum The argument number index.
+   *
+   * @throws WrongNumberArgsException If the argNum parameter is greater than 2.
+   */
+  public void setArg(Expression arg, int argNum)
+          throws WrongNumberArgsException
+  {
+
+    super.setArg(arg, argNum);
+
+    if (0 != argNum)
+      compileTable();
+  }
+
+  /**
+   * Build the translation table, if the second and third arguments
+   * are literals.
+   */
+  private void compileTable()
+  {
+
+    m_table = null;
+
+    if ((m_arg1 instanceof XString) && (m_arg2 instanceof XString))
+    {
+      String from = ((XString) m_arg1).str();
+      String to = ((XString) m_arg2).str();
+      int[] table = new int[TABLE_SIZE];
+
+      for (int c = 0; c < TABLE_SIZE; c++)
+      {
+        table[c] = c;
+      }
+
+      // Go backwards, so the first occurrence of a character wins.
+      for (int i = from.length() - 1; i >= 0; i--)
+      {
+        char c = from.charAt(i);
+
+        if (c < TABLE_SIZE)
+          table[c] = (i < to.length()) ? to.charAt(i) : -1;
+      }
+
+      m_from = from;
+      m_to = to;
+      m_table = table;
+    }
+  }
+
+  /**
+   * Translate a character with the literal arguments.
+   *
+   * @param c The character.
+   *
+   * @return The character to output, or -1 if c is removed.
+   */
+  private final int translate(char c)
+  {
+
+    if (c < TABLE_SIZE)
+      return m_table[c];
+
+    int index = m_from.indexOf(c);
+
+    if (index < 0)
+      return c;
+
+    return (index < m_to.length()) ? m_to.charAt(index) : -1;
+  }
+
+  /**
+   * Translate a string with the literal arguments.  A string that has
+   * nothing to translate is returned as it is, without a copy.
+   *
+   * @param s The string to translate.
+   *
+   * @return The translated string.
+   */
+  private XObject translate(XMLString s)
+  {
+
+    int n = s.length();
+    int i = 0;
+
+    for (; i < n; i++)
+    {
+      char c = s.charAt(i);
+
+      if (translate(c) != c)
+        break;
+    }
+
+    if (i == n)
+      return (XString) s;
+
+    char[] chars = new char[n];
+    int length = 0;
+
+    for (int j = 0; j < i; j++)
+    {
+      chars[length++] = s.charAt(j);
+    }
+
+    for (; i < n; i++)
+    {
+      int c = translate(s.charAt(i));
+
+      if (c >= 0)
+        chars[length++] = (char) c;
+    }
+
+    return new XString(new String(chars, 0, length));
+  }
+
   /**
    * Execute the function.  The function must return
    * a valid object.
@@ -84,6 +223,9 @@ public class FuncTranslate extends Function3Args
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
 
+    if (null != m_table)
+      return translate(m_arg0.execute(xctxt).xstr());
+
     String theFirstString = m_arg0.execute(xctxt).str();
     String theSecondString = m_arg1.execute(xctxt).str();
     String theThirdString = m_arg2.execute(xctxt).str();
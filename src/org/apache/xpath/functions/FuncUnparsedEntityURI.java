@@ -90,7 +90,7 @@ public class FuncUnparsedEntityURI extends FunctionOneArg
     String name = m_arg0.execute(xctxt).str();
     int context = xctxt.getCurrentNode();
     DTM dtm = xctxt.getDTM(context);
-    int doc = dtm.getDocument();
+    int doc = dtm.getDocumentRoot(context);
     
     String uri = dtm.getUnparsedEntityURI(name);
 
@@ -70,6 +70,17 @@ public class FunctionMultiArgs extends Function3Args
    *  @serial */
   Expression[] m_args;
 
+  /**
+   * Get the argument expressions that are at index 3 or greater.
+   *
+   * @return An array of expressions, or null if there are fewer than
+   * four arguments.
+   */
+  public Expression[] getArgs()
+  {
+    return m_args;
+  }
+
   /**
    * Set an argument expression for a function.  This method is called by the
    * XPath compiler.
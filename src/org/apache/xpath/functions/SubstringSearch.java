@@ -0,0 +1,193 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.xpath.functions;
+
+import org.apache.xml.utils.XMLString;
+import org.apache.xpath.Expression;
+import org.apache.xpath.objects.XString;
+
+/**
+ * <meta name="usage" content="internal"/>
+ * A precompiled search for a constant substring, used by the string
+ * functions when their pattern argument is a literal.  Strings that
+ * do not hold a java String, such as the values wrapping a
+ * FastStringBuffer, are searched in place with the Horspool algorithm,
+ * so that no String has to be made from them.  It is serialized with
+ * the function that holds it, as part of a stylesheet image.
+ */
+public class SubstringSearch implements java.io.Serializable
+{
+
+  /** The string searched for. */
+  private final String m_pattern;
+
+  /** The characters of m_pattern. */
+  private final char[] m_chars;
+
+  /**
+   * How far the search window may move when the character under its
+   * last position is c, indexed by the low byte of c.  Characters
+   * that share a low byte share the smallest of their shifts.
+   */
+  private final int[] m_shift;
+
+  /**
+   * Construct a search for the given string.
+   *
+   * @param pattern The string to search for, must not be null.
+   */
+  public SubstringSearch(String pattern)
+  {
+
+    m_pattern = pattern;
+    m_chars = pattern.toCharArray();
+
+    int n = m_chars.length;
+    int last = n - 1;
+
+    m_shift = new int[256];
+
+    for (int i = 0; i < 256; i++)
+    {
+      m_shift[i] = n;
+    }
+
+    for (int i = 0; i < last; i++)
+    {
+      m_shift[m_chars[i] & 0xFF] = last - i;
+    }
+  }
+
+  /**
+   * Make a search for a function argument, if the argument is a
+   * literal string.
+   *
+   * @param arg The function argument, may be null.
+   *
+   * @return A new search, or null if arg is not a literal.
+   */
+  public static SubstringSearch forLiteral(Expression arg)
+  {
+    return (arg instanceof XString)
+           ? new SubstringSearch(((XString) arg).str()) : null;
+  }
+
+  /**
+   * Get the string searched for.
+   *
+   * @return The string searched for.
+   */
+  public String getPattern()
+  {
+    return m_pattern;
+  }
+
+  /**
+   * Get the length of the string searched for.
+   *
+   * @return The length of the pattern.
+   */
+  public int length()
+  {
+    return m_chars.length;
+  }
+
+  /**
+   * Find the first occurrence of the pattern in a string.
+   *
+   * @param text The string to search.
+   *
+   * @return The index of the first occurrence, or -1 if there is none.
+   */
+  public int indexOf(XMLString text)
+  {
+
+    if (text.hasString())
+      return text.toString().indexOf(m_pattern);
+
+    char[] chars = m_chars;
+    int last = chars.length - 1;
+
+    if (last < 0)
+      return 0;
+
+    char lastChar = chars[last];
+    int end = text.length() - last;
+
+    for (int i = 0; i < end; )
+    {
+      char c = text.charAt(i + last);
+
+      if (c == lastChar)
+      {
+        int j = last - 1;
+
+        while ((j >= 0) && (text.charAt(i + j) == chars[j]))
+        {
+          j--;
+        }
+
+        if (j < 0)
+          return i;
+      }
+
+      i += m_shift[c & 0xFF];
+    }
+
+    return -1;
+  }
+}
@@ -462,51 +462,7 @@ public class XNodeSet extends XObject
       // is true if and only if some node in $x has the string-value 
       // foo; the latter is true if and only if all nodes in $x have 
       // the string-value foo.
-      DTMIterator list1 = iter();
-      DTMIterator list2 = ((XNodeSet) obj2).iter();
-      int node1;
-      java.util.Vector node2Strings = null;
-
-      while (DTM.NULL != (node1 = list1.nextNode()))
-      {
-        XMLString s1 = getStringFromNode(node1);
-
-        if (null == node2Strings)
-        {
-          int node2;
-
-          while (DTM.NULL != (node2 = list2.nextNode()))
-          {
-            XMLString s2 = getStringFromNode(node2);
-
-            if (comparator.compareStrings(s1, s2))
-            {
-              result = true;
-
-              break;
-            }
-
-            if (null == node2Strings)
-              node2Strings = new java.util.Vector();
-
-            node2Strings.addElement(s2);
-          }
-        }
-        else
-        {
-          int n = node2Strings.size();
-
-          for (int i = 0; i < n; i++)
-          {
-            if (comparator.compareStrings(s1, (XMLString)node2Strings.elementAt(i)))
-            {
-              result = true;
-
-              break;
-            }
-          }
-        }
-      }
+      result = comparator.compareNodeSets(this, (XNodeSet) obj2);
     }
     else if (XObject.CLASS_BOOLEAN == type)
     {
@@ -718,6 +674,117 @@ abstract class Comparator
    * @return Whether the numbers are equal or not
    */
   abstract boolean compareNumbers(double n1, double n2);
+
+  /**
+   * Compare two node-sets. The result is true if some node in the
+   * first set and some node in the second set have string-values
+   * that compare true.
+   *
+   * <p>This version tries every pair, caching the second set's
+   * strings. The comparators below replace it with a single pass over
+   * each set.</p>
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes compares true
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    XMLString[] strings2 = getStrings(set2);
+    int n2 = strings2.length;
+    DTMIterator list1 = set1.iter();
+    int node1;
+
+    while (DTM.NULL != (node1 = list1.nextNode()))
+    {
+      XMLString s1 = set1.getStringFromNode(node1);
+
+      for (int i = 0; i < n2; i++)
+      {
+        if (compareStrings(s1, strings2[i]))
+          return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Get the string-values of all the nodes in a node-set.
+   *
+   * @param set The node-set
+   *
+   * @return The string-values, in document order
+   */
+  static XMLString[] getStrings(XNodeSet set)
+  {
+
+    XMLString[] strings = new XMLString[16];
+    int n = 0;
+    DTMIterator list = set.iter();
+    int node;
+
+    while (DTM.NULL != (node = list.nextNode()))
+    {
+      if (n == strings.length)
+      {
+        XMLString[] grown = new XMLString[n << 1];
+
+        System.arraycopy(strings, 0, grown, 0, n);
+
+        strings = grown;
+      }
+
+      strings[n++] = set.getStringFromNode(node);
+    }
+
+    if (n < strings.length)
+    {
+      XMLString[] trimmed = new XMLString[n];
+
+      System.arraycopy(strings, 0, trimmed, 0, n);
+
+      strings = trimmed;
+    }
+
+    return strings;
+  }
+
+  /**
+   * Get the smallest and largest number among the string-values of a
+   * node-set. Values that are not numbers are left out, since no
+   * relational comparison with NaN is true.
+   *
+   * @param set The node-set
+   *
+   * @return {min, max}, or null if no node has a numeric value
+   */
+  static double[] getNumberRange(XNodeSet set)
+  {
+
+    double[] range = null;
+    DTMIterator list = set.iter();
+    int node;
+
+    while (DTM.NULL != (node = list.nextNode()))
+    {
+      double d = set.getStringFromNode(node).toDouble();
+
+      if (d != d)
+        continue;  // NaN
+
+      if (null == range)
+        range = new double[]{ d, d };
+      else if (d < range[0])
+        range[0] = d;
+      else if (d > range[1])
+        range[1] = d;
+    }
+
+    return range;
+  }
 }
 
 /**
@@ -754,6 +821,29 @@ class LessThanComparator extends Comparator
   {
     return n1 < n2;
   }
+
+  /**
+   * Compare two node-sets for less than. Some pair of nodes compares
+   * true exactly when set1's smallest number is less than set2's largest,
+   * so only the range of each set is needed.
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes compares true
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    double[] r1 = getNumberRange(set1);
+
+    if (null == r1)
+      return false;
+
+    double[] r2 = getNumberRange(set2);
+
+    return (null != r2) && (r1[0] < r2[1]);
+  }
 }
 
 /**
@@ -790,6 +880,29 @@ class LessThanOrEqualComparator extends Comparator
   {
     return n1 <= n2;
   }
+
+  /**
+   * Compare two node-sets for less than or equal. Some pair of nodes compares
+   * true exactly when set1's smallest number is less than or equal to set2's largest,
+   * so only the range of each set is needed.
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes compares true
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    double[] r1 = getNumberRange(set1);
+
+    if (null == r1)
+      return false;
+
+    double[] r2 = getNumberRange(set2);
+
+    return (null != r2) && (r1[0] <= r2[1]);
+  }
 }
 
 /**
@@ -826,6 +939,29 @@ class GreaterThanComparator extends Comparator
   {
     return n1 > n2;
   }
+
+  /**
+   * Compare two node-sets for greater than. Some pair of nodes compares
+   * true exactly when set1's largest number is greater than set2's smallest,
+   * so only the range of each set is needed.
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes compares true
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    double[] r1 = getNumberRange(set1);
+
+    if (null == r1)
+      return false;
+
+    double[] r2 = getNumberRange(set2);
+
+    return (null != r2) && (r1[1] > r2[0]);
+  }
 }
 
 /**
@@ -862,6 +998,29 @@ class GreaterThanOrEqualComparator extends Comparator
   {
     return n1 >= n2;
   }
+
+  /**
+   * Compare two node-sets for greater than or equal. Some pair of nodes compares
+   * true exactly when set1's largest number is greater than or equal to set2's smallest,
+   * so only the range of each set is needed.
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes compares true
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    double[] r1 = getNumberRange(set1);
+
+    if (null == r1)
+      return false;
+
+    double[] r2 = getNumberRange(set2);
+
+    return (null != r2) && (r1[1] >= r2[0]);
+  }
 }
 
 /**
@@ -897,6 +1056,58 @@ class EqualComparator extends Comparator
   {
     return n1 == n2;
   }
+
+  /**
+   * Compare two node-sets for equality. The second set's strings are
+   * collected once. A first node from the first set is checked against
+   * them by a plain scan; if there are more, the strings are put in a
+   * hash table and each further node is a single probe.
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes has equal string-values
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    XMLString[] strings2 = getStrings(set2);
+    int n2 = strings2.length;
+
+    if (0 == n2)
+      return false;
+
+    java.util.Hashtable index = null;
+    DTMIterator list1 = set1.iter();
+    int node1;
+
+    while (DTM.NULL != (node1 = list1.nextNode()))
+    {
+      XMLString s1 = set1.getStringFromNode(node1);
+
+      if (null == index)
+      {
+        for (int i = 0; i < n2; i++)
+        {
+          if (s1.equals(strings2[i]))
+            return true;
+        }
+
+        index = new java.util.Hashtable(n2 + (n2 >> 1) + 1);
+
+        for (int i = 0; i < n2; i++)
+        {
+          String s2 = strings2[i].toString();
+
+          index.put(s2, s2);
+        }
+      }
+      else if (index.containsKey(s1.toString()))
+        return true;
+    }
+
+    return false;
+  }
 }
 
 /**
@@ -932,4 +1143,52 @@ class NotEqualComparator extends Comparator
   {
     return n1 != n2;
   }
+
+  /**
+   * Compare two node-sets for non-equality. If the second set holds
+   * two different strings, any node in the first set differs from one
+   * of them; otherwise each node in the first set is checked against
+   * the second set's only string.
+   *
+   * @param set1 First node-set to compare
+   * @param set2 Second node-set to compare
+   *
+   * @return true if some pair of nodes has different string-values
+   */
+  boolean compareNodeSets(XNodeSet set1, XNodeSet set2)
+  {
+
+    XMLString first = null;
+    boolean distinct = false;
+    DTMIterator list2 = set2.iter();
+    int node2;
+
+    while (DTM.NULL != (node2 = list2.nextNode()))
+    {
+      XMLString s2 = set2.getStringFromNode(node2);
+
+      if (null == first)
+        first = s2;
+      else if (!first.equals(s2))
+      {
+        distinct = true;
+
+        break;
+      }
+    }
+
+    if (null == first)
+      return false;
+
+    DTMIterator list1 = set1.iter();
+    int node1;
+
+    while (DTM.NULL != (node1 = list1.nextNode()))
+    {
+      if (distinct || !first.equals(set1.getStringFromNode(node1)))
+        return true;
+    }
+
+    return false;
+  }
 }
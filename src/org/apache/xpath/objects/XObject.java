@@ -387,7 +387,7 @@ public class XObject extends Expression implements Serializable, Cloneable
     else
     {
       DTM frag = support.getDTM(result);
-      docFrag = (DocumentFragment)frag.getNode(frag.getDocument());
+      docFrag = (DocumentFragment)frag.getNode(result);
     }
 
     return docFrag;
@@ -129,24 +129,6 @@ public class XRTreeFrag extends XObject implements Cloneable
     super(expr);
   }
   
-  /**
-   * Release any resources this object may have by calling destruct().
-   *
-   * @throws Throwable
-   */
-  protected void finalize() throws Throwable
-  {
-
-    try
-    {
-      destruct();
-    }
-    finally
-    {
-      super.finalize();  // Always use this.
-    }
-  }
-  
   /**
    * Specify if it's OK for detach to release the iterator for reuse.
    * 
@@ -125,6 +125,26 @@ public class Operation extends Expression
     m_right = r;
   }
 
+  /**
+   * Get the left operand expression of this operation.
+   *
+   * @return The left expression operand.
+   */
+  public Expression getLeftOperand()
+  {
+    return m_left;
+  }
+
+  /**
+   * Get the right operand expression of this operation.
+   *
+   * @return The right expression operand.
+   */
+  public Expression getRightOperand()
+  {
+    return m_right;
+  }
+
   /**
    * Execute a binary operation by calling execute on each of the operands,
    * and then calling the operate method on the derived class.
@@ -115,6 +115,16 @@ public abstract class UnaryOperation extends Expression
     m_right = r;
   }
 
+  /**
+   * Get the expression operand for the operation.
+   *
+   * @return The expression operand.
+   */
+  public Expression getOperand()
+  {
+    return m_right;
+  }
+
   /**
    * Execute the operand and apply the unary operation to the result.
    *
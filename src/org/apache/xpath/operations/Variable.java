@@ -129,6 +129,16 @@ public class Variable extends Expression
   }
 
 
+  /**
+   * Get the qualified name of the variable.
+   *
+   * @return A non-null reference to a qualified name.
+   */
+  public QName getQName()
+  {
+    return m_qname;
+  }
+
   /**
    * Set the qualified name of the variable.
    *
@@ -505,6 +505,32 @@ public class NodeTest extends Expression
                    ? ((t == WILD) || p.equals(t)) : null == t));
   }
 
+  /**
+   * Tell if this node test can match an element or attribute of the
+   * given expanded name.  Unlike execute, this does not need a node, so
+   * it can be answered once per expanded type ID and the result reused.
+   *
+   * @param nodeType Either DTM.ELEMENT_NODE or DTM.ATTRIBUTE_NODE.
+   * @param namespace The namespace URI of the expanded name, may be null.
+   * @param localName The local part of the expanded name.
+   *
+   * @return false if no node of this expanded name can match this test.
+   */
+  public boolean matchesExpandedName(int nodeType, String namespace,
+                                     String localName)
+  {
+
+    if (m_whatToShow == DTMFilter.SHOW_ALL)
+      return true;
+
+    if (0 == (m_whatToShow & (0x00000001 << (nodeType - 1))))
+      return false;
+
+    return m_isTotallyWild
+           || (subPartMatchNS(namespace, m_namespace)
+               && subPartMatch(localName, m_name));
+  }
+
   /**
    * Tell what the test score is for the given node.
    *
@@ -679,4 +705,26 @@ public class NodeTest extends Expression
     // no-op
   }
 
+  /**
+   * Read the object from a serialization stream.  Name tests are
+   * compared with {@link #WILD} by identity, so a "*" read from the
+   * stream is replaced by WILD itself.
+   *
+   * @param stream Input stream to read from
+   *
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(java.io.ObjectInputStream stream)
+          throws java.io.IOException, ClassNotFoundException
+  {
+    stream.defaultReadObject();
+
+    if (WILD.equals(m_name))
+      m_name = WILD;
+
+    if (WILD.equals(m_namespace))
+      m_namespace = WILD;
+  }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import org.apache.xml.dtm.ref.CoroutineManager;
+
+/**
+ * Measures the cost of handing control back and forth between two
+ * coroutines.  A producer coroutine, standing in for CoroutineSAXParser,
+ * "parses" a number of events and resumes the application coroutine
+ * after every batch.  Reports the elapsed time per 1000 events for
+ * several batch sizes, with and without spinning before wait().
+ *
+ * <p>Usage: java CoroutineBench [events [spin]]</p>
+ *
+ * <p>The spin limit given (default 100) is compared against 0.</p>
+ */
+public class CoroutineBench
+{
+
+  public static void main(String[] args)
+  {
+
+    int events = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    int spin = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+    int[] batches = { 1, 10, 100 };
+    int[] spins = { 0, spin };
+
+    // Warm up both paths before timing them.
+    timeHandoffs(0, 10, events / 10);
+    timeHandoffs(spin, 10, events / 10);
+
+    for (int b = 0; b < batches.length; b++)
+    {
+      for (int s = 0; s < spins.length; s++)
+      {
+        long ms = timeHandoffs(spins[s], batches[b], events);
+
+        System.out.println("batch=" + batches[b] + " spin=" + spins[s]
+                           + ": " + ((ms * 1000000.0) / events)
+                           + " us per 1K events");
+      }
+    }
+  }
+
+  /**
+   * Time one run.
+   *
+   * @param spinLimit Spin limit for the CoroutineManager.
+   * @param batch Events per handoff.
+   * @param events Total events to produce.
+   *
+   * @return Elapsed milliseconds.
+   */
+  private static long timeHandoffs(int spinLimit, final int batch,
+                                   final int events)
+  {
+
+    final CoroutineManager co = new CoroutineManager(spinLimit);
+    final int app = co.co_joinCoroutineSet(-1);
+    final int producer = co.co_joinCoroutineSet(-1);
+    Thread t = new Thread(new Runnable()
+    {
+      public void run()
+      {
+
+        try
+        {
+          co.co_entry_pause(producer);
+
+          int pending = 0;
+
+          for (int i = 0; i < events; i++)
+          {
+            if (++pending == batch)
+            {
+              pending = 0;
+
+              co.co_resume(Boolean.TRUE, producer, app);
+            }
+          }
+
+          co.co_exit_to(Boolean.FALSE, producer, app);
+        }
+        catch (NoSuchMethodException e)
+        {
+          System.out.println("Unexpected exit: " + e);
+        }
+      }
+    });
+
+    t.setDaemon(true);
+    t.start();
+
+    long start = System.currentTimeMillis();
+
+    try
+    {
+      Object arg = co.co_resume(Boolean.TRUE, app, producer);
+
+      while (Boolean.TRUE.equals(arg))
+      {
+        arg = co.co_resume(Boolean.TRUE, app, producer);
+      }
+    }
+    catch (NoSuchMethodException e)
+    {
+      System.out.println("Unexpected exit: " + e);
+    }
+
+    return System.currentTimeMillis() - start;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMManager;
+import org.apache.xpath.objects.XMLStringFactoryImpl;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Measures the time it takes to build the DTM for a large document, and
+ * the heap the finished DTM holds on to.  The document is a root
+ * element with one child element per three nodes, each child holding
+ * an attribute and a text node.  Its SAX events are sent straight to
+ * the DTM, so the time does not include parsing.
+ *
+ * <p>The heap figure is the growth of the used heap across the build,
+ * each side measured after a full collection, so run with a -Xmx that
+ * leaves room for the largest size.</p>
+ *
+ * <p>Usage: java DTMBuildBench [nodes [runs]]</p>
+ */
+public class DTMBuildBench
+{
+
+  public static void main(String[] args) throws Exception
+  {
+
+    int nodes = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+    int elements = nodes / 3;
+    DTM dtm = null;
+
+    for (int run = 0; run < runs; run++)
+    {
+      dtm = null;
+
+      long before = usedHeap();
+      long start = System.currentTimeMillis();
+      DTMManager manager =
+        DTMManager.newInstance(XMLStringFactoryImpl.getFactory());
+
+      dtm = manager.getDTM(null, true, null, false, true);
+
+      build((ContentHandler) dtm, elements);
+
+      long time = System.currentTimeMillis() - start;
+      long heap = usedHeap() - before;
+
+      System.out.println(nodes + " nodes: built in " + time + " ms, "
+                         + (heap >> 20) + " MB held");
+    }
+  }
+
+  /**
+   * Send the events of the test document to a content handler.
+   *
+   * @param handler The DTM's content handler.
+   * @param elements The number of child elements.
+   *
+   * @throws Exception
+   */
+  private static void build(ContentHandler handler, int elements)
+          throws Exception
+  {
+
+    AttributesImpl none = new AttributesImpl();
+    AttributesImpl atts = new AttributesImpl();
+    char[] text = new char[8];
+
+    handler.startDocument();
+    handler.startElement("", "doc", "doc", none);
+
+    for (int i = 0; i < elements; i++)
+    {
+      atts.clear();
+      atts.addAttribute("", "a", "a", "CDATA", Integer.toString(i));
+      handler.startElement("", "e", "e", atts);
+
+      int length = 0;
+
+      for (int v = i & 0xffff; ; v >>= 4)
+      {
+        text[length++] = (char) ('a' + (v & 0xf));
+
+        if (v < 0x10)
+          break;
+      }
+
+      handler.characters(text, 0, length);
+      handler.endElement("", "e", "e");
+    }
+
+    handler.endElement("", "doc", "doc");
+    handler.endDocument();
+  }
+
+  /**
+   * Get the used heap after a full collection.
+   *
+   * @return The number of bytes in use.
+   */
+  private static long usedHeap()
+  {
+
+    Runtime runtime = Runtime.getRuntime();
+
+    for (int i = 0; i < 3; i++)
+    {
+      runtime.gc();
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
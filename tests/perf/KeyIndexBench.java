@@ -0,0 +1,157 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import org.apache.xalan.xsltc.NodeIterator;
+import org.apache.xalan.xsltc.dom.KeyIndex;
+
+/**
+ * Measures the XSLTC key index: the time to fill it, the heap it holds,
+ * and the time to look values up and read their nodes.  Node n is
+ * given the key value "v" + (n % values), as a translet's buildKeys()
+ * would add them, in document order.
+ *
+ * <p>Usage: java KeyIndexBench [nodes [values [lookups [runs]]]]</p>
+ *
+ * <p>Give the VM a fixed young generation (-Xmn) with the serial
+ * collector, or every other run may report that nothing is held.</p>
+ */
+public class KeyIndexBench
+{
+
+  /** The index being measured, kept reachable while the heap is read. */
+  private static KeyIndex index;
+
+  public static void main(String[] args) throws Exception
+  {
+
+    int nodes = (args.length > 0) ? Integer.parseInt(args[0]) : 40000;
+    int values = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+    int lookups = (args.length > 2) ? Integer.parseInt(args[2]) : 200000;
+    int runs = (args.length > 3) ? Integer.parseInt(args[3]) : 3;
+    String[] keys = new String[values];
+
+    for (int i = 0; i < values; i++)
+    {
+      keys[i] = "v" + i;
+    }
+
+    for (int run = 0; run < runs; run++)
+    {
+      long start = System.currentTimeMillis();
+
+      index = new KeyIndex(nodes + 1);
+
+      for (int n = 1; n <= nodes; n++)
+      {
+        index.add(keys[n % values], n);
+      }
+
+      long build = System.currentTimeMillis() - start;
+      long heap = usedHeap();
+
+      start = System.currentTimeMillis();
+
+      long sum = 0;
+
+      for (int i = 0; i < lookups; i++)
+      {
+        index.lookupKey(keys[(int) ((i * 7919L) % values)]);
+
+        for (int n; NodeIterator.END != (n = index.next()); )
+        {
+          sum += n;
+        }
+      }
+
+      long lookup = System.currentTimeMillis() - start;
+
+      // What the index holds is what dropping it gives back.
+      index = null;
+      heap -= usedHeap();
+
+      System.out.println(nodes + " nodes, " + values + " values: built in "
+                         + build + " ms, " + (heap >> 10) + " KB held, "
+                         + lookups + " lookups in " + lookup + " ms ("
+                         + sum + ")");
+    }
+  }
+
+  /**
+   * Get the used heap once full collections stop freeing anything.
+   *
+   * @return The number of bytes in use.
+   */
+  private static long usedHeap()
+  {
+
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+
+    for (int i = 0; i < 10; i++)
+    {
+      runtime.gc();
+
+      long now = runtime.totalMemory() - runtime.freeMemory();
+
+      if (now >= used && i >= 2)
+        break;
+
+      used = Math.min(used, now);
+    }
+
+    return used;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import java.util.Random;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xml.utils.PrefixResolverDefault;
+import org.apache.xpath.XPath;
+import org.apache.xpath.XPathContext;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Measures XPath evaluation against a W3C DOM context node, which must
+ * be mapped to its DTM handle on every call, as XPathAPI.selectNodeList()
+ * does.  The document has one root element with nodes/2 item children,
+ * each holding a text node.  One XPathContext first selects "//item"
+ * from the document, so the whole DTM is built before the clock starts,
+ * then evaluates "self::item" from randomly chosen items and reads the
+ * length of each NodeList.
+ *
+ * <p>Usage: java SelectNodeListBench [nodes [calls [runs]]]</p>
+ */
+public class SelectNodeListBench
+{
+
+  public static void main(String[] args) throws Exception
+  {
+
+    int nodes = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+    int calls = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+    int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+    Document doc = new DocumentImpl();
+    Element root = doc.createElementNS(null, "root");
+    Element[] items = new Element[nodes / 2];
+    PrefixResolverDefault resolver = new PrefixResolverDefault(root);
+    XPath all = new XPath("//item", null, resolver, XPath.SELECT, null);
+    XPath xpath = new XPath("self::item", null, resolver, XPath.SELECT, null);
+
+    doc.appendChild(root);
+
+    for (int i = 0; i < items.length; i++)
+    {
+      items[i] = doc.createElementNS(null, "item");
+
+      items[i].appendChild(doc.createTextNode("v" + i));
+      root.appendChild(items[i]);
+    }
+
+    for (int run = 0; run < runs; run++)
+    {
+      XPathContext xctxt = new XPathContext();
+
+      all.execute(xctxt, xctxt.getDTMHandleFromNode(doc), resolver)
+         .iter().getLength();
+
+      Random random = new Random(run);
+      long start = System.currentTimeMillis();
+      int found = 0;
+
+      for (int i = 0; i < calls; i++)
+      {
+        Element context = items[random.nextInt(items.length)];
+        int handle = xctxt.getDTMHandleFromNode(context);
+        NodeList list = xpath.execute(xctxt, handle, resolver).nodelist();
+
+        found += list.getLength();
+      }
+
+      System.out.println(calls + " calls on " + nodes + " nodes: "
+                         + (System.currentTimeMillis() - start)
+                         + " ms (" + found + " found)");
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.xerces.dom.DocumentImpl;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Measures serializer throughput for each output encoding.  A DOM with
+ * one root element and the given number of item children is written by
+ * an identity transformer to a temporary file, since the serializer
+ * picks its writer by the kind of stream and a file pays for every
+ * write call that reaches it.  Each item
+ * has an attribute and a text node with markup characters, Latin-1
+ * letters and a euro sign, so escaping and unencodable characters are
+ * exercised as well as the plain path.
+ *
+ * <p>Usage: java SerializerBench [elements [runs [encoding ...]]]</p>
+ */
+public class SerializerBench
+{
+
+  /** The encodings measured when none are named. */
+  private static final String[] ENCODINGS = { "UTF-8", "US-ASCII",
+                                              "ISO-8859-1", "ISO-8859-2",
+                                              "WINDOWS-1252", "UTF-16" };
+
+  public static void main(String[] args) throws Exception
+  {
+
+    int elements = (args.length > 0) ? Integer.parseInt(args[0]) : 150000;
+    int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+    String[] encodings = ENCODINGS;
+
+    if (args.length > 2)
+    {
+      encodings = new String[args.length - 2];
+
+      System.arraycopy(args, 2, encodings, 0, encodings.length);
+    }
+
+    Document doc = new DocumentImpl();
+    Element root = doc.createElementNS(null, "root");
+
+    doc.appendChild(root);
+
+    for (int i = 0; i < elements; i++)
+    {
+      Element item = doc.createElementNS(null, "item");
+
+      item.setAttribute("n", "\"" + i + "\" & caf\u00e9");
+      item.appendChild(doc.createTextNode("v" + i + " <a&b> caf\u00e9 \u20ac5"));
+      root.appendChild(item);
+    }
+
+    TransformerFactory tfactory = TransformerFactory.newInstance();
+    File file = File.createTempFile("SerializerBench", ".xml");
+
+    file.deleteOnExit();
+
+    for (int e = 0; e < encodings.length; e++)
+    {
+      for (int run = 0; run < runs; run++)
+      {
+        Transformer transformer = tfactory.newTransformer();
+        OutputStream out = new FileOutputStream(file);
+
+        transformer.setOutputProperty(OutputKeys.ENCODING, encodings[e]);
+
+        long start = System.currentTimeMillis();
+
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+        out.close();
+
+        System.out.println(encodings[e] + ": " + file.length()
+                           + " bytes in "
+                           + (System.currentTimeMillis() - start) + " ms");
+      }
+    }
+  }
+}
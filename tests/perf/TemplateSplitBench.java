@@ -0,0 +1,196 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Measures XSLTC on stylesheets whose templates are large enough to
+ * push the generated applyTemplates() method past the JIT's size limit.
+ * The stylesheet has the given number of match templates, each writing
+ * the given number of result elements with attribute value templates,
+ * an xsl:if and an xsl:choose.  The document has the given number of
+ * elements, spread over the templates in turn, and is read from a
+ * temporary file.  The time to compile the stylesheet and the time of
+ * each transformation are reported.
+ *
+ * <p>Usage: java TemplateSplitBench [templates [blocks [elements [runs]]]]</p>
+ */
+public class TemplateSplitBench
+{
+
+  public static void main(String[] args) throws Exception
+  {
+
+    int templates = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+    int blocks = (args.length > 1) ? Integer.parseInt(args[1]) : 25;
+    int elements = (args.length > 2) ? Integer.parseInt(args[2]) : 6000;
+    int runs = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+    byte[] xsl = stylesheet(templates, blocks).getBytes("UTF-8");
+    File xml = File.createTempFile("TemplateSplitBench", ".xml");
+    OutputStream os = new FileOutputStream(xml);
+
+    xml.deleteOnExit();
+    os.write(document(templates, elements).getBytes("UTF-8"));
+    os.close();
+
+    TransformerFactory tfactory =
+      new org.apache.xalan.xsltc.runtime.TransformerFactoryImpl();
+    long start = System.currentTimeMillis();
+    Templates compiled =
+      tfactory.newTemplates(new StreamSource(new ByteArrayInputStream(xsl)));
+
+    System.out.println(templates + " templates of " + blocks
+                       + " blocks: compiled in "
+                       + (System.currentTimeMillis() - start) + " ms");
+
+    for (int run = 0; run < runs; run++)
+    {
+      Transformer transformer = compiled.newTransformer();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      start = System.currentTimeMillis();
+
+      transformer.transform(new StreamSource(xml.getPath()),
+                            new StreamResult(out));
+
+      System.out.println(elements + " elements: " + out.size()
+                         + " bytes in "
+                         + (System.currentTimeMillis() - start) + " ms");
+    }
+  }
+
+  /**
+   * Build the stylesheet.
+   *
+   * @param templates The number of match templates besides the root one.
+   * @param blocks The number of result elements each template writes.
+   *
+   * @return The stylesheet text.
+   */
+  private static String stylesheet(int templates, int blocks)
+  {
+
+    StringBuffer buf = new StringBuffer();
+
+    buf.append("<xsl:stylesheet version='1.0'"
+               + " xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>\n");
+    buf.append("<xsl:template match='/'><out>"
+               + "<xsl:apply-templates select='doc/*'/></out>"
+               + "</xsl:template>\n");
+
+    for (int t = 0; t < templates; t++)
+    {
+      buf.append("<xsl:template match='e" + t + "'>");
+
+      for (int b = 0; b < blocks; b++)
+      {
+        buf.append("<r" + b + " n='{@b}' m='{c + " + b + "}'>");
+        buf.append("<xsl:if test='c mod " + (b + 2) + " = 0'>"
+                   + "<xsl:value-of select=\"concat(d, '-', @b, '-"
+                   + b + "')\"/></xsl:if>");
+        buf.append("<xsl:choose><xsl:when test='d/@x &gt; " + b
+                   + "'>hi</xsl:when><xsl:otherwise>"
+                   + "<xsl:value-of select='string-length(d)'/>"
+                   + "</xsl:otherwise></xsl:choose>");
+        buf.append("</r" + b + ">");
+      }
+
+      buf.append("</xsl:template>\n");
+    }
+
+    buf.append("</xsl:stylesheet>\n");
+
+    return buf.toString();
+  }
+
+  /**
+   * Build the source document.
+   *
+   * @param templates The number of element names to use.
+   * @param elements The number of elements under the document element.
+   *
+   * @return The document text.
+   */
+  private static String document(int templates, int elements)
+  {
+
+    StringBuffer buf = new StringBuffer();
+
+    buf.append("<doc>\n");
+
+    for (int i = 0; i < elements; i++)
+    {
+      String name = "e" + (i % templates);
+
+      buf.append("<" + name + " b='b" + i + "'><c>" + i + "</c><d x='"
+                 + (i % 30) + "'>text " + i + "</d></" + name + ">\n");
+    }
+
+    buf.append("</doc>\n");
+
+    return buf.toString();
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Xalan" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Lotus
+ * Development Corporation., http://www.lotus.com.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.apache.xalan.processor.TransformerFactoryImpl;
+
+/**
+ * Runs the regression stylesheets in a directory.  For every NAME.xsl
+ * that has a NAME.xml input and a NAME.out expected output, the input
+ * is transformed twice: once with the stylesheet as parsed, and once
+ * with a Templates object read back from a precompiled image.  The
+ * image is written before the parsed Templates object is first used.
+ * Both results must match NAME.out byte for byte.
+ *
+ * <p>If there is also a NAME.diag file, the optimizer report written
+ * while the stylesheet is parsed must match it line for line.  The
+ * part of each line before "NAME.xsl:" is dropped, so the location of
+ * the test directory does not matter.</p>
+ *
+ * <p>Usage: java RegressionRunner [directory]</p>
+ */
+public class RegressionRunner
+{
+
+  /** The factory attribute that takes the optimizer report writer. */
+  private static final String OPTIMIZER_DIAGNOSTICS =
+    "http://xml.apache.org/xalan/properties/optimizer-diagnostics";
+
+  public static void main(String[] args) throws Exception
+  {
+
+    File dir = new File((args.length > 0) ? args[0] : ".");
+    String[] names = dir.list();
+    int failures = 0;
+
+    for (int i = 0; i < names.length; i++)
+    {
+      if (!names[i].endsWith(".xsl"))
+        continue;
+
+      String base = names[i].substring(0, names[i].length() - 4);
+      File xsl = new File(dir, base + ".xsl");
+      File xml = new File(dir, base + ".xml");
+      File out = new File(dir, base + ".out");
+      File diag = new File(dir, base + ".diag");
+
+      if (!xml.exists() || !out.exists())
+        continue;
+
+      byte[] expected = read(out);
+      TransformerFactoryImpl factory = new TransformerFactoryImpl();
+      StringWriter report = null;
+
+      if (diag.exists())
+      {
+        report = new StringWriter();
+
+        factory.setAttribute(OPTIMIZER_DIAGNOSTICS, new PrintWriter(report));
+      }
+
+      Templates parsed = factory.newTemplates(new StreamSource(xsl));
+
+      if (null != report)
+        failures += checkReport(base, report.toString(), read(diag));
+      Templates loaded = null;
+
+      try
+      {
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+
+        factory.writeTemplatesImage(parsed, image);
+
+        loaded = factory.newTemplatesFromImage(
+          new ByteArrayInputStream(image.toByteArray()));
+      }
+      catch (TransformerConfigurationException tce)
+      {
+        System.out.println("FAIL " + base + " (image): " + tce.getMessage());
+
+        failures++;
+      }
+
+      failures += check(base + " (parsed)", parsed, xml, expected);
+
+      if (null != loaded)
+        failures += check(base + " (image)", loaded, xml, expected);
+    }
+
+    System.out.println((0 == failures) ? "All passed" : failures + " failed");
+
+    if (failures > 0)
+      System.exit(1);
+  }
+
+  /**
+   * Transform the input and compare the result with the expected bytes.
+   *
+   * @return 0 if the result matches, 1 if not.
+   */
+  private static int check(String name, Templates templates, File xml,
+                           byte[] expected)
+  {
+
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+    try
+    {
+      templates.newTransformer().transform(new StreamSource(xml),
+                                           new StreamResult(result));
+    }
+    catch (TransformerException te)
+    {
+      System.out.println("FAIL " + name + ": " + te.getMessage());
+
+      return 1;
+    }
+
+    byte[] actual = result.toByteArray();
+    boolean same = (actual.length == expected.length);
+
+    for (int i = 0; same && (i < actual.length); i++)
+    {
+      same = (actual[i] == expected[i]);
+    }
+
+    System.out.println((same ? "PASS " : "FAIL ") + name);
+
+    return same ? 0 : 1;
+  }
+
+  /**
+   * Compare an optimizer report with the expected report.
+   *
+   * @return 0 if the reports match, 1 if not.
+   */
+  private static int checkReport(String base, String report, byte[] expected)
+  {
+
+    String prefix = base + ".xsl:";
+    StringBuffer actual = new StringBuffer();
+    int start = 0;
+    int end;
+
+    while ((end = report.indexOf('\n', start)) >= 0)
+    {
+      String line = report.substring(start, end);
+      int pos = line.indexOf(prefix);
+
+      if (line.endsWith("\r"))
+        line = line.substring(0, line.length() - 1);
+
+      actual.append((pos >= 0) ? line.substring(pos) : line).append('\n');
+
+      start = end + 1;
+    }
+
+    boolean same = actual.toString().equals(new String(expected));
+
+    System.out.println((same ? "PASS " : "FAIL ") + base + " (optimizer report)");
+
+    if (!same)
+      System.out.print(actual);
+
+    return same ? 0 : 1;
+  }
+
+  private static byte[] read(File file) throws IOException
+  {
+
+    InputStream in = new FileInputStream(file);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int n;
+
+    try
+    {
+      while ((n = in.read(buf)) > 0)
+      {
+        bytes.write(buf, 0, n);
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,46 @@
+<?xml version="1.0"?>
+<!-- generate-id() must stay unique in a tree of more than 64K nodes,
+     which takes several DTM IDs.  The tree is built as a result tree
+     fragment of 280,000 nodes, so the ids cross four block boundaries.
+     Ids that occur more than once are found with a key. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                xmlns:xalan="http://xml.apache.org/xalan"
+                exclude-result-prefixes="xalan">
+
+  <xsl:output method="text"/>
+
+  <xsl:key name="ids" match="node()" use="generate-id()"/>
+
+  <xsl:template match="doc">
+    <xsl:variable name="tree">
+      <xsl:call-template name="make">
+        <xsl:with-param name="n" select="@count"/>
+      </xsl:call-template>
+    </xsl:variable>
+    <xsl:variable name="all" select="xalan:nodeset($tree)/descendant::node()"/>
+    <xsl:value-of select="count($all)"/>
+    <xsl:text> ids, </xsl:text>
+    <xsl:value-of select="count($all[count(key('ids', generate-id())) &gt; 1])"/>
+    <xsl:text> duplicates&#10;</xsl:text>
+  </xsl:template>
+
+  <!-- Emits n elements with a text child each.  Splits in halves so the
+       recursion depth stays small. -->
+  <xsl:template name="make">
+    <xsl:param name="n"/>
+    <xsl:choose>
+      <xsl:when test="$n = 1"><e>x</e></xsl:when>
+      <xsl:when test="$n &gt; 1">
+        <xsl:variable name="half" select="floor($n div 2)"/>
+        <xsl:call-template name="make">
+          <xsl:with-param name="n" select="$half"/>
+        </xsl:call-template>
+        <xsl:call-template name="make">
+          <xsl:with-param name="n" select="$n - $half"/>
+        </xsl:call-template>
+      </xsl:when>
+    </xsl:choose>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,23 @@
+<?xml version="1.0"?>
+<!-- The string functions precompile literal arguments.  A stylesheet
+     that uses them must still be written to, and read back from, a
+     precompiled image. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:for-each select="doc/item">
+      <xsl:value-of select="contains(., '=')"/>
+      <xsl:text>|</xsl:text>
+      <xsl:value-of select="substring-before(., '=')"/>
+      <xsl:text>|</xsl:text>
+      <xsl:value-of select="substring-after(., '=')"/>
+      <xsl:text>|</xsl:text>
+      <xsl:value-of select="translate(., 'abe=', 'ABE:')"/>
+      <xsl:text>&#10;</xsl:text>
+    </xsl:for-each>
+  </xsl:template>
+
+</xsl:stylesheet>
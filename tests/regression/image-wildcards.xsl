@@ -0,0 +1,36 @@
+<?xml version="1.0"?>
+<!-- Wildcard name tests must still match every node when the
+     stylesheet is read back from a precompiled image. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:value-of select="count(//*)"/>
+    <xsl:text> </xsl:text>
+    <xsl:value-of select="count(//node())"/>
+    <xsl:text> </xsl:text>
+    <xsl:value-of select="count(//@*)"/>
+    <xsl:text> </xsl:text>
+    <xsl:value-of select="count(/*/*/*)"/>
+    <xsl:text>&#10;</xsl:text>
+    <xsl:for-each select="//*">
+      <xsl:number level="any" count="*"/>
+      <xsl:text>:</xsl:text>
+      <xsl:value-of select="name()"/>
+      <xsl:text> </xsl:text>
+    </xsl:for-each>
+    <xsl:text>&#10;</xsl:text>
+    <xsl:apply-templates select="doc/*"/>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+  <xsl:template match="*">
+    <xsl:value-of select="name()"/>
+    <xsl:text>(</xsl:text>
+    <xsl:apply-templates select="*"/>
+    <xsl:text>)</xsl:text>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,26 @@
+<?xml version="1.0"?>
+<!-- The 'match' and 'use' of a key may refer to global variables and
+     parameters, whose values can differ from one transformation to the
+     next, so the key's tables are not kept with the document. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:param name="attr" select="'b'"/>
+  <xsl:variable name="kind" select="'item'"/>
+
+  <xsl:key name="by-attr" match="item" use="@*[name() = $attr]"/>
+  <xsl:key name="by-kind" match="*[name() = $kind]" use="@a"/>
+  <xsl:key name="plain" match="item" use="@a"/>
+
+  <xsl:template match="/">
+    <xsl:value-of select="count(key('by-attr', '1'))"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="count(key('by-kind', '2'))"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="count(key('plain', '1'))"/>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,59 @@
+<?xml version="1.0"?>
+<!-- An expression used in several xsl:when branches, or in the body of
+     an xsl:for-each, may only be evaluated when that branch or body
+     runs.  count($p/r) fails when $p is a string. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:call-template name="show">
+      <xsl:with-param name="kind" select="'set'"/>
+      <xsl:with-param name="p" select="doc/set"/>
+    </xsl:call-template>
+    <xsl:text>|</xsl:text>
+    <xsl:call-template name="show">
+      <xsl:with-param name="kind" select="'plain'"/>
+      <xsl:with-param name="p" select="'plain'"/>
+    </xsl:call-template>
+    <xsl:text>|</xsl:text>
+    <xsl:call-template name="loop">
+      <xsl:with-param name="items" select="doc/none"/>
+      <xsl:with-param name="p" select="'plain'"/>
+    </xsl:call-template>
+    <xsl:text>|</xsl:text>
+    <xsl:call-template name="loop">
+      <xsl:with-param name="items" select="doc/set/r[position() &lt; 3]"/>
+      <xsl:with-param name="p" select="doc/set"/>
+    </xsl:call-template>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+  <xsl:template name="show">
+    <xsl:param name="kind"/>
+    <xsl:param name="p"/>
+    <xsl:choose>
+      <xsl:when test="$kind = 'set'">
+        <xsl:value-of select="count($p/r)"/>
+      </xsl:when>
+      <xsl:when test="$kind = 'sets'">
+        <xsl:value-of select="count($p/r)"/>
+      </xsl:when>
+      <xsl:otherwise>
+        <xsl:value-of select="$p"/>
+      </xsl:otherwise>
+    </xsl:choose>
+  </xsl:template>
+
+  <xsl:template name="loop">
+    <xsl:param name="items"/>
+    <xsl:param name="p"/>
+    <xsl:text>[</xsl:text>
+    <xsl:for-each select="$items">
+      <xsl:value-of select="count($p/r)"/>
+    </xsl:for-each>
+    <xsl:text>]</xsl:text>
+  </xsl:template>
+
+</xsl:stylesheet>
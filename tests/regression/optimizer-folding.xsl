@@ -0,0 +1,22 @@
+<?xml version="1.0"?>
+<!-- Constant sub-expressions are folded to literals when the stylesheet
+     is built.  Parts that read the input are left alone. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:value-of select="1 + 2 * 3"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="concat('a', 'b', string(3 div 2))"/>
+    <xsl:text>,</xsl:text>
+    <xsl:if test="string-length('abc') &gt; 2">yes</xsl:if>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="count(doc/item) + 2 * 3"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="substring-before('key=value', '=')"/>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,29 @@
+<?xml version="1.0"?>
+<!-- A context free expression in an xsl:for-each body is bound once
+     above the loop.  Expressions that read the context node, or
+     current(), stay in the body. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:call-template name="loop">
+      <xsl:with-param name="all" select="doc"/>
+    </xsl:call-template>
+  </xsl:template>
+
+  <xsl:template name="loop">
+    <xsl:param name="all"/>
+    <xsl:for-each select="$all/item">
+      <xsl:value-of select="@n"/>
+      <xsl:text>/</xsl:text>
+      <xsl:value-of select="count($all/item)"/>
+      <xsl:text>:</xsl:text>
+      <xsl:value-of select="count(current()/following-sibling::item)"/>
+      <xsl:text> </xsl:text>
+    </xsl:for-each>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+</xsl:stylesheet>
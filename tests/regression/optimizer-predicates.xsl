@@ -0,0 +1,36 @@
+<?xml version="1.0"?>
+<!-- Expressions that differ only in a predicate are different common
+     sub-expressions, and so are ($items/@n)[last()], the last n
+     attribute, and $items/@n[last()], the n attribute of each item. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:call-template name="show">
+      <xsl:with-param name="items" select="doc/item"/>
+    </xsl:call-template>
+  </xsl:template>
+
+  <xsl:template name="show">
+    <xsl:param name="items"/>
+    <xsl:value-of select="count($items[position() &gt; 1])"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="count($items[position() &gt; 2])"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="count($items[position() &gt; 1])"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="count($items[position() &gt; 2])"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="($items/@n)[last()]"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="$items/@n[last()]"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="($items/@n)[last()]"/>
+    <xsl:text>,</xsl:text>
+    <xsl:value-of select="$items/@n[last()]"/>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,37 @@
+<?xml version="1.0"?>
+<!-- count($p/r) is used in an xsl:for-each body and in an xsl:if, so it
+     is bound to a variable in the template, above both.  When the loop
+     selects nothing and the test is false the variable is read zero
+     times, and it must not be evaluated: count($p/r) fails when $p is
+     a string. -->
+<xsl:stylesheet version="1.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="text"/>
+
+  <xsl:template match="/">
+    <xsl:call-template name="show">
+      <xsl:with-param name="items" select="doc/r"/>
+      <xsl:with-param name="p" select="doc"/>
+    </xsl:call-template>
+    <xsl:text>|</xsl:text>
+    <xsl:call-template name="show">
+      <xsl:with-param name="items" select="doc/none"/>
+      <xsl:with-param name="p" select="'plain'"/>
+    </xsl:call-template>
+    <xsl:text>&#10;</xsl:text>
+  </xsl:template>
+
+  <xsl:template name="show">
+    <xsl:param name="items"/>
+    <xsl:param name="p"/>
+    <xsl:for-each select="$items">
+      <xsl:value-of select="count($p/r)"/>
+      <xsl:text>;</xsl:text>
+    </xsl:for-each>
+    <xsl:if test="not($p = 'plain')">
+      <xsl:value-of select="count($p/r)"/>
+    </xsl:if>
+  </xsl:template>
+
+</xsl:stylesheet>